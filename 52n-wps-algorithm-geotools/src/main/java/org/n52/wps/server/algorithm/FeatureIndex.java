@@ -0,0 +1,149 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * The features of a collection held in a list, with an STRtree on the
+ * envelopes of their geometries. The tree is built on creation, so the index
+ * can be queried from several threads.
+ */
+public class FeatureIndex {
+
+	private final List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+
+	private final List<Geometry> geometries = new ArrayList<Geometry>();
+
+	private final STRtree tree = new STRtree();
+
+	public FeatureIndex(FeatureCollection<?, ?> featureCollection) {
+		FeatureIterator<?> iterator = featureCollection.features();
+		try {
+			while (iterator.hasNext()) {
+				SimpleFeature feature = (SimpleFeature) iterator.next();
+				Geometry geometry = getGeometry(feature);
+				if (geometry != null && !geometry.isEmpty()) {
+					tree.insert(geometry.getEnvelopeInternal(), Integer.valueOf(features.size()));
+				}
+				features.add(feature);
+				geometries.add(geometry);
+			}
+		} finally {
+			iterator.close();
+		}
+		tree.build();
+	}
+
+	public int size() {
+		return features.size();
+	}
+
+	public SimpleFeature getFeature(int index) {
+		return features.get(index);
+	}
+
+	/**
+	 * @return the geometry of the feature, <code>null</code> if it has none
+	 */
+	public Geometry getGeometry(int index) {
+		return geometries.get(index);
+	}
+
+	/**
+	 * Returns the features whose envelope intersects the given envelope.
+	 *
+	 * @return the indices of the candidate features in ascending order
+	 */
+	public List<Integer> query(Envelope envelope) {
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (Object index : tree.query(envelope)) {
+			candidates.add((Integer) index);
+		}
+		Collections.sort(candidates);
+		return candidates;
+	}
+
+	/**
+	 * Reads all features of a collection into a list.
+	 */
+	public static List<SimpleFeature> toList(FeatureCollection<?, ?> featureCollection) {
+		List<SimpleFeature> list = new ArrayList<SimpleFeature>();
+		FeatureIterator<?> iterator = featureCollection.features();
+		try {
+			while (iterator.hasNext()) {
+				list.add((SimpleFeature) iterator.next());
+			}
+		} finally {
+			iterator.close();
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the default geometry of a feature, or its first attribute if the
+	 * feature has no default geometry but a geometry valued first attribute.
+	 */
+	public static Geometry getGeometry(SimpleFeature feature) {
+		if (feature.getDefaultGeometry() == null && feature.getAttributeCount() > 0
+				&& feature.getAttribute(0) instanceof Geometry) {
+			return (Geometry) feature.getAttribute(0);
+		}
+		return (Geometry) feature.getDefaultGeometry();
+	}
+}
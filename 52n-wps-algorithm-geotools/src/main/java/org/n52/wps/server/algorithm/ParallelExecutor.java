@@ -0,0 +1,221 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared thread pool of the GeoTools algorithms that split their work on
+ * features or raster rows across cores. Work is processed in chunks and the
+ * results are returned in the order of the input, so parallel and sequential
+ * runs produce the same output.
+ *
+ * The pool is configured with the server property
+ * <code>algorithm.parallelism</code>: the number of threads, 0 or 1 runs
+ * everything in the calling thread (default: number of available
+ * processors).
+ */
+public class ParallelExecutor {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(ParallelExecutor.class);
+
+	private static final String KEY_ALGORITHM_ROOT = "org.n52.wps.server.algorithm";
+	private static final String KEY_PARALLELISM = "algorithm.parallelism";
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	/**
+	 * Number of chunks per thread, so threads that finish early can take
+	 * over work from slower ones.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private static ParallelExecutor instance;
+
+	private final int parallelism;
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Processes one chunk of the input.
+	 *
+	 * @param <S>
+	 *            the type of the input items
+	 * @param <T>
+	 *            the type of the results
+	 */
+	public interface ChunkProcessor<S, T> {
+
+		/**
+		 * @param chunk
+		 *            consecutive items of the input
+		 * @param offset
+		 *            the index of the first item of the chunk in the input
+		 * @return the results for the chunk, in order
+		 */
+		List<T> process(List<S> chunk, int offset);
+	}
+
+	public static synchronized ParallelExecutor getInstance() {
+		if (instance == null) {
+			PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer(), KEY_ALGORITHM_ROOT);
+			instance = new ParallelExecutor((int) propertyUtil.extractLong(KEY_PARALLELISM, Runtime.getRuntime()
+					.availableProcessors()));
+		}
+		return instance;
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of threads, 0 or 1 to process in the calling
+	 *            thread
+	 */
+	public ParallelExecutor(int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+		if (this.parallelism > 1) {
+			executor = new ThreadPoolExecutor(this.parallelism, this.parallelism, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new AlgorithmThreadFactory());
+			executor.allowCoreThreadTimeOut(true);
+		} else {
+			executor = null;
+		}
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Processes all items in chunks, in parallel if configured.
+	 *
+	 * @param items
+	 *            the input, must support fast random access
+	 * @param processor
+	 *            the processor of a chunk
+	 * @return the results of all chunks, in the order of the input
+	 * @throws RuntimeException
+	 *             if processing a chunk failed; the remaining chunks are
+	 *             cancelled
+	 */
+	public <S, T> List<T> process(List<S> items, final ChunkProcessor<S, T> processor) {
+		int chunkSize = (items.size() + parallelism * CHUNKS_PER_THREAD - 1) / (parallelism * CHUNKS_PER_THREAD);
+		// nested calls from a pool thread are processed inline, waiting for
+		// the pool in the pool could exhaust it
+		if (executor == null || items.size() < 2 || Thread.currentThread() instanceof AlgorithmThread) {
+			return processor.process(items, 0);
+		}
+		List<Future<List<T>>> futures = new ArrayList<Future<List<T>>>();
+		for (int offset = 0; offset < items.size(); offset += chunkSize) {
+			final int chunkOffset = offset;
+			final List<S> chunk = items.subList(offset, Math.min(offset + chunkSize, items.size()));
+			futures.add(executor.submit(new Callable<List<T>>() {
+
+				@Override
+				public List<T> call() {
+					return processor.process(chunk, chunkOffset);
+				}
+			}));
+		}
+		List<T> results = new ArrayList<T>();
+		try {
+			for (Future<List<T>> future : futures) {
+				results.addAll(future.get());
+			}
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for parallel processing", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			LOGGER.error("Exception while processing in parallel.", e.getCause());
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		return results;
+	}
+
+	private void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	private static class AlgorithmThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new AlgorithmThread(r, "wps-algorithm-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private static class AlgorithmThread extends Thread {
+
+		AlgorithmThread(Runnable target, String name) {
+			super(target, name);
+		}
+	}
+}
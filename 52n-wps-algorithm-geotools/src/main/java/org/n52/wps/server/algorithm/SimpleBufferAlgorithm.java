@@ -47,8 +47,11 @@
  */
 package org.n52.wps.server.algorithm;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.namespace.QName;
 
@@ -64,6 +67,9 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.util.PolygonExtracter;
+import com.vividsolutions.jts.operation.union.CascadedPolygonUnion;
 
 import org.n52.wps.algorithm.annotation.Algorithm;
 import org.n52.wps.algorithm.annotation.ComplexDataInput;
@@ -72,11 +78,16 @@ import org.n52.wps.algorithm.annotation.LiteralDataInput;
 import org.n52.wps.algorithm.annotation.Execute;
 import org.n52.wps.server.AbstractAnnotatedAlgorithm;
 
+/**
+ * Buffers every feature of a collection. The features are buffered in chunks
+ * on the threads of the {@link ParallelExecutor}. If <code>dissolve</code> is
+ * set, the buffers are merged into a single feature with a cascaded union,
+ * first per chunk and then over the partial unions.
+ */
 @Algorithm(version = "1.1.0")
 public class SimpleBufferAlgorithm extends AbstractAnnotatedAlgorithm {
 
     private static Logger LOGGER = LoggerFactory.getLogger(SimpleBufferAlgorithm.class);
-    private Double percentage;
 
     public SimpleBufferAlgorithm() {
         super();
@@ -85,6 +96,7 @@ public class SimpleBufferAlgorithm extends AbstractAnnotatedAlgorithm {
     private FeatureCollection result;
     private FeatureCollection data;
     private double width;
+    private boolean dissolve;
 
     @ComplexDataOutput(identifier = "result", binding = GTVectorDataBinding.class)
     public FeatureCollection getResult() {
@@ -101,50 +113,107 @@ public class SimpleBufferAlgorithm extends AbstractAnnotatedAlgorithm {
         this.width = width;
     }
 
+    // the setter is called with null if the input is omitted
+    @LiteralDataInput(identifier = "dissolve", minOccurs = 0, defaultValue = "false")
+    public void setDissolve(Boolean dissolve) {
+        this.dissolve = dissolve != null && dissolve.booleanValue();
+    }
+
     @Execute
     public void runBuffer() {
-        //Collection resultColl = new ArrayList();
-        double i = 0;
-        int totalNumberOfFeatures = data.size();
+        final List<SimpleFeature> features = FeatureIndex.toList(data);
+        final int totalNumberOfFeatures = features.size();
+        final AtomicInteger processed = new AtomicInteger();
         String uuid = UUID.randomUUID().toString();
         result = DefaultFeatureCollections.newCollection();
-        SimpleFeatureType featureType = null;
-        LOGGER.debug("");
-        for (Iterator ia = data.iterator(); ia.hasNext();) {
-            /**
-             * ******* How to publish percentage results ************
-             */
-            i = i + 1;
-            percentage = (i / totalNumberOfFeatures) * 100;
-            this.update(new Integer(percentage.intValue()));
-
-            /**
-             * ******************
-             */
-            SimpleFeature feature = (SimpleFeature) ia.next();
-            Geometry geometry = (Geometry) feature.getDefaultGeometry();
-            Geometry geometryBuffered = runBuffer(geometry, width);
-
-            if (i == 1) {
-                CoordinateReferenceSystem crs = feature.getFeatureType().getCoordinateReferenceSystem();
-                if (geometry.getUserData() instanceof CoordinateReferenceSystem) {
-                    crs = ((CoordinateReferenceSystem) geometry.getUserData());
+        if (features.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("Buffering {} features, dissolve: {}", totalNumberOfFeatures, dissolve);
+
+        SimpleFeature firstFeature = features.get(0);
+        CoordinateReferenceSystem crs = firstFeature.getFeatureType().getCoordinateReferenceSystem();
+        Geometry firstGeometry = (Geometry) firstFeature.getDefaultGeometry();
+        if (firstGeometry != null && firstGeometry.getUserData() instanceof CoordinateReferenceSystem) {
+            crs = ((CoordinateReferenceSystem) firstGeometry.getUserData());
+        }
+
+        List<Geometry> buffers = ParallelExecutor.getInstance().process(features,
+                new ParallelExecutor.ChunkProcessor<SimpleFeature, Geometry>() {
+
+            @Override
+            public List<Geometry> process(List<SimpleFeature> chunk, int offset) {
+                List<Geometry> buffered = new ArrayList<Geometry>(chunk.size());
+                for (SimpleFeature feature : chunk) {
+                    buffered.add(runBuffer((Geometry) feature.getDefaultGeometry(), width));
+                }
+                updatePercentage(processed.addAndGet(chunk.size()), totalNumberOfFeatures);
+                if (dissolve) {
+                    return Collections.singletonList(union(buffered));
                 }
-                featureType = GTHelper.createFeatureType(feature.getProperties(), geometryBuffered, uuid, crs);
-                QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
-                SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
+                return buffered;
+            }
+        });
 
+        if (dissolve) {
+            Geometry dissolved = union(buffers);
+            if (dissolved == null) {
+                LOGGER.warn("All buffers are empty, no dissolved feature is returned");
+                return;
             }
+            SimpleFeatureType featureType = GTHelper.createFeatureType(dissolved, uuid, crs);
+            registerSchema(featureType);
+            result.add(GTHelper.createFeature("ID1", dissolved, featureType));
+            return;
+        }
 
+        SimpleFeatureType featureType = GTHelper.createFeatureType(firstFeature.getProperties(), buffers.get(0), uuid, crs);
+        registerSchema(featureType);
+        for (int i = 0; i < totalNumberOfFeatures; i++) {
+            SimpleFeature feature = features.get(i);
+            Geometry geometryBuffered = buffers.get(i);
             if (geometryBuffered != null) {
-                SimpleFeature createdFeature = (SimpleFeature) GTHelper.createFeature("ID" + new Double(i).intValue(), geometryBuffered, (SimpleFeatureType) featureType, feature.getProperties());
+                SimpleFeature createdFeature = (SimpleFeature) GTHelper.createFeature("ID" + (i + 1), geometryBuffered, featureType, feature.getProperties());
                 feature.setDefaultGeometry(geometryBuffered);
                 result.add(createdFeature);
             } else {
                 LOGGER.warn("GeometryCollections are not supported, or result null. Original dataset will be returned");
             }
         }
+    }
+
+    /**
+     * Publishes the percentage of buffered features. Chunks finish on
+     * different threads, so the updates are serialized here.
+     */
+    private synchronized void updatePercentage(int processed, int total) {
+        this.update(new Integer((int) ((double) processed / total * 100)));
+    }
 
+    private void registerSchema(SimpleFeatureType featureType) {
+        QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
+        SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
+    }
+
+    /**
+     * Merges the polygons of the given geometries with a cascaded union, which
+     * unions nearby polygons first and is much faster than merging them one
+     * after another.
+     *
+     * @return the union or <code>null</code> if there are no polygons
+     */
+    @SuppressWarnings("unchecked")
+    private static Geometry union(List<Geometry> geometries) {
+        List<Polygon> polygons = new ArrayList<Polygon>();
+        for (Geometry geometry : geometries) {
+            if (geometry != null) {
+                PolygonExtracter.getPolygons(geometry, polygons);
+            }
+        }
+        if (polygons.isEmpty()) {
+            return null;
+        }
+        return CascadedPolygonUnion.union(polygons);
     }
 
     private Geometry runBuffer(Geometry a, double width) {
@@ -158,4 +227,4 @@ public class SimpleBufferAlgorithm extends AbstractAnnotatedAlgorithm {
         }
         return null;
     }
-}
\ No newline at end of file
+}
@@ -48,6 +48,7 @@
 package org.n52.wps.server.algorithm.convexhull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -57,18 +58,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.feature.DefaultFeatureCollections;
 import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.n52.wps.io.GTHelper;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.algorithm.FeatureIndex;
+import org.n52.wps.server.algorithm.ParallelExecutor;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.algorithm.ConvexHull;
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 
@@ -79,6 +80,7 @@ import com.vividsolutions.jts.geom.GeometryFactory;
 public class ConvexHullAlgorithm extends AbstractSelfDescribingAlgorithm {
 
 	Logger LOGGER = LoggerFactory.getLogger(ConvexHullAlgorithm.class);
+	private final GeometryFactory geometryFactory = new GeometryFactory();
 	private List<String> errors = new ArrayList<String>();
 
 	public List<String> getErrors() {
@@ -113,40 +115,29 @@ public class ConvexHullAlgorithm extends AbstractSelfDescribingAlgorithm {
 		FeatureCollection featureCollection = ((GTVectorDataBinding) firstInputData)
 				.getPayload();
 
-		FeatureIterator iter = featureCollection.features();
-
-		List<Coordinate> coordinateList = new ArrayList<Coordinate>();
-		
-		int counter = 0;
-		
-		Geometry unifiedGeometry = null;
-		
-		while (iter.hasNext()) {
-			SimpleFeature  feature = (SimpleFeature) iter.next();
-
-			if (feature.getDefaultGeometry() == null) {
-				throw new NullPointerException(
-						"defaultGeometry is null in feature id: "
-								+ feature.getID());
-			}
-			
-			Geometry geom = (Geometry) feature.getDefaultGeometry();
+		// the hull of all features is the hull of the hulls of any partition,
+		// so every chunk is reduced to its hull on its own thread and only
+		// the vertices of these hulls are combined
+		List<Geometry> chunkHulls = ParallelExecutor.getInstance().process(FeatureIndex.toList(featureCollection),
+				new ParallelExecutor.ChunkProcessor<SimpleFeature, Geometry>() {
 			
-			Coordinate[] coordinateArray = geom.getCoordinates();
-			for(Coordinate coordinate : coordinateArray){
-				coordinateList.add(coordinate);
+			@Override
+			public List<Geometry> process(List<SimpleFeature> chunk, int offset) {
+				Geometry[] geometries = new Geometry[chunk.size()];
+				for(int i = 0; i < geometries.length; i++){
+					SimpleFeature feature = chunk.get(i);
+					if (feature.getDefaultGeometry() == null) {
+						throw new NullPointerException(
+								"defaultGeometry is null in feature id: "
+										+ feature.getID());
+					}
+					geometries[i] = (Geometry) feature.getDefaultGeometry();
+				}
+				return Collections.singletonList(hull(geometryFactory.createGeometryCollection(geometries)));
 			}
-			
-		}	
-		
-		Coordinate[] coordinateArray = new Coordinate[coordinateList.size()];
-		
-		for(int i = 0; i<coordinateList.size(); i++){
-			coordinateArray[i] = coordinateList.get(i);
-		}
-		ConvexHull convexHull = new ConvexHull(coordinateArray, new GeometryFactory());		
+		});
 		
-		Geometry out = convexHull.getConvexHull();
+		Geometry out = hull(geometryFactory.buildGeometry(chunkHulls));
 
 		Feature feature = createFeature(out, featureCollection.getSchema().getCoordinateReferenceSystem());
 		
@@ -161,6 +152,14 @@ public class ConvexHullAlgorithm extends AbstractSelfDescribingAlgorithm {
 		return result;
 	}
 	
+	/**
+	 * Computes the hull of the distinct coordinates of a geometry, which are
+	 * read from its coordinate sequences in a single pass.
+	 */
+	private Geometry hull(Geometry geometry) {
+		return new ConvexHull(geometry).getConvexHull();
+	}
+	
 	private Feature createFeature(Geometry geometry, CoordinateReferenceSystem crs) {
 		String uuid = UUID.randomUUID().toString();
 		SimpleFeatureType featureType = GTHelper.createFeatureType(geometry, uuid, crs);
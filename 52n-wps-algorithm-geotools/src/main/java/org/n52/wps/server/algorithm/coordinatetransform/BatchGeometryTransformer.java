@@ -0,0 +1,124 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.coordinatetransform;
+
+import org.geotools.geometry.jts.JTS;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.util.GeometryTransformer;
+
+/**
+ * Transforms geometries with one call of the math transform per coordinate
+ * sequence: the x and y ordinates are packed into a <code>double[]</code>
+ * and transformed in place. z ordinates are kept. Transforms that are not
+ * two dimensional are delegated to {@link JTS#transform(Geometry, MathTransform)}.
+ *
+ * Instances are not thread safe, the math transform can be shared.
+ */
+public class BatchGeometryTransformer extends GeometryTransformer {
+
+	private final MathTransform transform;
+
+	public BatchGeometryTransformer(MathTransform transform) {
+		this.transform = transform;
+	}
+
+	public Geometry transformGeometry(Geometry geometry) throws TransformException {
+		if (transform.getSourceDimensions() != 2 || transform.getTargetDimensions() != 2) {
+			return JTS.transform(geometry, transform);
+		}
+		try {
+			return transform(geometry);
+		} catch (UncheckedTransformException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Override
+	protected CoordinateSequence transformCoordinates(CoordinateSequence coordinates, Geometry parent) {
+		int size = coordinates.size();
+		double[] points = new double[size * 2];
+		for (int i = 0; i < size; i++) {
+			points[2 * i] = coordinates.getX(i);
+			points[2 * i + 1] = coordinates.getY(i);
+		}
+		try {
+			transform.transform(points, 0, points, 0, size);
+		} catch (TransformException e) {
+			throw new UncheckedTransformException(e);
+		}
+		Coordinate[] transformed = new Coordinate[size];
+		for (int i = 0; i < size; i++) {
+			transformed[i] = new Coordinate(points[2 * i], points[2 * i + 1], coordinates.getOrdinate(i,
+					CoordinateSequence.Z));
+		}
+		return factory.getCoordinateSequenceFactory().create(transformed);
+	}
+
+	/**
+	 * Carries a TransformException through the GeometryTransformer methods,
+	 * which do not declare it.
+	 */
+	private static class UncheckedTransformException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		UncheckedTransformException(TransformException cause) {
+			super(cause);
+		}
+
+		@Override
+		public TransformException getCause() {
+			return (TransformException) super.getCause();
+		}
+	}
+}
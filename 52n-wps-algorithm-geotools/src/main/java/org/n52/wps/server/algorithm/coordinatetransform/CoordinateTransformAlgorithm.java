@@ -58,22 +58,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.feature.DefaultFeatureCollections;
 import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
-import org.geotools.geometry.jts.JTS;
-import org.geotools.referencing.CRS;
 import org.n52.wps.io.GTHelper;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.algorithm.FeatureIndex;
+import org.n52.wps.server.algorithm.ParallelExecutor;
 import org.opengis.feature.Feature;
 import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 
 public class CoordinateTransformAlgorithm extends
@@ -144,8 +143,6 @@ public class CoordinateTransformAlgorithm extends
 		FeatureCollection<?, ?> featureCollection = ((GTVectorDataBinding) firstInputData)
 				.getPayload();
 
-		FeatureIterator<?> featureIterator = featureCollection.features();
-
 		List<IData> secondDataList = inputData
 				.get(inputIdentifierTargetReferenceSystem);		
 		if (secondDataList == null || secondDataList.size() != 1) {
@@ -162,7 +159,7 @@ public class CoordinateTransformAlgorithm extends
 
 		try {
 
-			toCRS = CRS.decode(crs);
+			toCRS = TransformCache.getInstance().getCRS(crs);
 
 		} catch (Exception e) {
 			throw new RuntimeException(
@@ -191,7 +188,7 @@ public class CoordinateTransformAlgorithm extends
 
 		try {
 
-			fromCRS = CRS.decode(fromCRSString);
+			fromCRS = TransformCache.getInstance().getCRS(fromCRSString);
 
 		} catch (Exception e) {
 			throw new RuntimeException(
@@ -205,41 +202,41 @@ public class CoordinateTransformAlgorithm extends
 		}
 		
 
-		FeatureCollection fOut = DefaultFeatureCollections.newCollection();
-
+		final MathTransform tx;
 		try {
 
-			MathTransform tx = CRS.findMathTransform(fromCRS, toCRS, true);
+			tx = TransformCache.getInstance().getTransform(fromCRSString, crs, true);
 
-			int coordinates = 0;
-			
-			while (featureIterator.hasNext()) {
-
-				SimpleFeature feature = (SimpleFeature) featureIterator.next();
-
-				Geometry geometry = (Geometry) feature.getDefaultGeometry();
+		} catch (Exception e) {
+			throw new RuntimeException("Error while transforming", e);
+		}
 
-				coordinates = coordinates + geometry.getCoordinates().length;
-				
-				Coordinate[] coords = geometry.getCoordinates();
-				
-				for (Coordinate coordinate : coords) {
-					Coordinate k = new Coordinate();
-					k = JTS.transform(coordinate, k, tx);
-//					System.out.println(k);
+		final CoordinateReferenceSystem targetCRS = toCRS;
+		List<SimpleFeature> features = FeatureIndex.toList(featureCollection);
+
+		List<Feature> transformedFeatures = ParallelExecutor.getInstance().process(features,
+				new ParallelExecutor.ChunkProcessor<SimpleFeature, Feature>() {
+
+			@Override
+			public List<Feature> process(List<SimpleFeature> chunk, int offset) {
+				BatchGeometryTransformer transformer = new BatchGeometryTransformer(tx);
+				List<Feature> results = new ArrayList<Feature>();
+				for (SimpleFeature feature : chunk) {
+					Geometry geometry = (Geometry) feature.getDefaultGeometry();
+					try {
+						Geometry newGeometry = transformer.transformGeometry(geometry);
+						results.add(createFeature(feature.getID(), newGeometry, targetCRS, feature.getProperties()));
+					} catch (TransformException e) {
+						throw new RuntimeException("Error while transforming", e);
+					}
 				}
-				
-				Geometry newGeometry = JTS.transform(geometry, tx);
-
-				Feature newFeature = createFeature(feature.getID(),
-						newGeometry, toCRS, feature.getProperties());
-
-				fOut.add(newFeature);
+				return results;
 			}
-						
+		});
 
-		} catch (Exception e) {
-			throw new RuntimeException("Error while transforming", e);
+		FeatureCollection fOut = DefaultFeatureCollections.newCollection();
+		for (Feature newFeature : transformedFeatures) {
+			fOut.add(newFeature);
 		}
 
 		HashMap<String, IData> result = new HashMap<String, IData>();
@@ -250,6 +247,14 @@ public class CoordinateTransformAlgorithm extends
 
 	private Feature createFeature(String id, Geometry geometry,
 			CoordinateReferenceSystem crs, Collection<Property> properties) {
+		Feature feature = GTHelper.createFeature(id, geometry, getFeatureType(geometry, crs, properties),
+				properties);
+
+		return feature;
+	}
+
+	private synchronized SimpleFeatureType getFeatureType(Geometry geometry,
+			CoordinateReferenceSystem crs, Collection<Property> properties) {
 		String uuid = UUID.randomUUID().toString();
 		
 		if(featureType == null){
@@ -257,11 +262,7 @@ public class CoordinateTransformAlgorithm extends
 				geometry, uuid, crs);
 		GTHelper.createGML3SchemaForFeatureType(featureType);
 		}
-
-		Feature feature = GTHelper.createFeature(id, geometry, featureType,
-				properties);
-
-		return feature;
+		return featureType;
 	}
 
 }
@@ -0,0 +1,133 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.coordinatetransform;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+
+/**
+ * Process wide cache of decoded coordinate reference systems and of the math
+ * transforms between them, so a reprojection does not have to look up the
+ * EPSG database and search a transformation path on every request. Both are
+ * immutable and shared between threads.
+ */
+public class TransformCache {
+
+	/**
+	 * Upper bound of each cache; the caches are cleared when it is reached,
+	 * codes are usually taken from a small set.
+	 */
+	private static final int MAX_ENTRIES = 1000;
+
+	private static TransformCache instance;
+
+	private final ConcurrentMap<String, CoordinateReferenceSystem> crsByCode = new ConcurrentHashMap<String, CoordinateReferenceSystem>();
+
+	private final ConcurrentMap<String, MathTransform> transforms = new ConcurrentHashMap<String, MathTransform>();
+
+	public static synchronized TransformCache getInstance() {
+		if (instance == null) {
+			instance = new TransformCache();
+		}
+		return instance;
+	}
+
+	/**
+	 * @param code
+	 *            a CRS code, e.g. <code>EPSG:4326</code>
+	 * @return the decoded CRS
+	 * @throws FactoryException
+	 *             if the code is unknown
+	 */
+	public CoordinateReferenceSystem getCRS(String code) throws FactoryException {
+		CoordinateReferenceSystem crs = crsByCode.get(code);
+		if (crs == null) {
+			crs = CRS.decode(code);
+			if (crsByCode.size() >= MAX_ENTRIES) {
+				crsByCode.clear();
+			}
+			crsByCode.put(code, crs);
+		}
+		return crs;
+	}
+
+	/**
+	 * @param sourceCode
+	 *            the code of the source CRS
+	 * @param targetCode
+	 *            the code of the target CRS
+	 * @param lenient
+	 *            whether a transformation without datum shift is accepted if
+	 *            no Bursa-Wolf parameters are available
+	 * @return the transform from the source to the target CRS
+	 * @throws FactoryException
+	 *             if a code is unknown or no transformation is found
+	 */
+	public MathTransform getTransform(String sourceCode, String targetCode, boolean lenient) throws FactoryException {
+		String key = sourceCode + ' ' + targetCode + ' ' + lenient;
+		MathTransform transform = transforms.get(key);
+		if (transform == null) {
+			transform = CRS.findMathTransform(getCRS(sourceCode), getCRS(targetCode), lenient);
+			if (transforms.size() >= MAX_ENTRIES) {
+				transforms.clear();
+			}
+			transforms.put(key, transform);
+		}
+		return transform;
+	}
+
+	public void clear() {
+		crsByCode.clear();
+		transforms.clear();
+	}
+}
@@ -49,9 +49,10 @@ package org.n52.wps.server.algorithm.difference;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.xml.namespace.QName;
@@ -65,11 +66,15 @@ import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.algorithm.FeatureIndex;
+import org.n52.wps.server.algorithm.ParallelExecutor;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 
 
 
@@ -81,6 +86,8 @@ public class DifferenceAlgorithm extends AbstractSelfDescribingAlgorithm {
 		super();
 	}
 
+	private SimpleFeatureType registeredFeatureType;
+
 	private List<String> errors = new ArrayList<String>();
 	public List<String> getErrors() {
 		return errors;
@@ -114,67 +121,84 @@ public class DifferenceAlgorithm extends AbstractSelfDescribingAlgorithm {
 		FeatureCollection lineStrings = ((GTVectorDataBinding) secondInputData).getPayload();
 		
 		
-		System.out.println("****************************************************************");
-		System.out.println("difference algorithm started");
-		System.out.println("polygons size = " + polygons.size());
-		System.out.println("lineStrings size = " + lineStrings.size());
-		
-		FeatureCollection featureCollection = DefaultFeatureCollections.newCollection();
-		
-		Iterator polygonIterator = polygons.iterator();
-		int j = 1;
-		
-		String uuid = UUID.randomUUID().toString();
-		while(polygonIterator.hasNext()){
-			SimpleFeature polygon = (SimpleFeature) polygonIterator.next();
-
+		final FeatureIndex index = new FeatureIndex(lineStrings);
+		List<SimpleFeature> polygonList = FeatureIndex.toList(polygons);
+		LOGGER.info("Subtracting {} from {} features", index.size(), polygonList.size());
 		
-			Iterator lineStringIterator = lineStrings.iterator();
-			int i = 1;
-			System.out.println("Polygon = " + j +"/"+ polygons.size());
-			SimpleFeatureType featureType = null; 
-			while(lineStringIterator.hasNext()){
-				SimpleFeature lineString = (SimpleFeature) lineStringIterator.next();
-				Geometry lineStringGeometry = null;
-				lineStringGeometry = (Geometry) lineString.getDefaultGeometry();
-				
-				try{	
-					Geometry polygonGeometry = (Geometry) polygon.getDefaultGeometry();
-					Geometry intersection = polygonGeometry.difference(lineStringGeometry);
-					if(i==1){
-						 featureType = GTHelper.createFeatureType(polygon.getProperties(), intersection, uuid, polygon.getFeatureType().getCoordinateReferenceSystem());
-						 QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
-						 SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
-					}
-					
-				
-					Feature resultFeature = GTHelper.createFeature(""+j+"_"+i, intersection,featureType, polygon.getProperties());
-					if(resultFeature!=null){
-								
-						featureCollection.add(resultFeature);
-						System.out.println("result feature added. resultCollection = " + featureCollection.size());
-					}
-				}catch(Exception e){
-						e.printStackTrace();
-					}
-				
-				i++;
+		final String uuid = UUID.randomUUID().toString();
+		List<Feature> resultFeatures = ParallelExecutor.getInstance().process(polygonList,
+				new ParallelExecutor.ChunkProcessor<SimpleFeature, Feature>() {
+			
+			@Override
+			public List<Feature> process(List<SimpleFeature> chunk, int offset) {
+				List<Feature> results = new ArrayList<Feature>();
+				for(int k = 0; k < chunk.size(); k++){
+					subtract(chunk.get(k), offset + k + 1, index, uuid, results);
+				}
+				return results;
 			}
-			j++;
-			//if(featureCollection.size()>10){
-			//	break;
-			//}
-		}
+		});
 		
+		FeatureCollection featureCollection = DefaultFeatureCollections.newCollection();
+		for(Feature resultFeature : resultFeatures){
+			featureCollection.add(resultFeature);
+		}
+		LOGGER.info("Difference finished with {} features", resultFeatures.size());
 		
 		HashMap<String,IData> resulthash = new HashMap<String,IData>();
 		resulthash.put("result", new GTVectorDataBinding(featureCollection));
 		return resulthash;
 	}
 	
-
-	
+	/**
+	 * Subtracts every feature of the index from a polygon. Only the features
+	 * whose geometries intersect the polygon are subtracted, for all others
+	 * the difference is the polygon itself and its geometry is used as is.
+	 */
+	private void subtract(SimpleFeature polygon, int j, FeatureIndex index, String uuid, List<Feature> results) {
+		Geometry polygonGeometry = (Geometry) polygon.getDefaultGeometry();
+		if(polygonGeometry == null){
+			return;
+		}
+		PreparedGeometry preparedPolygon = PreparedGeometryFactory.prepare(polygonGeometry);
+		Set<Integer> candidates = new HashSet<Integer>(index.query(polygonGeometry.getEnvelopeInternal()));
+		SimpleFeatureType featureType = null;
+		for(int i = 0; i < index.size(); i++){
+			Geometry lineStringGeometry = index.getGeometry(i);
+			if(lineStringGeometry == null){
+				continue;
+			}
+			try{
+				Geometry difference = polygonGeometry;
+				if(candidates.contains(i) && preparedPolygon.intersects(lineStringGeometry)){
+					difference = polygonGeometry.difference(lineStringGeometry);
+				}
+				if(featureType == null){
+					featureType = GTHelper.createFeatureType(polygon.getProperties(), difference, uuid, polygon.getFeatureType().getCoordinateReferenceSystem());
+					registerSchema(featureType);
+				}
+				Feature resultFeature = GTHelper.createFeature(""+j+"_"+(i+1), difference, featureType, polygon.getProperties());
+				if(resultFeature!=null){
+					results.add(resultFeature);
+				}
+			}catch(Exception e){
+				LOGGER.warn("Could not subtract feature " + (i+1) + " from feature " + j, e);
+			}
+		}
+	}
 	
+	/**
+	 * Stores the schema of a feature type unless it was stored for an equal
+	 * type before. All result types share one namespace, so the schema is
+	 * written by one thread at a time.
+	 */
+	private synchronized void registerSchema(SimpleFeatureType featureType) {
+		if(!featureType.equals(registeredFeatureType)){
+			QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
+			SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
+			registeredFeatureType = featureType;
+		}
+	}
 	
 	public Class getInputDataType(String id) {
 		return GTVectorDataBinding.class;
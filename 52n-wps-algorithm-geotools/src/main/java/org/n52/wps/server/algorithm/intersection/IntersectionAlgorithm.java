@@ -49,7 +49,6 @@ package org.n52.wps.server.algorithm.intersection;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -64,6 +63,8 @@ import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.server.AbstractAlgorithm;
 import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.algorithm.FeatureIndex;
+import org.n52.wps.server.algorithm.ParallelExecutor;
 import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -72,6 +73,8 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 
 
 
@@ -116,55 +119,62 @@ public class IntersectionAlgorithm extends AbstractSelfDescribingAlgorithm {
 		FeatureCollection lineStrings = ((GTVectorDataBinding) firstInputDataLS).getPayload();
 		
 		
-		System.out.println("****************************************************************");
-		System.out.println("intersection started");
-		System.out.println("polygons size = " + polygons.size());
-		System.out.println("lineStrings size = " + lineStrings.size());
+		final FeatureIndex index = new FeatureIndex(lineStrings);
+		List<SimpleFeature> polygonList = FeatureIndex.toList(polygons);
+		LOGGER.info("Intersecting {} with {} features", polygonList.size(), index.size());
 		
-		FeatureCollection featureCollection = DefaultFeatureCollections.newCollection();
-		
-		Iterator polygonIterator = polygons.iterator();
-		int j = 1;
-		while(polygonIterator.hasNext()){
-			SimpleFeature polygon = (SimpleFeature) polygonIterator.next();
-			Iterator lineStringIterator = lineStrings.iterator();
-			int i = 1;
-			System.out.println("Polygon = " + j +"/"+ polygons.size());
-			while(lineStringIterator.hasNext()){
-				//System.out.println("Polygon = " + j + "LineString =" + i +"/"+lineStrings.size());
-				
-				SimpleFeature lineString = (SimpleFeature) lineStringIterator.next();
-				Geometry lineStringGeometry = null;
-				if(lineString.getDefaultGeometry()==null && lineString.getAttributeCount()>0 &&lineString.getAttribute(0) instanceof Geometry){
-					lineStringGeometry = (Geometry)lineString.getAttribute(0);
-				}else{
-					lineStringGeometry = (Geometry) lineString.getDefaultGeometry();
+		List<Feature> resultFeatures = ParallelExecutor.getInstance().process(polygonList,
+				new ParallelExecutor.ChunkProcessor<SimpleFeature, Feature>() {
+			
+			@Override
+			public List<Feature> process(List<SimpleFeature> chunk, int offset) {
+				List<Feature> results = new ArrayList<Feature>();
+				for(int k = 0; k < chunk.size(); k++){
+					intersect(chunk.get(k), offset + k + 1, index, results);
 				}
-				try{
-					Geometry polygonGeometry = (Geometry) polygon.getDefaultGeometry();
-					Geometry intersection = polygonGeometry.intersection(lineStringGeometry);
-					Feature resultFeature = createFeature(""+j+"_"+i, intersection, polygon);
-					if(resultFeature!=null){
-								
-						featureCollection.add(resultFeature);
-						System.out.println("result feature added. resultCollection = " + featureCollection.size());
-					}
-				}catch(Exception e){
-						e.printStackTrace();
-					}
-				
-				i++;
+				return results;
 			}
-			j++;
-			
-		}
+		});
 		
+		FeatureCollection featureCollection = DefaultFeatureCollections.newCollection();
+		for(Feature resultFeature : resultFeatures){
+			featureCollection.add(resultFeature);
+		}
+		LOGGER.info("Intersection finished with {} features", resultFeatures.size());
 		
 		HashMap<String,IData> resulthash = new HashMap<String,IData>();
 		resulthash.put("intersection_result", new GTVectorDataBinding(featureCollection));
 		return resulthash;
 	}
 	
+	/**
+	 * Intersects a polygon with the features of the index whose geometries
+	 * intersect it. Other features would give an empty intersection, which
+	 * does not make a result feature.
+	 */
+	private void intersect(SimpleFeature polygon, int j, FeatureIndex index, List<Feature> results) {
+		Geometry polygonGeometry = (Geometry) polygon.getDefaultGeometry();
+		if(polygonGeometry == null || polygonGeometry.isEmpty()){
+			return;
+		}
+		PreparedGeometry preparedPolygon = PreparedGeometryFactory.prepare(polygonGeometry);
+		for(int i : index.query(polygonGeometry.getEnvelopeInternal())){
+			Geometry lineStringGeometry = index.getGeometry(i);
+			try{
+				if(!preparedPolygon.intersects(lineStringGeometry)){
+					continue;
+				}
+				Geometry intersection = polygonGeometry.intersection(lineStringGeometry);
+				Feature resultFeature = createFeature(""+j+"_"+(i+1), intersection, polygon);
+				if(resultFeature!=null){
+					results.add(resultFeature);
+				}
+			}catch(Exception e){
+				LOGGER.warn("Could not intersect feature " + j + " with feature " + (i+1), e);
+			}
+		}
+	}
+	
 	private Feature createFeature(String id, Geometry geometry, SimpleFeature bluePrint) {
 		
 		Feature feature = GTHelper.createFeature(id, geometry, bluePrint.getFeatureType(), bluePrint.getProperties());
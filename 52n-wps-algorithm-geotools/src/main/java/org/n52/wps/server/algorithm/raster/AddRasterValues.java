@@ -47,18 +47,13 @@
  */
 package org.n52.wps.server.algorithm.raster;
 
-import java.awt.image.RenderedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.media.jai.JAI;
-import javax.media.jai.RenderedOp;
-import javax.media.jai.TiledImage;
-
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.feature.FeatureCollection;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTRasterDataBinding;
@@ -68,6 +63,7 @@ import org.opengis.coverage.grid.GridCoverage;
 
 public class AddRasterValues extends AbstractSelfDescribingAlgorithm{
 
+	private static final RasterExpression ADD = RasterExpression.parse("c1 + c2", 2);
 
 	public Class getInputDataType(String id) {
 		return GTRasterDataBinding.class;
@@ -107,7 +103,6 @@ public class AddRasterValues extends AbstractSelfDescribingAlgorithm{
 		}
 		IData dataset1 = dataList1.get(0);
 		GridCoverage2D gridCoverage1 = (GridCoverage2D) dataset1.getPayload();
-		RenderedImage image1 = gridCoverage1.getRenderedImage();
 		
 		if(inputData==null || !inputData.containsKey("dataset2")){
 			throw new RuntimeException("Error while allocating input parameters");
@@ -119,12 +114,9 @@ public class AddRasterValues extends AbstractSelfDescribingAlgorithm{
 		}
 		IData dataset2 = dataList2.get(0);
 		GridCoverage2D gridCoverage2 = (GridCoverage2D) dataset2.getPayload();
-		RenderedImage image2 = gridCoverage2.getRenderedImage();
-		
-		RenderedOp resultImage = JAI.create("add",image1, image2);
 		
-		GridCoverageFactory gcf = new GridCoverageFactory();
-        GridCoverage2D output =  gcf.create("result", resultImage, gridCoverage1.getEnvelope());
+		// dataset2 is resampled to the grid of dataset1 if necessary
+        GridCoverage2D output = RasterAlgebra.evaluate("result", Arrays.asList(gridCoverage1, gridCoverage2), ADD);
 
        
 		HashMap<String,IData> resulthash = new HashMap<String,IData>();
@@ -0,0 +1,113 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.raster;
+
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.media.jai.Interpolation;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.processing.Operations;
+import org.geotools.referencing.CRS;
+import org.n52.wps.io.JAIConfigurator;
+import org.n52.wps.server.algorithm.ParallelExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates a {@link RasterExpression} over coverages. The result is backed
+ * by a {@link RasterAlgebraOpImage}, nothing is computed until the result is
+ * read, e.g. by the GeoTIFF generator.
+ */
+public class RasterAlgebra {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(RasterAlgebra.class);
+
+	private RasterAlgebra() {
+	}
+
+	/**
+	 * @param name
+	 *            the name of the result coverage
+	 * @param coverages
+	 *            the coverages <code>c1</code> to <code>cN</code>; coverages
+	 *            on a different grid are resampled (nearest neighbour) to the
+	 *            grid of the first one
+	 * @param expression
+	 *            the expression
+	 * @return the result on the grid of the first coverage
+	 */
+	public static GridCoverage2D evaluate(String name, List<GridCoverage2D> coverages, RasterExpression expression) {
+		if (coverages.isEmpty()) {
+			throw new IllegalArgumentException("No coverages given for raster expression " + expression);
+		}
+		JAIConfigurator.configure();
+		GridCoverage2D reference = coverages.get(0);
+		List<RenderedImage> images = new ArrayList<RenderedImage>();
+		for (GridCoverage2D coverage : coverages) {
+			images.add(align(coverage, reference).getRenderedImage());
+		}
+		RenderedImage image = new RasterAlgebraOpImage(images, expression, ParallelExecutor.getInstance());
+		return new GridCoverageFactory().create(name, image, reference.getEnvelope());
+	}
+
+	private static GridCoverage2D align(GridCoverage2D coverage, GridCoverage2D reference) {
+		if (coverage == reference
+				|| (CRS.equalsIgnoreMetadata(coverage.getCoordinateReferenceSystem(),
+						reference.getCoordinateReferenceSystem()) && coverage.getGridGeometry().equals(
+						reference.getGridGeometry()))) {
+			return coverage;
+		}
+		LOGGER.info("Resampling coverage {} to the grid of {}", coverage.getName(), reference.getName());
+		return (GridCoverage2D) Operations.DEFAULT.resample(coverage, reference.getCoordinateReferenceSystem(),
+				reference.getGridGeometry(), Interpolation.getInstance(Interpolation.INTERP_NEAREST));
+	}
+}
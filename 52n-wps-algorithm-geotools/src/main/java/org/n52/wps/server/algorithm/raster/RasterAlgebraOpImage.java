@@ -0,0 +1,163 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.raster;
+
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.PointOpImage;
+import javax.media.jai.RasterFactory;
+
+import org.n52.wps.server.algorithm.ParallelExecutor;
+
+/**
+ * Image whose pixels are a {@link RasterExpression} of the pixels of its
+ * sources, computed lazily tile by tile like any other JAI operation. The
+ * rows of a tile are split across the {@link ParallelExecutor}, so a
+ * consumer that pulls one tile at a time, like the GeoTIFF writer, still
+ * uses all cores. Tiles are held in the JAI tile cache only, so images
+ * larger than the heap can be written.
+ *
+ * The sources must cover the same grid. Band <code>b</code> of the result is
+ * computed from band <code>b</code> of every source, sources with fewer bands
+ * contribute their last band. The result has the number of bands of the
+ * first source and double samples.
+ */
+public class RasterAlgebraOpImage extends PointOpImage {
+
+	private static final int TILE_SIZE = 512;
+
+	private final RasterExpression expression;
+
+	private final ParallelExecutor executor;
+
+	public RasterAlgebraOpImage(List<RenderedImage> sources, RasterExpression expression, ParallelExecutor executor) {
+		super(toPlanarImages(sources), createLayout(sources.get(0)), null, true);
+		this.expression = expression;
+		this.executor = executor;
+	}
+
+	private static Vector<Object> toPlanarImages(List<RenderedImage> sources) {
+		Vector<Object> planarImages = new Vector<Object>();
+		for (RenderedImage source : sources) {
+			planarImages.add(PlanarImage.wrapRenderedImage(source));
+		}
+		return planarImages;
+	}
+
+	/**
+	 * Tiles of the result are square, independent of the tiles or strips of
+	 * the sources, so a tile of doubles never holds the whole image.
+	 */
+	private static ImageLayout createLayout(RenderedImage reference) {
+		int tileWidth = Math.min(TILE_SIZE, reference.getWidth());
+		int tileHeight = Math.min(TILE_SIZE, reference.getHeight());
+		ImageLayout layout = new ImageLayout(reference);
+		layout.setTileGridXOffset(reference.getMinX());
+		layout.setTileGridYOffset(reference.getMinY());
+		layout.setTileWidth(tileWidth);
+		layout.setTileHeight(tileHeight);
+		SampleModel sampleModel = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_DOUBLE, tileWidth, tileHeight,
+				reference.getSampleModel().getNumBands());
+		layout.setSampleModel(sampleModel);
+		ColorModel colorModel = PlanarImage.createColorModel(sampleModel);
+		if (colorModel != null) {
+			layout.setColorModel(colorModel);
+		} else {
+			layout.unsetValid(ImageLayout.COLOR_MODEL_MASK);
+		}
+		return layout;
+	}
+
+	@Override
+	protected void computeRect(final Raster[] sources, final WritableRaster dest, final Rectangle destRect) {
+		List<Integer> rows = new ArrayList<Integer>(destRect.height);
+		for (int y = destRect.y; y < destRect.y + destRect.height; y++) {
+			rows.add(y);
+		}
+		executor.process(rows, new ParallelExecutor.ChunkProcessor<Integer, Object>() {
+
+			@Override
+			public List<Object> process(List<Integer> chunk, int offset) {
+				computeRows(sources, dest, destRect, chunk.get(0), chunk.size());
+				return Collections.emptyList();
+			}
+		});
+	}
+
+	private void computeRows(Raster[] sources, WritableRaster dest, Rectangle destRect, int y, int height) {
+		int size = destRect.width * height;
+		double[][] samples = new double[sources.length][size];
+		double[] result = new double[size];
+		double[] values = new double[sources.length];
+		for (int band = 0; band < dest.getNumBands(); band++) {
+			for (int i = 0; i < sources.length; i++) {
+				int sourceBand = Math.min(band, sources[i].getNumBands() - 1);
+				sources[i].getSamples(destRect.x, y, destRect.width, height, sourceBand, samples[i]);
+			}
+			for (int pixel = 0; pixel < size; pixel++) {
+				for (int i = 0; i < sources.length; i++) {
+					values[i] = samples[i][pixel];
+				}
+				result[pixel] = expression.evaluate(values);
+			}
+			dest.setSamples(destRect.x, y, destRect.width, height, band, result);
+		}
+	}
+}
@@ -0,0 +1,427 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.raster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per pixel expression of the raster algebra. The values of the input
+ * coverages at a pixel are referenced as <code>c1</code> to <code>cN</code>.
+ * Supported are numbers, <code>+ - * /</code>, the comparisons
+ * <code>&lt; &lt;= &gt; &gt;= == !=</code> (1 if true, 0 if false),
+ * parentheses and the functions <code>min(a, b, ...)</code>,
+ * <code>max(a, b, ...)</code> and <code>where(condition, a, b)</code>, which
+ * is <code>a</code> where the condition is not 0 and <code>b</code>
+ * elsewhere, e.g. <code>where(c1 &gt; 0, c2 / c1, -9999)</code>.
+ *
+ * An expression is parsed once into a tree and can be evaluated from several
+ * threads.
+ */
+public class RasterExpression {
+
+	private final String expression;
+
+	private final int variableCount;
+
+	private final Node root;
+
+	private RasterExpression(String expression, int variableCount, Node root) {
+		this.expression = expression;
+		this.variableCount = variableCount;
+		this.root = root;
+	}
+
+	/**
+	 * @param expression
+	 *            the expression
+	 * @param variableCount
+	 *            the number of input coverages
+	 * @return the parsed expression
+	 * @throws IllegalArgumentException
+	 *             if the expression is invalid or references a coverage
+	 *             greater than <code>variableCount</code>
+	 */
+	public static RasterExpression parse(String expression, int variableCount) {
+		if (expression == null) {
+			throw new IllegalArgumentException("No raster expression given");
+		}
+		Parser parser = new Parser(expression, variableCount);
+		Node root = parser.parseExpression();
+		parser.skipWhitespace();
+		if (parser.position < expression.length()) {
+			throw parser.error("Unexpected '" + expression.charAt(parser.position) + "'");
+		}
+		return new RasterExpression(expression, variableCount, root);
+	}
+
+	/**
+	 * @param values
+	 *            the values of the coverages at one pixel, <code>c1</code> at
+	 *            index 0
+	 * @return the value of the expression
+	 */
+	public double evaluate(double[] values) {
+		return root.evaluate(values);
+	}
+
+	public int getVariableCount() {
+		return variableCount;
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	private abstract static class Node {
+
+		abstract double evaluate(double[] values);
+	}
+
+	private static class Constant extends Node {
+
+		private final double value;
+
+		Constant(double value) {
+			this.value = value;
+		}
+
+		@Override
+		double evaluate(double[] values) {
+			return value;
+		}
+	}
+
+	private static class Variable extends Node {
+
+		private final int index;
+
+		Variable(int index) {
+			this.index = index;
+		}
+
+		@Override
+		double evaluate(double[] values) {
+			return values[index];
+		}
+	}
+
+	private static class Negation extends Node {
+
+		private final Node operand;
+
+		Negation(Node operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		double evaluate(double[] values) {
+			return -operand.evaluate(values);
+		}
+	}
+
+	private static class Binary extends Node {
+
+		private static final List<String> OPERATORS = Arrays.asList("+", "-", "*", "/", "<", "<=", ">", ">=", "==",
+				"!=");
+
+		private final int operator;
+
+		private final Node left;
+
+		private final Node right;
+
+		Binary(String operator, Node left, Node right) {
+			this.operator = OPERATORS.indexOf(operator);
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double evaluate(double[] values) {
+			double a = left.evaluate(values);
+			double b = right.evaluate(values);
+			switch (operator) {
+			case 0:
+				return a + b;
+			case 1:
+				return a - b;
+			case 2:
+				return a * b;
+			case 3:
+				return a / b;
+			case 4:
+				return a < b ? 1 : 0;
+			case 5:
+				return a <= b ? 1 : 0;
+			case 6:
+				return a > b ? 1 : 0;
+			case 7:
+				return a >= b ? 1 : 0;
+			case 8:
+				return a == b ? 1 : 0;
+			default:
+				return a != b ? 1 : 0;
+			}
+		}
+	}
+
+	private static class Extremum extends Node {
+
+		private final boolean maximum;
+
+		private final List<Node> arguments;
+
+		Extremum(boolean maximum, List<Node> arguments) {
+			this.maximum = maximum;
+			this.arguments = arguments;
+		}
+
+		@Override
+		double evaluate(double[] values) {
+			double result = arguments.get(0).evaluate(values);
+			for (int i = 1; i < arguments.size(); i++) {
+				double value = arguments.get(i).evaluate(values);
+				result = maximum ? Math.max(result, value) : Math.min(result, value);
+			}
+			return result;
+		}
+	}
+
+	private static class Where extends Node {
+
+		private final Node condition;
+
+		private final Node then;
+
+		private final Node otherwise;
+
+		Where(Node condition, Node then, Node otherwise) {
+			this.condition = condition;
+			this.then = then;
+			this.otherwise = otherwise;
+		}
+
+		@Override
+		double evaluate(double[] values) {
+			double test = condition.evaluate(values);
+			return test != 0 && !Double.isNaN(test) ? then.evaluate(values) : otherwise.evaluate(values);
+		}
+	}
+
+	/**
+	 * Recursive descent parser, one method per precedence level.
+	 */
+	private static class Parser {
+
+		private final String expression;
+
+		private final int variableCount;
+
+		private int position;
+
+		Parser(String expression, int variableCount) {
+			this.expression = expression;
+			this.variableCount = variableCount;
+		}
+
+		Node parseExpression() {
+			Node left = parseSum();
+			skipWhitespace();
+			for (String operator : new String[] { "<=", ">=", "==", "!=", "<", ">" }) {
+				if (expression.startsWith(operator, position)) {
+					position += operator.length();
+					return new Binary(operator, left, parseSum());
+				}
+			}
+			return left;
+		}
+
+		private Node parseSum() {
+			Node left = parseProduct();
+			while (true) {
+				skipWhitespace();
+				if (accept('+')) {
+					left = new Binary("+", left, parseProduct());
+				} else if (accept('-')) {
+					left = new Binary("-", left, parseProduct());
+				} else {
+					return left;
+				}
+			}
+		}
+
+		private Node parseProduct() {
+			Node left = parseUnary();
+			while (true) {
+				skipWhitespace();
+				if (accept('*')) {
+					left = new Binary("*", left, parseUnary());
+				} else if (accept('/')) {
+					left = new Binary("/", left, parseUnary());
+				} else {
+					return left;
+				}
+			}
+		}
+
+		private Node parseUnary() {
+			skipWhitespace();
+			if (accept('-')) {
+				return new Negation(parseUnary());
+			}
+			if (accept('+')) {
+				return parseUnary();
+			}
+			return parsePrimary();
+		}
+
+		private Node parsePrimary() {
+			skipWhitespace();
+			if (accept('(')) {
+				Node node = parseExpression();
+				expect(')');
+				return node;
+			}
+			int start = position;
+			if (position < expression.length()
+					&& (Character.isDigit(expression.charAt(position)) || expression.charAt(position) == '.')) {
+				return parseNumber(start);
+			}
+			while (position < expression.length() && Character.isLetterOrDigit(expression.charAt(position))) {
+				position++;
+			}
+			String name = expression.substring(start, position).toLowerCase();
+			if (name.isEmpty()) {
+				throw error(position < expression.length() ? "Unexpected '" + expression.charAt(position) + "'"
+						: "Unexpected end of expression");
+			}
+			if (name.matches("c[0-9]+")) {
+				int index = Integer.parseInt(name.substring(1));
+				if (index < 1 || index > variableCount) {
+					throw error("Coverage " + name + " does not exist, " + variableCount + " coverages are given");
+				}
+				return new Variable(index - 1);
+			}
+			List<Node> arguments = parseArguments(name);
+			if (name.equals("min") || name.equals("max")) {
+				if (arguments.isEmpty()) {
+					throw error(name + " needs at least one argument");
+				}
+				return new Extremum(name.equals("max"), arguments);
+			}
+			if (name.equals("where")) {
+				if (arguments.size() != 3) {
+					throw error("where needs three arguments");
+				}
+				return new Where(arguments.get(0), arguments.get(1), arguments.get(2));
+			}
+			throw error("Unknown function " + name);
+		}
+
+		private List<Node> parseArguments(String name) {
+			skipWhitespace();
+			if (!accept('(')) {
+				throw error("Unknown variable " + name);
+			}
+			List<Node> arguments = new ArrayList<Node>();
+			skipWhitespace();
+			if (accept(')')) {
+				return arguments;
+			}
+			do {
+				arguments.add(parseExpression());
+				skipWhitespace();
+			} while (accept(','));
+			expect(')');
+			return arguments;
+		}
+
+		private Node parseNumber(int start) {
+			while (position < expression.length()
+					&& (Character.isDigit(expression.charAt(position)) || ".eE".indexOf(expression.charAt(position)) >= 0 || ((expression
+							.charAt(position) == '-' || expression.charAt(position) == '+') && "eE"
+							.indexOf(expression.charAt(position - 1)) >= 0))) {
+				position++;
+			}
+			try {
+				return new Constant(Double.parseDouble(expression.substring(start, position)));
+			} catch (NumberFormatException e) {
+				throw error("Invalid number " + expression.substring(start, position));
+			}
+		}
+
+		void skipWhitespace() {
+			while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+				position++;
+			}
+		}
+
+		private boolean accept(char c) {
+			if (position < expression.length() && expression.charAt(position) == c) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) {
+			skipWhitespace();
+			if (!accept(c)) {
+				throw error("Expected '" + c + "'");
+			}
+		}
+
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at position " + (position + 1) + " of raster expression "
+					+ expression);
+		}
+	}
+}
@@ -0,0 +1,322 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.spatialquery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.xml.namespace.QName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.geotools.feature.DefaultFeatureCollections;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.n52.wps.io.GTHelper;
+import org.n52.wps.io.SchemaRepository;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+import org.n52.wps.server.AbstractSelfDescribingAlgorithm;
+import org.n52.wps.server.Reusable;
+import org.n52.wps.server.algorithm.FeatureIndex;
+import org.n52.wps.server.algorithm.ParallelExecutor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * Batch mode of the spatialquery processes: evaluates a spatial predicate for
+ * all pairs of features of two layers and returns the joined features. The
+ * result holds one feature for every pair for which
+ * <code>LAYER1 PREDICATE LAYER2</code> is true, with the geometry and the
+ * attributes of the feature of layer 1 and the id of the feature of layer 2
+ * in the attribute <code>JOIN_ID</code>. The ids of the result features are
+ * <code>i_j</code>, the positions of the joined features in their layers.
+ *
+ * The larger layer is indexed with an STRtree. The geometries of the smaller
+ * layer are prepared and tested against their index candidates in parallel.
+ */
+@Reusable(concurrent = true)
+public class SpatialJoinAlgorithm extends AbstractSelfDescribingAlgorithm {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(SpatialJoinAlgorithm.class);
+	private static final String JOIN_ID = "JOIN_ID";
+	private final String inputID1 = "LAYER1";
+	private final String inputID2 = "LAYER2";
+	private final String inputIDPredicate = "PREDICATE";
+	private final String outputID = "RESULT";
+	private List<String> errors = new ArrayList<String>();
+
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	public Class<?> getInputDataType(String id) {
+		if (id.equalsIgnoreCase(inputID1) || id.equalsIgnoreCase(inputID2)) {
+			return GTVectorDataBinding.class;
+		}
+		if (id.equalsIgnoreCase(inputIDPredicate)) {
+			return LiteralStringBinding.class;
+		}
+		return null;
+	}
+
+	public Class<GTVectorDataBinding> getOutputDataType(String id) {
+		if(id.equalsIgnoreCase(outputID)){
+			return GTVectorDataBinding.class;
+		}
+		return null;
+	}
+
+	@Override
+	public Map<String, IData> run(Map<String, List<IData>> inputData) {
+
+		FeatureCollection<?, ?> firstCollection = ((GTVectorDataBinding) getSingleInput(inputData, inputID1)).getPayload();
+		FeatureCollection<?, ?> secondCollection = ((GTVectorDataBinding) getSingleInput(inputData, inputID2)).getPayload();
+		SpatialPredicate predicate;
+		try {
+			predicate = SpatialPredicate.fromString(((LiteralStringBinding) getSingleInput(inputData, inputIDPredicate)).getPayload());
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException(e.getMessage(), e);
+		}
+
+		List<SimpleFeature> firstFeatures;
+		List<SimpleFeature> secondFeatures;
+		long[] pairs;
+		if (firstCollection.size() > secondCollection.size()) {
+			FeatureIndex firstIndex = new FeatureIndex(firstCollection);
+			firstFeatures = getFeatures(firstIndex);
+			secondFeatures = FeatureIndex.toList(secondCollection);
+			LOGGER.info("Joining {} indexed features of layer 1 with {} features of layer 2", firstFeatures.size(), secondFeatures.size());
+			pairs = join(secondFeatures, firstIndex, predicate.converse(), true);
+		} else {
+			firstFeatures = FeatureIndex.toList(firstCollection);
+			FeatureIndex secondIndex = new FeatureIndex(secondCollection);
+			secondFeatures = getFeatures(secondIndex);
+			LOGGER.info("Joining {} features of layer 1 with {} indexed features of layer 2", firstFeatures.size(), secondFeatures.size());
+			pairs = join(firstFeatures, secondIndex, predicate, false);
+		}
+
+		FeatureCollection featureCollection = DefaultFeatureCollections.newCollection();
+		if (pairs.length > 0) {
+			for (SimpleFeature feature : createFeatures(pairs, firstFeatures, secondFeatures, firstCollection.getSchema().getCoordinateReferenceSystem())) {
+				featureCollection.add(feature);
+			}
+		}
+		LOGGER.info("Spatial join finished with {} features", featureCollection.size());
+
+		HashMap<String, IData> result = new HashMap<String, IData>();
+		result.put(outputID, new GTVectorDataBinding(featureCollection));
+		return result;
+	}
+
+	private IData getSingleInput(Map<String, List<IData>> inputData, String id) {
+		if(inputData==null || !inputData.containsKey(id)){
+			throw new RuntimeException("Error while allocating input parameters");
+		}
+		List<IData> dataList = inputData.get(id);
+		if(dataList == null || dataList.size() != 1){
+			throw new RuntimeException("Error while allocating input parameters");
+		}
+		return dataList.get(0);
+	}
+
+	private static List<SimpleFeature> getFeatures(FeatureIndex index) {
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>(index.size());
+		for (int i = 0; i < index.size(); i++) {
+			features.add(index.getFeature(i));
+		}
+		return features;
+	}
+
+	/**
+	 * Finds all pairs of a prepared feature and an indexed feature for which
+	 * the predicate is true.
+	 *
+	 * @param indexedFirst
+	 *            whether the index holds layer 1, the pairs are returned as
+	 *            positions in layer 1 and layer 2 in any case
+	 * @return the pairs, see {@link #pair(int, int, boolean)}, sorted by the
+	 *         position in layer 1 and layer 2
+	 */
+	private long[] join(List<SimpleFeature> features, final FeatureIndex index, final SpatialPredicate predicate, final boolean indexedFirst) {
+		List<long[]> chunkMatches = ParallelExecutor.getInstance().process(features,
+				new ParallelExecutor.ChunkProcessor<SimpleFeature, long[]>() {
+
+			@Override
+			public List<long[]> process(List<SimpleFeature> chunk, int offset) {
+				List<Long> pairs = new ArrayList<Long>();
+				for (int k = 0; k < chunk.size(); k++) {
+					Geometry geometry = FeatureIndex.getGeometry(chunk.get(k));
+					if (geometry == null || geometry.isEmpty()) {
+						continue;
+					}
+					PreparedGeometry prepared = PreparedGeometryFactory.prepare(geometry);
+					List<Integer> candidates = index.query(geometry.getEnvelopeInternal());
+					if (predicate.requiresIntersection()) {
+						for (Integer candidate : candidates) {
+							if (predicate.evaluate(prepared, index.getGeometry(candidate))) {
+								pairs.add(pair(offset + k, candidate, indexedFirst));
+							}
+						}
+					} else {
+						// features outside the envelope are disjoint without
+						// evaluating the predicate
+						Set<Integer> candidateSet = new HashSet<Integer>(candidates);
+						for (int i = 0; i < index.size(); i++) {
+							Geometry indexed = index.getGeometry(i);
+							if (indexed == null || indexed.isEmpty()) {
+								continue;
+							}
+							if (!candidateSet.contains(i) || predicate.evaluate(prepared, indexed)) {
+								pairs.add(pair(offset + k, i, indexedFirst));
+							}
+						}
+					}
+				}
+				long[] packed = new long[pairs.size()];
+				for (int i = 0; i < packed.length; i++) {
+					packed[i] = pairs.get(i);
+				}
+				List<long[]> result = new ArrayList<long[]>(1);
+				result.add(packed);
+				return result;
+			}
+		});
+
+		int count = 0;
+		for (long[] packed : chunkMatches) {
+			count += packed.length;
+		}
+		long[] all = new long[count];
+		int position = 0;
+		for (long[] packed : chunkMatches) {
+			System.arraycopy(packed, 0, all, position, packed.length);
+			position += packed.length;
+		}
+		// only needed if layer 1 was indexed, pairs of a prepared layer 1
+		// are created in order
+		if (indexedFirst) {
+			Arrays.sort(all);
+		}
+		return all;
+	}
+
+	/**
+	 * Packs the positions of a pair in layer 1 and layer 2 into one long, so
+	 * that the natural order of the values is the order of the pairs.
+	 */
+	private static long pair(int preparedPosition, int indexedPosition, boolean indexedFirst) {
+		long first = indexedFirst ? indexedPosition : preparedPosition;
+		long second = indexedFirst ? preparedPosition : indexedPosition;
+		return first << 32 | second;
+	}
+
+	private List<SimpleFeature> createFeatures(long[] pairs, final List<SimpleFeature> firstFeatures,
+			final List<SimpleFeature> secondFeatures, CoordinateReferenceSystem crs) {
+		SimpleFeature template = firstFeatures.get((int) (pairs[0] >>> 32));
+		SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+		typeBuilder.init(GTHelper.createFeatureType(template.getProperties(), FeatureIndex.getGeometry(template), UUID.randomUUID().toString(), crs));
+		typeBuilder.add(JOIN_ID, String.class);
+		final SimpleFeatureType featureType = typeBuilder.buildFeatureType();
+		QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
+		SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
+
+		List<Long> pairList = new ArrayList<Long>(pairs.length);
+		for (long pair : pairs) {
+			pairList.add(pair);
+		}
+		return ParallelExecutor.getInstance().process(pairList,
+				new ParallelExecutor.ChunkProcessor<Long, SimpleFeature>() {
+
+			@Override
+			public List<SimpleFeature> process(List<Long> chunk, int offset) {
+				List<SimpleFeature> features = new ArrayList<SimpleFeature>(chunk.size());
+				for (Long pair : chunk) {
+					int first = (int) (pair >>> 32);
+					int second = (int) (pair & 0xFFFFFFFFL);
+					SimpleFeature firstFeature = firstFeatures.get(first);
+					SimpleFeature feature = GTHelper.createFeature((first + 1) + "_" + (second + 1),
+							FeatureIndex.getGeometry(firstFeature), featureType, firstFeature.getProperties());
+					if (feature != null) {
+						feature.setAttribute(JOIN_ID, secondFeatures.get(second).getID());
+						features.add(feature);
+					}
+				}
+				return features;
+			}
+		});
+	}
+
+	@Override
+	public List<String> getInputIdentifiers() {
+		List<String> identifiers = new ArrayList<String>(3);
+		identifiers.add(inputID1);
+		identifiers.add(inputID2);
+		identifiers.add(inputIDPredicate);
+		return identifiers;
+	}
+
+	@Override
+	public List<String> getOutputIdentifiers() {
+		List<String> identifiers = new ArrayList<String>(1);
+		identifiers.add(outputID);
+		return identifiers;
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.spatialquery;
+
+import java.util.Locale;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+
+/**
+ * The binary spatial predicates of the spatialquery processes. A predicate
+ * relates a first geometry to a second one, e.g. <code>WITHIN</code> is true
+ * if the first geometry lies within the second.
+ */
+public enum SpatialPredicate {
+
+	CONTAINS, CROSSES, DISJOINT, EQUALS, INTERSECTS, OVERLAPS, TOUCHES, WITHIN;
+
+	/**
+	 * @param name
+	 *            the name of a predicate, case insensitive
+	 * @return the predicate
+	 * @throws IllegalArgumentException
+	 *             if there is no predicate with this name
+	 */
+	public static SpatialPredicate fromString(String name) {
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Unknown spatial predicate: " + name);
+		}
+	}
+
+	/**
+	 * @return the predicate that is true for swapped arguments, e.g.
+	 *         <code>CONTAINS</code> for <code>WITHIN</code>
+	 */
+	public SpatialPredicate converse() {
+		switch (this) {
+		case CONTAINS:
+			return WITHIN;
+		case WITHIN:
+			return CONTAINS;
+		default:
+			return this;
+		}
+	}
+
+	/**
+	 * Whether the predicate can only be true for geometries with
+	 * intersecting envelopes, so that an envelope query finds all candidates.
+	 */
+	public boolean requiresIntersection() {
+		return this != DISJOINT;
+	}
+
+	public boolean evaluate(Geometry first, Geometry second) {
+		switch (this) {
+		case CONTAINS:
+			return first.contains(second);
+		case CROSSES:
+			return first.crosses(second);
+		case DISJOINT:
+			return first.disjoint(second);
+		case EQUALS:
+			return first.equals(second);
+		case INTERSECTS:
+			return first.intersects(second);
+		case OVERLAPS:
+			return first.overlaps(second);
+		case TOUCHES:
+			return first.touches(second);
+		default:
+			return first.within(second);
+		}
+	}
+
+	/**
+	 * Evaluates the predicate for a prepared first geometry. Topological
+	 * equality is not supported by prepared geometries and is evaluated on
+	 * the underlying geometry.
+	 */
+	public boolean evaluate(PreparedGeometry first, Geometry second) {
+		switch (this) {
+		case CONTAINS:
+			return first.contains(second);
+		case CROSSES:
+			return first.crosses(second);
+		case DISJOINT:
+			return first.disjoint(second);
+		case EQUALS:
+			return first.getGeometry().equals(second);
+		case INTERSECTS:
+			return first.intersects(second);
+		case OVERLAPS:
+			return first.overlaps(second);
+		case TOUCHES:
+			return first.touches(second);
+		default:
+			return first.within(second);
+		}
+	}
+}
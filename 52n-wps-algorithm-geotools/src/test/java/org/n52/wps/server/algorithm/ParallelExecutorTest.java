@@ -0,0 +1,118 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ParallelExecutorTest {
+
+	private static final ParallelExecutor.ChunkProcessor<Integer, String> TO_STRING = new ParallelExecutor.ChunkProcessor<Integer, String>() {
+
+		@Override
+		public List<String> process(List<Integer> chunk, int offset) {
+			List<String> results = new ArrayList<String>();
+			for (int i = 0; i < chunk.size(); i++) {
+				assertEquals(offset + i, chunk.get(i).intValue());
+				results.add(String.valueOf(chunk.get(i)));
+			}
+			return results;
+		}
+	};
+
+	@Test
+	public void testResultsInInputOrder() {
+		List<Integer> items = range(1001);
+		List<String> results = new ParallelExecutor(4).process(items, TO_STRING);
+		assertEquals(items.size(), results.size());
+		for (int i = 0; i < items.size(); i++) {
+			assertEquals(String.valueOf(i), results.get(i));
+		}
+	}
+
+	@Test
+	public void testSequential() {
+		ParallelExecutor executor = new ParallelExecutor(0);
+		assertEquals(1, executor.getParallelism());
+		assertEquals(10, executor.process(range(10), TO_STRING).size());
+		assertTrue(executor.process(new ArrayList<Integer>(), TO_STRING).isEmpty());
+	}
+
+	@Test
+	public void testFailure() {
+		try {
+			new ParallelExecutor(4).process(range(100), new ParallelExecutor.ChunkProcessor<Integer, String>() {
+
+				@Override
+				public List<String> process(List<Integer> chunk, int offset) {
+					if (chunk.contains(50)) {
+						throw new IllegalStateException("chunk failed");
+					}
+					return new ArrayList<String>();
+				}
+			});
+			fail("exception expected");
+		} catch (IllegalStateException e) {
+			assertEquals("chunk failed", e.getMessage());
+		}
+	}
+
+	private static List<Integer> range(int size) {
+		List<Integer> items = new ArrayList<Integer>();
+		for (int i = 0; i < size; i++) {
+			items.add(i);
+		}
+		return items;
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.raster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class RasterExpressionTest {
+
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void testArithmetic() {
+		double[] values = { 2, 3, 4 };
+		assertEquals(5, evaluate("c1 + c2", values), DELTA);
+		assertEquals(14, evaluate("c1 + c2 * c3", values), DELTA);
+		assertEquals(20, evaluate("(c1 + c2) * c3", values), DELTA);
+		assertEquals(-0.5, evaluate("c1 / -c3", values), DELTA);
+		assertEquals(-3, evaluate("c1 - c2 - c1", values), DELTA);
+		assertEquals(0.025, evaluate("2.5e-2", values), DELTA);
+	}
+
+	@Test
+	public void testFunctions() {
+		double[] values = { 2, 3, 4 };
+		assertEquals(2, evaluate("min(c1, c2, c3)", values), DELTA);
+		assertEquals(4, evaluate("MAX(c1, c2, c3)", values), DELTA);
+		assertEquals(1.5, evaluate("where(c1 > 0, c2 / c1, -9999)", values), DELTA);
+		assertEquals(-9999, evaluate("where(c1 >= c2, c2 / c1, -9999)", values), DELTA);
+		assertEquals(1, evaluate("c1 + 1 == c2", values), DELTA);
+		assertEquals(0, evaluate("c1 != 2", values), DELTA);
+	}
+
+	@Test
+	public void testNoData() {
+		assertTrue(Double.isNaN(evaluate("c1 + 1", new double[] { Double.NaN, 0, 0 })));
+		assertEquals(0, evaluate("where(c1, 1, 0)", new double[] { Double.NaN, 0, 0 }), DELTA);
+	}
+
+	@Test
+	public void testInvalidExpressions() {
+		for (String expression : new String[] { "", "c1 +", "c4", "c0", "(c1", "c1 c2", "foo(c1)", "x", "where(c1, c2)",
+				"min()", "1..2" }) {
+			try {
+				RasterExpression.parse(expression, 3);
+				fail("invalid expression accepted: " + expression);
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("raster expression"));
+			}
+		}
+	}
+
+	private double evaluate(String expression, double[] values) {
+		return RasterExpression.parse(expression, values.length).evaluate(values);
+	}
+}
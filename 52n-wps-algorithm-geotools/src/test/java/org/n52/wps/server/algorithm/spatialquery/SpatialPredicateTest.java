@@ -0,0 +1,106 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.algorithm.spatialquery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class SpatialPredicateTest {
+
+	private final WKTReader reader = new WKTReader();
+
+	@Test
+	public void testFromString() {
+		assertEquals(SpatialPredicate.WITHIN, SpatialPredicate.fromString(" within"));
+		assertEquals(SpatialPredicate.INTERSECTS, SpatialPredicate.fromString("Intersects"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownPredicate() {
+		SpatialPredicate.fromString("near");
+	}
+
+	@Test
+	public void testPreparedEvaluationMatchesGeometry() throws ParseException {
+		Geometry[] geometries = new Geometry[] {
+				reader.read("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0))"),
+				reader.read("POINT (5 5)"),
+				reader.read("POINT (10 5)"),
+				reader.read("LINESTRING (-5 5, 15 5)"),
+				reader.read("POLYGON ((5 5, 15 5, 15 15, 5 15, 5 5))"),
+				reader.read("POLYGON ((20 20, 30 20, 30 30, 20 30, 20 20))") };
+		for (SpatialPredicate predicate : SpatialPredicate.values()) {
+			for (Geometry first : geometries) {
+				for (Geometry second : geometries) {
+					boolean expected = predicate.evaluate(first, second);
+					assertEquals(predicate + " " + first + " " + second, expected,
+							predicate.evaluate(PreparedGeometryFactory.prepare(first), second));
+					assertEquals(predicate + " " + first + " " + second, expected,
+							predicate.converse().evaluate(PreparedGeometryFactory.prepare(second), first));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testWithin() throws ParseException {
+		Geometry polygon = reader.read("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0))");
+		assertTrue(SpatialPredicate.WITHIN.evaluate(reader.read("POINT (5 5)"), polygon));
+		assertFalse(SpatialPredicate.WITHIN.evaluate(reader.read("POINT (10 5)"), polygon));
+		assertTrue(SpatialPredicate.WITHIN.requiresIntersection());
+		assertFalse(SpatialPredicate.DISJOINT.requiresIntersection());
+	}
+}
@@ -16,6 +16,9 @@
  */
 package org.n52.wps.algorithm.annotation;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -37,6 +40,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Binds the annotated members of an algorithm class. Members are accessed
+ * through method handles, which are created on first use and shared by all
+ * instances of the class.
  *
  * @author tkunicki
  */
@@ -44,7 +50,13 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(AnnotationBinding.class);
     
+    private final static MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private final static MethodType EXECUTE_TYPE = MethodType.methodType(void.class, Object.class);
+    
     private M member;
+    
+    private volatile MethodHandle handle;
 
     public AnnotationBinding(M member) {
         this.member = member;
@@ -60,6 +72,26 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
     
     public abstract boolean validate();
     
+    /**
+     * Creates the method handle to access the member, adapted to untyped
+     * arguments and return values.
+     */
+    protected abstract MethodHandle createHandle(MethodHandles.Lookup lookup) throws IllegalAccessException;
+    
+    protected MethodHandle getHandle() {
+        // benign race, concurrent callers create equal handles
+        MethodHandle methodHandle = handle;
+        if (methodHandle == null) {
+            try {
+                methodHandle = createHandle(MethodHandles.publicLookup());
+            } catch (IllegalAccessException ex) {
+                throw new RuntimeException("Internal error accessing " + getMember(), ex);
+            }
+            handle = methodHandle;
+        }
+        return methodHandle;
+    }
+    
     public static class ExecuteMethodBinding extends AnnotationBinding<Method> {
 
         public ExecuteMethodBinding(Method method) {
@@ -84,15 +116,16 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle(MethodHandles.Lookup lookup) throws IllegalAccessException {
+            return lookup.unreflect(getMember()).asType(EXECUTE_TYPE);
+        }
+        
         public void execute(Object annotatedInstance) {
+            MethodHandle methodHandle = getHandle();
             try {
-                getMember().invoke(annotatedInstance);
-            }catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error executing process", ex);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error executing process", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                methodHandle.invokeExact(annotatedInstance);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
         }
@@ -246,6 +279,46 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
         }
         
         public abstract void set(Object annotatedObject, List<IData> boundInputList);
+        
+        /**
+         * Rejects values that can't be assigned to the member, before the
+         * member is accessed, like reflective access does.  Primitive members
+         * accept the wrappers that unbox and widen to them.
+         */
+        protected void checkValue(Class<?> memberClass, Object value) {
+            boolean assignable;
+            if (memberClass.isPrimitive()) {
+                assignable = value != null && isWidening(value.getClass(), memberClass);
+            } else {
+                assignable = value == null || memberClass.isInstance(value);
+            }
+            if (!assignable) {
+                throw new RuntimeException("Internal error processing inputs",
+                        new IllegalArgumentException("Can't assign " + value + " to " + getMember()));
+            }
+        }
+
+        private static boolean isWidening(Class<?> wrapperClass, Class<?> primitiveClass) {
+            if (primitiveClass == boolean.class) {
+                return wrapperClass == Boolean.class;
+            } else if (primitiveClass == char.class) {
+                return wrapperClass == Character.class;
+            } else if (primitiveClass == byte.class) {
+                return wrapperClass == Byte.class;
+            } else if (primitiveClass == short.class) {
+                return wrapperClass == Short.class || wrapperClass == Byte.class;
+            } else if (primitiveClass == int.class) {
+                return wrapperClass == Integer.class || wrapperClass == Character.class
+                        || isWidening(wrapperClass, short.class);
+            } else if (primitiveClass == long.class) {
+                return wrapperClass == Long.class || isWidening(wrapperClass, int.class);
+            } else if (primitiveClass == float.class) {
+                return wrapperClass == Float.class || isWidening(wrapperClass, long.class);
+            } else if (primitiveClass == double.class) {
+                return wrapperClass == Double.class || isWidening(wrapperClass, float.class);
+            }
+            return false;
+        }
     }
 
     public static abstract class OutputBinding<M extends AccessibleObject & Member,  D extends OutputDescriptor> extends DataBinding<M,D> {
@@ -328,13 +401,19 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle(MethodHandles.Lookup lookup) throws IllegalAccessException {
+            return lookup.unreflectSetter(getMember()).asType(SETTER_TYPE);
+        }
+        
         @Override
         public void set(Object annotatedObject, List<IData> boundInputList) {
+            Object value = unbindInput(boundInputList);
+            checkValue(getMember().getType(), value);
+            MethodHandle methodHandle = getHandle();
             try {
-                getMember().set(annotatedObject, unbindInput(boundInputList));
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalAccessException ex) {
+                methodHandle.invokeExact(annotatedObject, value);
+            } catch (Throwable ex) {
                 throw new RuntimeException("Internal error processing inputs", ex);
             }
         }
@@ -369,16 +448,19 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle(MethodHandles.Lookup lookup) throws IllegalAccessException {
+            return lookup.unreflect(getMember()).asType(SETTER_TYPE);
+        }
+        
         @Override
         public void set(Object annotatedObject, List<IData> boundInputList) {
+            Object value = unbindInput(boundInputList);
+            checkValue(getMember().getParameterTypes()[0], value);
+            MethodHandle methodHandle = getHandle();
             try {
-                getMember().invoke(annotatedObject, unbindInput(boundInputList));
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                methodHandle.invokeExact(annotatedObject, value);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
         }
@@ -408,14 +490,18 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle(MethodHandles.Lookup lookup) throws IllegalAccessException {
+            return lookup.unreflectGetter(getMember()).asType(GETTER_TYPE);
+        }
+        
         @Override
         public IData get(Object annotatedInstance) {
             Object value;
+            MethodHandle methodHandle = getHandle();
             try {
-                value = getMember().get(annotatedInstance);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalAccessException ex) {
+                value = (Object) methodHandle.invokeExact(annotatedInstance);
+            } catch (Throwable ex) {
                 throw new RuntimeException("Internal error processing inputs", ex);
             }
             return value == null ? null : bindOutputValue(value);
@@ -451,17 +537,18 @@ public abstract class AnnotationBinding<M extends AccessibleObject & Member> {
             return true;
         }
         
+        @Override
+        protected MethodHandle createHandle(MethodHandles.Lookup lookup) throws IllegalAccessException {
+            return lookup.unreflect(getMember()).asType(GETTER_TYPE);
+        }
+        
         @Override
         public IData get(Object annotatedInstance) {
             Object value;
+            MethodHandle methodHandle = getHandle();
             try {
-                value = getMember().invoke(annotatedInstance);
-            } catch (IllegalAccessException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (IllegalArgumentException ex) {
-                throw new RuntimeException("Internal error processing inputs", ex);
-            } catch (InvocationTargetException ex) {
-                Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                value = (Object) methodHandle.invokeExact(annotatedInstance);
+            } catch (Throwable cause) {
                 throw new RuntimeException(cause.getMessage(), cause);
             }
             return value == null ? null : bindOutputValue(value);
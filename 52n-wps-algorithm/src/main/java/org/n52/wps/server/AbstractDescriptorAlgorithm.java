@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.opengis.ows.x11.AllowedValuesDocument.AllowedValues;
 import net.opengis.wps.x100.ComplexDataCombinationType;
@@ -352,7 +353,7 @@ public abstract class AbstractDescriptorAlgorithm implements IAlgorithm, ISubjec
         }
     }
 
-    private List observers = new ArrayList();
+    private List observers = new CopyOnWriteArrayList();
     private Object state = null;
 
     @Override
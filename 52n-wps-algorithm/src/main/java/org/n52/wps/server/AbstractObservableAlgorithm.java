@@ -18,9 +18,9 @@ package org.n52.wps.server;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 import net.opengis.wps.x100.ProcessDescriptionsDocument;
@@ -108,7 +108,7 @@ public abstract class AbstractObservableAlgorithm implements IAlgorithm, ISubjec
 		return this.wkName;
 	}
 	
-	private List observers = new ArrayList();
+	private List observers = new CopyOnWriteArrayList();
 
 	private Object state = null;
 
@@ -19,8 +19,13 @@ package org.n52.wps.server;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
@@ -34,6 +39,10 @@ import org.n52.wps.commons.WPSConfig;
 
 /**
  * A static repository to retrieve the available algorithms.
+ * 
+ * Algorithms are loaded and their process descriptions validated once, when
+ * they are registered. Algorithms annotated as {@link Reusable} are shared or
+ * pooled, all others are instantiated for every request.
  * @author foerster
  *
  */
@@ -42,10 +51,16 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 	private static Logger LOGGER = LoggerFactory.getLogger(LocalAlgorithmRepository.class);
 	private Map<String, String> algorithmMap;
 	private Map<String, ProcessDescriptionType> processDescriptionMap;
+	private Set<String> validatedAlgorithms;
+	private Map<String, IAlgorithm> sharedAlgorithms;
+	private Map<String, BlockingQueue<IAlgorithm>> algorithmPools;
 	
 	public LocalAlgorithmRepository() {
 		algorithmMap = new HashMap<String, String>();
-		processDescriptionMap = new HashMap<String, ProcessDescriptionType>(); 
+		processDescriptionMap = new ConcurrentHashMap<String, ProcessDescriptionType>(); 
+		validatedAlgorithms = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		sharedAlgorithms = new ConcurrentHashMap<String, IAlgorithm>();
+		algorithmPools = new ConcurrentHashMap<String, BlockingQueue<IAlgorithm>>();
 		
 		// check if the repository is active
 		if(WPSConfig.getInstance().isRepositoryActive(this.getClass().getCanonicalName())){
@@ -71,6 +86,20 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 	}
 	
 	public IAlgorithm getAlgorithm(String className) {
+		if (className == null) {
+			return null;
+		}
+		IAlgorithm algorithm = sharedAlgorithms.get(className);
+		if (algorithm != null) {
+			return algorithm;
+		}
+		BlockingQueue<IAlgorithm> pool = algorithmPools.get(className);
+		if (pool != null) {
+			algorithm = pool.poll();
+			if (algorithm != null) {
+				return algorithm;
+			}
+		}
 		try {
 			return loadAlgorithm(algorithmMap.get(className));
 		} catch (Exception e) {
@@ -79,6 +108,23 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 		}
 	}
 	
+	/**
+	 * Returns an algorithm after an execution. Instances of pooled algorithms
+	 * are kept for the next request, all others are left to the garbage
+	 * collector.
+	 * 
+	 * @param className
+	 *            the identifier the algorithm was requested with
+	 * @param algorithm
+	 *            the algorithm, it must not be used by the caller anymore
+	 */
+	public void releaseAlgorithm(String className, IAlgorithm algorithm) {
+		BlockingQueue<IAlgorithm> pool = algorithmPools.get(className);
+		if (pool != null && algorithm != null) {
+			pool.offer(algorithm);
+		}
+	}
+	
 	public Collection<String> getAlgorithmNames() {
 		return new ArrayList<String>(algorithmMap.keySet());
 	}
@@ -101,12 +147,42 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
             throw new Exception("Could not load algorithm " + algorithmClassName + " does not implement IAlgorithm or have a Algorithm annotation.");
         }
 		
-		if(!algorithm.processDescriptionIsValid()) {
-			LOGGER.warn("Algorithm description is not valid: " + algorithmClassName);
-			throw new Exception("Could not load algorithm " +algorithmClassName +". ProcessDescription Not Valid.");
+		// all instances of a class share the description, so it is
+		// validated for the first one only
+		if(!validatedAlgorithms.contains(algorithmClassName)) {
+			if(!algorithm.processDescriptionIsValid()) {
+				LOGGER.warn("Algorithm description is not valid: " + algorithmClassName);
+				throw new Exception("Could not load algorithm " +algorithmClassName +". ProcessDescription Not Valid.");
+			}
+			validatedAlgorithms.add(algorithmClassName);
 		}
 		return algorithm;
 	}
+	
+	/**
+	 * Loads an algorithm at registration, stores its description and keeps
+	 * the instance if the algorithm is reusable. Algorithms that cannot be
+	 * loaded stay registered and fail when they are requested.
+	 */
+	private void initializeAlgorithm(String algorithmClassName) {
+		try {
+			IAlgorithm algorithm = loadAlgorithm(algorithmClassName);
+			processDescriptionMap.put(algorithmClassName, algorithm.getDescription());
+			Class<?> algorithmClass = LocalAlgorithmRepository.class.getClassLoader().loadClass(algorithmClassName);
+			Reusable reusable = algorithmClass.getAnnotation(Reusable.class);
+			if (reusable != null && reusable.concurrent()) {
+				sharedAlgorithms.put(algorithmClassName, algorithm);
+				LOGGER.debug("Algorithm {} is shared by all executions", algorithmClassName);
+			} else if (reusable != null) {
+				BlockingQueue<IAlgorithm> pool = new ArrayBlockingQueue<IAlgorithm>(Math.max(1, reusable.maxIdleInstances()));
+				pool.offer(algorithm);
+				algorithmPools.put(algorithmClassName, pool);
+				LOGGER.debug("Algorithm {} is pooled", algorithmClassName);
+			}
+		} catch (Exception e) {
+			LOGGER.warn("Could not load algorithm " + algorithmClassName, e);
+		}
+	}
 
 	public boolean addAlgorithm(Object processID) {
 		if(!(processID instanceof String)){
@@ -115,6 +191,7 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 		String algorithmClassName = (String) processID;
 				
 		algorithmMap.put(algorithmClassName, algorithmClassName);
+		initializeAlgorithm(algorithmClassName);
 		LOGGER.info("Algorithm class registered: " + algorithmClassName);
 					
 			
@@ -130,6 +207,10 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 		String className = (String) processID;
 		if(algorithmMap.containsKey(className)){
 			algorithmMap.remove(className);
+			processDescriptionMap.remove(className);
+			validatedAlgorithms.remove(className);
+			sharedAlgorithms.remove(className);
+			algorithmPools.remove(className);
 			return true;
 		}
 		return false;
@@ -138,7 +219,9 @@ public class LocalAlgorithmRepository implements ITransactionalAlgorithmReposito
 	@Override
 	public ProcessDescriptionType getProcessDescription(String processID) {
 		if(!processDescriptionMap.containsKey(processID)){
-			processDescriptionMap.put(processID, getAlgorithm(processID).getDescription());
+			IAlgorithm algorithm = getAlgorithm(processID);
+			processDescriptionMap.put(processID, algorithm.getDescription());
+			releaseAlgorithm(processID, algorithm);
 		}
 		return processDescriptionMap.get(processID);
 	}
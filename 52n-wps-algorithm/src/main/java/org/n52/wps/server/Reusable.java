@@ -0,0 +1,56 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that an algorithm instance may be used for more than one
+ * execution, so the {@link LocalAlgorithmRepository} does not create a new
+ * instance for every request.
+ * 
+ * An algorithm that is not <code>concurrent</code> is pooled: an instance runs
+ * one execution at a time, but may run many executions one after another. Its
+ * results must not depend on inputs, outputs or errors left from a previous
+ * execution.
+ * 
+ * A <code>concurrent</code> algorithm is shared by all executions. It must be
+ * thread safe and must not publish status updates, as they would reach the
+ * observers of all running executions.
+ * 
+ * @see LocalAlgorithmRepository#releaseAlgorithm(String, IAlgorithm)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Reusable {
+	
+	/**
+	 * Whether one instance may run several executions at the same time.
+	 */
+	boolean concurrent() default false;
+	
+	/**
+	 * The maximum number of idle instances kept in the pool of an algorithm
+	 * that is not concurrent.
+	 */
+	int maxIdleInstances() default 8;
+}
@@ -0,0 +1,96 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.test.mock.MockUtil;
+import org.n52.wps.io.data.IData;
+import org.n52.wps.io.data.binding.literal.LiteralLongBinding;
+import org.n52.wps.io.data.binding.literal.LiteralShortBinding;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+public class AbstractAnnotatedAlgorithmTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        MockUtil.getMockConfig();
+    }
+
+    @Test
+    public void testRunBindsInputsAndOutputs() {
+        Map<String, List<IData>> inputMap = new HashMap<String, List<IData>>();
+        inputMap.put("INPUT_STRINGS", Arrays.<IData>asList(new LiteralStringBinding("a"), new LiteralStringBinding("b")));
+        inputMap.put("INPUT_DELIMITER", Arrays.<IData>asList(new LiteralStringBinding("PIPE")));
+
+        StringJoinAnnotatedAlgorithm algorithm = new StringJoinAnnotatedAlgorithm();
+        Map<String, IData> outputMap = algorithm.run(inputMap);
+        assertEquals("a|b", outputMap.get("OUTPUT_STRING").getPayload());
+        assertNull(algorithm.yourMom);
+
+        // bindings are shared by all instances of a class
+        inputMap.put("INPUT_DELIMITER", Arrays.<IData>asList(new LiteralStringBinding("COMMA")));
+        inputMap.put("yourMom", Arrays.<IData>asList(new LiteralStringBinding("c")));
+        algorithm = new StringJoinAnnotatedAlgorithm();
+        outputMap = algorithm.run(inputMap);
+        assertEquals("a,b", outputMap.get("OUTPUT_STRING").getPayload());
+        assertEquals("c", algorithm.yourMom);
+    }
+
+    @Test
+    public void testRunWrapsExecuteException() {
+        Map<String, List<IData>> inputMap = new HashMap<String, List<IData>>();
+        inputMap.put("INPUT_STRINGS", Arrays.<IData>asList(new LiteralStringBinding("a"), new LiteralStringBinding("b")));
+        try {
+            // no delimiter, the execute method fails
+            new StringJoinAnnotatedAlgorithm().run(inputMap);
+            fail("Expected a RuntimeException");
+        } catch (RuntimeException e) {
+            assertEquals(NullPointerException.class, e.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void testRunWidensPrimitiveInput() {
+        Map<String, List<IData>> inputMap = new HashMap<String, List<IData>>();
+        inputMap.put("INPUT_INT", Arrays.<IData>asList(new LiteralShortBinding((short) 3)));
+        Map<String, IData> outputMap = new IntSquareAnnotatedAlgorithm().run(inputMap);
+        assertEquals(Long.valueOf(9), outputMap.get("OUTPUT_LONG").getPayload());
+    }
+
+    @Test
+    public void testRunReportsWrongPrimitiveInputType() {
+        Map<String, List<IData>> inputMap = new HashMap<String, List<IData>>();
+        inputMap.put("INPUT_INT", Arrays.<IData>asList(new LiteralLongBinding(3L)));
+        try {
+            new IntSquareAnnotatedAlgorithm().run(inputMap);
+            fail("Expected a RuntimeException");
+        } catch (RuntimeException e) {
+            assertEquals("Internal error processing inputs", e.getMessage());
+            assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+import org.n52.wps.algorithm.annotation.Algorithm;
+import org.n52.wps.algorithm.annotation.LiteralDataInput;
+import org.n52.wps.algorithm.annotation.LiteralDataOutput;
+import org.n52.wps.algorithm.annotation.Execute;
+
+/**
+ * Annotated algorithm with a primitive input setter.
+ */
+@Algorithm(
+    version="0.0.1",
+    title="Int Square Algorithm (Annotated)",
+    abstrakt="This is an example algorithm implementation described using annotations that squares an integer.",
+    statusSupported=false,
+    storeSupported=false)
+public class IntSquareAnnotatedAlgorithm extends AbstractAnnotatedAlgorithm {
+
+    private int inputInt;
+    private long outputLong;
+
+    @LiteralDataInput(
+        identifier="INPUT_INT",
+        title="Input Integer",
+        abstrakt="The integer you want squared.")
+    public void setInputInt(int inputInt) {
+        this.inputInt = inputInt;
+    }
+
+    @LiteralDataOutput(
+        identifier="OUTPUT_LONG",
+        title="Output Long",
+        abstrakt="The square of the input integer.")
+    public long getOutputLong() {
+        return outputLong;
+    }
+
+    @Execute
+    public void square() {
+        outputLong = (long) inputInt * inputInt;
+    }
+
+}
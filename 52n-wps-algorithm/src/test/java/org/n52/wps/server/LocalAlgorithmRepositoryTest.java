@@ -0,0 +1,80 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.server;
+
+import static org.hamcrest.CoreMatchers.*;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.test.mock.MockUtil;
+
+public class LocalAlgorithmRepositoryTest {
+
+	private LocalAlgorithmRepository repo;
+
+	@Before
+	public void init() throws Exception {
+		MockUtil.getMockConfig();
+		this.repo = new LocalAlgorithmRepository();
+		repo.addAlgorithm(StringReverseSelfDescribingAlgorithm.class.getName());
+		repo.addAlgorithm(SharedAlgorithm.class.getName());
+		repo.addAlgorithm(PooledAlgorithm.class.getName());
+	}
+
+	@Test
+	public void shouldCreateInstancePerRequest() {
+		String identifier = StringReverseSelfDescribingAlgorithm.class.getName();
+		IAlgorithm algorithm = repo.getAlgorithm(identifier);
+		repo.releaseAlgorithm(identifier, algorithm);
+		Assert.assertThat(repo.getAlgorithm(identifier), is(not(sameInstance(algorithm))));
+	}
+
+	@Test
+	public void shouldShareConcurrentAlgorithm() {
+		String identifier = SharedAlgorithm.class.getName();
+		IAlgorithm algorithm = repo.getAlgorithm(identifier);
+		Assert.assertThat(algorithm, is(instanceOf(SharedAlgorithm.class)));
+		Assert.assertThat(repo.getAlgorithm(identifier), is(sameInstance(algorithm)));
+	}
+
+	@Test
+	public void shouldReusePooledAlgorithmAfterRelease() {
+		String identifier = PooledAlgorithm.class.getName();
+		IAlgorithm first = repo.getAlgorithm(identifier);
+		IAlgorithm second = repo.getAlgorithm(identifier);
+		Assert.assertThat(first, is(instanceOf(PooledAlgorithm.class)));
+		Assert.assertThat(second, is(not(sameInstance(first))));
+		repo.releaseAlgorithm(identifier, first);
+		Assert.assertThat(repo.getAlgorithm(identifier), is(sameInstance(first)));
+	}
+
+	@Test
+	public void shouldCacheProcessDescription() {
+		String identifier = PooledAlgorithm.class.getName();
+		Assert.assertThat(repo.getProcessDescription(identifier), is(notNullValue()));
+		Assert.assertThat(repo.getProcessDescription(identifier), is(sameInstance(repo.getProcessDescription(identifier))));
+	}
+
+	@Reusable(concurrent = true)
+	public static class SharedAlgorithm extends StringReverseSelfDescribingAlgorithm {
+	}
+
+	@Reusable
+	public static class PooledAlgorithm extends StringReverseSelfDescribingAlgorithm {
+	}
+}
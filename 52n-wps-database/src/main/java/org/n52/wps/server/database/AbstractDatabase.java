@@ -29,7 +29,10 @@
 package org.n52.wps.server.database;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -39,9 +42,13 @@ import java.util.Calendar;
 
 import javax.xml.ws.Response;
 
+import org.apache.commons.io.IOUtils;
 import org.n52.wps.DatabaseDocument.Database;
 import org.n52.wps.PropertyDocument.Property;
+import org.n52.wps.commons.PropertyUtil;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.database.connection.ConnectionHandler;
+import org.n52.wps.server.database.connection.PooledConnectionHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,6 +85,12 @@ public abstract class AbstractDatabase implements IDatabase{
 	/** SQL to retrieve a response from the database */
 	public static final String selectionString = "SELECT RESPONSE, RESPONSE_MIMETYPE FROM RESULTS WHERE REQUEST_ID = (?)";
 
+	/** SQL to check whether a response is stored in the database */
+	public static final String existenceString = "SELECT REQUEST_ID FROM RESULTS WHERE REQUEST_ID = (?)";
+
+	/** SQL to retrieve the mime type of a response from the database */
+	public static final String mimeTypeSelectionString = "SELECT RESPONSE_MIMETYPE FROM RESULTS WHERE REQUEST_ID = (?)";
+
 	/** The column of "response" in the select statement. */
 	protected static final int SELECT_COLUMN_RESPONSE = 1;
 
@@ -101,13 +114,19 @@ public abstract class AbstractDatabase implements IDatabase{
 
 	protected static final int INSERT_COLUMN_MIME_TYPE = 5;
 	
+	/** Property of the maximum number of pooled connections. */
+	protected static final String PROPERTY_NAME_POOL_SIZE = "pool.size";
+
+	/** Property of the time to wait for a pooled connection (ISO8601 period). */
+	protected static final String PROPERTY_NAME_POOL_TIMEOUT = "pool.timeout";
+
+	protected static final long DEFAULT_POOL_SIZE = 20;
+
+	protected static final long DEFAULT_POOL_TIMEOUT = 30 * 1000;
+
 	/** get access to the global logger. */
 	private static Logger LOGGER = LoggerFactory.getLogger(AbstractDatabase.class);
 	
-	protected static PreparedStatement insertSQL = null;
-	protected static PreparedStatement updateSQL = null;
-	protected static PreparedStatement selectSQL = null;
-	
 	/**
 	 * Get an instance of the Database object. Only one instance is required. If
 	 * it not already exists, it will be created. The first call of this method
@@ -126,7 +145,7 @@ public abstract class AbstractDatabase implements IDatabase{
 	
     
     @Override
-	public synchronized void insertRequest(String id, InputStream inputStream, boolean xml) {			
+	public void insertRequest(String id, InputStream inputStream, boolean xml) {			
         insertResultEntity(inputStream, "REQ_" + id, "ExecuteRequest", xml ? "text/xml" : "text/plain");
 	}
     
@@ -138,7 +157,7 @@ public abstract class AbstractDatabase implements IDatabase{
 	 * 
 	 */
     @Override
-	public synchronized String insertResponse(String id, InputStream inputStream) {			
+	public String insertResponse(String id, InputStream inputStream) {			
         return insertResultEntity(inputStream, id, "ExecuteResponse", "text/xml");
 	}
 	
@@ -148,22 +167,22 @@ public abstract class AbstractDatabase implements IDatabase{
 	 * @param id
 	 * @param type
 	 */
-	protected synchronized String insertResultEntity(InputStream stream, String id, String type, String mimeType) {
+	protected String insertResultEntity(InputStream stream, String id, String type, String mimeType) {
 		// Use Calendar to get the current timestamp.
 		// Uses java.sql.Date !
 		Timestamp timestamp = new Timestamp(Calendar.getInstance().getTimeInMillis());
 
 		// try to insert a row of data into the database.
-		try {
-			AbstractDatabase.insertSQL.setString(INSERT_COLUMN_REQUEST_ID, id);
-			AbstractDatabase.insertSQL.setTimestamp(INSERT_COLUMN_REQUEST_DATE, timestamp);
-			AbstractDatabase.insertSQL.setString(INSERT_COLUMN_RESPONSE_TYPE, type);
-			AbstractDatabase.insertSQL.setAsciiStream(INSERT_COLUMN_RESPONSE, stream);
-			AbstractDatabase.insertSQL.setString(INSERT_COLUMN_MIME_TYPE, mimeType);
-			// AbstractDatabase.insertSQL.setAsciiStream(INSERT_COLUMN_RESPONSE, bais, b.length);
+		try (Connection connection = getConnection();
+				PreparedStatement insertStatement = connection.prepareStatement(insertionString)) {
+			insertStatement.setString(INSERT_COLUMN_REQUEST_ID, id);
+			insertStatement.setTimestamp(INSERT_COLUMN_REQUEST_DATE, timestamp);
+			insertStatement.setString(INSERT_COLUMN_RESPONSE_TYPE, type);
+			insertStatement.setAsciiStream(INSERT_COLUMN_RESPONSE, stream);
+			insertStatement.setString(INSERT_COLUMN_MIME_TYPE, mimeType);
 		
-			AbstractDatabase.insertSQL.executeUpdate();
-			getConnection().commit();
+			insertStatement.executeUpdate();
+			commit(connection);
 		} catch (SQLException e) {
 			LOGGER.error("Could not insert Response into database: "
 					+ e.getMessage());
@@ -179,16 +198,15 @@ public abstract class AbstractDatabase implements IDatabase{
 	 * @see #storeResponse(Response)
 	 */
     @Override
-	public synchronized void updateResponse(String id, InputStream inputStream) {
+	public void updateResponse(String id, InputStream inputStream) {
 
 		// Try to update the row of data into the database.
-		try {
-			AbstractDatabase.updateSQL.setString(
-					UPDATE_COLUMN_REQUEST_ID, id);
-			AbstractDatabase.updateSQL.setAsciiStream(
-					UPDATE_COLUMN_RESPONSE, inputStream);
-			AbstractDatabase.updateSQL.executeUpdate();
-			getConnection().commit();
+		try (Connection connection = getConnection();
+				PreparedStatement updateStatement = connection.prepareStatement(updateString)) {
+			updateStatement.setString(UPDATE_COLUMN_REQUEST_ID, id);
+			updateStatement.setAsciiStream(UPDATE_COLUMN_RESPONSE, inputStream);
+			updateStatement.executeUpdate();
+			commit(connection);
 		} catch (SQLException e) {
 			LOGGER.error("Could not insert Response into database: "
 					+ e.getMessage());
@@ -203,8 +221,8 @@ public abstract class AbstractDatabase implements IDatabase{
 	 *            The Response to store.
 	 */ 
     @Override
-	public synchronized String storeResponse(String id, InputStream inputStream) {
-		if (lookupResponse(id) == null) {
+	public String storeResponse(String id, InputStream inputStream) {
+		if (!isStored(id)) {
 			return insertResponse(id, inputStream);
 		} else {
 			updateResponse(id, inputStream);
@@ -212,26 +230,33 @@ public abstract class AbstractDatabase implements IDatabase{
 		}
 	}
 
-    @Override
-	public synchronized InputStream lookupRequest(String request_id) {
-        request_id = "REQ_" + request_id;
-		try {
-			AbstractDatabase.selectSQL.setString(SELECT_COLUMN_RESPONSE, request_id);
-			ResultSet res = AbstractDatabase.selectSQL.executeQuery();
-			if (res == null || !res.next()) {
-				LOGGER.warn("Query did not return a valid result.");
-				return null;
-			} else {
-				LOGGER.info("Successfully retrieved the Request: "
-						+ request_id);
-				return res.getAsciiStream(1);
+	/**
+	 * Checks whether a response is stored, without reading it.
+	 */
+	protected boolean isStored(String id) {
+		try (Connection connection = getConnection();
+				PreparedStatement selectStatement = connection.prepareStatement(existenceString)) {
+			selectStatement.setString(SELECT_COLUMN_RESPONSE, id);
+			try (ResultSet res = selectStatement.executeQuery()) {
+				return res != null && res.next();
 			}
 		} catch (SQLException e) {
-			LOGGER.error("SQLException with request_id: " + request_id
+			LOGGER.error("SQLException with request_id: " + id
 					+ "and message: " + e.getMessage());
-			return null;
+			return false;
 		}
 	}
+
+    @Override
+	public InputStream lookupRequest(String request_id) {
+        request_id = "REQ_" + request_id;
+		InputStream result = selectResponse(request_id);
+		if (result != null) {
+			LOGGER.info("Successfully retrieved the Request: "
+					+ request_id);
+		}
+		return result;
+	}
     
 	/**
 	 * Retrieve the Response on a previous Request, based on an unique
@@ -243,27 +268,56 @@ public abstract class AbstractDatabase implements IDatabase{
 	 *         Response
 	 */
     @Override
-	public synchronized InputStream lookupResponse(String request_id) {
-		try {
-			AbstractDatabase.selectSQL.setString(SELECT_COLUMN_RESPONSE, request_id);
-			ResultSet res = AbstractDatabase.selectSQL.executeQuery();
-			if (res == null || !res.next()) {
-				LOGGER.warn("Query did not return a valid result.");
-				return null;
-			} else {
-				LOGGER.info("Successfully retrieved the Response of Request: "
-						+ request_id);
-				return res.getAsciiStream(1);
+	public InputStream lookupResponse(String request_id) {
+		InputStream result = selectResponse(request_id);
+		if (result != null) {
+			LOGGER.info("Successfully retrieved the Response of Request: "
+					+ request_id);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads a stored response. The content is copied to a temporary file, as
+	 * the stream of the result set is invalid once the connection is returned
+	 * to the pool.
+	 */
+	private InputStream selectResponse(String id) {
+		try (Connection connection = getConnection();
+				PreparedStatement selectStatement = connection.prepareStatement(selectionString)) {
+			selectStatement.setString(SELECT_COLUMN_RESPONSE, id);
+			try (ResultSet res = selectStatement.executeQuery()) {
+				if (res == null || !res.next()) {
+					LOGGER.warn("Query did not return a valid result.");
+					return null;
+				}
+				File tempFile = File.createTempFile("SAFE-TO-DELETE-" + id, null);
+				// Best effort, even though SelfCleaningFileInputStream should delete it
+				tempFile.deleteOnExit();
+				try (InputStream response = res.getAsciiStream(SELECT_COLUMN_RESPONSE);
+						OutputStream out = new FileOutputStream(tempFile)) {
+					IOUtils.copyLarge(response, out);
+				}
+				return new SelfCleaningFileInputStream(tempFile);
 			}
-		} catch (SQLException e) {
-			LOGGER.error("SQLException with request_id: " + request_id
+		} catch (SQLException | IOException e) {
+			LOGGER.error("Exception with request_id: " + id
 					+ "and message: " + e.getMessage());
 			return null;
 		}
 	}
+
+	/**
+	 * Commits the changes made on the connection, unless it is in auto-commit mode.
+	 */
+	protected static void commit(Connection connection) throws SQLException {
+		if (!connection.getAutoCommit()) {
+			connection.commit();
+		}
+	}
 	
     @Override
-	public synchronized String storeComplexValue(String id, InputStream stream, String type, String mimeType) {
+	public String storeComplexValue(String id, InputStream stream, String type, String mimeType) {
 		return insertResultEntity(stream, id, type, mimeType);
 	}
 	
@@ -287,6 +341,10 @@ public abstract class AbstractDatabase implements IDatabase{
 		return getBaseResultURL() + id;   // TODO:  Parameterize this... Execution Context..?
 	}
 	
+	/**
+	 * @return a connection to the database, which has to be closed by the
+	 *         caller to release it
+	 */
 	public abstract Connection getConnection();
 	public abstract String getConnectionURL();
 	
@@ -300,6 +358,18 @@ public abstract class AbstractDatabase implements IDatabase{
 		return (dbName == null || dbName.equals("")) ? "wps" : dbName;
 	}
 	
+	/**
+	 * Creates a connection pool on top of the given handler, sized by the
+	 * <code>pool.size</code> and <code>pool.timeout</code> database properties.
+	 */
+	protected static PooledConnectionHandler createPooledConnectionHandler(ConnectionHandler delegate) {
+		Database database = WPSConfig.getInstance().getWPSConfig().getServer().getDatabase();
+		PropertyUtil propertyUtil = new PropertyUtil(database.getPropertyArray(), "org.n52.wps.server.database");
+		int poolSize = (int) propertyUtil.extractLong(PROPERTY_NAME_POOL_SIZE, DEFAULT_POOL_SIZE);
+		long poolTimeout = propertyUtil.extractPeriodAsMillis(PROPERTY_NAME_POOL_TIMEOUT, DEFAULT_POOL_TIMEOUT);
+		return new PooledConnectionHandler(delegate, poolSize, poolTimeout);
+	}
+
 	static String getDatabaseProperties(String propertyName) {
 		Database database = WPSConfig.getInstance().getWPSConfig().getServer().getDatabase();
 		Property[] dbProperties = database.getPropertyArray();
@@ -350,17 +420,18 @@ public abstract class AbstractDatabase implements IDatabase{
 	
     @Override
 	public String getMimeTypeForStoreResponse(String id) {
-		try {
-			AbstractDatabase.selectSQL.setString(SELECT_COLUMN_RESPONSE, id);
-		
-			ResultSet res = AbstractDatabase.selectSQL.executeQuery();
-			if (res == null || !res.next()) {
-				LOGGER.warn("Query did not return a valid result.");
-				return null;
-			} else {
-				LOGGER.info("Successfully retrieved the Mimetyoe of the response: "
-						+ id);
-				return res.getString(2);
+		try (Connection connection = getConnection();
+				PreparedStatement selectStatement = connection.prepareStatement(mimeTypeSelectionString)) {
+			selectStatement.setString(SELECT_COLUMN_RESPONSE, id);
+			try (ResultSet res = selectStatement.executeQuery()) {
+				if (res == null || !res.next()) {
+					LOGGER.warn("Query did not return a valid result.");
+					return null;
+				} else {
+					LOGGER.info("Successfully retrieved the Mimetyoe of the response: "
+							+ id);
+					return res.getString(1);
+				}
 			}
 		} catch (SQLException e) {
 			LOGGER.error("SQLException with request_id: " + id
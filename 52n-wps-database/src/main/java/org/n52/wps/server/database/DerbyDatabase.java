@@ -37,6 +37,8 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Properties;
 
+import org.n52.wps.server.database.connection.DefaultConnectionHandler;
+import org.n52.wps.server.database.connection.PooledConnectionHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,7 +49,7 @@ public class DerbyDatabase extends AbstractDatabase {
 
 	private static Logger LOGGER = LoggerFactory.getLogger(DerbyDatabase.class); // Get access to the global logger.
 	private static String connectionURL = null;
-	private static Connection conn = null;
+	private static PooledConnectionHandler connectionHandler = null;
 	private static DerbyDatabase db = new DerbyDatabase(); // Static loading.
 	
 	/**
@@ -63,97 +65,81 @@ public class DerbyDatabase extends AbstractDatabase {
 			LOGGER.error("Database cannot be loaded: " + connectionURL);
 			throw new UnsupportedDatabaseException("The database class could not be loaded.");
 		}
-		if(!DerbyDatabase.createConnection()) {
+		if(!DerbyDatabase.createConnectionHandler()) {
 				throw new RuntimeException("Creating database connection failed.");
         }
 		if(!DerbyDatabase.createResultTable()) {
 				throw new RuntimeException("Creating result table failed.");
-        }
-		if(!DerbyDatabase.createPreparedStatements()) {
-				throw new RuntimeException("Creating prepared statements failed.");
         }
 	}
 	
 	public static synchronized DerbyDatabase getInstance() { 
-		if (DerbyDatabase.conn == null) {
-			if(!DerbyDatabase.createConnection()) {
+		if (DerbyDatabase.connectionHandler == null) {
+			if(!DerbyDatabase.createConnectionHandler()) {
 					throw new RuntimeException("Creating database connection failed.");
             }
 			if(!DerbyDatabase.createResultTable()) {
 					throw new RuntimeException("Creating result table failed.");
-            }
-			if(!DerbyDatabase.createPreparedStatements()) {
-					throw new RuntimeException("Creating prepared statements failed.");
             }
 		}
 		return DerbyDatabase.db;
 	}
 	
-	private static boolean createConnection() {
+	private static boolean createConnectionHandler() {
 		Properties props = new Properties();
-		DerbyDatabase.conn = null;
 		// Try to connect to an existing database. Note that create is set to true.
-		try {
-			DerbyDatabase.conn = DriverManager.getConnection(
-					DerbyDatabase.connectionURL + ";create=true", props);
+		PooledConnectionHandler handler = createPooledConnectionHandler(
+				new DefaultConnectionHandler(DerbyDatabase.connectionURL + ";create=true", props));
+		try (Connection connection = handler.getConnection()) {
 			LOGGER.info("Connected to WPS database.");
 		} catch (SQLException e) {
 			LOGGER.error("Could not connect to or create the database.");
+			handler.close();
 			return false;
 		}
+		DerbyDatabase.connectionHandler = handler;
 		return true;
 	}
 	
 	private static boolean createResultTable() {
-		try {
-			ResultSet rs = null;
-			DatabaseMetaData meta = DerbyDatabase.conn.getMetaData();
-			rs = meta.getTables(null, null, "RESULTS",
-					new String[] { "TABLE" });
-			if (!rs.next()) {
-				LOGGER.info("Table RESULTS does not yet exist.");
-				Statement st = DerbyDatabase.conn.createStatement();
+		try (Connection connection = DerbyDatabase.connectionHandler.getConnection()) {
+			DatabaseMetaData meta = connection.getMetaData();
+			try (ResultSet rs = meta.getTables(null, null, "RESULTS",
+					new String[] { "TABLE" })) {
+				if (rs.next()) {
+					return true;
+				}
+			}
+			LOGGER.info("Table RESULTS does not yet exist.");
+			try (Statement st = connection.createStatement()) {
 				st.executeUpdate(DerbyDatabase.creationString);
-				DerbyDatabase.conn.commit();
-				
-				rs = null;
-				meta = DerbyDatabase.conn.getMetaData();
-				rs = meta.getTables(null, null, "RESULTS",
-						new String[] { "TABLE" });
+			}
+			commit(connection);
+			
+			try (ResultSet rs = connection.getMetaData().getTables(null, null, "RESULTS",
+					new String[] { "TABLE" })) {
 				if (rs.next()) {
 					LOGGER.info("Succesfully created table RESULTS.");
 				} else {
 					LOGGER.error("Could not create table RESULTS.");
 					return false;
 				}
-				// Set upcoming statements to autocommit.
-				DerbyDatabase.conn.setAutoCommit(false);
 			}
 		} catch (SQLException e) {
-			LOGGER.error("Connection to the HSQL database failed: "
+			LOGGER.error("Connection to the Derby database failed: "
 					+ e.getMessage());
 			return false;
 		}
 		return true;	
 	}
 	
-	private static boolean createPreparedStatements() {
-		// Create prepared staments (more efficient).
-		try {
-			DerbyDatabase.closePreparedStatements();
-			DerbyDatabase.insertSQL = DerbyDatabase.conn.prepareStatement(insertionString);
-			DerbyDatabase.selectSQL = DerbyDatabase.conn.prepareStatement(selectionString);
-			DerbyDatabase.updateSQL = DerbyDatabase.conn.prepareStatement(updateString);
-		} catch (SQLException e) {
-			LOGGER.error("Could not create the prepared statements.");
-			return false;
-		}
-		return true;
-	}
-	
     @Override
 	public Connection getConnection() {
-		return DerbyDatabase.conn;
+		try {
+			return DerbyDatabase.connectionHandler.getConnection();
+		} catch (SQLException ex) {
+			throw new RuntimeException("Unable to obtain connection to database!", ex);
+		}
 	}
     
     @Override
@@ -190,66 +176,23 @@ public class DerbyDatabase extends AbstractDatabase {
 	 * Shutdown the database in a clean, safe way.
 	 */
     @Override
-	public void shutdown() {
-   		boolean flag0 = false, flag1 = false;
-   		try {
-           if (DerbyDatabase.conn != null) {
-        	   // Close PreparedStatements if needed.
-        	   flag0 = closePreparedStatements();
-        	   DerbyDatabase.conn = DriverManager.getConnection(DerbyDatabase.connectionURL + ";shutdown=true");
-        	   // Return to connection pool.
-        	   DerbyDatabase.conn.close();
-        	   DerbyDatabase.conn = null;
-               flag1 = true;
-               // Force garbage collection. 
-               System.gc();
-               // Setting the database to null;
-               DerbyDatabase.db = null;
-           }
-       } catch (SQLException sql_ex) {
-       		LOGGER.error("Error occured while closing connection: " + 
-       				sql_ex.getMessage() + "::" 
-       				+ "closed prepared statements?" + flag0
-       				+ ";closed connection?" + flag1);
-       		return;
-       } catch(Exception exception) {
-       		LOGGER.error("Error occured while closing connection: " + 
-       				exception.getMessage() + "::" 
-       				+ "closed prepared statements?" + flag0
-       				+ ";closed connection?" + flag1);
-       		return;
-       } finally {
-   	    	// Make sure the connection is returned to the pool.
-   	    	if (DerbyDatabase.conn!= null) {
-   	    		try { DerbyDatabase.conn.close(); } catch (SQLException e) { ; }
-   	    		DerbyDatabase.conn = null;
-   	    	}
-   	  }
-       LOGGER.info("Derby database connection is closed succesfully");
-	}
-	
-	/**
-	 * Always make sure the statements are closed, when you exit.
-	 */
-	private static boolean closePreparedStatements() {
-		try {
-		if(DerbyDatabase.insertSQL != null) {
-			DerbyDatabase.insertSQL.close();
-			DerbyDatabase.insertSQL = null;
-		} 
-		if(DerbyDatabase.selectSQL != null) {
-			DerbyDatabase.selectSQL.close();
-			DerbyDatabase.selectSQL = null;
-		}
-		if(DerbyDatabase.updateSQL != null) {
-			DerbyDatabase.updateSQL.close();
-			DerbyDatabase.updateSQL = null;
+	public synchronized void shutdown() {
+		if (DerbyDatabase.connectionHandler == null) {
+			return;
 		}
-		} catch(SQLException sql_ex) {
-			LOGGER.error("Prepared statements could not be closed.");
-			return false;
+		// Close the pooled connections before shutting down the database.
+		DerbyDatabase.connectionHandler.close();
+		DerbyDatabase.connectionHandler = null;
+		try {
+			DriverManager.getConnection(DerbyDatabase.connectionURL + ";shutdown=true").close();
+		} catch (SQLException sql_ex) {
+			// Derby reports the successful shutdown of a database with SQL state 08006
+			if (!"08006".equals(sql_ex.getSQLState())) {
+				LOGGER.error("Error occured while shutting down the database: " + sql_ex.getMessage());
+				return;
+			}
 		}
-		return true;
+		LOGGER.info("Derby database connection is closed succesfully");
 	}
 
 	
@@ -38,10 +38,14 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.Connection;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -58,10 +62,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.Striped;
 
 /*
  * @author tkunicki (Thomas Kunicki, USGS)
  *
+ * Responses and complex values are spread over shard directories named after
+ * a hash of their id. Every response directory holds an index with the serial
+ * number and length of the latest response, so lookups do not have to list
+ * the directory, and stores of the same id are serialized by a striped lock.
+ * Results stored by an earlier version directly in the base directory are
+ * still found by the lookups until they are wiped.
  */
 public final class FlatFileDatabase extends AbstractDatabase {
 
@@ -101,6 +112,15 @@ public final class FlatFileDatabase extends AbstractDatabase {
     private final static Pattern PATTERN_RESPONSE_TEMP = Pattern.compile("([\\d]+)\\." + SUFFIX_XML + "(:?\\."
             + SUFFIX_TEMP + ")?");
 
+    // Shard directories are named by two hex digits, see generateShardDirectory(...)
+    private final static Pattern PATTERN_SHARD = Pattern.compile("[0-9a-f]{2}");
+
+    private final static String INDEX_FILE_NAME = JOINER.join("index", SUFFIX_PROPERTIES);
+    private final static String KEY_INDEX_LATEST = "latest";
+    private final static String KEY_INDEX_NEXT = "next";
+
+    private final static int LOCK_STRIPES = 64;
+
     private static FlatFileDatabase instance;
 
     // This method is required by the DatabaseFactory, it is found using reflection
@@ -115,7 +135,7 @@ public final class FlatFileDatabase extends AbstractDatabase {
 
     protected final boolean gzipComplexValues;
 
-    protected final Object storeResponseSerialNumberLock;
+    protected final Striped<Lock> responseLocks;
 
     protected final boolean indentXML = true;
 
@@ -136,6 +156,8 @@ public final class FlatFileDatabase extends AbstractDatabase {
             baseDirectory.mkdirs();
         }
 
+        responseLocks = Striped.lock(LOCK_STRIPES);
+
         if (propertyUtil.extractBoolean(KEY_DATABASE_WIPE_ENABLED, DEFAULT_DATABASE_WIPE_ENABLED)) {
             
             long periodMillis = propertyUtil.extractPeriodAsMillis(KEY_DATABASE_WIPE_PERIOD, DEFAULT_DATABASE_WIPE_PERIOD);
@@ -150,8 +172,14 @@ public final class FlatFileDatabase extends AbstractDatabase {
         }
 
         gzipComplexValues = propertyUtil.extractBoolean(KEY_DATABASE_COMPLEX_GZIP, DEFAULT_DATABASE_COMPLEX_GZIP);
+    }
 
-        storeResponseSerialNumberLock = new Object();
+    // for tests, without wipe timer
+    FlatFileDatabase(File baseDirectory, boolean gzipComplexValues) {
+        this.baseDirectory = baseDirectory;
+        this.gzipComplexValues = gzipComplexValues;
+        this.responseLocks = Striped.lock(LOCK_STRIPES);
+        this.wipeTimer = null;
     }
 
     @Override
@@ -163,7 +191,7 @@ public final class FlatFileDatabase extends AbstractDatabase {
     public void insertRequest(String id, InputStream inputStream, boolean xml) {
         // store request in response directory...
         File responseDirectory = generateResponseDirectory(id);
-        responseDirectory.mkdir();
+        responseDirectory.mkdirs();
         BufferedOutputStream outputStream = null;
         try {
             if (xml) {
@@ -240,16 +268,15 @@ public final class FlatFileDatabase extends AbstractDatabase {
     public File lookupRequestAsFile(String id) {
         File requestAsFile = null;
         // request is stored in response directory...
-        File responseDirectory = generateResponseDirectory(id);
+        File responseDirectory = lookupResponseDirectory(id);
         if (responseDirectory.exists()) {
-            synchronized (storeResponseSerialNumberLock) {
-                requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_XML));
-                if ( !requestAsFile.exists()) {
-                    requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_PROPERTIES));
-                }
-                if ( !requestAsFile.exists()) {
-                    requestAsFile = null;
-                }
+            // the request is written once before any response, no lock required
+            requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_XML));
+            if ( !requestAsFile.exists()) {
+                requestAsFile = new File(responseDirectory, JOINER.join("request", SUFFIX_PROPERTIES));
+            }
+            if ( !requestAsFile.exists()) {
+                requestAsFile = null;
             }
         }
         return requestAsFile;
@@ -259,23 +286,16 @@ public final class FlatFileDatabase extends AbstractDatabase {
     public File lookupResponseAsFile(String id) {
         File responseFile = null;
         // if response resolved to directory, this means the response is a status update
-        File responseDirectory = generateResponseDirectory(id);
+        File responseDirectory = lookupResponseDirectory(id);
         if (responseDirectory.exists()) {
-            synchronized (storeResponseSerialNumberLock) {
-                return findLatestResponseFile(responseDirectory);
-            }
+            return findLatestResponseFile(responseDirectory);
         }
         else {
             String mimeType = getMimeTypeForStoreResponse(id);
             if (mimeType != null) {
-                // ignore gzipComplexValues in case file was stored when value
-                // was inconsistent with current value;
-                responseFile = generateComplexDataFile(id, mimeType, false);
-                if ( !responseFile.exists()) {
-                    responseFile = generateComplexDataFile(id, mimeType, true);
-                }
-                if ( !responseFile.exists()) {
-                    responseFile = null;
+                responseFile = lookupComplexDataFile(generateShardDirectory(id), id, mimeType);
+                if (responseFile == null) {
+                    responseFile = lookupComplexDataFile(baseDirectory, id, mimeType);
                 }
             }
         }
@@ -294,9 +314,9 @@ public final class FlatFileDatabase extends AbstractDatabase {
 
         String resultId = JOINER.join(id, UUID.randomUUID().toString());
         try {
+            generateShardDirectory(resultId).mkdirs();
             File resultFile = generateComplexDataFile(resultId, mimeType, gzipComplexValues);
-            File mimeTypeFile = generateComplexDataMimeTypeFile(resultId);
-            File contentLengthFile = generateComplexDataContentLengthFile(resultId);
+            File propertiesFile = generateComplexDataPropertiesFile(resultId);
 
             LOGGER.debug("initiating storage of complex value for {} as {}", id, resultFile.getPath());
 
@@ -313,23 +333,11 @@ public final class FlatFileDatabase extends AbstractDatabase {
                 IOUtils.closeQuietly(resultOutputStream);
             }
 
-            OutputStream mimeTypeOutputStream = null;
-            try {
-                mimeTypeOutputStream = new BufferedOutputStream(new FileOutputStream(mimeTypeFile));
-                IOUtils.write(mimeType, mimeTypeOutputStream);
-            }
-            finally {
-                IOUtils.closeQuietly(mimeTypeOutputStream);
-            }
-
-            OutputStream contentLengthOutputStream = null;
-            try {
-                contentLengthOutputStream = new BufferedOutputStream(new FileOutputStream(contentLengthFile));
-                IOUtils.write(Long.toString(contentLength), contentLengthOutputStream);
-            }
-            finally {
-                IOUtils.closeQuietly(contentLengthOutputStream);
-            }
+            // written last, a complex value is only visible once it is complete
+            Properties properties = new Properties();
+            properties.setProperty(SUFFIX_MIMETYPE, mimeType);
+            properties.setProperty(SUFFIX_CONTENT_LENGTH, Long.toString(contentLength));
+            writeProperties(properties, propertiesFile);
 
             LOGGER.debug("completed storage of complex value for {} as {}", id, resultFile.getPath());
 
@@ -344,31 +352,33 @@ public final class FlatFileDatabase extends AbstractDatabase {
     public String storeResponse(String id, InputStream inputStream) {
 
         try {
+            File responseDirectory = generateResponseDirectory(id);
             File responseTempFile;
             File responseFile;
-            synchronized (storeResponseSerialNumberLock) {
-                File responseDirectory = generateResponseDirectory(id);
-                responseDirectory.mkdir();
-                int responseIndex = findLatestResponseIndex(responseDirectory, true);
+            int responseIndex;
+            Lock lock = responseLocks.get(id);
+            lock.lock();
+            try {
+                responseDirectory.mkdirs();
+                Properties index = readIndex(responseDirectory);
+                responseIndex = extractIndex(index, KEY_INDEX_NEXT);
                 if (responseIndex < 0) {
-                    responseIndex = 0;
-                }
-                else {
-                    responseIndex++;
+                    // no index yet (or written by an earlier version), fall back to the directory
+                    responseIndex = findLatestResponseIndex(responseDirectory, true);
+                    responseIndex = responseIndex < 0 ? 0 : responseIndex + 1;
                 }
+                // reserve the serial number so that it is correctly incremented if
+                // this method is called again for this response before this
+                // response is completed.
+                index.setProperty(KEY_INDEX_NEXT, Integer.toString(responseIndex + 1));
+                writeIndex(responseDirectory, index);
                 responseFile = generateResponseFile(responseDirectory, responseIndex);
                 responseTempFile = generateResponseTempFile(responseDirectory, responseIndex);
-                try {
-                    // create the file so that the reponse serial number is correctly
-                    // incremented if this method is called again for this reponse
-                    // before this reponse is completed.
-                    responseTempFile.createNewFile();
-                }
-                catch (IOException e) {
-                    throw new RuntimeException("Error storing response to {}", e);
-                }
                 LOGGER.debug("Creating temp file for {} as {}", id, responseTempFile.getPath());
             }
+            finally {
+                lock.unlock();
+            }
             InputStream responseInputStream = null;
             OutputStream responseOutputStream = null;
             try {
@@ -384,9 +394,20 @@ public final class FlatFileDatabase extends AbstractDatabase {
                 IOUtils.closeQuietly(responseOutputStream);
             }
 
-            synchronized (storeResponseSerialNumberLock) {
+            lock.lock();
+            try {
                 responseTempFile.renameTo(responseFile);
                 LOGGER.debug("Renamed temp file for {} to {}", id, responseFile.getPath());
+                // a slower store of an earlier response must not hide a later one
+                Properties index = readIndex(responseDirectory);
+                if (responseIndex > extractIndex(index, KEY_INDEX_LATEST)) {
+                    index.setProperty(KEY_INDEX_LATEST, Integer.toString(responseIndex));
+                    index.setProperty(SUFFIX_CONTENT_LENGTH, Long.toString(responseFile.length()));
+                    writeIndex(responseDirectory, index);
+                }
+            }
+            finally {
+                lock.unlock();
             }
 
             return generateRetrieveResultURL(id);
@@ -408,25 +429,24 @@ public final class FlatFileDatabase extends AbstractDatabase {
     @Override
     public String getMimeTypeForStoreResponse(String id) {
 
-        File responseDirectory = generateResponseDirectory(id);
+        File responseDirectory = lookupResponseDirectory(id);
         if (responseDirectory.exists()) {
             return "text/xml";
         }
         else {
-            File mimeTypeFile = generateComplexDataMimeTypeFile(id);
-            if (mimeTypeFile.canRead()) {
-                InputStream mimeTypeInputStream = null;
-                try {
-                    mimeTypeInputStream = new FileInputStream(mimeTypeFile);
-                    return IOUtils.toString(mimeTypeInputStream);
-                }
-                catch (IOException e) {
-                    throw new RuntimeException(e);
+            File propertiesFile = generateComplexDataPropertiesFile(id);
+            File mimeTypeFile = generateLegacyComplexDataFile(id, SUFFIX_MIMETYPE);
+            try {
+                if (propertiesFile.canRead()) {
+                    return readProperties(propertiesFile).getProperty(SUFFIX_MIMETYPE);
                 }
-                finally {
-                    IOUtils.closeQuietly(mimeTypeInputStream);
+                if (mimeTypeFile.canRead()) {
+                    return readLegacyValue(mimeTypeFile);
                 }
             }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         }
         return null;
     }
@@ -434,31 +454,40 @@ public final class FlatFileDatabase extends AbstractDatabase {
     @Override
     public long getContentLengthForStoreResponse(String id) {
 
-        File responseDirectory = generateResponseDirectory(id);
+        File responseDirectory = lookupResponseDirectory(id);
         if (responseDirectory.exists()) {
-            synchronized (storeResponseSerialNumberLock) {
-                File responseFile = findLatestResponseFile(responseDirectory);
-                return responseFile.length();
+            Properties index = readIndex(responseDirectory);
+            String contentLength = index.getProperty(SUFFIX_CONTENT_LENGTH);
+            if (contentLength != null) {
+                try {
+                    return Long.parseLong(contentLength);
+                }
+                catch (NumberFormatException e) {
+                    LOGGER.warn("Unable to parse content-length for response id {} from index, exception message: {}",
+                                id, e.getMessage());
+                }
             }
+            File responseFile = findLatestResponseFile(responseDirectory);
+            return responseFile == null ? -1 : responseFile.length();
         }
         else {
-            File contentLengthFile = generateComplexDataContentLengthFile(id);
-            if (contentLengthFile.canRead()) {
-                InputStream contentLengthInputStream = null;
+            File propertiesFile = generateComplexDataPropertiesFile(id);
+            if ( !propertiesFile.canRead()) {
+                propertiesFile = generateLegacyComplexDataFile(id, SUFFIX_CONTENT_LENGTH);
+            }
+            if (propertiesFile.canRead()) {
                 try {
-                    contentLengthInputStream = new FileInputStream(contentLengthFile);
-                    return Long.parseLong(IOUtils.toString(contentLengthInputStream));
+                    return propertiesFile.getName().endsWith(SUFFIX_PROPERTIES)
+                        ? Long.parseLong(readProperties(propertiesFile).getProperty(SUFFIX_CONTENT_LENGTH))
+                        : Long.parseLong(readLegacyValue(propertiesFile));
                 }
                 catch (IOException e) {
                     LOGGER.error("Unable to extract content-length for response id {} from {}, exception message: {}",
-                                 new Object[] {id, contentLengthFile.getAbsolutePath(), e.getMessage()});
+                                 new Object[] {id, propertiesFile.getAbsolutePath(), e.getMessage()});
                 }
                 catch (NumberFormatException e) {
                     LOGGER.error("Unable to parse content-length for response id {} from {}, exception message: {}",
-                                 new Object[] {id, contentLengthFile.getAbsolutePath(), e.getMessage()});
-                }
-                finally {
-                    IOUtils.closeQuietly(contentLengthInputStream);
+                                 new Object[] {id, propertiesFile.getAbsolutePath(), e.getMessage()});
                 }
             }
             return -1;
@@ -472,7 +501,11 @@ public final class FlatFileDatabase extends AbstractDatabase {
 
     private int findLatestResponseIndex(File responseDirectory, boolean includeTemp) {
         int responseIndex = Integer.MIN_VALUE;
-        for (File file : responseDirectory.listFiles()) {
+        File[] files = responseDirectory.listFiles();
+        if (files == null) {
+            return responseIndex;
+        }
+        for (File file : files) {
             Matcher matcher = includeTemp ? PATTERN_RESPONSE_TEMP.matcher(file.getName())
                                          : PATTERN_RESPONSE.matcher(file.getName());
             if (matcher.matches()) {
@@ -486,10 +519,90 @@ public final class FlatFileDatabase extends AbstractDatabase {
     }
 
     private File findLatestResponseFile(File responseDirectory) {
-        int responseIndex = findLatestResponseIndex(responseDirectory, false);
+        int responseIndex = extractIndex(readIndex(responseDirectory), KEY_INDEX_LATEST);
+        if (responseIndex < 0) {
+            // no response completed since the index was introduced, scan the directory
+            responseIndex = findLatestResponseIndex(responseDirectory, false);
+        }
         return responseIndex < 0 ? null : generateResponseFile(responseDirectory, responseIndex);
     }
 
+    private Properties readIndex(File responseDirectory) {
+        File indexFile = new File(responseDirectory, INDEX_FILE_NAME);
+        if (indexFile.canRead()) {
+            try {
+                return readProperties(indexFile);
+            }
+            catch (IOException e) {
+                LOGGER.warn("Unable to read response index {}, exception message: {}",
+                            indexFile.getAbsolutePath(), e.getMessage());
+            }
+        }
+        return new Properties();
+    }
+
+    private void writeIndex(File responseDirectory, Properties index) throws IOException {
+        // readers never lock, so replace the index in one step
+        File indexFile = new File(responseDirectory, INDEX_FILE_NAME);
+        File indexTempFile = new File(responseDirectory, JOINER.join(INDEX_FILE_NAME, SUFFIX_TEMP));
+        writeProperties(index, indexTempFile);
+        if ( !indexTempFile.renameTo(indexFile)) {
+            // some platforms do not replace existing files on rename
+            indexFile.delete();
+            if ( !indexTempFile.renameTo(indexFile)) {
+                throw new IOException("Unable to replace response index " + indexFile.getPath());
+            }
+        }
+    }
+
+    private static int extractIndex(Properties index, String key) {
+        String value = index.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            }
+            catch (NumberFormatException e) {
+                LOGGER.warn("Invalid {} value in response index: {}", key, value);
+            }
+        }
+        return -1;
+    }
+
+    private static String readLegacyValue(File file) throws IOException {
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            return IOUtils.toString(inputStream).trim();
+        }
+        finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    private static Properties readProperties(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            properties.load(inputStream);
+        }
+        finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+        return properties;
+    }
+
+    private static void writeProperties(Properties properties, File file) throws IOException {
+        OutputStream outputStream = null;
+        try {
+            outputStream = new BufferedOutputStream(new FileOutputStream(file));
+            properties.store(outputStream, null);
+        }
+        finally {
+            IOUtils.closeQuietly(outputStream);
+        }
+    }
+
     private File generateResponseFile(File responseDirectory, int index) {
         return new File(responseDirectory, JOINER.join(index, SUFFIX_XML));
     }
@@ -498,22 +611,60 @@ public final class FlatFileDatabase extends AbstractDatabase {
         return new File(responseDirectory, JOINER.join(index, SUFFIX_XML, SUFFIX_TEMP));
     }
 
+    private File generateShardDirectory(String id) {
+        // String.hashCode() is specified, so ids map to the same shard across restarts
+        int hash = id.hashCode();
+        hash ^= (hash >>> 16);
+        hash ^= (hash >>> 8);
+        return new File(baseDirectory, String.format("%02x", hash & 0xff));
+    }
+
     private File generateResponseDirectory(String id) {
-        return new File(baseDirectory, id);
+        return new File(generateShardDirectory(id), id);
+    }
+
+    /**
+     * Returns the response directory of an id, or the directory stored by an
+     * unsharded version if only that one exists.
+     */
+    private File lookupResponseDirectory(String id) {
+        File responseDirectory = generateResponseDirectory(id);
+        if ( !responseDirectory.exists()) {
+            File legacyDirectory = new File(baseDirectory, id);
+            if (legacyDirectory.isDirectory()) {
+                return legacyDirectory;
+            }
+        }
+        return responseDirectory;
+    }
+
+    private File lookupComplexDataFile(File directory, String id, String mimeType) {
+        // ignore gzipComplexValues in case file was stored when value
+        // was inconsistent with current value;
+        File responseFile = generateComplexDataFile(directory, id, mimeType, false);
+        if ( !responseFile.exists()) {
+            responseFile = generateComplexDataFile(directory, id, mimeType, true);
+        }
+        return responseFile.exists() ? responseFile : null;
     }
 
     private File generateComplexDataFile(String id, String mimeType, boolean gzip) {
+        return generateComplexDataFile(generateShardDirectory(id), id, mimeType, gzip);
+    }
+
+    private File generateComplexDataFile(File directory, String id, String mimeType, boolean gzip) {
         String fileName = gzip ? JOINER.join(id, MIMEUtil.getSuffixFromMIMEType(mimeType), SUFFIX_GZIP)
                               : JOINER.join(id, MIMEUtil.getSuffixFromMIMEType(mimeType));
-        return new File(baseDirectory, fileName);
+        return new File(directory, fileName);
     }
 
-    private File generateComplexDataMimeTypeFile(String id) {
-        return new File(baseDirectory, JOINER.join(id, SUFFIX_MIMETYPE));
+    // unsharded versions stored mime type and content length in separate files
+    private File generateLegacyComplexDataFile(String id, String suffix) {
+        return new File(baseDirectory, JOINER.join(id, suffix));
     }
 
-    private File generateComplexDataContentLengthFile(String id) {
-        return new File(baseDirectory, JOINER.join(id, SUFFIX_CONTENT_LENGTH));
+    private File generateComplexDataPropertiesFile(String id) {
+        return new File(generateShardDirectory(id), JOINER.join(id, SUFFIX_PROPERTIES));
     }
 
     private class WipeTimerTask extends TimerTask {
@@ -526,18 +677,34 @@ public final class FlatFileDatabase extends AbstractDatabase {
 
         @Override
         public void run() {
-            wipe(baseDirectory, thresholdMillis);
+            LOGGER.info(getDatabaseName() + " file wiper, checking {} for files older than {} ms",
+                        baseDirectory.getAbsolutePath(),
+                        thresholdMillis);
+            File[] files = baseDirectory.listFiles();
+            if (files == null) {
+                LOGGER.warn("Cannot delete files, no files in root directory {}  > file list is null. ", baseDirectory.getAbsolutePath());
+                return;
+            }
+            // walk one shard at a time, so only a single shard is listed at once;
+            // anything else in the root directory was stored by an unsharded version
+            List<File> unsharded = new ArrayList<File>();
+            for (File file : files) {
+                if (file.isDirectory() && PATTERN_SHARD.matcher(file.getName()).matches()) {
+                    LOGGER.debug("Checking shard {}", file.getName());
+                    wipe(file.listFiles(), thresholdMillis);
+                }
+                else {
+                    unsharded.add(file);
+                }
+            }
+            wipe(unsharded.toArray(new File[unsharded.size()]), thresholdMillis);
         }
 
-        private void wipe(File rootFile, long thresholdMillis) {
+        private void wipe(File[] files, long thresholdMillis) {
             // SimpleDataFormat is not thread-safe.
             SimpleDateFormat iso8601DateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
             long currentTimeMillis = System.currentTimeMillis();
-            LOGGER.info(getDatabaseName() + " file wiper, checking {} for files older than {} ms",
-                        rootFile.getAbsolutePath(),
-                        thresholdMillis);
 
-            File[] files = rootFile.listFiles();
             if (files != null) {
                 for (File file : files) {
                     long lastModifiedMillis = file.lastModified();
@@ -546,14 +713,25 @@ public final class FlatFileDatabase extends AbstractDatabase {
                         LOGGER.info("Deleting {}, last modified date is {}",
                                     file.getName(),
                                     iso8601DateFormat.format(new Date(lastModifiedMillis)));
-                        delete(file);
+                        if (file.isDirectory()) {
+                            // response directory, do not delete it while a response is stored
+                            Lock lock = responseLocks.get(file.getName());
+                            lock.lock();
+                            try {
+                                delete(file);
+                            }
+                            finally {
+                                lock.unlock();
+                            }
+                        }
+                        else {
+                            delete(file);
+                        }
                         if (file.exists()) {
                             LOGGER.warn("Deletion of {} failed", file.getName());
                         }
                     }
                 }
-            } else {
-                LOGGER.warn("Cannot delete files, no files in root directory {}  > file list is null. ", rootFile.getAbsolutePath());
             }
         }
 
@@ -29,6 +29,7 @@
 package org.n52.wps.server.database;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -40,15 +41,19 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.Array;
+import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
@@ -86,7 +91,11 @@ public class PostgresDatabase extends AbstractDatabase {
 	private static final String KEY_DATABASE_WIPE_ENABLED = "wipe.enabled";
 	private static final String KEY_DATABASE_WIPE_PERIOD = "wipe.period";
 	private static final String KEY_DATABASE_WIPE_THRESHOLD = "wipe.threshold";
+	private static final String KEY_DATABASE_BLOB_ENABLED = "blob.enabled";
+	private static final String KEY_DATABASE_BLOB_COMPRESS = "blob.compress";
 	private static final boolean DEFAULT_DATABASE_WIPE_ENABLED = true;
+	private static final boolean DEFAULT_DATABASE_BLOB_ENABLED = false;
+	private static final boolean DEFAULT_DATABASE_BLOB_COMPRESS = true;
 	private static final long DEFAULT_DATABASE_WIPE_PERIOD = 1000 * 60 * 60; // default to running once an hour
 	private static final long DEFAULT_DATABASE_WIPE_THRESHOLD = 1000 * 60 * 60 * 24 * 7; // default to wipe things over a week old
 	private static final String FILE_URI_PREFIX = "file://";
@@ -115,20 +124,39 @@ public class PostgresDatabase extends AbstractDatabase {
 			+ "RESPONSE TEXT, "
 			+ "RESPONSE_MIMETYPE VARCHAR(100))";
 
+	private static final String CREATE_BLOBS_TABLE_PSQL
+			= "CREATE TABLE RESULT_BLOBS ("
+			+ "REQUEST_ID VARCHAR(100) NOT NULL PRIMARY KEY, "
+			+ "CONTENT OID, "
+			+ "COMPRESSED BOOLEAN)";
+
+	private static final String INSERT_BLOB_STATEMENT = "INSERT INTO RESULT_BLOBS VALUES (?, ?, ?)";
+	private static final String SELECT_BLOB_STATEMENT = "SELECT CONTENT, COMPRESSED FROM RESULT_BLOBS WHERE REQUEST_ID = (?)";
+	private static final String UNLINK_BLOBS_STATEMENT = "SELECT lo_unlink(CONTENT) FROM RESULT_BLOBS WHERE REQUEST_ID = ANY ( ? )";
+	private static final String DELETE_BLOBS_STATEMENT = "DELETE FROM RESULT_BLOBS WHERE REQUEST_ID = ANY ( ? )";
+	private static final int BLOB_STATEMENT_REQUEST_ID_PARAM_INDEX = 1;
+	private static final int BLOB_STATEMENT_CONTENT_PARAM_INDEX = 2;
+	private static final int BLOB_STATEMENT_COMPRESSED_PARAM_INDEX = 3;
+	private static final int SELECT_BLOB_CONTENT_COLUMN_INDEX = 1;
+	private static final int SELECT_BLOB_COMPRESSED_COLUMN_INDEX = 2;
+
 	public static synchronized PostgresDatabase getInstance() {
 		if (instance == null) {
 			instance = new PostgresDatabase();
 		}
 		return instance;
 	}
-	protected final Object storeResponseSerialNumberLock = new Object();
 	private final String DATABASE_NAME;
+	private final boolean storeBlobs;
+	private final boolean compressBlobs;
 
 	private PostgresDatabase() {
 		PropertyUtil propertyUtil = new PropertyUtil(server.getDatabase().getPropertyArray(), KEY_DATABASE_ROOT);
 		String baseDirectoryPath = propertyUtil.extractString(KEY_DATABASE_PATH, DEFAULT_BASE_DIRECTORY);
 		String dbName = getDatabaseProperties(PROPERTY_NAME_DATABASE_NAME);
 		DATABASE_NAME = (null == dbName || "".equals(dbName.trim())) ? "wps" : dbName;
+		storeBlobs = SAVE_RESULTS_TO_DB && propertyUtil.extractBoolean(KEY_DATABASE_BLOB_ENABLED, DEFAULT_DATABASE_BLOB_ENABLED);
+		compressBlobs = propertyUtil.extractBoolean(KEY_DATABASE_BLOB_COMPRESS, DEFAULT_DATABASE_BLOB_COMPRESS);
 		try {
 			Class.forName("org.postgresql.Driver");
 			initializeBaseDirectory(baseDirectoryPath);
@@ -176,13 +204,13 @@ public class PostgresDatabase extends AbstractDatabase {
 			props.setProperty("create", "true");
 			props.setProperty("user", username);
 			props.setProperty("password", password);
-			connectionHandler = new DefaultConnectionHandler(connectionURL, props);
+			connectionHandler = createPooledConnectionHandler(new DefaultConnectionHandler(connectionURL, props));
 		}
 	}
 
 	private void initializeResultsTable() throws SQLException {
 		try (Connection connection = connectionHandler.getConnection();
-				ResultSet rs = getTables(connection)) {
+				ResultSet rs = getTables(connection, "results")) {
 			if (!rs.next()) {
 				LOGGER.debug("Table RESULTS does not yet exist, creating it.");
 				try (Statement st = connection.createStatement()) {
@@ -190,6 +218,17 @@ public class PostgresDatabase extends AbstractDatabase {
 				}
 			}
 		}
+		if (storeBlobs) {
+			try (Connection connection = connectionHandler.getConnection();
+					ResultSet rs = getTables(connection, "result_blobs")) {
+				if (!rs.next()) {
+					LOGGER.debug("Table RESULT_BLOBS does not yet exist, creating it.");
+					try (Statement st = connection.createStatement()) {
+						st.executeUpdate(CREATE_BLOBS_TABLE_PSQL);
+					}
+				}
+			}
+		}
 	}
 
 	@Override
@@ -206,8 +245,8 @@ public class PostgresDatabase extends AbstractDatabase {
 		}
 	}
 
-	private ResultSet getTables(Connection connection) throws SQLException {
-		return connection.getMetaData().getTables(null, null, "results", new String[]{"TABLE"});
+	private ResultSet getTables(Connection connection, String tableName) throws SQLException {
+		return connection.getMetaData().getTables(null, null, tableName, new String[]{"TABLE"});
 	}
 
 	@Override
@@ -222,48 +261,134 @@ public class PostgresDatabase extends AbstractDatabase {
 
 	@Override
 	protected String insertResultEntity(InputStream stream, String id, String type, String mimeType) {
+		if (storeBlobs) {
+			storeBlob(id, stream, type, mimeType);
+			return generateRetrieveResultURL(id);
+		}
 		boolean compressData = !SAVE_RESULTS_TO_DB;
 		boolean proceed = true;
 		String data = "";
-		synchronized (storeResponseSerialNumberLock) {
-			if (!SAVE_RESULTS_TO_DB) {
+		if (!SAVE_RESULTS_TO_DB) {
+			try {
+				// The result contents won't be saved to the database, 
+				// only a pointer to the file system. I am therefore
+				// going to GZip the data to save space
+				data = writeInputStreamToDisk(id, stream, compressData);
+			} catch (IOException ex) {
+				LOGGER.error("Failed to write output data to disk", ex);
+				proceed = false;
+			}
+		}
+
+		if (proceed) {
+			try (Connection connection = getConnection();
+					PreparedStatement insertStatement = connection.prepareStatement(insertionString)) {
+
+				insertStatement.setString(INSERT_COLUMN_REQUEST_ID, id);
+				insertStatement.setTimestamp(INSERT_COLUMN_REQUEST_DATE, new Timestamp(Calendar.getInstance().getTimeInMillis()));
+				insertStatement.setString(INSERT_COLUMN_RESPONSE_TYPE, type);
+				insertStatement.setString(INSERT_COLUMN_MIME_TYPE, mimeType);
+
+				if (SAVE_RESULTS_TO_DB) {
+					// This is implemented because we need to handle the case of SAVE_RESULTS_TO_DB = true. However,
+					// this should not be used if you expect results to be large, enable blob.enabled instead.
+					insertStatement.setString(INSERT_COLUMN_RESPONSE, IOUtils.toString(stream, DEFAULT_ENCODING));
+				} else {
+					insertStatement.setString(INSERT_COLUMN_RESPONSE, data);
+				}
+				insertStatement.executeUpdate();
+				LOGGER.debug(MessageFormat.format("Inserted data into database with id of:{0}, type of: {1}, mimetype of: {2}", id, type, mimeType));
+			} catch (SQLException | IOException ex) {
+				LOGGER.error(MessageFormat.format("Failed to insert data into database with  id of:{0}, type of: {1}, mimetype of: {2}", id, type, mimeType), ex);
+			}
+		}
+		return generateRetrieveResultURL(id);
+	}
+
+	/**
+	 * Streams the data into a large object, so that the memory used does not
+	 * depend on the size of the data. Compressed data is first gzipped to a
+	 * temporary file, so that standard gzip tools can read the large object.
+	 * 
+	 * @param type the type of a new result, <code>null</code> to update an
+	 *        existing result
+	 */
+	private void storeBlob(String id, InputStream stream, String type, String mimeType) {
+		Path compressedFile = null;
+		try {
+			if (compressBlobs) {
+				compressedFile = Files.createTempFile("wps-blob-", "." + SUFFIX_GZIP);
+				try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(compressedFile))) {
+					IOUtils.copyLarge(stream, os);
+				}
+				try (InputStream compressed = Files.newInputStream(compressedFile)) {
+					storeBlob(id, compressed, Files.size(compressedFile), type, mimeType);
+				}
+			} else {
+				storeBlob(id, stream, -1, type, mimeType);
+			}
+		} catch (IOException ex) {
+			LOGGER.error(MessageFormat.format("Failed to compress large object for id of:{0}", id), ex);
+		} finally {
+			if (compressedFile != null) {
 				try {
-					// The result contents won't be saved to the database, 
-					// only a pointer to the file system. I am therefore
-					// going to GZip the data to save space
-					data = writeInputStreamToDisk(id, stream, compressData);
+					Files.deleteIfExists(compressedFile);
 				} catch (IOException ex) {
-					LOGGER.error("Failed to write output data to disk", ex);
-					proceed = false;
+					LOGGER.warn("Could not delete temporary file " + compressedFile, ex);
 				}
 			}
+		}
+	}
 
-			if (proceed) {
-				try (Connection connection = getConnection();
-						PreparedStatement insertStatement = connection.prepareStatement(insertionString)) {
-
-					insertStatement.setString(INSERT_COLUMN_REQUEST_ID, id);
-					insertStatement.setTimestamp(INSERT_COLUMN_REQUEST_DATE, new Timestamp(Calendar.getInstance().getTimeInMillis()));
-					insertStatement.setString(INSERT_COLUMN_RESPONSE_TYPE, type);
-					insertStatement.setString(INSERT_COLUMN_MIME_TYPE, mimeType);
-
-					if (SAVE_RESULTS_TO_DB) {
-						// This is implemented because we need to handle the case of SAVE_RESULTS_TO_DB = true. However,
-						// this should not be used if you expect results to be large. 
-						// TODO- Remove and reimplement when setAsciiStream() has been properly implemented 
-						// @ https://github.com/pgjdbc/pgjdbc/blob/master/org/postgresql/jdbc4/AbstractJdbc4Statement.java
-						insertStatement.setString(INSERT_COLUMN_RESPONSE, IOUtils.toString(stream, DEFAULT_ENCODING));
+	private void storeBlob(String id, InputStream stream, long length, String type, String mimeType) {
+		try (Connection connection = getConnection()) {
+			connection.setAutoCommit(false);
+			try {
+				List<String> ids = Collections.singletonList(id);
+				deleteBlobs(connection, ids);
+				try (PreparedStatement blobStatement = connection.prepareStatement(INSERT_BLOB_STATEMENT)) {
+					blobStatement.setString(BLOB_STATEMENT_REQUEST_ID_PARAM_INDEX, id);
+					if (length < 0) {
+						blobStatement.setBlob(BLOB_STATEMENT_CONTENT_PARAM_INDEX, stream);
 					} else {
-						insertStatement.setString(INSERT_COLUMN_RESPONSE, data);
+						blobStatement.setBlob(BLOB_STATEMENT_CONTENT_PARAM_INDEX, stream, length);
 					}
-					insertStatement.executeUpdate();
-					LOGGER.debug(MessageFormat.format("Inserted data into database with id of:{0}, type of: {1}, mimetype of: {2}", id, type, mimeType));
-				} catch (SQLException | IOException ex) {
-					LOGGER.error(MessageFormat.format("Failed to insert data into database with  id of:{0}, type of: {1}, mimetype of: {2}", id, type, mimeType), ex);
+					blobStatement.setBoolean(BLOB_STATEMENT_COMPRESSED_PARAM_INDEX, compressBlobs);
+					blobStatement.executeUpdate();
 				}
+				if (type != null) {
+					try (PreparedStatement insertStatement = connection.prepareStatement(insertionString)) {
+						insertStatement.setString(INSERT_COLUMN_REQUEST_ID, id);
+						insertStatement.setTimestamp(INSERT_COLUMN_REQUEST_DATE, new Timestamp(Calendar.getInstance().getTimeInMillis()));
+						insertStatement.setString(INSERT_COLUMN_RESPONSE_TYPE, type);
+						insertStatement.setNull(INSERT_COLUMN_RESPONSE, Types.VARCHAR);
+						insertStatement.setString(INSERT_COLUMN_MIME_TYPE, mimeType);
+						insertStatement.executeUpdate();
+					}
+				}
+				connection.commit();
+				LOGGER.debug("Stored data as large object in database with id of: {}", id);
+			} catch (SQLException ex) {
+				connection.rollback();
+				throw ex;
+			} finally {
+				connection.setAutoCommit(true);
 			}
+		} catch (SQLException ex) {
+			LOGGER.error(MessageFormat.format("Failed to store data as large object in database with id of:{0}", id), ex);
+		}
+	}
+
+	private static void deleteBlobs(Connection connection, List<String> ids) throws SQLException {
+		Array idArray = connection.createArrayOf("varchar", ids.toArray());
+		try (PreparedStatement unlinkStatement = connection.prepareStatement(UNLINK_BLOBS_STATEMENT)) {
+			unlinkStatement.setArray(1, idArray);
+			unlinkStatement.executeQuery().close();
+		}
+		try (PreparedStatement deleteStatement = connection.prepareStatement(DELETE_BLOBS_STATEMENT)) {
+			deleteStatement.setArray(1, idArray);
+			deleteStatement.executeUpdate();
 		}
-		return generateRetrieveResultURL(id);
 	}
 
 	/**
@@ -293,43 +418,42 @@ public class PostgresDatabase extends AbstractDatabase {
 
 	@Override
 	public void updateResponse(String id, InputStream stream) {
+		if (storeBlobs) {
+			storeBlob(id, stream, null, null);
+			return;
+		}
 		boolean compressData = !SAVE_RESULTS_TO_DB;
 		boolean proceed = true;
 		String data = "";
 
-		synchronized (storeResponseSerialNumberLock) {
-			if (!SAVE_RESULTS_TO_DB) {
-				try {
-					// The result contents won't be saved to the database, only a pointer to the file system. I am therefore
-					// going to GZip the data to save space
-					data = writeInputStreamToDisk(id, stream, compressData);
-				} catch (IOException ex) {
-					LOGGER.error("Failed to write output data to disk", ex);
-					proceed = false;
-				}
+		if (!SAVE_RESULTS_TO_DB) {
+			try {
+				// The result contents won't be saved to the database, only a pointer to the file system. I am therefore
+				// going to GZip the data to save space
+				data = writeInputStreamToDisk(id, stream, compressData);
+			} catch (IOException ex) {
+				LOGGER.error("Failed to write output data to disk", ex);
+				proceed = false;
 			}
+		}
 
-			if (proceed) {
-				try (Connection connection = getConnection();
-						PreparedStatement updateStatement = connection.prepareStatement(updateString)) {
-					updateStatement.setString(INSERT_COLUMN_REQUEST_ID, id);
-					updateStatement.setTimestamp(INSERT_COLUMN_REQUEST_DATE, new Timestamp(Calendar.getInstance().getTimeInMillis()));
-
-					if (SAVE_RESULTS_TO_DB) {
-						// This is implemented because we need to handle the case of SAVE_RESULTS_TO_DB = true. However,
-						// this should not be used if you expect results to be large. 
-						// TODO- Remove and reimplement when setAsciiStream() has been properly implemented 
-						// @ https://github.com/pgjdbc/pgjdbc/blob/master/org/postgresql/jdbc4/AbstractJdbc4Statement.java
-						updateStatement.setString(INSERT_COLUMN_RESPONSE, IOUtils.toString(stream, DEFAULT_ENCODING));
-					} else {
-						updateStatement.setString(INSERT_COLUMN_RESPONSE, data);
-					}
-					updateStatement.executeUpdate();
+		if (proceed) {
+			try (Connection connection = getConnection();
+					PreparedStatement updateStatement = connection.prepareStatement(updateString)) {
+				updateStatement.setString(UPDATE_COLUMN_REQUEST_ID, id);
 
-					LOGGER.debug("Updated data  into database with id of:" + id);
-				} catch (SQLException | IOException ex) {
-					LOGGER.error(MessageFormat.format("Failed to update data in database with  id of:{0}", id), ex);
+				if (SAVE_RESULTS_TO_DB) {
+					// This is implemented because we need to handle the case of SAVE_RESULTS_TO_DB = true. However,
+					// this should not be used if you expect results to be large, enable blob.enabled instead.
+					updateStatement.setString(UPDATE_COLUMN_RESPONSE, IOUtils.toString(stream, DEFAULT_ENCODING));
+				} else {
+					updateStatement.setString(UPDATE_COLUMN_RESPONSE, data);
 				}
+				updateStatement.executeUpdate();
+
+				LOGGER.debug("Updated data  into database with id of:" + id);
+			} catch (SQLException | IOException ex) {
+				LOGGER.error(MessageFormat.format("Failed to update data in database with  id of:{0}", id), ex);
 			}
 		}
 	}
@@ -337,66 +461,142 @@ public class PostgresDatabase extends AbstractDatabase {
 	@Override
 	public InputStream lookupResponse(String id) {
 		InputStream result = null;
-		synchronized (storeResponseSerialNumberLock) {
-			if (id != null && !"".equals(id.trim())) {
-				try (Connection connection = getConnection();
-						PreparedStatement selectStatement = connection.prepareStatement(selectionString)) {
-					selectStatement.setString(SELECTION_STRING_REQUEST_ID_PARAM_INDEX, id);
-
-					try (ResultSet rs = selectStatement.executeQuery()) {
-						if (null == rs || !rs.next()) {
-							LOGGER.warn("No response found for request id " + id);
-						} else {
-							result = rs.getAsciiStream(SELECTION_STRING_RESPONSE_COLUMN_INDEX);
-							// Copy the file to disk and create an inputstream from that because once I leave
-							// this function, result will not be accessible since the connection to the database 
-							// will be broken. I eat a bit of overhead this way, but afaik, it's the best solution
-							File tempFile = Files.createTempFile("SAFE-TO-DELETE-" + id, null).toFile();
-
-							// Best effort, even though SelfCleaningFileInputStream should delete it
-							tempFile.deleteOnExit();
-
-							// Copy the ASCII stream to file
-							IOUtils.copyLarge(result, new FileOutputStream(tempFile));
-							IOUtils.closeQuietly(result);
+		if (id != null && !"".equals(id.trim())) {
+			if (storeBlobs) {
+				result = lookupBlob(id);
+				if (result != null) {
+					return result;
+				}
+			}
+			try (Connection connection = getConnection();
+					PreparedStatement selectStatement = connection.prepareStatement(selectionString)) {
+				selectStatement.setString(SELECTION_STRING_REQUEST_ID_PARAM_INDEX, id);
 
-							// Create an InputStream (of the self-cleaning type) from this File and pass that on
-							result = new SelfCleaningFileInputStream(tempFile);
+				try (ResultSet rs = selectStatement.executeQuery()) {
+					if (null == rs || !rs.next()) {
+						LOGGER.warn("No response found for request id " + id);
+					} else {
+						result = rs.getAsciiStream(SELECTION_STRING_RESPONSE_COLUMN_INDEX);
+						// Copy the file to disk and create an inputstream from that because once I leave
+						// this function, result will not be accessible since the connection to the database 
+						// will be broken. I eat a bit of overhead this way, but afaik, it's the best solution
+						File tempFile = Files.createTempFile("SAFE-TO-DELETE-" + id, null).toFile();
+
+						// Best effort, even though SelfCleaningFileInputStream should delete it
+						tempFile.deleteOnExit();
+
+						// Copy the ASCII stream to file
+						try (OutputStream out = new FileOutputStream(tempFile)) {
+							IOUtils.copyLarge(result, out);
 						}
-					} catch (IOException ex) {
-						LOGGER.error("Could not look up response in database", ex);
+						IOUtils.closeQuietly(result);
+
+						// Create an InputStream (of the self-cleaning type) from this File and pass that on
+						result = new SelfCleaningFileInputStream(tempFile);
 					}
-				} catch (SQLException ex) {
+				} catch (IOException ex) {
 					LOGGER.error("Could not look up response in database", ex);
 				}
+			} catch (SQLException ex) {
+				LOGGER.error("Could not look up response in database", ex);
+			}
 
-				if (null != result) {
-					if (!SAVE_RESULTS_TO_DB) {
-						try {
-							String outputFileLocation = IOUtils.toString(result);
-							LOGGER.debug("ID {} is output and saved to disk instead of database. Path = " + outputFileLocation);
-							if (Files.exists(Paths.get(outputFileLocation))) {
-								result = new GZIPInputStream(new FileInputStream(outputFileLocation));
-							} else {
-								LOGGER.warn("Response not found on disk for id " + id + " at " + outputFileLocation);
-							}
-						} catch (FileNotFoundException ex) {
-							LOGGER.warn("Response not found on disk for id " + id, ex);
-						} catch (IOException ex) {
-							LOGGER.warn("Error processing response for id " + id, ex);
+			if (null != result) {
+				if (!SAVE_RESULTS_TO_DB) {
+					try {
+						String outputFileLocation = IOUtils.toString(result);
+						LOGGER.debug("ID {} is output and saved to disk instead of database. Path = " + outputFileLocation);
+						if (Files.exists(Paths.get(outputFileLocation))) {
+							result = new GZIPInputStream(new FileInputStream(outputFileLocation));
+						} else {
+							LOGGER.warn("Response not found on disk for id " + id + " at " + outputFileLocation);
 						}
+					} catch (FileNotFoundException ex) {
+						LOGGER.warn("Response not found on disk for id " + id, ex);
+					} catch (IOException ex) {
+						LOGGER.warn("Error processing response for id " + id, ex);
 					}
-				} else {
-					LOGGER.warn("response found but returned null");
 				}
-
 			} else {
-				LOGGER.warn("tried to look up response for null id, returned null");
+				LOGGER.warn("response found but returned null");
 			}
+
+		} else {
+			LOGGER.warn("tried to look up response for null id, returned null");
 		}
 		return result;
 	}
 
+	/**
+	 * Opens the large object of a response. The returned stream reads the
+	 * large object directly and keeps the connection until it is closed.
+	 *
+	 * @return the response, or <code>null</code> if it is not stored as large
+	 *         object
+	 */
+	private InputStream lookupBlob(String id) {
+		Connection connection = null;
+		PreparedStatement selectStatement = null;
+		ResultSet rs = null;
+		try {
+			connection = getConnection();
+			// large objects can only be accessed within a transaction
+			connection.setAutoCommit(false);
+			selectStatement = connection.prepareStatement(SELECT_BLOB_STATEMENT);
+			selectStatement.setString(BLOB_STATEMENT_REQUEST_ID_PARAM_INDEX, id);
+			rs = selectStatement.executeQuery();
+			if (rs.next()) {
+				Blob blob = rs.getBlob(SELECT_BLOB_CONTENT_COLUMN_INDEX);
+				boolean compressed = rs.getBoolean(SELECT_BLOB_COMPRESSED_COLUMN_INDEX);
+				InputStream content = new ConnectionBoundInputStream(blob.getBinaryStream(), rs, selectStatement, connection);
+				return compressed ? new GZIPInputStream(content) : content;
+			}
+		} catch (SQLException | IOException | RuntimeException ex) {
+			LOGGER.error("Could not look up large object in database", ex);
+		}
+		closeQuietly(rs, selectStatement, connection);
+		return null;
+	}
+
+	private static void closeQuietly(AutoCloseable... resources) {
+		for (AutoCloseable resource : resources) {
+			if (resource != null) {
+				try {
+					if (resource instanceof Connection) {
+						((Connection) resource).rollback();
+						((Connection) resource).setAutoCommit(true);
+					}
+					resource.close();
+				} catch (Exception ex) {
+					LOGGER.debug("Could not close database resource", ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Releases the database resources of a streamed large object once the
+	 * stream is closed.
+	 */
+	private static class ConnectionBoundInputStream extends FilterInputStream {
+
+		private final AutoCloseable[] resources;
+
+		ConnectionBoundInputStream(InputStream content, AutoCloseable... resources) {
+			super(content);
+			this.resources = resources;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				closeQuietly(resources);
+			}
+		}
+	}
+
 	@Override
 	public String getMimeTypeForStoreResponse(String id) {
 		String mimeType = null;
@@ -418,13 +618,11 @@ public class PostgresDatabase extends AbstractDatabase {
 	@Override
 	public File lookupResponseAsFile(String id) {
 		if (!SAVE_RESULTS_TO_DB) {
-			synchronized (storeResponseSerialNumberLock) {
-				try {
-					String outputFileLocation = IOUtils.toString(lookupResponse(id));
-					return new File(new URI(outputFileLocation));
-				} catch (URISyntaxException | IOException ex) {
-					LOGGER.warn("Could not get file location for response file for id " + id, ex);
-				}
+			try {
+				String outputFileLocation = IOUtils.toString(lookupResponse(id));
+				return new File(new URI(outputFileLocation));
+			} catch (URISyntaxException | IOException ex) {
+				LOGGER.warn("Could not get file location for response file for id " + id, ex);
 			}
 		}
 		LOGGER.warn("requested response as file for a response stored in the database, returning null");
@@ -481,6 +679,11 @@ public class PostgresDatabase extends AbstractDatabase {
 
 		private int deleteRecords(List<String> recordIds) throws SQLException {
 			int deletedRecordsCount;
+			if (storeBlobs) {
+				try (Connection connection = connectionHandler.getConnection()) {
+					deleteBlobs(connection, recordIds);
+				}
+			}
 			try (Connection connection = connectionHandler.getConnection(); PreparedStatement deleteStatement = connection.prepareStatement(DELETE_STATEMENT)) {
 				deleteStatement.setArray(DELETE_STATEMENT_LIST_PARAM_INDEX, connection.createArrayOf("varchar", recordIds.toArray()));
 				deletedRecordsCount = deleteStatement.executeUpdate();
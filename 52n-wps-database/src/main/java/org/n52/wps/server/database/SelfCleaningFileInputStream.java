@@ -45,10 +45,11 @@ import org.slf4j.LoggerFactory;
 public class SelfCleaningFileInputStream extends FileInputStream {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(SelfCleaningFileInputStream.class);
-	private File file;
+	private final File file;
 
 	public SelfCleaningFileInputStream(File file) throws FileNotFoundException {
 		super(file);
+		this.file = file;
 	}
 
 	@Override
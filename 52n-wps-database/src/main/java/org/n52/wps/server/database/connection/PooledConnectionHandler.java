@@ -0,0 +1,224 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.database.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a bounded pool of connections obtained from another
+ * {@link ConnectionHandler}. Closing a connection returned by
+ * {@link #getConnection()} hands it back to the pool instead of closing it,
+ * so callers simply use try-with-resources.
+ */
+public class PooledConnectionHandler implements ConnectionHandler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PooledConnectionHandler.class);
+
+	/** Idle connections older than this are validated before they are reused. */
+	private static final long VALIDATION_INTERVAL_MILLIS = 30 * 1000;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+	private final ConnectionHandler delegate;
+	private final Semaphore permits;
+	private final long timeoutMillis;
+	private final BlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<IdleConnection>();
+	private volatile boolean closed;
+
+	/**
+	 * @param delegate creates the physical connections
+	 * @param maxConnections the maximum number of connections in use at the same time
+	 * @param timeoutMillis the time to wait for a free connection
+	 */
+	public PooledConnectionHandler(ConnectionHandler delegate, int maxConnections, long timeoutMillis) {
+		this.delegate = delegate;
+		this.permits = new Semaphore(maxConnections, true);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool has been closed");
+		}
+		try {
+			if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				throw new SQLException("Timed out waiting for a database connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+		try {
+			IdleConnection idle;
+			while ((idle = idleConnections.pollFirst()) != null) {
+				if (isUsable(idle)) {
+					return wrap(idle.connection);
+				}
+				closeQuietly(idle.connection);
+			}
+			return wrap(delegate.getConnection());
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes all idle connections. Connections in use are closed when they
+	 * are returned.
+	 */
+	public void close() {
+		closed = true;
+		IdleConnection idle;
+		while ((idle = idleConnections.pollFirst()) != null) {
+			closeQuietly(idle.connection);
+		}
+	}
+
+	/**
+	 * @return the number of connections that can be handed out without waiting
+	 */
+	public int getAvailableConnections() {
+		return permits.availablePermits();
+	}
+
+	public int getIdleConnections() {
+		return idleConnections.size();
+	}
+
+	private boolean isUsable(IdleConnection idle) {
+		try {
+			if (idle.connection.isClosed()) {
+				return false;
+			}
+			if (System.currentTimeMillis() - idle.since > VALIDATION_INTERVAL_MILLIS) {
+				return idle.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void release(Connection connection) {
+		try {
+			if (closed || connection.isClosed()) {
+				closeQuietly(connection);
+				return;
+			}
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			idleConnections.offerFirst(new IdleConnection(connection));
+		} catch (SQLException e) {
+			LOGGER.warn("Discarding database connection that could not be reset", e);
+			closeQuietly(connection);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private Connection wrap(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[]{Connection.class}, new PooledConnection(connection));
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			LOGGER.debug("Could not close database connection", e);
+		}
+	}
+
+	private static class IdleConnection {
+
+		private final Connection connection;
+		private final long since = System.currentTimeMillis();
+
+		IdleConnection(Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	/**
+	 * Returns the connection to the pool on close and refuses any further use.
+	 */
+	private class PooledConnection implements InvocationHandler {
+
+		private final Connection connection;
+		private boolean released;
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("close".equals(name) && method.getParameterTypes().length == 0) {
+				if (!released) {
+					released = true;
+					release(connection);
+				}
+				return null;
+			}
+			if ("isClosed".equals(name) && method.getParameterTypes().length == 0) {
+				return released || connection.isClosed();
+			}
+			if ("equals".equals(name) && method.getParameterTypes().length == 1) {
+				return proxy == args[0];
+			}
+			if ("hashCode".equals(name) && method.getParameterTypes().length == 0) {
+				return System.identityHashCode(proxy);
+			}
+			if (released) {
+				throw new SQLException("Connection has already been returned to the pool");
+			}
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
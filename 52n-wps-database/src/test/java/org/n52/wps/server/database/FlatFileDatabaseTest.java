@@ -0,0 +1,118 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlatFileDatabaseTest {
+
+    private File baseDirectory;
+
+    private FlatFileDatabase database;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDirectory = File.createTempFile("wps-results", "");
+        baseDirectory.delete();
+        baseDirectory.mkdirs();
+        database = new FlatFileDatabase(baseDirectory, true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(baseDirectory);
+    }
+
+    @Test
+    public void testLookupResponseStoredUnsharded() throws IOException {
+        File responseDirectory = new File(baseDirectory, "response-id");
+        responseDirectory.mkdirs();
+        FileUtils.writeStringToFile(new File(responseDirectory, "request.xml"), "<request/>");
+        FileUtils.writeStringToFile(new File(responseDirectory, "0.xml"), "<started/>");
+        FileUtils.writeStringToFile(new File(responseDirectory, "1.xml"), "<succeeded/>");
+
+        assertEquals("text/xml", database.getMimeTypeForStoreResponse("response-id"));
+        assertEquals(new File(responseDirectory, "1.xml"), database.lookupResponseAsFile("response-id"));
+        assertEquals(new File(responseDirectory, "request.xml"), database.lookupRequestAsFile("response-id"));
+        assertEquals("<succeeded/>".length(), database.getContentLengthForStoreResponse("response-id"));
+        assertEquals("<succeeded/>", read(database.lookupResponse("response-id")));
+    }
+
+    @Test
+    public void testLookupComplexValueStoredUnsharded() throws IOException {
+        FileUtils.writeStringToFile(new File(baseDirectory, "output-id.txt"), "value");
+        FileUtils.writeStringToFile(new File(baseDirectory, "output-id.mime-type"), "text/plain");
+        FileUtils.writeStringToFile(new File(baseDirectory, "output-id.content-length"), "5");
+
+        assertEquals("text/plain", database.getMimeTypeForStoreResponse("output-id"));
+        assertEquals(5, database.getContentLengthForStoreResponse("output-id"));
+        assertEquals(new File(baseDirectory, "output-id.txt"), database.lookupResponseAsFile("output-id"));
+        assertEquals("value", read(database.lookupResponse("output-id")));
+    }
+
+    @Test
+    public void testShardedResultTakesPrecedence() throws IOException {
+        FileUtils.writeStringToFile(new File(new File(baseDirectory, "response-id"), "0.xml"), "<old/>");
+
+        database.storeResponse("response-id", IOUtils.toInputStream("<new/>"));
+
+        assertNotNull(database.lookupResponseAsFile("response-id"));
+        assertTrue(read(database.lookupResponse("response-id")).contains("<new"));
+    }
+
+    @Test
+    public void testLookupMissingResult() {
+        assertNull(database.getMimeTypeForStoreResponse("missing-id"));
+        assertNull(database.lookupResponseAsFile("missing-id"));
+        assertNull(database.lookupRequestAsFile("missing-id"));
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        assertNotNull(inputStream);
+        try {
+            return IOUtils.toString(inputStream);
+        }
+        finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.database.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledConnectionHandlerTest {
+
+    private AtomicInteger opened;
+    private AtomicInteger closed;
+    private ConnectionHandler delegate;
+
+    @Before
+    public void setUp() {
+        opened = new AtomicInteger();
+        closed = new AtomicInteger();
+        delegate = new ConnectionHandler() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                opened.incrementAndGet();
+                return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                        new Class<?>[]{Connection.class}, new InvocationHandler() {
+                    private boolean isClosed;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "close":
+                                isClosed = true;
+                                closed.incrementAndGet();
+                                return null;
+                            case "isClosed":
+                                return isClosed;
+                            case "isValid":
+                            case "getAutoCommit":
+                                return true;
+                            default:
+                                return null;
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws SQLException {
+        PooledConnectionHandler pool = new PooledConnectionHandler(delegate, 2, 100);
+
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.isClosed());
+        }
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.isClosed());
+        }
+
+        assertEquals(1, opened.get());
+        assertEquals(0, closed.get());
+        assertEquals(1, pool.getIdleConnections());
+        assertEquals(2, pool.getAvailableConnections());
+    }
+
+    @Test
+    public void testReleasedConnectionCannotBeUsed() throws SQLException {
+        PooledConnectionHandler pool = new PooledConnectionHandler(delegate, 1, 100);
+
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        assertEquals(1, pool.getAvailableConnections());
+        try {
+            connection.createStatement();
+            fail("released connection must not be usable");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPoolIsBounded() throws SQLException {
+        PooledConnectionHandler pool = new PooledConnectionHandler(delegate, 1, 10);
+
+        try (Connection connection = pool.getConnection()) {
+            pool.getConnection();
+            fail("pool must not hand out more connections than its size");
+        } catch (SQLException e) {
+            // expected
+        }
+        assertEquals(1, pool.getAvailableConnections());
+    }
+
+    @Test
+    public void testCloseClosesIdleConnections() throws SQLException {
+        PooledConnectionHandler pool = new PooledConnectionHandler(delegate, 2, 100);
+
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        first.close();
+        pool.close();
+        second.close();
+
+        assertEquals(2, closed.get());
+        assertEquals(0, pool.getIdleConnections());
+    }
+}
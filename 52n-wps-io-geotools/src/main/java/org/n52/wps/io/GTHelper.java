@@ -450,12 +450,8 @@ public class GTHelper {
 
 		public static String storeSchema(String schema, String uuid) throws IOException {
 			
-			String domain = WPSConfig.class.getProtectionDomain().getCodeSource().getLocation().getFile();
-			
-			domain = URLDecoder.decode(domain, "UTF-8");
-			
-			int startIndex = domain.indexOf("WEB-INF");
-			if(startIndex<0){
+			String baseDir = getSchemaDirectory();
+			if(baseDir == null){
 				//not running as webapp				
 				File f = File.createTempFile(uuid, ".xsd");
 				f.deleteOnExit();
@@ -465,10 +461,6 @@ public class GTHelper {
 				writer.close();
 				return "file:"+f.getAbsolutePath();
 			}else{
-				domain = domain.substring(0,startIndex);			
-				String baseDirLocation = domain;
-			
-				String baseDir = baseDirLocation +  "schemas" + File.separator;
 				File folder = new File(baseDir);
 				if(!folder.exists()){
 					folder.mkdirs();
@@ -484,6 +476,49 @@ public class GTHelper {
 			}
 		}
 		
+		/**
+		 * Maps the URL of a schema stored by {@link #storeSchema(String, String)}
+		 * to the stored file, so it does not have to be fetched from this server.
+		 * 
+		 * @param schemaLocation the schema URL
+		 * @return the file URL of the stored schema, or <code>null</code> if the schema was not stored here
+		 */
+		public static String getStoredSchemaLocation(String schemaLocation) {
+			String prefix = WPSConfig.getServerBaseURL()+"/schemas/";
+			if(schemaLocation == null || !schemaLocation.startsWith(prefix)){
+				return null;
+			}
+			String name = schemaLocation.substring(prefix.length());
+			if(name.contains("/") || name.contains("\\") || name.contains("..")){
+				return null;
+			}
+			try {
+				String baseDir = getSchemaDirectory();
+				if(baseDir != null){
+					File f = new File(baseDir + name);
+					if(f.isFile()){
+						return f.toURI().toString();
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.debug("Could not determine schema directory", e);
+			}
+			return null;
+		}
+		
+		private static String getSchemaDirectory() throws IOException {
+			
+			String domain = WPSConfig.class.getProtectionDomain().getCodeSource().getLocation().getFile();
+			
+			domain = URLDecoder.decode(domain, "UTF-8");
+			
+			int startIndex = domain.indexOf("WEB-INF");
+			if(startIndex<0){
+				return null;
+			}
+			return domain.substring(0,startIndex) +  "schemas" + File.separator;
+		}
+		
 		private static CoordinateReferenceSystem getDefaultCRS(){
 
 			try {
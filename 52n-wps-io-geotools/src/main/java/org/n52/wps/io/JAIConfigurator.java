@@ -0,0 +1,103 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import javax.media.jai.JAI;
+import javax.media.jai.TileScheduler;
+
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the memory budget of the JAI tile cache and the number of threads
+ * of the JAI tile scheduler from the server configuration to the default JAI
+ * instance. Raster processes and generators call {@link #configure()} before
+ * they build or write images; the settings are applied once.
+ *
+ * Server properties:
+ * <ul>
+ * <li><code>jai.tileCache.memory</code>: memory of the tile cache in bytes
+ * (default: 268435456)</li>
+ * <li><code>jai.tileScheduler.parallelism</code>: number of threads computing
+ * tiles (default: number of available processors)</li>
+ * </ul>
+ */
+public class JAIConfigurator {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(JAIConfigurator.class);
+
+	private static final String KEY_IO_ROOT = "org.n52.wps.io";
+	private static final String KEY_TILE_CACHE_MEMORY = "jai.tileCache.memory";
+	private static final String KEY_TILE_SCHEDULER_PARALLELISM = "jai.tileScheduler.parallelism";
+	private static final long DEFAULT_TILE_CACHE_MEMORY = 256 * 1024 * 1024;
+
+	private static boolean configured;
+
+	private JAIConfigurator() {
+	}
+
+	public static synchronized void configure() {
+		if (configured) {
+			return;
+		}
+		PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer(), KEY_IO_ROOT);
+		long memory = propertyUtil.extractLong(KEY_TILE_CACHE_MEMORY, DEFAULT_TILE_CACHE_MEMORY);
+		int parallelism = (int) propertyUtil.extractLong(KEY_TILE_SCHEDULER_PARALLELISM, Runtime.getRuntime()
+				.availableProcessors());
+
+		JAI jai = JAI.getDefaultInstance();
+		jai.getTileCache().setMemoryCapacity(memory);
+		TileScheduler scheduler = jai.getTileScheduler();
+		scheduler.setParallelism(Math.max(parallelism, 1));
+		scheduler.setPrefetchParallelism(Math.max(parallelism, 1));
+		LOGGER.info("JAI tile cache set to {} bytes, tile scheduler to {} threads", memory, parallelism);
+		configured = true;
+	}
+}
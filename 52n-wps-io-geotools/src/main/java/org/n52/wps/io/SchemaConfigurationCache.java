@@ -0,0 +1,282 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.gml2.SrsSyntax;
+import org.geotools.gml3.ApplicationSchemaConfiguration;
+import org.geotools.gml3.GMLConfiguration;
+import org.geotools.xml.Configuration;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide cache of application schema configurations. Resolving and
+ * parsing an application schema (often a DescribeFeatureType request) is a
+ * fixed cost of every GML parser and generator call; the configurations are
+ * therefore kept per namespace and schema location and shared, a new Parser
+ * or Encoder is still created for every request.
+ *
+ * Schemas stored by this server (see GTHelper) and schemas available in a
+ * local mirror directory are read from the file system. The mirror is laid
+ * out by host and path, e.g.
+ * <code>schemas.opengis.net/gml/3.1.1/base/feature.xsd</code>.
+ *
+ * The cache is configured with the following server properties:
+ * <ul>
+ * <li><code>schema.cache.ttl</code>: time after which a configuration is
+ * resolved again, as ISO 8601 period (default: PT1H)</li>
+ * <li><code>schema.cache.maxEntries</code>: maximum number of cached
+ * configurations, 0 disables the cache (default: 100)</li>
+ * <li><code>schema.mirror.directory</code>: local directory with mirrored
+ * schemas (default: none)</li>
+ * </ul>
+ */
+public class SchemaConfigurationCache {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(SchemaConfigurationCache.class);
+
+	private static final String KEY_IO_ROOT = "org.n52.wps.io";
+	private static final String KEY_TTL = "schema.cache.ttl";
+	private static final String KEY_MAX_ENTRIES = "schema.cache.maxEntries";
+	private static final String KEY_MIRROR_DIRECTORY = "schema.mirror.directory";
+	private static final long DEFAULT_TTL = 60 * 60 * 1000;
+	private static final long DEFAULT_MAX_ENTRIES = 100;
+
+	private static SchemaConfigurationCache instance;
+
+	private final long ttl;
+	private final long maxEntries;
+	private final File mirrorDirectory;
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public static synchronized SchemaConfigurationCache getInstance() {
+		if (instance == null) {
+			PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer(), KEY_IO_ROOT);
+			String mirror = propertyUtil.extractString(KEY_MIRROR_DIRECTORY, null);
+			instance = new SchemaConfigurationCache(
+					propertyUtil.extractPeriodAsMillis(KEY_TTL, DEFAULT_TTL),
+					propertyUtil.extractLong(KEY_MAX_ENTRIES, DEFAULT_MAX_ENTRIES),
+					mirror == null || mirror.trim().isEmpty() ? null : new File(mirror.trim()));
+		}
+		return instance;
+	}
+
+	SchemaConfigurationCache(long ttl, long maxEntries, File mirrorDirectory) {
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+		if (mirrorDirectory != null && !mirrorDirectory.isDirectory()) {
+			LOGGER.warn("Schema mirror directory {} does not exist, schemas are resolved online", mirrorDirectory);
+			mirrorDirectory = null;
+		}
+		this.mirrorDirectory = mirrorDirectory;
+	}
+
+	/**
+	 * Returns the configuration for an application schema.
+	 *
+	 * @param namespace
+	 *            the target namespace of the schema
+	 * @param schemaLocation
+	 *            the location of the schema
+	 * @return a cached or newly created ApplicationSchemaConfiguration
+	 */
+	public Configuration getConfiguration(String namespace, String schemaLocation) {
+		return getConfiguration(namespace, schemaLocation, null);
+	}
+
+	/**
+	 * Returns the configuration for an application schema, encoding
+	 * coordinate reference systems with the given syntax.
+	 *
+	 * @param namespace
+	 *            the target namespace of the schema
+	 * @param schemaLocation
+	 *            the location of the schema
+	 * @param srsSyntax
+	 *            the syntax of srsName attributes, <code>null</code> for the
+	 *            default
+	 * @return a cached or newly created ApplicationSchemaConfiguration
+	 */
+	public Configuration getConfiguration(String namespace, String schemaLocation, SrsSyntax srsSyntax) {
+		String key = namespace + ' ' + schemaLocation + ' ' + srsSyntax;
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.expires > now) {
+				hits.incrementAndGet();
+				return entry.configuration;
+			}
+		}
+		misses.incrementAndGet();
+		LOGGER.debug("Schema configuration cache miss for {} ({} hits, {} misses)", new Object[] { key, hits.get(),
+				misses.get() });
+
+		// create outside of the lock, concurrent misses of the same key
+		// only cost a second (lazily resolved) configuration
+		Configuration configuration = createConfiguration(namespace, schemaLocation, srsSyntax);
+		if (maxEntries > 0) {
+			synchronized (this) {
+				entries.put(key, new Entry(configuration, now + ttl));
+				evict(now);
+			}
+		}
+		return configuration;
+	}
+
+	/**
+	 * Creates a configuration without caching it, for schemas that are used
+	 * only once. The schema is still read from a local copy if possible.
+	 *
+	 * @param namespace
+	 *            the target namespace of the schema
+	 * @param schemaLocation
+	 *            the location of the schema
+	 * @param srsSyntax
+	 *            the syntax of srsName attributes, <code>null</code> for the
+	 *            default
+	 * @return a new ApplicationSchemaConfiguration
+	 */
+	public Configuration createConfiguration(String namespace, String schemaLocation, SrsSyntax srsSyntax) {
+		ApplicationSchemaConfiguration configuration = new ApplicationSchemaConfiguration(namespace,
+				resolveSchemaLocation(schemaLocation));
+		if (srsSyntax != null) {
+			configuration.getDependency(GMLConfiguration.class).setSrsSyntax(srsSyntax);
+		}
+		return configuration;
+	}
+
+	/**
+	 * Maps a schema location to a local copy: a schema stored by this server
+	 * or a copy in the mirror directory.
+	 *
+	 * @param schemaLocation
+	 *            an URL or file path
+	 * @return the URL of the local copy, or the schema location
+	 */
+	public String resolveSchemaLocation(String schemaLocation) {
+		String stored = GTHelper.getStoredSchemaLocation(schemaLocation);
+		if (stored != null) {
+			return stored;
+		}
+		if (mirrorDirectory == null || schemaLocation == null
+				|| !(schemaLocation.startsWith("http://") || schemaLocation.startsWith("https://"))) {
+			return schemaLocation;
+		}
+		try {
+			URL url = new URL(schemaLocation);
+			if (url.getQuery() == null && !url.getPath().contains("..")) {
+				File mirrored = new File(new File(mirrorDirectory, url.getHost()), url.getPath());
+				if (mirrored.isFile()) {
+					LOGGER.debug("Using mirrored schema {} for {}", mirrored, schemaLocation);
+					return mirrored.toURI().toString();
+				}
+			}
+		} catch (MalformedURLException e) {
+			LOGGER.debug("Not mirroring invalid schema location {}", schemaLocation);
+		}
+		return schemaLocation;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	private void evict(long now) {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entries.size() > maxEntries || entry.expires <= now) {
+				iterator.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private static class Entry {
+
+		private final Configuration configuration;
+
+		private final long expires;
+
+		Entry(Configuration configuration, long expires) {
+			this.configuration = configuration;
+			this.expires = expires;
+		}
+	}
+}
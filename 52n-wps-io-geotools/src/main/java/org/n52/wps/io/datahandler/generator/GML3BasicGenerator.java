@@ -47,6 +47,7 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -54,7 +55,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 
 import javax.xml.namespace.QName;
@@ -65,13 +67,15 @@ import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.collection.AbstractFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.gml2.SrsSyntax;
-import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.gml3.GMLConfiguration;
 import org.geotools.xml.Configuration;
 import org.n52.wps.PropertyDocument.Property;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.io.GTHelper;
+import org.n52.wps.io.SchemaConfigurationCache;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
@@ -132,17 +136,15 @@ public class GML3BasicGenerator extends AbstractGenerator {
            
         }else{
         	
-        	configuration = new ApplicationSchemaConfiguration(namespace, schemaLocation);
-        	if(srsSyntax != null){
-        	((org.geotools.gml3.ApplicationSchemaConfiguration)configuration).getDependency(org.geotools.gml3.GMLConfiguration.class).setSrsSyntax(srsSyntax);    
-        	}
+        	// the feature type and its schema are generated for every output,
+        	// so the configuration is not worth caching
+        	configuration = SchemaConfigurationCache.getInstance().createConfiguration(namespace, schemaLocation, srsSyntax);
             encoder = new org.geotools.xml.Encoder(configuration );
             encoder.setNamespaceAware(true);
             encoder.setSchemaLocation("http://www.opengis.net/gml http://schemas.opengis.net/gml/3.1.1/base/feature.xsd", namespace + " " + schemaLocation);
                       
         }
         	
-        fc.features().close();
         //use the gml namespace with the FeatureCollection element to start parsing the collection
         QName ns = new QName("http://www.opengis.net/gml","FeatureCollection","wfs");
         try{
@@ -154,48 +156,166 @@ public class GML3BasicGenerator extends AbstractGenerator {
 		
 	}
 
+	/**
+	 * Encodes the collection to a temporary file. Features are converted one
+	 * at a time while they are encoded, so the collection is not copied in
+	 * memory.
+	 */
 	@Override
 	public InputStream generateStream(final IData data, String mimeType, String schema) throws IOException {
 		String uuid = UUID.randomUUID().toString();
 		File file = File.createTempFile("gml3"+uuid, ".xml");
-		FileOutputStream outputStream = new FileOutputStream(file);
-		this.writeToStream(data, outputStream);
-		outputStream.flush();
-		outputStream.close();
+		finalizeFiles.add(file);
+		OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			this.writeToStream(data, outputStream);
+		} finally {
+			outputStream.close();
+		}
 		if(file.length() <= 0) {
 			return null;
 		}
-		FileInputStream inputStream = new FileInputStream(file);
-		
-		return inputStream;
+		return new FileInputStream(file);
 		
 	}
 
+	/**
+	 * Returns a view of the collection with features of a newly generated
+	 * feature type. Only the first feature is read here to derive the type,
+	 * all features are rewritten one at a time while the view is iterated.
+	 */
 	private SimpleFeatureCollection createCorrectFeatureCollection(FeatureCollection<?,?> fc) {
 		
-		List<SimpleFeature> simpleFeatureList = new ArrayList<SimpleFeature>();
 		SimpleFeatureType featureType = null;
 		FeatureIterator<?> iterator = fc.features();
-		String uuid = UUID.randomUUID().toString();
-		int i = 0;
-		while(iterator.hasNext()){
-			SimpleFeature feature = (SimpleFeature) iterator.next();
-		
-			if(i==0){
+		try {
+			if(iterator.hasNext()){
+				SimpleFeature feature = (SimpleFeature) iterator.next();
+				String uuid = UUID.randomUUID().toString();
 				featureType = GTHelper.createFeatureType(feature.getProperties(), (Geometry)feature.getDefaultGeometry(), uuid, feature.getFeatureType().getCoordinateReferenceSystem());
 				QName qname = GTHelper.createGML3SchemaForFeatureType(featureType);
 				SchemaRepository.registerSchemaLocation(qname.getNamespaceURI(), qname.getLocalPart());
 			}
-			SimpleFeature resultFeature = GTHelper.createFeature("ID"+i, (Geometry)feature.getDefaultGeometry(), featureType, feature.getProperties());
-		
-			simpleFeatureList.add(resultFeature);
-			i++;
+		} finally {
+			iterator.close();
 		}
-		iterator.close();
-		
-		ListFeatureCollection resultFeatureCollection = new ListFeatureCollection(featureType, simpleFeatureList);
-		return resultFeatureCollection;
+		if(featureType == null){
+			return new ListFeatureCollection(featureType, new ArrayList<SimpleFeature>());
+		}
+		return new RetypedFeatureCollection(fc, featureType);
 		
 	}
 
+	/**
+	 * Read only view of a feature collection that converts the features of
+	 * the source to the generated feature type while iterating.
+	 */
+	private static class RetypedFeatureCollection extends AbstractFeatureCollection {
+
+		private final FeatureCollection<?,?> source;
+
+		private int size = -1;
+
+		RetypedFeatureCollection(FeatureCollection<?,?> source, SimpleFeatureType featureType) {
+			super(featureType);
+			this.source = source;
+		}
+
+		@Override
+		protected Iterator<SimpleFeature> openIterator() {
+			return new RetypingIterator(source.features(), getSchema());
+		}
+
+		@Override
+		protected void closeIterator(Iterator<SimpleFeature> close) {
+			if (close instanceof RetypingIterator) {
+				((RetypingIterator) close).close();
+			}
+		}
+
+		/**
+		 * Counts the features the iterator yields, i.e. the features of the
+		 * source that have a geometry.
+		 */
+		@Override
+		public synchronized int size() {
+			if (size < 0) {
+				int count = 0;
+				FeatureIterator<?> features = source.features();
+				try {
+					while (features.hasNext()) {
+						Geometry geometry = (Geometry) ((SimpleFeature) features.next()).getDefaultGeometry();
+						if (geometry != null && !geometry.isEmpty()) {
+							count++;
+						}
+					}
+				} finally {
+					features.close();
+				}
+				size = count;
+			}
+			return size;
+		}
+
+		@Override
+		public ReferencedEnvelope getBounds() {
+			return source.getBounds();
+		}
+	}
+
+	private static class RetypingIterator implements Iterator<SimpleFeature> {
+
+		private final FeatureIterator<?> source;
+
+		private final SimpleFeatureType featureType;
+
+		private SimpleFeature next;
+
+		private int i = 0;
+
+		private boolean closed;
+
+		RetypingIterator(FeatureIterator<?> source, SimpleFeatureType featureType) {
+			this.source = source;
+			this.featureType = featureType;
+		}
+
+		@Override
+		public boolean hasNext() {
+			// features with empty geometries can not be converted and are skipped
+			while (next == null && !closed) {
+				if (!source.hasNext()) {
+					close();
+					break;
+				}
+				SimpleFeature feature = (SimpleFeature) source.next();
+				next = GTHelper.createFeature("ID"+i, (Geometry)feature.getDefaultGeometry(), featureType, feature.getProperties());
+				i++;
+			}
+			return next != null;
+		}
+
+		@Override
+		public SimpleFeature next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			SimpleFeature feature = next;
+			next = null;
+			return feature;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		void close() {
+			if (!closed) {
+				closed = true;
+				source.close();
+			}
+		}
+	}
+
 }
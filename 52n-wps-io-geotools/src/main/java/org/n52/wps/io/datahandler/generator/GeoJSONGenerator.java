@@ -47,22 +47,32 @@
  */
 package org.n52.wps.io.datahandler.generator;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
-import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.data.binding.complex.JTSGeometryBinding;
+import org.opengis.feature.simple.SimpleFeature;
 
 import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * This class generates a GeoJSON String representation out of a JTS Geometry.
+ * 
+ * FeatureCollections are written feature by feature while iterating them,
+ * so the collection is never materialized by the generator.
  * @author BenjaminPross(bpross-52n)
  *
  */
@@ -78,32 +88,63 @@ public class GeoJSONGenerator extends AbstractGenerator {
 	public InputStream generateStream(IData data, String mimeType, String schema)
 			throws IOException {
 		
-		if(data instanceof JTSGeometryBinding){
-			Geometry g = ((JTSGeometryBinding)data).getPayload();
+		if(data instanceof JTSGeometryBinding || data instanceof GTVectorDataBinding){
 			
 			File tempFile = File.createTempFile("wps", "json");
 			finalizeFiles.add(tempFile); // mark for final delete
 			
-			 new GeometryJSON().write(g, tempFile);
+			OutputStream os = new FileOutputStream(tempFile);
+			try {
+				writeToStream(data, os);
+			} finally {
+				os.close();
+			}
 					
 			InputStream is = new FileInputStream(tempFile);
 			
 			return is;
-		}else if(data instanceof GTVectorDataBinding){
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Writes the GeoJSON representation of a geometry or feature collection to
+	 * a stream. The stream is flushed but not closed.
+	 */
+	public void writeToStream(IData data, OutputStream os) throws IOException {
+		
+		Writer writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+		
+		if(data instanceof JTSGeometryBinding){
+			Geometry g = ((JTSGeometryBinding)data).getPayload();
 			
-			SimpleFeatureCollection f = (SimpleFeatureCollection)data.getPayload();
+			writer.write(new GeometryJSON().toString(g));
 			
-			File tempFile = File.createTempFile("wps", "json");
-			finalizeFiles.add(tempFile); // mark for final delete
+		}else if(data instanceof GTVectorDataBinding){
 			
-			 new FeatureJSON().writeFeatureCollection(f, tempFile);
-					
-			InputStream is = new FileInputStream(tempFile);
+			FeatureCollection<?, ?> fc = ((GTVectorDataBinding)data).getPayload();
 			
-			return is;
+			FeatureJSON featureJSON = new FeatureJSON();
+			
+			writer.write("{\"type\":\"FeatureCollection\",\"features\":[");
+			FeatureIterator<?> features = fc.features();
+			try {
+				boolean first = true;
+				while(features.hasNext()){
+					if(!first){
+						writer.write(',');
+					}
+					writer.write(featureJSON.toString((SimpleFeature) features.next()));
+					first = false;
+				}
+			} finally {
+				features.close();
+			}
+			writer.write("]}");
 		}
 		
-		return null;
+		writer.flush();
 	}
 
 }
@@ -47,11 +47,7 @@
  */
 package org.n52.wps.io.datahandler.parser;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -99,21 +95,12 @@ public class AsciiGrassParser extends AbstractParser {
 	}
 
 	
-	private File dumpToFile(InputStream inputStream)
-			throws FileNotFoundException, IOException {
+	private File dumpToFile(InputStream inputStream) throws IOException {
 
-		BufferedInputStream bis = new BufferedInputStream(inputStream);
-
-		File outputFile = File.createTempFile("temp" + inputStream.hashCode(), "tmp");
-
-		BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile));
-
-		int _byte;
-		while ((_byte = bis.read()) != -1) {
-			bw.write(_byte);
-		}
-
-		bw.close();
+		File outputFile = spool(inputStream, "temp" + inputStream.hashCode(), "tmp");
+		// the coverage may read the file lazily, so it is not deleted with
+		// the parser
+		finalizeFiles.remove(outputFile);
 
 		return outputFile;
 	}
@@ -0,0 +1,153 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.datahandler.parser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.collection.AbstractFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SimpleFeatureCollection that is backed by a file on disk instead of the
+ * heap. Subclasses parse the features of the file incrementally in their
+ * iterators, so an algorithm that makes a single pass over the features never
+ * holds the whole collection in memory.
+ *
+ * Size and bounds need a full pass over the file; they are computed once on
+ * first request and cached.
+ */
+public abstract class FileBackedFeatureCollection extends AbstractFeatureCollection {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(FileBackedFeatureCollection.class);
+
+	protected final File file;
+
+	private final boolean deleteFile;
+
+	private int size = -1;
+
+	private ReferencedEnvelope bounds;
+
+	/**
+	 * @param memberType
+	 *            the type of the features in the file
+	 * @param file
+	 *            the file holding the features
+	 * @param deleteFile
+	 *            whether the collection owns the file and deletes it once it
+	 *            is garbage collected
+	 */
+	protected FileBackedFeatureCollection(SimpleFeatureType memberType, File file, boolean deleteFile) {
+		super(memberType);
+		this.file = file;
+		this.deleteFile = deleteFile;
+	}
+
+	@Override
+	public synchronized int size() {
+		if (size < 0) {
+			scan();
+		}
+		return size;
+	}
+
+	@Override
+	public synchronized ReferencedEnvelope getBounds() {
+		if (bounds == null) {
+			scan();
+		}
+		return new ReferencedEnvelope(bounds);
+	}
+
+	private void scan() {
+		int count = 0;
+		ReferencedEnvelope envelope = new ReferencedEnvelope(getSchema().getCoordinateReferenceSystem());
+		SimpleFeatureIterator features = features();
+		try {
+			while (features.hasNext()) {
+				SimpleFeature feature = features.next();
+				count++;
+				if (feature.getBounds() != null && !feature.getBounds().isEmpty()) {
+					envelope.include(feature.getBounds());
+				}
+			}
+		} finally {
+			features.close();
+		}
+		size = count;
+		bounds = envelope;
+	}
+
+	/**
+	 * Deletes the backing file if it is owned by this collection.
+	 */
+	@Override
+	protected void finalize() throws Throwable {
+		if (deleteFile) {
+			file.delete();
+		}
+		super.finalize();
+	}
+
+	protected static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				LOGGER.debug("Could not close " + closeable, e);
+			}
+		}
+	}
+}
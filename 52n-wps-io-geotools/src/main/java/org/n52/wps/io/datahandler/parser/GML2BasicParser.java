@@ -49,7 +49,6 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -59,6 +58,7 @@ import java.util.List;
 import java.util.UUID;
 
 import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.slf4j.Logger;
@@ -72,8 +72,9 @@ import org.geotools.feature.type.GeometryDescriptorImpl;
 import org.geotools.feature.type.GeometryTypeImpl;
 import org.geotools.filter.identity.GmlObjectIdImpl;
 import org.geotools.gml2.GMLConfiguration;
-import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.xml.Configuration;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.io.SchemaConfigurationCache;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.opengis.feature.GeometryAttribute;
@@ -96,44 +97,43 @@ import com.vividsolutions.jts.geom.Geometry;
 public class GML2BasicParser extends AbstractParser {
 	private static Logger LOGGER = LoggerFactory.getLogger(GML2BasicParser.class);
 
+	/**
+	 * Documents larger than this (in bytes) are not parsed into memory but
+	 * exposed as a GMLStreamingFeatureCollection; negative to disable.
+	 */
+	private long streamingThreshold;
+
 	public GML2BasicParser() {
 		super();
 		supportedIDataTypes.add(GTVectorDataBinding.class);
+		streamingThreshold = new PropertyUtil(properties).extractLong(
+				"streamingThreshold", -1);
 	}
 
 	public GTVectorDataBinding parse(InputStream stream, String mimeType,
 			String schema) {
 
-		FileOutputStream fos = null;
 		try {
-			File tempFile = File.createTempFile(UUID.randomUUID().toString(),
-					".gml2");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
-			int i = stream.read();
-			while (i != -1) {
-				fos.write(i);
-				i = stream.read();
-			}
-			fos.flush();
-			fos.close();
-			GTVectorDataBinding data = parseXML(tempFile);
+			File tempFile = spool(stream, UUID.randomUUID().toString(), ".gml2");
+			GTVectorDataBinding data = parseXML(tempFile, true);
 
 			return data;
 		} catch (IOException e) {
-			if (fos != null)
-				try {
-					fos.close();
-				} catch (Exception e1) {
-				}
 			throw new IllegalArgumentException("Error while creating tempFile",
 					e);
 		}
 	}
 
 	public GTVectorDataBinding parseXML(File file) {
+		return parseXML(file, false);
+	}
+
+	private GTVectorDataBinding parseXML(File file, boolean ownsFile) {
 		
-		SimpleFeatureCollection fc = parseSimpleFeatureCollection(file);
+		SimpleFeatureCollection fc = parseSimpleFeatureCollection(file, ownsFile);
+		if (ownsFile && fc instanceof GMLStreamingFeatureCollection) {
+			finalizeFiles.remove(file); // deleted by the collection
+		}
 		
 		GTVectorDataBinding data = new GTVectorDataBinding(fc);
 
@@ -141,6 +141,11 @@ public class GML2BasicParser extends AbstractParser {
 	}
 	
 	public SimpleFeatureCollection parseSimpleFeatureCollection(File file) {
+		return parseSimpleFeatureCollection(file, false);
+	}
+
+	private SimpleFeatureCollection parseSimpleFeatureCollection(File file,
+			boolean ownsFile) {
 		QName schematypeTuple = determineFeatureTypeSchema(file);
 
 		Configuration configuration = null;
@@ -152,20 +157,36 @@ public class GML2BasicParser extends AbstractParser {
 		if (schemaLocation != null && schematypeTuple.getNamespaceURI() != null) {
 			SchemaRepository.registerSchemaLocation(
 					schematypeTuple.getNamespaceURI(), schemaLocation);
-			configuration = new ApplicationSchemaConfiguration(
-					schematypeTuple.getNamespaceURI(), schemaLocation);
+			configuration = SchemaConfigurationCache.getInstance()
+					.getConfiguration(schematypeTuple.getNamespaceURI(),
+							schemaLocation);
 		} else {
 			configuration = new GMLConfiguration();
 			shouldSetParserStrict = false;
 		}
 
+		if (streamingThreshold >= 0 && file.length() > streamingThreshold) {
+			final Configuration chunkConfiguration = configuration;
+			final boolean chunkParserStrict = shouldSetParserStrict;
+			return GMLStreamingFeatureCollection.create(file,
+					new GMLStreamingFeatureCollection.ChunkParser() {
+
+						@Override
+						public SimpleFeatureCollection parse(InputStream chunk)
+								throws IOException {
+							return parseChunk(chunk, chunkConfiguration,
+									chunkParserStrict);
+						}
+					}, GMLStreamingFeatureCollection.DEFAULT_CHUNK_SIZE,
+					ownsFile);
+		}
+
 		org.geotools.xml.Parser parser = new org.geotools.xml.Parser(
 				configuration);
 
 		// parse
-		SimpleFeatureCollection fc = DefaultFeatureCollections.newCollection();
+		Object parsedData = null;
 		try {
-			Object parsedData = null;
 			try {
 				parser.setStrict(shouldSetParserStrict);
 				parsedData = parser.parse(new FileInputStream(file));
@@ -176,6 +197,44 @@ public class GML2BasicParser extends AbstractParser {
 				parser.setStrict(false);
 				parsedData = parser.parse(new FileInputStream(file));
 			}
+		} catch (Exception e) {
+			LOGGER.error(
+					"Exception while trying to parse GML2 FeatureCollection.",
+					e);
+			throw new RuntimeException(e);
+		}
+		return toFeatureCollection(parsedData);
+	}
+
+	private SimpleFeatureCollection parseChunk(InputStream chunk,
+			Configuration configuration, boolean shouldSetParserStrict)
+			throws IOException {
+		Object parsedData = null;
+		try {
+			try {
+				org.geotools.xml.Parser parser = new org.geotools.xml.Parser(
+						configuration);
+				parser.setStrict(shouldSetParserStrict);
+				parsedData = parser.parse(chunk);
+			} catch (SAXException e5) {
+				// assume the xsd containing the schema was not found
+				chunk.reset();
+				org.geotools.xml.Parser parser = new org.geotools.xml.Parser(
+						new GMLConfiguration());
+				parser.setStrict(false);
+				parsedData = parser.parse(chunk);
+			}
+		} catch (SAXException e) {
+			throw new IOException(e);
+		} catch (ParserConfigurationException e) {
+			throw new IOException(e);
+		}
+		return toFeatureCollection(parsedData);
+	}
+
+	private SimpleFeatureCollection toFeatureCollection(Object parsedData) {
+		SimpleFeatureCollection fc = DefaultFeatureCollections.newCollection();
+		try {
 			if (parsedData instanceof SimpleFeatureCollection) {
 				fc = (SimpleFeatureCollection) parsedData;
 			} else {
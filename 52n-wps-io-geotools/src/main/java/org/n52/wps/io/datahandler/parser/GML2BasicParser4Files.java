@@ -48,7 +48,6 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.UUID;
@@ -75,24 +74,13 @@ public class GML2BasicParser4Files extends AbstractParser {
 	
 	public GenericFileDataWithGTBinding parse(InputStream stream, String mimeType, String schema) {
 		
-		FileOutputStream fos = null;
 		try{
-			File tempFile = File.createTempFile(UUID.randomUUID().toString(), ".gml2");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
-			int i = stream.read();
-			while(i != -1){
-				fos.write(i);
-				i = stream.read();
-			}
-			fos.flush();
-			fos.close();
+			File tempFile = spool(stream, UUID.randomUUID().toString(), ".gml2");
 			GenericFileDataWithGTBinding data = parseXML(tempFile);
 			
 			return data;
 		}
 		catch(IOException e) {
-			if (fos != null) try { fos.close(); } catch (Exception e1) { }
 			throw new IllegalArgumentException("Error while creating tempFile", e);
 		}
 	}
@@ -49,7 +49,6 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -69,11 +68,12 @@ import org.geotools.feature.GeometryAttributeImpl;
 import org.geotools.feature.type.GeometryDescriptorImpl;
 import org.geotools.feature.type.GeometryTypeImpl;
 import org.geotools.filter.identity.GmlObjectIdImpl;
-import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.gml3.v3_2.GMLConfiguration;
 import org.geotools.xml.Configuration;
 import org.geotools.xml.Parser;
+import org.n52.wps.commons.PropertyUtil;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.SchemaConfigurationCache;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.opengis.feature.GeometryAttribute;
@@ -100,6 +100,7 @@ public class GML32BasicParser extends AbstractParser {
 	private Configuration configuration;
 	private boolean setParserNonStrict;
 	private boolean setBasicGMLConfiguration;
+	private long streamingThreshold;
 
 	
 
@@ -117,6 +118,7 @@ public class GML32BasicParser extends AbstractParser {
                     }
                     
                 }
+		streamingThreshold = new PropertyUtil(properties).extractLong("streamingThreshold", -1);
 		
 	}
 	
@@ -127,39 +129,27 @@ public class GML32BasicParser extends AbstractParser {
 	@Override
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 
-		FileOutputStream fos = null;
 		try {
-			File tempFile = File.createTempFile("wps", "tmp");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
-			int i = stream.read();
-			while (i != -1) {
-				fos.write(i);
-				i = stream.read();
-			}
-			fos.flush();
-			fos.close();
+			File tempFile = spool(stream, "wps", "tmp");
 
 			QName schematypeTuple = determineFeatureTypeSchema(tempFile);
+			if (streamingThreshold >= 0 && tempFile.length() > streamingThreshold) {
+				FeatureCollection<?, SimpleFeature> fc = parseStreaming(tempFile, schematypeTuple);
+				if (fc instanceof GMLStreamingFeatureCollection) {
+					finalizeFiles.remove(tempFile); // deleted by the collection
+				}
+				return new GTVectorDataBinding(fc);
+			}
 			return parse(new FileInputStream(tempFile), schematypeTuple);
 		}
 		catch (IOException e) {
-			if (fos != null) try { fos.close(); } catch (Exception e1) { }
 			throw new IllegalArgumentException("Error while creating tempFile", e);
 		}
 	}
 
 	public GTVectorDataBinding parse(InputStream input, QName schematypeTuple) {
 	    
-	    if(!setBasicGMLConfiguration){
-	    
-		if (configuration == null) {
-			configuration = resolveConfiguration(schematypeTuple);
-		}
-	    }else{
-	        configuration = new GMLConfiguration();
-	    }
-		Parser parser = new Parser(configuration);
+		Parser parser = new Parser(resolveParserConfiguration(schematypeTuple));
 		
 		parser.setStrict(!setParserNonStrict);
 
@@ -171,6 +161,35 @@ public class GML32BasicParser extends AbstractParser {
 		return data;
 	}
 	
+	/**
+	 * Exposes the members of a large document as a lazily parsed
+	 * GMLStreamingFeatureCollection that takes over the file.
+	 */
+	private FeatureCollection<?, SimpleFeature> parseStreaming(File file, QName schematypeTuple) {
+		final Configuration chunkConfiguration = resolveParserConfiguration(schematypeTuple);
+		return GMLStreamingFeatureCollection.create(file, new GMLStreamingFeatureCollection.ChunkParser() {
+			
+			@Override
+			public FeatureCollection<?, SimpleFeature> parse(InputStream chunk) {
+				Parser parser = new Parser(chunkConfiguration);
+				parser.setStrict(!setParserNonStrict);
+				return resolveFeatureCollection(parser, chunk);
+			}
+		}, GMLStreamingFeatureCollection.DEFAULT_CHUNK_SIZE, true);
+	}
+	
+	private Configuration resolveParserConfiguration(QName schematypeTuple) {
+	    if(!setBasicGMLConfiguration){
+	    
+		if (configuration == null) {
+			configuration = resolveConfiguration(schematypeTuple);
+		}
+	    }else{
+	        configuration = new GMLConfiguration();
+	    }
+	    return configuration;
+	}
+	
 
 	private FeatureCollection<?, SimpleFeature> resolveFeatureCollection(Parser parser, InputStream input) {
 		FeatureCollection<?, SimpleFeature> fc = null;
@@ -255,7 +274,7 @@ public class GML32BasicParser extends AbstractParser {
 			} else {
 				if (schemaLocation != null && schematypeTuple.getNamespaceURI()!=null){
 					SchemaRepository.registerSchemaLocation(schematypeTuple.getNamespaceURI(), schemaLocation);
-					configuration =  new ApplicationSchemaConfiguration(schematypeTuple.getNamespaceURI(), schemaLocation);
+					configuration = SchemaConfigurationCache.getInstance().getConfiguration(schematypeTuple.getNamespaceURI(), schemaLocation);
 				} else {
 					configuration = new GMLConfiguration();
 				}
@@ -49,7 +49,6 @@ package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -71,9 +70,10 @@ import org.geotools.feature.GeometryAttributeImpl;
 import org.geotools.feature.type.GeometryDescriptorImpl;
 import org.geotools.feature.type.GeometryTypeImpl;
 import org.geotools.filter.identity.GmlObjectIdImpl;
-import org.geotools.gml3.ApplicationSchemaConfiguration;
 import org.geotools.gml3.GMLConfiguration;
 import org.geotools.xml.Configuration;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.io.SchemaConfigurationCache;
 import org.n52.wps.io.SchemaRepository;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.opengis.feature.GeometryAttribute;
@@ -97,42 +97,41 @@ public class GML3BasicParser extends AbstractParser {
 	
 	private static Logger LOGGER = LoggerFactory.getLogger(GML3BasicParser.class);
 	
+	/**
+	 * Documents larger than this (in bytes) are not parsed into memory but
+	 * exposed as a GMLStreamingFeatureCollection; negative to disable.
+	 */
+	private long streamingThreshold;
+	
 	public GML3BasicParser() {
 		super();
 		supportedIDataTypes.add(GTVectorDataBinding.class);
+		streamingThreshold = new PropertyUtil(properties).extractLong("streamingThreshold", -1);
 	}
 	
 	@Override
 	public GTVectorDataBinding parse(InputStream stream, String mimeType, String schema) {
 
-		FileOutputStream fos = null;
 		try{
-			File tempFile = File.createTempFile("wps", "tmp");
-			finalizeFiles.add(tempFile); // mark for final delete
-			fos = new FileOutputStream(tempFile);
-			int i = stream.read();
-			while(i != -1){
-				fos.write(i);
-				i = stream.read();
-			}
-			fos.flush();
-			fos.close();
-			GTVectorDataBinding data = parseXML(tempFile);
+			File tempFile = spool(stream, "wps", "tmp");
+			GTVectorDataBinding data = parseXML(tempFile, true);
 			return data;
 		}
 		catch(IOException e) {
-			if (fos != null) try { fos.close(); } catch (Exception e1) { }
 			throw new IllegalArgumentException("Error while creating tempFile", e);
 		}
 	}
 	
 	public GTVectorDataBinding parse(File file, String mimeType, String schema) {
-		return parseXML(file);
+		return parseXML(file, false);
 	}
 	
-	private GTVectorDataBinding parseXML(File file) {
+	private GTVectorDataBinding parseXML(File file, boolean ownsFile) {
 		
-		SimpleFeatureCollection fc = parseFeatureCollection(file);
+		SimpleFeatureCollection fc = parseFeatureCollection(file, ownsFile);
+		if (ownsFile && fc instanceof GMLStreamingFeatureCollection) {
+			finalizeFiles.remove(file); // deleted by the collection
+		}
 		
 		GTVectorDataBinding data = new GTVectorDataBinding(fc);
 		
@@ -147,6 +146,10 @@ public class GML3BasicParser extends AbstractParser {
 	 * @return The parsed SimpleFeatureCollection
 	 */
 	public SimpleFeatureCollection parseFeatureCollection(File file){
+		return parseFeatureCollection(file, false);
+	}
+	
+	private SimpleFeatureCollection parseFeatureCollection(File file, boolean ownsFile){
 		QName schematypeTuple = determineFeatureTypeSchema(file);
 		
 		boolean schemaLocationIsRelative = false;
@@ -171,7 +174,7 @@ public class GML3BasicParser extends AbstractParser {
 			}else{			
 				if(schemaLocation!= null && schematypeTuple.getNamespaceURI()!=null){
 					SchemaRepository.registerSchemaLocation(schematypeTuple.getNamespaceURI(), schemaLocation);
-					configuration =  new ApplicationSchemaConfiguration(schematypeTuple.getNamespaceURI(), schemaLocation);
+					configuration = SchemaConfigurationCache.getInstance().getConfiguration(schematypeTuple.getNamespaceURI(), schemaLocation);
 				}else{
 					configuration = new GMLConfiguration();
 					shouldSetParserStrict = false;
@@ -183,6 +186,18 @@ public class GML3BasicParser extends AbstractParser {
 		
 		parser.setStrict(shouldSetParserStrict);
 		
+		if (streamingThreshold >= 0 && file.length() > streamingThreshold) {
+			final Configuration chunkConfiguration = configuration;
+			final boolean chunkParserStrict = shouldSetParserStrict;
+			return GMLStreamingFeatureCollection.create(file, new GMLStreamingFeatureCollection.ChunkParser() {
+				
+				@Override
+				public SimpleFeatureCollection parse(InputStream chunk) {
+					return parseFeatureCollection(chunk, chunkConfiguration, chunkParserStrict);
+				}
+			}, GMLStreamingFeatureCollection.DEFAULT_CHUNK_SIZE, ownsFile);
+		}
+		
 		//parse		
 		SimpleFeatureCollection fc = parseFeatureCollection(file, configuration, shouldSetParserStrict);
 		
@@ -199,6 +214,20 @@ public class GML3BasicParser extends AbstractParser {
 	 */
 	public SimpleFeatureCollection parseFeatureCollection(File file, Configuration configuration, boolean shouldSetParserStrict){
 		
+		InputStream input = null;
+		try {
+			input = new FileInputStream(file);
+			return parseFeatureCollection(input, configuration, shouldSetParserStrict);
+		} catch (IOException e) {
+			LOGGER.error("Exception while handling parsed GML.", e);
+			throw new RuntimeException(e);
+		} finally {
+			if (input != null) try { input.close(); } catch (IOException e) { }
+		}
+	}
+	
+	private SimpleFeatureCollection parseFeatureCollection(InputStream input, Configuration configuration, boolean shouldSetParserStrict){
+		
 		org.geotools.xml.Parser parser = new org.geotools.xml.Parser(configuration);
 		
 		parser.setStrict(shouldSetParserStrict);
@@ -206,7 +235,7 @@ public class GML3BasicParser extends AbstractParser {
 		//parse		
 		SimpleFeatureCollection fc = DefaultFeatureCollections.newCollection();
 		try {
-			Object parsedData =  parser.parse( new FileInputStream(file));
+			Object parsedData =  parser.parse(input);
 			if(parsedData instanceof FeatureCollection){
 				fc = (SimpleFeatureCollection) parsedData;				
 			}else if(parsedData instanceof HashMap){
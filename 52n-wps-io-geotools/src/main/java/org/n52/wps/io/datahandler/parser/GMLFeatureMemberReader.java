@@ -0,0 +1,279 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.datahandler.parser;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Pull parser that cuts a GML feature collection document into small, self
+ * contained documents of a bounded number of feature members. Every chunk
+ * repeats the root element of the collection (including its namespace
+ * declarations and schema location), so it can be handed to the regular
+ * GeoTools parser with the same configuration as the whole document.
+ *
+ * Members wrapped in a <code>featureMembers</code> element are split as
+ * well, so a single huge <code>gml:featureMembers</code> does not end up in
+ * one chunk.
+ */
+class GMLFeatureMemberReader implements Closeable {
+
+	private static final String FEATURE_MEMBERS = "featureMembers";
+
+	private static XMLInputFactory inputFactory;
+
+	private static XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+	static {
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+	}
+
+	private final InputStream input;
+
+	private final XMLStreamReader reader;
+
+	private final ElementStart root;
+
+	private ElementStart container;
+
+	private boolean finished;
+
+	GMLFeatureMemberReader(File file) throws IOException {
+		input = new BufferedInputStream(new FileInputStream(file));
+		try {
+			reader = inputFactory.createXMLStreamReader(input);
+			while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+				// skip prolog
+			}
+			if (!reader.isStartElement()) {
+				throw new IOException("No root element found in " + file);
+			}
+			root = new ElementStart(reader);
+		} catch (XMLStreamException e) {
+			input.close();
+			throw new IOException("Could not read GML document " + file, e);
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the next chunk.
+	 *
+	 * @param maxMembers
+	 *            the maximum number of members copied into the chunk
+	 * @return a standalone document holding the next members, or
+	 *         <code>null</code> if the collection is exhausted
+	 * @throws IOException
+	 *             if the document is not well formed
+	 */
+	byte[] next(int maxMembers) throws IOException {
+		if (finished) {
+			return null;
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			root.write(writer);
+			if (container != null) {
+				container.write(writer);
+			}
+			int members = 0;
+			while (members < maxMembers && reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if (container == null && FEATURE_MEMBERS.equals(reader.getLocalName())) {
+						container = new ElementStart(reader);
+						container.write(writer);
+					} else {
+						copyElement(writer);
+						members++;
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (container != null) {
+						container = null;
+						writer.writeEndElement();
+					} else {
+						finished = true;
+						break;
+					}
+				}
+			}
+			if (!reader.hasNext()) {
+				finished = true;
+			}
+			if (container != null) {
+				writer.writeEndElement();
+			}
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.close();
+			return members == 0 ? null : out.toByteArray();
+		} catch (XMLStreamException e) {
+			throw new IOException("Could not read GML feature members", e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			// the underlying stream is closed anyway
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Copies the element the reader is positioned on, including all of its
+	 * descendants, and leaves the reader on its end tag.
+	 */
+	private void copyElement(XMLStreamWriter writer) throws XMLStreamException {
+		int depth = 0;
+		int event = reader.getEventType();
+		while (true) {
+			switch (event) {
+			case XMLStreamConstants.START_ELEMENT:
+				new ElementStart(reader).write(writer);
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				writer.writeEndElement();
+				depth--;
+				if (depth == 0) {
+					return;
+				}
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.SPACE:
+				writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				break;
+			case XMLStreamConstants.CDATA:
+				writer.writeCData(reader.getText());
+				break;
+			default:
+				// comments and processing instructions are not needed
+			}
+			event = reader.next();
+		}
+	}
+
+	/**
+	 * Start tag of an element with its own namespace declarations and
+	 * attributes, written out verbatim to every chunk.
+	 */
+	private static class ElementStart {
+
+		private final String prefix;
+
+		private final String localName;
+
+		private final String namespaceURI;
+
+		private final List<String[]> namespaces = new ArrayList<String[]>();
+
+		private final List<String[]> attributes = new ArrayList<String[]>();
+
+		ElementStart(XMLStreamReader reader) {
+			prefix = nullToEmpty(reader.getPrefix());
+			localName = reader.getLocalName();
+			namespaceURI = nullToEmpty(reader.getNamespaceURI());
+			for (int i = 0; i < reader.getNamespaceCount(); i++) {
+				namespaces.add(new String[] { nullToEmpty(reader.getNamespacePrefix(i)),
+						nullToEmpty(reader.getNamespaceURI(i)) });
+			}
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				attributes.add(new String[] { nullToEmpty(reader.getAttributePrefix(i)),
+						nullToEmpty(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i),
+						reader.getAttributeValue(i) });
+			}
+		}
+
+		void write(XMLStreamWriter writer) throws XMLStreamException {
+			writer.writeStartElement(prefix, localName, namespaceURI);
+			for (String[] namespace : namespaces) {
+				if (namespace[0].isEmpty()) {
+					writer.writeDefaultNamespace(namespace[1]);
+				} else {
+					writer.writeNamespace(namespace[0], namespace[1]);
+				}
+			}
+			for (String[] attribute : attributes) {
+				if (attribute[1].isEmpty()) {
+					writer.writeAttribute(attribute[2], attribute[3]);
+				} else {
+					writer.writeAttribute(attribute[0], attribute[1], attribute[2], attribute[3]);
+				}
+			}
+		}
+
+		private static String nullToEmpty(String value) {
+			return value == null ? "" : value;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.datahandler.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollections;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FileBackedFeatureCollection over a GML document. Every iterator pulls the
+ * feature members of the file in chunks of a fixed size and parses only the
+ * current chunk, so no more than one chunk is held in memory.
+ */
+public class GMLStreamingFeatureCollection extends FileBackedFeatureCollection {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(GMLStreamingFeatureCollection.class);
+
+	/**
+	 * Number of feature members parsed at once.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	/**
+	 * Parses one chunk of feature members, a standalone GML document with the
+	 * root element of the original collection, into features. Implemented by
+	 * the GML parsers with their usual configuration. The chunk is held in
+	 * memory, so its stream supports <code>reset()</code> if a parser needs
+	 * to retry with a different configuration.
+	 */
+	public interface ChunkParser {
+
+		FeatureCollection<?, SimpleFeature> parse(InputStream chunk) throws IOException;
+	}
+
+	private final ChunkParser chunkParser;
+
+	private final int chunkSize;
+
+	private GMLStreamingFeatureCollection(SimpleFeatureType memberType, File file, ChunkParser chunkParser,
+			int chunkSize, boolean deleteFile) {
+		super(memberType, file, deleteFile);
+		this.chunkParser = chunkParser;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Creates a collection over the feature members of a GML file. The first
+	 * chunk is parsed right away to determine the feature type; an empty
+	 * in-memory collection is returned if the file has no features.
+	 *
+	 * @param file
+	 *            the GML feature collection document
+	 * @param chunkParser
+	 *            the parser for a chunk of members
+	 * @param chunkSize
+	 *            the number of members parsed at once
+	 * @param deleteFile
+	 *            whether the collection owns the file and deletes it once it
+	 *            is garbage collected
+	 * @return the collection
+	 */
+	public static SimpleFeatureCollection create(File file, ChunkParser chunkParser, int chunkSize,
+			boolean deleteFile) {
+		SimpleFeatureType memberType = null;
+		GMLFeatureMemberReader reader = null;
+		try {
+			reader = new GMLFeatureMemberReader(file);
+			byte[] chunk;
+			while (memberType == null && (chunk = reader.next(chunkSize)) != null) {
+				FeatureIterator<SimpleFeature> features = chunkParser.parse(new ByteArrayInputStream(chunk)).features();
+				try {
+					if (features.hasNext()) {
+						memberType = features.next().getFeatureType();
+					}
+				} finally {
+					features.close();
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.error("Exception while reading GML feature members.", e);
+			throw new RuntimeException(e);
+		} finally {
+			closeQuietly(reader);
+		}
+		if (memberType == null) {
+			if (deleteFile) {
+				file.delete();
+			}
+			return DefaultFeatureCollections.newCollection();
+		}
+		return new GMLStreamingFeatureCollection(memberType, file, chunkParser, chunkSize, deleteFile);
+	}
+
+	@Override
+	protected Iterator<SimpleFeature> openIterator() {
+		try {
+			return new ChunkIterator(new GMLFeatureMemberReader(file));
+		} catch (IOException e) {
+			LOGGER.error("Exception while opening GML feature members.", e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	protected void closeIterator(Iterator<SimpleFeature> close) {
+		if (close instanceof ChunkIterator) {
+			((ChunkIterator) close).close();
+		}
+	}
+
+	private class ChunkIterator implements Iterator<SimpleFeature> {
+
+		private final GMLFeatureMemberReader reader;
+
+		private FeatureIterator<SimpleFeature> chunk;
+
+		private boolean exhausted;
+
+		ChunkIterator(GMLFeatureMemberReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!exhausted && (chunk == null || !chunk.hasNext())) {
+				if (chunk != null) {
+					chunk.close();
+					chunk = null;
+				}
+				try {
+					byte[] members = reader.next(chunkSize);
+					if (members == null) {
+						close();
+					} else {
+						chunk = chunkParser.parse(new ByteArrayInputStream(members)).features();
+					}
+				} catch (IOException e) {
+					close();
+					LOGGER.error("Exception while reading GML feature members.", e);
+					throw new RuntimeException(e);
+				}
+			}
+			return !exhausted;
+		}
+
+		@Override
+		public SimpleFeature next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return chunk.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("GML streaming feature collections are read only");
+		}
+
+		void close() {
+			exhausted = true;
+			if (chunk != null) {
+				chunk.close();
+				chunk = null;
+			}
+			closeQuietly(reader);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.datahandler.parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Iterator;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollections;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geojson.feature.FeatureJSON;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * FileBackedFeatureCollection over a GeoJSON FeatureCollection document.
+ * Every iterator streams the features of the file with
+ * {@link FeatureJSON#streamFeatureCollection(Object)}, one feature at a time.
+ */
+public class GeoJSONFeatureCollection extends FileBackedFeatureCollection {
+
+	private static Logger LOGGER = LoggerFactory.getLogger(GeoJSONFeatureCollection.class);
+
+	private GeoJSONFeatureCollection(SimpleFeatureType memberType, File file, boolean deleteFile) {
+		super(memberType, file, deleteFile);
+	}
+
+	/**
+	 * Creates a collection over the features of a GeoJSON file. The first
+	 * feature is read right away to determine the feature type; an empty
+	 * in-memory collection is returned if the file has no features.
+	 *
+	 * @param file
+	 *            the GeoJSON FeatureCollection document
+	 * @param deleteFile
+	 *            whether the collection owns the file and deletes it once it
+	 *            is garbage collected
+	 * @return the collection
+	 */
+	public static SimpleFeatureCollection create(File file, boolean deleteFile) {
+		SimpleFeatureType memberType = null;
+		StreamIterator features = null;
+		try {
+			features = new StreamIterator(file);
+			if (features.hasNext()) {
+				memberType = features.next().getFeatureType();
+			}
+		} catch (IOException e) {
+			LOGGER.error("Exception while reading GeoJSON features.", e);
+			throw new RuntimeException(e);
+		} finally {
+			if (features != null) {
+				features.close();
+			}
+		}
+		if (memberType == null) {
+			if (deleteFile) {
+				file.delete();
+			}
+			return DefaultFeatureCollections.newCollection();
+		}
+		return new GeoJSONFeatureCollection(memberType, file, deleteFile);
+	}
+
+	@Override
+	protected Iterator<SimpleFeature> openIterator() {
+		try {
+			return new StreamIterator(file);
+		} catch (IOException e) {
+			LOGGER.error("Exception while opening GeoJSON features.", e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	protected void closeIterator(Iterator<SimpleFeature> close) {
+		if (close instanceof StreamIterator) {
+			((StreamIterator) close).close();
+		}
+	}
+
+	private static class StreamIterator implements Iterator<SimpleFeature> {
+
+		private final Reader reader;
+
+		private final FeatureIterator<SimpleFeature> features;
+
+		StreamIterator(File file) throws IOException {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			try {
+				features = new FeatureJSON().streamFeatureCollection(reader);
+			} catch (IOException e) {
+				closeQuietly(reader);
+				throw e;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return features.hasNext();
+		}
+
+		@Override
+		public SimpleFeature next() {
+			return features.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("GeoJSON feature collections are read only");
+		}
+
+		void close() {
+			features.close();
+			closeQuietly(reader);
+		}
+	}
+}
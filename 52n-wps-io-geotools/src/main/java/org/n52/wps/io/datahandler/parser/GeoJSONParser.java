@@ -48,18 +48,27 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
+import org.n52.wps.commons.PropertyUtil;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.data.binding.complex.JTSGeometryBinding;
@@ -72,6 +81,11 @@ import com.vividsolutions.jts.geom.GeometryCollection;
  * 
  * 
  * This class parses json into JTS geometries.
+ * 
+ * The input is spooled to a temporary file and its type is determined from
+ * the first members of the document. FeatureCollections larger than the
+ * property <code>streamingThreshold</code> (in bytes) are not read into
+ * memory but exposed as a GeoJSONFeatureCollection.
  *         
  *  @author BenjaminPross(bpross-52n)
  * 
@@ -80,28 +94,36 @@ public class GeoJSONParser extends AbstractParser {
 
 	private static Logger LOGGER = LoggerFactory.getLogger(GeoJSONParser.class);
 
+	private static final List<String> GEOMETRY_TYPES = Arrays.asList("Point",
+			"LineString", "Polygon", "MultiPoint", "MultiLineString",
+			"MultiPolygon");
+
+	private long streamingThreshold;
+
 	public GeoJSONParser() {
 		super();
 		supportedIDataTypes.add(JTSGeometryBinding.class);
 		supportedIDataTypes.add(GTVectorDataBinding.class);
+		streamingThreshold = new PropertyUtil(properties).extractLong("streamingThreshold", -1);
 	}
 
 	@Override
 	public IData parse(InputStream input, String mimeType, String schema) {
 
-		String geojsonstring = "";
-
-		String line = "";
-
-		BufferedReader breader = new BufferedReader(
-				new InputStreamReader(input));
+		File tempFile = null;
 
 		try {
-			while ((line = breader.readLine()) != null) {
-				geojsonstring = geojsonstring.concat(line);
+			tempFile = File.createTempFile("wps", ".json");
+			finalizeFiles.add(tempFile); // mark for final delete
+			OutputStream out = new FileOutputStream(tempFile);
+			try {
+				IOUtils.copy(input, out);
+			} finally {
+				out.close();
 			}
 		} catch (IOException e) {
 			LOGGER.error("Exception while reading inputstream.", e);
+			return null;
 		} finally {
 			try {
 				input.close();
@@ -110,22 +132,34 @@ public class GeoJSONParser extends AbstractParser {
 			}
 		}
 
-		if (geojsonstring.contains("FeatureCollection")) {
+		String type = null;
+		Reader reader = null;
 
-			try {
+		try {
+			reader = open(tempFile);
+			type = new GeoJSONTypeDetector(reader).detect();
+			reader.close();
+
+			if (GeoJSONTypeDetector.FEATURE_COLLECTION.equals(type)) {
+
+				if (streamingThreshold >= 0 && tempFile.length() > streamingThreshold) {
+					SimpleFeatureCollection featureCollection = GeoJSONFeatureCollection.create(tempFile, true);
+					if (featureCollection instanceof GeoJSONFeatureCollection) {
+						finalizeFiles.remove(tempFile); // deleted by the collection
+					}
+					return new GTVectorDataBinding(featureCollection);
+				}
+
+				reader = open(tempFile);
 				FeatureCollection<?, ?> featureCollection = new FeatureJSON()
-						.readFeatureCollection(geojsonstring);
+						.readFeatureCollection(reader);
 
 				return new GTVectorDataBinding(featureCollection);
 
-			} catch (IOException e) {
-				LOGGER.info("Could not read FeatureCollection from inputstream");
-			}
-
-		} else if (geojsonstring.contains("Feature")) {
+			} else if (GeoJSONTypeDetector.FEATURE.equals(type)) {
 
-			try {
-				SimpleFeature feature = new FeatureJSON().readFeature(geojsonstring);
+				reader = open(tempFile);
+				SimpleFeature feature = new FeatureJSON().readFeature(reader);
 
 				List<SimpleFeature> featureList = new ArrayList<SimpleFeature>();
 
@@ -136,40 +170,32 @@ public class GeoJSONParser extends AbstractParser {
 
 				return new GTVectorDataBinding(featureCollection);
 
-			} catch (IOException e) {
-				LOGGER.info("Could not read Feature from inputstream");
-			}
+			} else if (GeoJSONTypeDetector.GEOMETRY_COLLECTION.equals(type)) {
 
-		} else if (geojsonstring.contains("GeometryCollection")) {
-
-			try {
-				GeometryCollection g = new GeometryJSON().readGeometryCollection(geojsonstring);
+				reader = open(tempFile);
+				GeometryCollection g = new GeometryJSON().readGeometryCollection(reader);
 
 				return new JTSGeometryBinding(g);
 
-			} catch (IOException e) {
-				LOGGER.info("Could not read GeometryCollection from inputstream.");
-			}
-
-		} else if(geojsonstring.contains("Point") || 
-				geojsonstring.contains("LineString") ||
-				geojsonstring.contains("Polygon") ||
-				geojsonstring.contains("MultiPoint") ||
-				geojsonstring.contains("MultiLineString") ||
-				geojsonstring.contains("MultiPolygon")){
+			} else if (GEOMETRY_TYPES.contains(type)) {
 
-			try {
-				Geometry g = new GeometryJSON().read(geojsonstring);
+				reader = open(tempFile);
+				Geometry g = new GeometryJSON().read(reader);
 
 				return new JTSGeometryBinding(g);
 
-			} catch (IOException e) {
-				LOGGER.info("Could not read single Geometry from inputstream.");
 			}
-
+		} catch (IOException e) {
+			LOGGER.info("Could not read " + type + " from inputstream.", e);
+		} finally {
+			IOUtils.closeQuietly(reader);
 		}
 		LOGGER.error("Could not parse inputstream, returning null.");
 		return null;
 	}
 
+	private Reader open(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+	}
+
 }
@@ -0,0 +1,207 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io.datahandler.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Token level reader that determines the type of a GeoJSON object from its
+ * first top level members, without reading the whole document. If the
+ * <code>type</code> member is not the first one, members that only occur in
+ * one kind of object (<code>features</code>, <code>geometries</code>,
+ * <code>geometry</code>, <code>properties</code>) decide; values of other
+ * members are skipped without being buffered.
+ */
+class GeoJSONTypeDetector {
+
+	static final String FEATURE_COLLECTION = "FeatureCollection";
+
+	static final String FEATURE = "Feature";
+
+	static final String GEOMETRY_COLLECTION = "GeometryCollection";
+
+	private final Reader reader;
+
+	private int pushedBack = -2;
+
+	GeoJSONTypeDetector(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * @return the value of the <code>type</code> member, or the type implied
+	 *         by a member, or <code>null</code> if the input is not a JSON
+	 *         object or no member tells the type
+	 * @throws IOException
+	 *             if the input is not valid JSON
+	 */
+	String detect() throws IOException {
+		if (nextToken() != '{') {
+			return null;
+		}
+		int c = nextToken();
+		if (c == '}') {
+			return null;
+		}
+		while (true) {
+			if (c != '"') {
+				throw new IOException("Expected member name in GeoJSON object");
+			}
+			String name = readString();
+			expect(':');
+			if ("type".equals(name)) {
+				c = nextToken();
+				if (c == '"') {
+					return readString();
+				}
+				push(c);
+				skipValue();
+			} else if ("features".equals(name)) {
+				return FEATURE_COLLECTION;
+			} else if ("geometries".equals(name)) {
+				return GEOMETRY_COLLECTION;
+			} else if ("geometry".equals(name) || "properties".equals(name)) {
+				return FEATURE;
+			} else {
+				skipValue();
+			}
+			c = nextToken();
+			if (c == '}') {
+				return null;
+			}
+			if (c != ',') {
+				throw new IOException("Expected ',' or '}' in GeoJSON object");
+			}
+			c = nextToken();
+		}
+	}
+
+	private void skipValue() throws IOException {
+		int c = nextToken();
+		if (c == '"') {
+			readString();
+		} else if (c == '{' || c == '[') {
+			// strings are the only place where brackets do not count
+			int depth = 1;
+			while (depth > 0) {
+				c = read();
+				if (c == '"') {
+					readString();
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				} else if (c == -1) {
+					throw new IOException("Unexpected end of GeoJSON");
+				}
+			}
+		} else {
+			// number, true, false or null
+			while (c != -1 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+				c = read();
+			}
+			push(c);
+		}
+	}
+
+	private String readString() throws IOException {
+		StringBuilder value = new StringBuilder();
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return value.toString();
+			}
+			if (c == -1) {
+				throw new IOException("Unterminated string in GeoJSON");
+			}
+			if (c == '\\') {
+				c = read();
+				if (c == 'u') {
+					char[] hex = new char[4];
+					for (int i = 0; i < hex.length; i++) {
+						hex[i] = (char) read();
+					}
+					try {
+						c = Integer.parseInt(new String(hex), 16);
+					} catch (NumberFormatException e) {
+						throw new IOException("Invalid escape in GeoJSON string");
+					}
+				}
+			}
+			value.append((char) c);
+		}
+	}
+
+	private void expect(char expected) throws IOException {
+		if (nextToken() != expected) {
+			throw new IOException("Expected '" + expected + "' in GeoJSON");
+		}
+	}
+
+	private int nextToken() throws IOException {
+		int c = read();
+		while (c != -1 && (Character.isWhitespace(c) || c == '\uFEFF')) {
+			c = read();
+		}
+		return c;
+	}
+
+	private int read() throws IOException {
+		if (pushedBack != -2) {
+			int c = pushedBack;
+			pushedBack = -2;
+			return c;
+		}
+		return reader.read();
+	}
+
+	private void push(int c) {
+		pushedBack = c;
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * As an exception to the terms of the GPL, you may copy, modify,
+ * propagate, and distribute a work formed by combining 52°North WPS
+ * GeoTools Modules with the Eclipse Libraries, or a work derivative of
+ * such a combination, even if such copying, modification, propagation, or
+ * distribution would otherwise violate the terms of the GPL. Nothing in
+ * this exception exempts you from complying with the GPL in all respects
+ * for all of the code used other than the Eclipse Libraries. You may
+ * include this exception and its grant of permissions when you distribute
+ * 52°North WPS GeoTools Modules. Inclusion of this notice with such a
+ * distribution constitutes a grant of such permissions. If you do not wish
+ * to grant these permissions, remove this paragraph from your
+ * distribution. "52°North WPS GeoTools Modules" means the 52°North WPS
+ * modules using GeoTools functionality - software licensed under version 2
+ * or any later version of the GPL, or a work based on such software and
+ * licensed under the GPL. "Eclipse Libraries" means Eclipse Modeling
+ * Framework Project and XML Schema Definition software distributed by the
+ * Eclipse Foundation and licensed under the Eclipse Public License Version
+ * 1.0 ("EPL"), or a work based on such software and licensed under the EPL.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.xmlbeans.XmlException;
+import org.geotools.xml.Configuration;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.wps.commons.WPSConfig;
+
+public class SchemaConfigurationCacheTest {
+
+	private static final String NAMESPACE = "http://www.52north.org/test";
+	private static final String SCHEMA = "http://example.org/schemas/test.xsd";
+
+	@BeforeClass
+	public static void initializeConfig() throws XmlException, IOException {
+		InputStream config = SchemaConfigurationCacheTest.class.getResourceAsStream("/wps_config_geotools.xml");
+		try {
+			WPSConfig.forceInitialization(config);
+		} finally {
+			config.close();
+		}
+	}
+
+	@Test
+	public void testConfigurationIsShared() {
+		SchemaConfigurationCache cache = new SchemaConfigurationCache(60000, 10, null);
+
+		Configuration configuration = cache.getConfiguration(NAMESPACE, SCHEMA);
+		assertSame(configuration, cache.getConfiguration(NAMESPACE, SCHEMA));
+		assertNotSame(configuration, cache.getConfiguration(NAMESPACE, SCHEMA + "?v=2"));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testExpiredConfigurationIsResolvedAgain() {
+		SchemaConfigurationCache cache = new SchemaConfigurationCache(0, 10, null);
+
+		Configuration configuration = cache.getConfiguration(NAMESPACE, SCHEMA);
+		assertNotSame(configuration, cache.getConfiguration(NAMESPACE, SCHEMA));
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		SchemaConfigurationCache cache = new SchemaConfigurationCache(60000, 2, null);
+
+		Configuration first = cache.getConfiguration(NAMESPACE, SCHEMA + "?1");
+		cache.getConfiguration(NAMESPACE, SCHEMA + "?2");
+		cache.getConfiguration(NAMESPACE, SCHEMA + "?1");
+		cache.getConfiguration(NAMESPACE, SCHEMA + "?3");
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertSame(first, cache.getConfiguration(NAMESPACE, SCHEMA + "?1"));
+	}
+
+	@Test
+	public void testMirroredSchemaIsResolvedLocally() throws IOException {
+		File mirror = File.createTempFile("schema-mirror", "");
+		FileUtils.deleteQuietly(mirror);
+		File schema = new File(mirror, "example.org/schemas/test.xsd");
+		FileUtils.writeStringToFile(schema, "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"/>");
+		try {
+			SchemaConfigurationCache cache = new SchemaConfigurationCache(60000, 10, mirror);
+
+			assertEquals(schema.toURI().toString(), cache.resolveSchemaLocation(SCHEMA));
+			assertEquals(SCHEMA + "x", cache.resolveSchemaLocation(SCHEMA + "x"));
+			assertEquals("http://example.org/schemas/../test.xsd",
+					cache.resolveSchemaLocation("http://example.org/schemas/../test.xsd"));
+		} finally {
+			FileUtils.deleteQuietly(mirror);
+		}
+	}
+}
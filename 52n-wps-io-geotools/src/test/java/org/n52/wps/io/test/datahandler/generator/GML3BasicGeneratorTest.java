@@ -120,6 +120,25 @@ public class GML3BasicGeneratorTest extends AbstractTestCase<GML3BasicGenerator>
 
 	}
 
+	public void testGeneratedFeatureCount() throws IOException {
+
+		String testFilePath = projectRoot
+				+ "/52n-wps-io-geotools/src/test/resources/spearfish_restricted_sites_gml3.xml";
+		testFilePath = URLDecoder.decode(testFilePath, "UTF-8");
+
+		GML3BasicParser theParser = new GML3BasicParser();
+
+		GTVectorDataBinding theBinding = theParser.parse(new FileInputStream(new File(testFilePath)),
+				"text/xml; subtype=gml/3.1.1",
+				"http://schemas.opengis.net/gml/3.1.1/base/feature.xsd");
+
+		InputStream resultStream = dataHandler.generateStream(theBinding, "text/xml; subtype=gml/3.1.1", "http://schemas.opengis.net/gml/3.1.1/base/feature.xsd");
+
+		GTVectorDataBinding parsedGeneratedBinding = theParser.parse(resultStream, "text/xml; subtype=gml/3.1.1", "http://schemas.opengis.net/gml/3.1.1/base/feature.xsd");
+
+		assertEquals(theBinding.getPayload().size(), parsedGeneratedBinding.getPayload().size());
+	}
+
 	@Override
 	protected void initializeDataHandler() {
 		dataHandler = new GML3BasicGenerator();
@@ -50,12 +50,19 @@ package org.n52.wps.io.test.datahandler.parser;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 
+import org.apache.commons.io.IOUtils;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.n52.wps.io.data.binding.complex.GTVectorDataBinding;
 import org.n52.wps.io.datahandler.parser.GML3BasicParser;
+import org.n52.wps.io.datahandler.parser.GMLStreamingFeatureCollection;
 import org.n52.wps.io.test.datahandler.AbstractTestCase;
 
 public class GML3BasicParserTest extends AbstractTestCase<GML3BasicParser> {
@@ -100,6 +107,49 @@ public class GML3BasicParserTest extends AbstractTestCase<GML3BasicParser> {
 
 	}
 
+	public void testStreamingFeatureCollection() throws IOException {
+
+		if(!isDataHandlerActive()){
+			return;
+		}
+
+		File testFile = new File(URLDecoder.decode(projectRoot
+				+ "/52n-wps-io-geotools/src/test/resources/spearfish_restricted_sites_gml3.xml", "UTF-8"));
+
+		SimpleFeatureCollection parsed = dataHandler.parseFeatureCollection(testFile);
+
+		// parse chunks of two members each through the regular code path
+		SimpleFeatureCollection streamed = GMLStreamingFeatureCollection.create(testFile,
+				new GMLStreamingFeatureCollection.ChunkParser() {
+
+					@Override
+					public SimpleFeatureCollection parse(InputStream chunk) throws IOException {
+						File chunkFile = File.createTempFile("chunk", ".xml");
+						chunkFile.deleteOnExit();
+						OutputStream out = new FileOutputStream(chunkFile);
+						try {
+							IOUtils.copy(chunk, out);
+						} finally {
+							out.close();
+						}
+						return dataHandler.parseFeatureCollection(chunkFile);
+					}
+				}, 2, false);
+
+		assertTrue(streamed instanceof GMLStreamingFeatureCollection);
+		assertEquals(parsed.size(), streamed.size());
+		assertEquals(parsed.getBounds(), streamed.getBounds());
+
+		SimpleFeatureIterator features = streamed.features();
+		try {
+			assertTrue(features.hasNext());
+			assertNotNull(features.next().getDefaultGeometry());
+		} finally {
+			features.close();
+		}
+		assertTrue(testFile.exists());
+	}
+
 	@Override
 	protected void initializeDataHandler() {
 		dataHandler = new GML3BasicParser();
@@ -57,9 +57,10 @@ public class WCPSQueryParser extends AbstractParser{
 			br = new BufferedReader(new InputStreamReader(stream,"UTF-8"));
 		
 		    sw=new StringWriter();
+		    char[] buffer = new char[8192];
 		    int k;
-		    while((k=br.read())!=-1){
-		    	sw.write(k);
+		    while((k=br.read(buffer))!=-1){
+		    	sw.write(buffer, 0, k);
 		    }
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException("Unsupported Encoding");
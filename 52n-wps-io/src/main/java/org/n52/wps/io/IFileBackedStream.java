@@ -0,0 +1,33 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.wps.io;
+
+import java.io.File;
+
+/**
+ * An input stream that reads the content of a file from its beginning. Parsers
+ * that need their input as a file can use the file instead of copying the
+ * stream, see {@link org.n52.wps.io.datahandler.parser.AbstractParser}.
+ */
+public interface IFileBackedStream {
+
+	/**
+	 * @return the file holding the content of the stream, or
+	 *         <code>null</code> if the content is not available as a file
+	 */
+	File getFile();
+}
@@ -17,17 +17,31 @@
 package org.n52.wps.io.datahandler.parser;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.codec.binary.Base64InputStream;
 import org.n52.wps.FormatDocument.Format;
 import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.io.AbstractIOHandler;
+import org.n52.wps.io.IFileBackedStream;
 import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.IParser;
 import org.n52.wps.io.data.IData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @author Matthias Mueller, TU Dresden
@@ -35,6 +49,12 @@ import org.n52.wps.io.data.IData;
  */
 public abstract class AbstractParser extends AbstractIOHandler implements IParser{
 	
+	private static Logger LOGGER = LoggerFactory.getLogger(AbstractParser.class);
+	
+	private static final int SPOOL_BUFFER_SIZE = 64 * 1024;
+	
+	private static final ConcurrentMap<String, SpoolStatistics> spoolStatistics = new ConcurrentHashMap<String, SpoolStatistics>();
+	
 	/**
 	 * A list of files that shall be deleted by destructor.
 	 * Convenience mechanism to delete temporary files that had
@@ -92,6 +112,150 @@ public abstract class AbstractParser extends AbstractIOHandler implements IParse
 		return parse(new Base64InputStream(input), mimeType, schema);
 	}
 	
+	/**
+	 * Writes an input to a new temporary file that is marked for deletion by
+	 * the destructor. The input is copied with a large buffer, or through the
+	 * file channel if it is a FileInputStream. If the input is an
+	 * {@link IFileBackedStream}, its file is hard linked instead of copied
+	 * where the file system supports it, and the input is not read.
+	 *
+	 * @param input
+	 *            the input to spool
+	 * @param prefix
+	 *            the prefix of the file name, at least three characters
+	 * @param suffix
+	 *            the suffix of the file name, <code>null</code> for ".tmp"
+	 * @return the temporary file
+	 * @throws IOException
+	 *             if the input could not be read or the file not be written
+	 */
+	protected File spool(InputStream input, String prefix, String suffix) throws IOException {
+		long start = System.nanoTime();
+		File file = File.createTempFile(prefix, suffix);
+		finalizeFiles.add(file); // mark for final delete
+		boolean linked;
+		try {
+			linked = transfer(input, file);
+		} catch (IOException e) {
+			finalizeFiles.remove(file);
+			file.delete();
+			throw e;
+		}
+		long nanos = System.nanoTime() - start;
+		SpoolStatistics statistics = getSpoolStatistics(getClass());
+		statistics.count.incrementAndGet();
+		statistics.bytes.addAndGet(file.length());
+		statistics.nanos.addAndGet(nanos);
+		if (linked) {
+			statistics.links.incrementAndGet();
+		}
+		LOGGER.debug("{} spooled {} bytes in {} ms{}", new Object[] { getClass().getSimpleName(), file.length(),
+				TimeUnit.NANOSECONDS.toMillis(nanos), linked ? " (linked)" : "" });
+		return file;
+	}
+	
+	/**
+	 * @return true if the file of the input was linked, false if the content
+	 *         was copied
+	 */
+	private static boolean transfer(InputStream input, File file) throws IOException {
+		if (input instanceof IFileBackedStream) {
+			File source = ((IFileBackedStream) input).getFile();
+			if (source != null && source.isFile()) {
+				try {
+					Files.delete(file.toPath());
+					Files.createLink(file.toPath(), source.toPath());
+					return true;
+				} catch (IOException | UnsupportedOperationException | SecurityException e) {
+					LOGGER.debug("Could not link {}, copying it: {}", source, e.getMessage());
+				}
+				FileInputStream sourceStream = new FileInputStream(source);
+				try {
+					copy(sourceStream, file);
+				} finally {
+					sourceStream.close();
+				}
+				return false;
+			}
+		}
+		copy(input, file);
+		return false;
+	}
+	
+	private static void copy(InputStream input, File file) throws IOException {
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			if (input instanceof FileInputStream) {
+				FileChannel source = ((FileInputStream) input).getChannel();
+				FileChannel target = output.getChannel();
+				long count = source.size() - source.position();
+				long position = 0;
+				while (position < count) {
+					long transferred = target.transferFrom(source, position, count - position);
+					if (transferred <= 0) {
+						break;
+					}
+					position += transferred;
+				}
+			} else {
+				byte[] buffer = new byte[SPOOL_BUFFER_SIZE];
+				int read;
+				while ((read = input.read(buffer)) != -1) {
+					output.write(buffer, 0, read);
+				}
+			}
+		} finally {
+			output.close();
+		}
+	}
+	
+	/**
+	 * @return the spooling statistics of all parsers that spooled an input,
+	 *         by parser class name
+	 */
+	public static Map<String, SpoolStatistics> getSpoolStatistics() {
+		return Collections.unmodifiableMap(spoolStatistics);
+	}
+	
+	private static SpoolStatistics getSpoolStatistics(Class<?> parserClass) {
+		SpoolStatistics statistics = spoolStatistics.get(parserClass.getName());
+		if (statistics == null) {
+			spoolStatistics.putIfAbsent(parserClass.getName(), new SpoolStatistics());
+			statistics = spoolStatistics.get(parserClass.getName());
+		}
+		return statistics;
+	}
+	
+	/**
+	 * Number of inputs, bytes and time spent spooling inputs of a parser.
+	 */
+	public static class SpoolStatistics {
+		
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong links = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		
+		public long getCount() {
+			return count.get();
+		}
+		
+		/**
+		 * @return the number of inputs that were linked instead of copied
+		 */
+		public long getLinks() {
+			return links.get();
+		}
+		
+		public long getBytes() {
+			return bytes.get();
+		}
+		
+		public long getMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+		}
+	}
+	
 	/**
 	 * Destructor deletes generated temporary files.
 	 */
@@ -172,15 +172,20 @@ public class GenericRProcess extends AbstractObservableAlgorithm {
     public Map<String, IData> run(Map<String, List<IData>> inputData) throws ExceptionReport {
         log.info("Running {} \n\tInput data: {}", this.toString(), Arrays.toString(inputData.entrySet().toArray()));
 
+        RConnectionPool pool = shutdownRServerAfterRun ? null : config.getConnectionPool();
         FilteredRConnection rCon = null;
+        boolean reusable = false;
         try {
-            rCon = config.openRConnection();
+            rCon = pool != null ? pool.borrowConnection() : config.openRConnection();
             RLogger.logGenericRProcess(rCon,
                                        "Running algorithm with input "
                                                + Arrays.deepToString(inputData.entrySet().toArray()));
 
             RSessionManager session = new RSessionManager(rCon, config);
-            session.configureSession(getWellKnownName(), executor);
+            if (pool != null)
+                session.configureProcess(getWellKnownName());
+            else
+                session.configureSession(getWellKnownName(), executor);
 
             RWorkspaceManager workspace = new RWorkspaceManager(rCon, this.iohandler, config);
             String originalWorkDir = workspace.prepareWorkspace(inputData, getWellKnownName());
@@ -256,10 +261,13 @@ public class GenericRProcess extends AbstractObservableAlgorithm {
                 workspace.saveImage("afterExecution");
             log.debug("RESULT: " + Arrays.toString(result.entrySet().toArray()));
 
-            session.cleanUp();
+            // pooled sessions are reset when they are returned to the pool
+            if (pool == null)
+                session.cleanUp();
             workspace.cleanUpInR(originalWorkDir);
             workspace.cleanUpWithWPS();
 
+            reusable = true;
             return result;
         }
         catch (IOException e) {
@@ -288,7 +296,9 @@ public class GenericRProcess extends AbstractObservableAlgorithm {
         }
         finally {
             if (rCon != null) {
-                if (shutdownRServerAfterRun) {
+                if (pool != null)
+                    pool.returnConnection(rCon, reusable);
+                else if (shutdownRServerAfterRun) {
                     log.debug("Shutting down R completely...");
                     try {
                         rCon.serverShutdown();
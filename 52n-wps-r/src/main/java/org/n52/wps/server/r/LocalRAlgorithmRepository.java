@@ -74,9 +74,13 @@ public class LocalRAlgorithmRepository implements ITransactionalAlgorithmReposit
         // unregistered scripts from repository folder will be added as
         // Algorithm to WPSconfig
         changeManager.updateRepositoryConfiguration();
+        // sessions of the previous configuration are closed, in-use ones when they are returned
+        rConfig.resetConnectionPool();
 
         CustomDataTypeManager.getInstance().update();
-        checkStartUpConditions();
+        if (checkStartUpConditions())
+            // start preparing R sessions
+            rConfig.getConnectionPool();
 
         // finally add all available algorithms from the R config
         addAllAlgorithms();
@@ -286,6 +290,7 @@ public class LocalRAlgorithmRepository implements ITransactionalAlgorithmReposit
     public void shutdown() {
         LOGGER.info("Shutting down ...");
         this.algorithms.clear();
+        this.rConfig.resetConnectionPool();
     }
 
 }
@@ -0,0 +1,365 @@
+/**
+ * ﻿Copyright (C) 2010 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.r;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.r.syntax.RAnnotationException;
+import org.n52.wps.server.r.util.RExecutor;
+import org.n52.wps.server.r.workspace.RSessionManager;
+import org.rosuda.REngine.Rserve.RserveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of warm Rserve sessions. Starting an R session and loading the utility scripts and libraries
+ * takes seconds, so sessions are prepared once (see
+ * {@link RSessionManager#initializeSession(RExecutor, String[])}) and reused for many process runs. After
+ * each run the session is reset to its prepared state, sessions that can't be reset, failed or reached the
+ * maximum number of uses are closed.
+ * 
+ * The pool is configured with the following repository properties:
+ * <ul>
+ * <li><code>R_pool_minSize</code>: number of sessions kept ready (default: 1)</li>
+ * <li><code>R_pool_maxSize</code>: maximum number of sessions, 0 disables the pool (default: 4)</li>
+ * <li><code>R_pool_maxReuse</code>: number of runs after which a session is replaced, 0 for no limit
+ * (default: 100)</li>
+ * <li><code>R_pool_maxWaitMillis</code>: time to wait for a free session (default: 30000)</li>
+ * <li><code>R_pool_libraries</code>: comma separated R packages attached to every session (default:
+ * none)</li>
+ * </ul>
+ * 
+ * Note that Rserve only supports separate sessions for concurrent connections on Unix systems.
+ */
+public class RConnectionPool {
+
+    private static Logger LOGGER = LoggerFactory.getLogger(RConnectionPool.class);
+
+    private final R_Config config;
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final int maxReuse;
+
+    private final long maxWait;
+
+    private final String[] libraries;
+
+    private final Semaphore permits;
+
+    /** used as a stack, so that the most recently used sessions are reused first */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+
+    private final ConcurrentMap<FilteredRConnection, PooledConnection> borrowed = new ConcurrentHashMap<FilteredRConnection, PooledConnection>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicBoolean fillScheduled = new AtomicBoolean();
+
+    private final ExecutorService filler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "wps4r-session-pool");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private volatile boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong waitMillis = new AtomicLong();
+
+    public RConnectionPool(R_Config config, int minSize, int maxSize, int maxReuse, long maxWait, String[] libraries) {
+        this.config = config;
+        this.maxSize = maxSize;
+        this.minSize = Math.min(minSize, maxSize);
+        this.maxReuse = maxReuse;
+        this.maxWait = maxWait;
+        this.libraries = libraries;
+        this.permits = new Semaphore(maxSize, true);
+
+        LOGGER.info("NEW {}", this);
+        ensureMinSize();
+    }
+
+    /**
+     * Returns a prepared session for a process run, which must be given back with
+     * {@link #returnConnection(FilteredRConnection, boolean)}.
+     * 
+     * @throws RserveException
+     *         if no session could be created or none was available in time
+     */
+    public FilteredRConnection borrowConnection() throws RserveException {
+        if (closed)
+            throw new RserveException(null, "The R session pool is closed");
+
+        long start = System.currentTimeMillis();
+        try {
+            if ( !permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new RserveException(null, "Timeout waiting for an R session, all " + maxSize
+                        + " sessions are in use");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RserveException(null, "Interrupted while waiting for an R session");
+        }
+        waitMillis.addAndGet(System.currentTimeMillis() - start);
+
+        try {
+            PooledConnection pooled;
+            while ( (pooled = idle.pollFirst()) != null) {
+                if (isHealthy(pooled)) {
+                    reused.incrementAndGet();
+                    break;
+                }
+                LOGGER.debug("Discarding broken R session");
+                discard(pooled);
+            }
+            if (pooled == null)
+                pooled = createConnection();
+
+            pooled.uses++;
+            borrowed.put(pooled.connection, pooled);
+            return pooled.connection;
+        }
+        catch (RserveException | RuntimeException e) {
+            permits.release();
+            ensureMinSize();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back a session after a process run. It is reset for the next run, unless it is not reusable.
+     * 
+     * @param connection
+     *        a session returned by {@link #borrowConnection()}
+     * @param reusable
+     *        false if the state of the session is unknown, e.g. because the run failed
+     */
+    public void returnConnection(FilteredRConnection connection, boolean reusable) {
+        PooledConnection pooled = borrowed.remove(connection);
+        if (pooled == null) {
+            LOGGER.warn("Closing R connection that was not borrowed from the pool: {}", connection);
+            connection.close();
+            return;
+        }
+
+        try {
+            if (reusable && !closed && (maxReuse <= 0 || pooled.uses < maxReuse) && pooled.session.resetSession()) {
+                idle.offerFirst(pooled);
+                if (closed && idle.remove(pooled))
+                    discard(pooled);
+            }
+            else
+                discard(pooled);
+        }
+        finally {
+            permits.release();
+        }
+        ensureMinSize();
+        LOGGER.debug("Returned R session: {}", this);
+    }
+
+    /**
+     * Closes all idle sessions, borrowed sessions are closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        filler.shutdownNow();
+        PooledConnection pooled;
+        while ( (pooled = idle.pollFirst()) != null)
+            discard(pooled);
+
+        LOGGER.info("Closed {}", this);
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return waitMillis.get();
+    }
+
+    private PooledConnection createConnection() throws RserveException {
+        FilteredRConnection connection = config.openRConnection();
+        size.incrementAndGet();
+        try {
+            RSessionManager session = new RSessionManager(connection, config);
+            session.initializeSession(new RExecutor(), libraries);
+            created.incrementAndGet();
+            return new PooledConnection(connection, session);
+        }
+        catch (RserveException e) {
+            abandon(connection);
+            throw e;
+        }
+        catch (ExceptionReport | IOException | RAnnotationException e) {
+            abandon(connection);
+            RserveException rse = new RserveException(connection, "Could not initialize R session: "
+                    + e.getMessage());
+            rse.initCause(e);
+            throw rse;
+        }
+    }
+
+    private void abandon(FilteredRConnection connection) {
+        size.decrementAndGet();
+        connection.close();
+    }
+
+    private boolean isHealthy(PooledConnection pooled) {
+        if ( !pooled.connection.isConnected())
+            return false;
+        try {
+            pooled.connection.voidEval("TRUE");
+            return true;
+        }
+        catch (RserveException e) {
+            LOGGER.debug("R session failed health check", e);
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        size.decrementAndGet();
+        discarded.incrementAndGet();
+        pooled.connection.close();
+    }
+
+    /**
+     * Prepares sessions in the background until the minimum size is reached.
+     */
+    private void ensureMinSize() {
+        if (closed || size.get() >= minSize || !fillScheduled.compareAndSet(false, true))
+            return;
+
+        try {
+            filler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while ( !closed && size.get() < minSize) {
+                            idle.offerLast(createConnection());
+                            LOGGER.debug("Prepared R session: {}", RConnectionPool.this);
+                        }
+                    }
+                    catch (RserveException e) {
+                        LOGGER.warn("Could not prepare R session", e);
+                    }
+                    finally {
+                        fillScheduled.set(false);
+                    }
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            // rejected after close
+            fillScheduled.set(false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("RConnectionPool [size = ").append(size.get());
+        sb.append(" (min ").append(minSize).append(", max ").append(maxSize).append(")");
+        sb.append(", idle = ").append(idle.size());
+        sb.append(", active = ").append(borrowed.size());
+        sb.append(", created = ").append(created.get());
+        sb.append(", reused = ").append(reused.get());
+        sb.append(", discarded = ").append(discarded.get());
+        sb.append(", timeouts = ").append(timeouts.get());
+        sb.append("]");
+        return sb.toString();
+    }
+
+    private static class PooledConnection {
+
+        private final FilteredRConnection connection;
+
+        private final RSessionManager session;
+
+        private int uses;
+
+        PooledConnection(FilteredRConnection connection, RSessionManager session) {
+            this.connection = connection;
+            this.session = session;
+        }
+    }
+}
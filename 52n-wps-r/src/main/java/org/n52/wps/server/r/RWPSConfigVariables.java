@@ -30,7 +30,7 @@ package org.n52.wps.server.r;
 
 public enum RWPSConfigVariables {
 
-    SCRIPT_DIR, RESOURCE_DIR, ALGORITHM_PROPERTY_NAME, ENABLE_BATCH_START, RSERVE_HOST, RSERVE_PORT, RSERVE_USER, RSERVE_PASSWORD, R_DATATYPE_CONFIG, R_WORK_DIR_STRATEGY, R_WORK_DIR_NAME, R_CACHE_PROCESSES, R_SESSION_MEMORY_LIMIT;
+    SCRIPT_DIR, RESOURCE_DIR, ALGORITHM_PROPERTY_NAME, ENABLE_BATCH_START, RSERVE_HOST, RSERVE_PORT, RSERVE_USER, RSERVE_PASSWORD, R_DATATYPE_CONFIG, R_WORK_DIR_STRATEGY, R_WORK_DIR_NAME, R_CACHE_PROCESSES, R_SESSION_MEMORY_LIMIT, R_POOL_MIN_SIZE, R_POOL_MAX_SIZE, R_POOL_MAX_REUSE, R_POOL_MAX_WAIT, R_POOL_LIBRARIES;
 
     public String toString() {
         switch (this) {
@@ -60,6 +60,16 @@ public enum RWPSConfigVariables {
             return "R_cacheDescriptions";
         case R_SESSION_MEMORY_LIMIT:
             return "R_session_memoryLimit";
+        case R_POOL_MIN_SIZE:
+            return "R_pool_minSize";
+        case R_POOL_MAX_SIZE:
+            return "R_pool_maxSize";
+        case R_POOL_MAX_REUSE:
+            return "R_pool_maxReuse";
+        case R_POOL_MAX_WAIT:
+            return "R_pool_maxWaitMillis";
+        case R_POOL_LIBRARIES:
+            return "R_pool_libraries";
         default:
             return "NO STRING REPRESENTATION DEFINED FOR ENUM CONSTANT!";
         }
@@ -81,6 +81,16 @@ public class R_Config {
 
     private static final String DIR_DELIMITER = ";";
 
+    private static final int DEFAULT_POOL_MIN_SIZE = 1;
+
+    private static final int DEFAULT_POOL_MAX_SIZE = 4;
+
+    private static final int DEFAULT_POOL_MAX_REUSE = 100;
+
+    private static final int DEFAULT_POOL_MAX_WAIT = 30000;
+
+    private static final String LIBRARY_DELIMITER = ",";
+
     /** R scripts with utility functions to pre-load */
     public String utilsDirFull;
 
@@ -103,6 +113,8 @@ public class R_Config {
 
     private RStarter starter;
 
+    private RConnectionPool connectionPool;
+
     private R_Config() {
         this.starter = new RStarter();
         this.connector = new RConnector(starter);
@@ -434,6 +446,59 @@ public class R_Config {
         return port_number;
     }
 
+    /**
+     * @return the pool of prepared R sessions, or <code>null</code> if pooling is disabled
+     */
+    public synchronized RConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            int maxSize = getIntConfigVariable(RWPSConfigVariables.R_POOL_MAX_SIZE, DEFAULT_POOL_MAX_SIZE);
+            if (maxSize <= 0)
+                return null;
+
+            ArrayList<String> libraries = new ArrayList<String>();
+            String libs = getConfigVariable(RWPSConfigVariables.R_POOL_LIBRARIES);
+            if (libs != null)
+                for (String lib : libs.split(LIBRARY_DELIMITER))
+                    if ( !lib.trim().isEmpty())
+                        libraries.add(lib.trim());
+
+            connectionPool = new RConnectionPool(this,
+                                                 getIntConfigVariable(RWPSConfigVariables.R_POOL_MIN_SIZE,
+                                                                      DEFAULT_POOL_MIN_SIZE),
+                                                 maxSize,
+                                                 getIntConfigVariable(RWPSConfigVariables.R_POOL_MAX_REUSE,
+                                                                      DEFAULT_POOL_MAX_REUSE),
+                                                 getIntConfigVariable(RWPSConfigVariables.R_POOL_MAX_WAIT,
+                                                                      DEFAULT_POOL_MAX_WAIT),
+                                                 libraries.toArray(new String[libraries.size()]));
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Closes the pool of R sessions, a new one is created with the current configuration on the next request.
+     */
+    public synchronized void resetConnectionPool() {
+        if (connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+    }
+
+    private int getIntConfigVariable(RWPSConfigVariables key, int defaultValue) {
+        String value = getConfigVariable(key);
+        if (value != null && !value.equals("")) {
+            try {
+                return Integer.parseInt(value.trim());
+            }
+            catch (NumberFormatException e) {
+                LOGGER.warn("Config variable " + key + " does not contain a parseble integer. Using default "
+                        + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     public String getRServeHost() {
         String host = getConfigVariable(RWPSConfigVariables.RSERVE_HOST);
         if (host == null || host.equals("")) {
@@ -66,6 +66,35 @@ public class RSessionManager {
 
     private static final String WARNING_OUTPUT_NAME = "warnings";
 
+    /**
+     * hidden (not listed by ls()) variable holding the state of a warm session: objects, search path, options
+     * and working directory
+     */
+    private static final String INITIAL_STATE = ".wps.initialstate";
+
+    private static final String RECORD_STATE = INITIAL_STATE + " <- list("
+            + "objects = union(setdiff(ls(all.names = TRUE), \".Random.seed\"), \"" + INITIAL_STATE + "\"), "
+            + "search = search(), options = options(), wd = getwd())";
+
+    /**
+     * restores the recorded state and evaluates to TRUE if it succeeded; attached packages or environments
+     * that can't be detached leave a different search path, so the session can't be reused
+     */
+    private static final String RESTORE_STATE = "local({\n"
+            + "  s <- get(\"" + INITIAL_STATE + "\", envir = globalenv())\n"
+            + "  while (sink.number() > 0) sink()\n"
+            + "  if (sink.number(type = \"message\") != 2) sink(type = \"message\")\n"
+            + "  graphics.off()\n"
+            + "  for (p in setdiff(search(), s$search)) try(detach(p, character.only = TRUE), silent = TRUE)\n"
+            + "  added <- setdiff(names(options()), names(s$options))\n"
+            + "  options(s$options)\n"
+            + "  if (length(added) > 0) options(structure(vector(\"list\", length(added)), names = added))\n"
+            + "  RNGkind(\"default\", \"default\")\n"
+            + "  rm(list = setdiff(ls(globalenv(), all.names = TRUE), s$objects), envir = globalenv())\n"
+            + "  setwd(s$wd)\n"
+            + "  isTRUE(identical(search(), s$search) && all(vapply(s$objects, exists, logical(1), envir = globalenv())))\n"
+            + "})";
+
     private R_Config config;
 
     private RConnection connection;
@@ -109,6 +138,80 @@ public class RSessionManager {
             cleanSession();
         }
 
+        configureMemoryLimit();
+        loadWPSSessionVariables();
+        loadProcessVariables(processWKN);
+        loadUtilityScripts(executor);
+    }
+
+    /**
+     * Prepares a session that is reused for many process runs: configures it, loads the session
+     * variables, utility scripts and libraries, and records the state of the session so that
+     * {@link #resetSession()} can restore it after each run.
+     * 
+     * @param libraries
+     *        names of the R packages to attach
+     */
+    public void initializeSession(RExecutor executor, String[] libraries) throws ExceptionReport,
+            RserveException,
+            FileNotFoundException,
+            IOException,
+            RAnnotationException {
+        log.debug("Initializing reusable R session...");
+
+        configureMemoryLimit();
+        loadWPSSessionVariables();
+        loadUtilityScripts(executor);
+
+        for (String library : libraries) {
+            log.debug("Loading library {}", library);
+            this.connection.voidEval("library(\"" + library + "\")");
+        }
+
+        recordSessionState();
+    }
+
+    /**
+     * Records the objects, search path, options and working directory of the session as the state that
+     * {@link #resetSession()} restores.
+     */
+    public void recordSessionState() throws RserveException {
+        this.connection.voidEval(RECORD_STATE);
+    }
+
+    /**
+     * Configures a session prepared with {@link #initializeSession(RExecutor, String[])} for a process
+     * run.
+     */
+    public void configureProcess(String processWKN) throws ExceptionReport {
+        log.debug("Configuring reusable R session for {}", processWKN);
+        loadProcessVariables(processWKN);
+    }
+
+    /**
+     * Restores the state recorded by {@link #recordSessionState()}: closes sinks and graphics devices,
+     * detaches packages and environments attached since, restores the options and the random number
+     * generator, removes all objects created since (including hidden ones) and switches back to the
+     * initial working directory.
+     * 
+     * @return false if the session can't be restored, e.g. because a package could not be detached or
+     *         recorded objects were removed
+     */
+    public boolean resetSession() {
+        try {
+            REXP complete = this.connection.eval(RESTORE_STATE);
+            return complete.asInteger() == 1;
+        }
+        catch (RserveException e) {
+            log.warn("Could not reset session", e);
+        }
+        catch (REXPMismatchException e) {
+            log.warn("Could not reset session", e);
+        }
+        return false;
+    }
+
+    private void configureMemoryLimit() {
         // configure memory limit
         StringBuilder cmd = new StringBuilder();
 
@@ -128,9 +231,6 @@ public class RSessionManager {
         catch (REXPMismatchException e) {
             log.error("Problem setting the memory limit", e);
         }
-
-        loadWPSSessionVariables(processWKN);
-        loadUtilityScripts(executor);
     }
 
     public String getConsoleOutput(String cmd) throws RserveException, REXPMismatchException {
@@ -161,7 +261,7 @@ public class RSessionManager {
         RLogger.logSessionContent(connection);
     }
 
-    private void loadWPSSessionVariables(String processWKN) throws ExceptionReport {
+    private void loadWPSSessionVariables() throws ExceptionReport {
         log.debug("Loading session variables.");
 
         try {
@@ -182,7 +282,19 @@ public class RSessionManager {
                       RWPSSessionVariables.RESOURCE_URL_NAME,
                       resourceUrl);
             RLogger.logVariable(connection, RWPSSessionVariables.RESOURCE_URL_NAME);
+        }
+        catch (RserveException e) {
+            log.error("Error loading WPS session variables");
+            throw new ExceptionReport("Could not load session variables",
+                                      ExceptionReport.REMOTE_COMPUTATION_ERROR,
+                                      e);
+        }
+    }
+
+    private void loadProcessVariables(String processWKN) throws ExceptionReport {
+        log.debug("Loading process variables.");
 
+        try {
             URL processDescription = config.getProcessDescriptionURL(processWKN);
 
             connection.assign(RWPSSessionVariables.PROCESS_DESCRIPTION, processDescription.toString());
@@ -193,7 +305,7 @@ public class RSessionManager {
                       processDescription);
 
             // create session variable for warning storage
-            cmd = RWPSSessionVariables.WARNING_OUTPUT_STORAGE + " = c()";
+            String cmd = RWPSSessionVariables.WARNING_OUTPUT_STORAGE + " = c()";
             connection.eval(cmd);
             RLogger.logVariable(connection, RWPSSessionVariables.WARNING_OUTPUT_STORAGE);
 
@@ -0,0 +1,135 @@
+/**
+ * ﻿Copyright (C) 2010 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.r.workspace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.rosuda.REngine.REXPMismatchException;
+import org.rosuda.REngine.Rserve.RConnection;
+import org.rosuda.REngine.Rserve.RserveException;
+
+/**
+ * Tests the reset of reused sessions, requires Rserve running on the localhost (see Wps4rIT), otherwise
+ * the tests are skipped.
+ */
+public class RSessionManagerTest {
+
+    private RConnection connection;
+
+    private RSessionManager session;
+
+    @Before
+    public void connect() throws RserveException {
+        String host = System.getProperty("test.rserve.host", "127.0.0.1");
+        int port = Integer.parseInt(System.getProperty("test.rserve.port", "6311"));
+        try {
+            connection = new RConnection(host, port);
+            if (connection.needLogin())
+                connection.login(System.getProperty("test.rserve.user"), System.getProperty("test.rserve.pwd"));
+        }
+        catch (RserveException e) {
+            Assume.assumeNoException(e);
+        }
+        session = new RSessionManager(connection, null);
+
+        connection.voidEval("preloaded <- 42");
+        connection.voidEval(".preloaded <- 43");
+        session.recordSessionState();
+    }
+
+    @After
+    public void close() {
+        if (connection != null)
+            connection.close();
+    }
+
+    @Test
+    public void objectsAreRemoved() throws Exception {
+        connection.voidEval("x <- 1");
+        connection.voidEval(".hidden <- 2");
+        connection.voidEval("set.seed(42)");
+
+        assertTrue(session.resetSession());
+        assertFalse(isTrue("exists(\"x\")"));
+        assertFalse(isTrue("exists(\".hidden\")"));
+        assertFalse(isTrue("exists(\".Random.seed\", envir = globalenv())"));
+        assertEquals(42, connection.eval("preloaded").asInteger());
+        assertEquals(43, connection.eval(".preloaded").asInteger());
+    }
+
+    @Test
+    public void searchPathIsRestored() throws Exception {
+        connection.voidEval("library(tools)");
+        connection.voidEval("attach(list(preloaded = 0), name = \"wps.test.env\")");
+
+        assertTrue(session.resetSession());
+        assertTrue(isTrue("identical(search(), .wps.initialstate$search)"));
+        assertFalse(isTrue("\"wps.test.env\" %in% search()"));
+    }
+
+    @Test
+    public void optionsAreRestored() throws Exception {
+        int digits = connection.eval("getOption(\"digits\")").asInteger();
+        connection.voidEval("options(digits = " + (digits + 1) + ", wps.test.option = TRUE)");
+
+        assertTrue(session.resetSession());
+        assertEquals(digits, connection.eval("getOption(\"digits\")").asInteger());
+        assertTrue(isTrue("is.null(getOption(\"wps.test.option\"))"));
+    }
+
+    @Test
+    public void sinksAndDevicesAreClosed() throws Exception {
+        String workDir = connection.eval("getwd()").asString();
+        connection.voidEval("sink(tempfile())");
+        connection.voidEval("pdf(NULL)");
+        connection.voidEval("setwd(tempdir())");
+
+        assertTrue(session.resetSession());
+        assertEquals(0, connection.eval("sink.number()").asInteger());
+        assertEquals(0, connection.eval("length(dev.list())").asInteger());
+        assertEquals(workDir, connection.eval("getwd()").asString());
+    }
+
+    @Test
+    public void sessionWithoutRecordedObjectsIsNotReusable() throws Exception {
+        connection.voidEval("rm(preloaded)");
+
+        assertFalse(session.resetSession());
+    }
+
+    private boolean isTrue(String expression) throws RserveException, REXPMismatchException {
+        return connection.eval(expression).asInteger() == 1;
+    }
+}
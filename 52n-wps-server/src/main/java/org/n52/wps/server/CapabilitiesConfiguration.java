@@ -48,6 +48,7 @@ import net.opengis.wps.x100.ProcessOfferingsDocument.ProcessOfferings;
 import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlOptions;
 import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.response.ResponseCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -177,6 +178,7 @@ public class CapabilitiesConfiguration {
             }
             else {
                 loadingStrategy = strategy;
+                ResponseCache.getInstance().invalidate();
                 return getInstance(true);
             }
         }
@@ -310,6 +312,7 @@ public class CapabilitiesConfiguration {
      *         if an IO error occurs
      */
     public static void reloadSkeleton() throws XmlException, IOException {
+        ResponseCache.getInstance().invalidate();
         getInstance(true);
     }
 
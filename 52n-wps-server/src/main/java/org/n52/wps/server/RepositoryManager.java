@@ -33,7 +33,17 @@ import java.beans.PropertyChangeListener;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.opengis.wps.x100.ProcessDescriptionType;
 
@@ -44,6 +54,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Manages the configured algorithm repositories. Algorithms are looked up in
+ * an index from process identifier to repository. The repositories and the
+ * index are replaced as a whole when the repositories are reloaded, requests
+ * in flight keep using the repositories they started with. A configuration
+ * change reloads the repositories on a background thread; the thread that
+ * changed the configuration waits until the reload is finished, so that the
+ * new repositories are used as soon as the change returns.
+ *
  * @author Bastian Schaeffer, University of Muenster
  *
  */
@@ -51,9 +69,31 @@ public class RepositoryManager {
 	
 	private static RepositoryManager instance;
 	private static Logger LOGGER = LoggerFactory.getLogger(RepositoryManager.class);
-	private List<IAlgorithmRepository> repositories;
+	private volatile RepositoryIndex index = new RepositoryIndex(Collections.<IAlgorithmRepository>emptyList());
+	private Future<?> scheduledReload;
+	private boolean loading;
+	private final AtomicLong generation = new AtomicLong();
+	private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "wps-repository-reload");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 	private ProcessIDRegistry globalProcessIDs = ProcessIDRegistry.getInstance();
 	private UpdateThread updateThread;
+	private final PropertyChangeListener configListener = new PropertyChangeListener() {
+		public void propertyChange(final PropertyChangeEvent propertyChangeEvent) {
+			LOGGER.info("Received Property Change Event: {}", propertyChangeEvent.getPropertyName());
+			Future<?> reload = scheduleReload();
+			// repositories change the configuration while they are loaded,
+			// the thread that loads them must not wait for the next reload
+			if (reload != null && !Thread.holdsLock(RepositoryManager.this)) {
+				awaitReload(reload);
+			}
+		}
+	};
 	
 	private RepositoryManager(){
 		
@@ -65,14 +105,7 @@ public class RepositoryManager {
 
         // FvK: added Property Change Listener support
         // creates listener and register it to the wpsConfig instance.
-        WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME, new PropertyChangeListener() {
-            public void propertyChange(
-                    final PropertyChangeEvent propertyChangeEvent) {
-                                                                  LOGGER.info("Received Property Change Event: {}",
-                                                                              propertyChangeEvent.getPropertyName());
-                loadAllRepositories();
-            }
-        });
+        WPSConfig.getInstance().addPropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME, configListener);
         
         Double updateHours = WPSConfig.getInstance().getWPSConfig().getServer().getRepoReloadInterval();
         
@@ -87,11 +120,56 @@ public class RepositoryManager {
     	
 	}
 
-    private void loadAllRepositories(){
-        repositories = new ArrayList<IAlgorithmRepository>();
-        LOGGER.debug("Loading all repositories: {} (doing a gc beforehand...)", repositories);
+    /**
+     * Reloads the repositories in the background. Further reloads requested
+     * before the reload starts are served by it.
+     * 
+     * @return the scheduled reload, or <code>null</code> after shutdown
+     */
+    private Future<?> scheduleReload(){
+        synchronized (reloadExecutor) {
+            if (scheduledReload == null) {
+                try {
+                    scheduledReload = reloadExecutor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (reloadExecutor) {
+                                scheduledReload = null;
+                            }
+                            loadAllRepositories();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    LOGGER.debug("Not reloading the repositories after shutdown");
+                }
+            }
+            return scheduledReload;
+        }
+    }
 
-        System.gc();
+    private void awaitReload(Future<?> reload){
+        try {
+            reload.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("Could not reload the repositories", e.getCause());
+        }
+    }
+
+    private synchronized void loadAllRepositories(){
+        loading = true;
+        try {
+            loadRepositories();
+        } finally {
+            loading = false;
+        }
+    }
+
+    // callers hold the lock of the manager
+    private void loadRepositories(){
+        List<IAlgorithmRepository> repositories = new ArrayList<IAlgorithmRepository>();
+        LOGGER.debug("Loading all repositories");
 
 		Repository[] repositoryList = WPSConfig.getInstance().getRegisterdAlgorithmRepositories();
 
@@ -163,9 +241,13 @@ public class RepositoryManager {
                             e.getMessage());
 			}
 		}
+		RepositoryIndex newIndex = new RepositoryIndex(repositories);
+		index = newIndex;
+		generation.incrementAndGet();
+		LOGGER.info("Indexed {} algorithms of {} repositories", newIndex.algorithms.size(), repositories.size());
     }
 	
-	public static RepositoryManager getInstance(){
+	public static synchronized RepositoryManager getInstance(){
 		if(instance==null){
 			instance = new RepositoryManager();
 		}
@@ -176,7 +258,10 @@ public class RepositoryManager {
 	 * Allows to reInitialize the RepositoryManager... This should not be called to often.
 	 *
 	 */
-	public static void reInitialize() {
+	public static synchronized void reInitialize() {
+		if(instance != null){
+			instance.shutdown();
+		}
 		instance = new RepositoryManager();
 	}
 	
@@ -198,10 +283,9 @@ public class RepositoryManager {
 	 * @throws Exception
 	 */
 	public IAlgorithm getAlgorithm(String className){
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(className)){
-				return repository.getAlgorithm(className);
-			}
+		IAlgorithmRepository repository = getRepositoryForAlgorithm(className);
+		if(repository != null){
+			return repository.getAlgorithm(className);
 		}
 		return null;
 	}
@@ -212,7 +296,7 @@ public class RepositoryManager {
 	 */
 	public List<String> getAlgorithms(){
 		List<String> allAlgorithmNamesCollection = new ArrayList<String>();
-		for(IAlgorithmRepository repository : repositories){
+		for(IAlgorithmRepository repository : index.repositories){
 			allAlgorithmNamesCollection.addAll(repository.getAlgorithmNames());
 		}
 		return allAlgorithmNamesCollection;
@@ -220,37 +304,53 @@ public class RepositoryManager {
 	}
 
 	public boolean containsAlgorithm(String algorithmName) {
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(algorithmName)){
-				return true;
-			}
-		}
-		return false;
+		return getRepositoryForAlgorithm(algorithmName) != null;
 	}
 	
 	public IAlgorithmRepository getRepositoryForAlgorithm(String algorithmName){
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(algorithmName)){
-				return repository;
-			}
+		return index.getRepository(algorithmName);
+	}
+	
+	/**
+	 * Returns an algorithm after it was used, so that the repository can
+	 * reuse pooled instances.
+	 *
+	 * @param algorithmIdentifier
+	 *            the identifier the algorithm was requested with
+	 * @param algorithm
+	 *            the algorithm returned by {@link #getAlgorithm(String)}
+	 * @see Reusable
+	 */
+	public void releaseAlgorithm(String algorithmIdentifier, IAlgorithm algorithm){
+		IAlgorithmRepository repository = getRepositoryForAlgorithm(algorithmIdentifier);
+		if(repository instanceof LocalAlgorithmRepository){
+			((LocalAlgorithmRepository) repository).releaseAlgorithm(algorithmIdentifier, algorithm);
 		}
-		return null;
 	}
 	
 	public Class getInputDataTypeForAlgorithm(String algorithmIdentifier, String inputIdentifier){
 		IAlgorithm algorithm = getAlgorithm(algorithmIdentifier);
-		return algorithm.getInputDataType(inputIdentifier);
+		try {
+			return algorithm.getInputDataType(inputIdentifier);
+		} finally {
+			releaseAlgorithm(algorithmIdentifier, algorithm);
+		}
 		
 	}
 	
 	public Class getOutputDataTypeForAlgorithm(String algorithmIdentifier, String inputIdentifier){
 		IAlgorithm algorithm = getAlgorithm(algorithmIdentifier);
-		return algorithm.getOutputDataType(inputIdentifier);
+		try {
+			return algorithm.getOutputDataType(inputIdentifier);
+		} finally {
+			releaseAlgorithm(algorithmIdentifier, algorithm);
+		}
 		
 	}
 	
 	public boolean registerAlgorithm(String id, IAlgorithmRepository repository){
 		if (globalProcessIDs.addID(id)){
+			algorithmsChanged();
 			return true;
 		}
 		else return false;
@@ -258,13 +358,42 @@ public class RepositoryManager {
 	
 	public boolean unregisterAlgorithm(String id){
 		if (globalProcessIDs.removeID(id)){
+			algorithmsChanged();
 			return true;
 		}
 		else return false;
 	}
 	
+	/**
+	 * Signals that algorithms were added to or removed from a repository
+	 * after the repositories were loaded, e.g. by deploying a process. The
+	 * index is rebuilt, so that an algorithm is found in the first repository
+	 * that contains it.
+	 */
+	public void algorithmsChanged(){
+		synchronized (this) {
+			// repositories that are being loaded are indexed when loading is finished
+			if (!loading) {
+				index = index.reindex();
+			}
+		}
+		generation.incrementAndGet();
+	}
+	
+	/**
+	 * Returns the generation of the repositories, which changes whenever the
+	 * repositories are reloaded or their algorithms change. Anything derived
+	 * from the algorithms of a generation (e.g. a cached capabilities
+	 * document) is outdated once the generation changes.
+	 * 
+	 * @return the current generation
+	 */
+	public long getGeneration(){
+		return generation.get();
+	}
+	
 	public IAlgorithmRepository getAlgorithmRepository(String name){
-	  for (IAlgorithmRepository repo : repositories ){
+	  for (IAlgorithmRepository repo : index.repositories ){
 		   if(repo.getClass().getName().equals(name)){
 			   return repo;
 		  }
@@ -274,7 +403,7 @@ public class RepositoryManager {
 
 	public IAlgorithmRepository getRepositoryForClassName(
 			String className) {
-		for(IAlgorithmRepository repository : repositories){
+		for(IAlgorithmRepository repository : index.repositories){
 			if(repository.getClass().getName().equals(className)){
 				return repository;
 			}
@@ -283,14 +412,63 @@ public class RepositoryManager {
 	}
 	
 	public ProcessDescriptionType getProcessDescription(String processClassName){
-		for(IAlgorithmRepository repository : repositories){
-			if(repository.containsAlgorithm(processClassName)){
-				return repository.getProcessDescription(processClassName);
-			}
+		IAlgorithmRepository repository = getRepositoryForAlgorithm(processClassName);
+		if(repository != null){
+			return repository.getProcessDescription(processClassName);
 		}
 		return null;
 	}
 	
+	/**
+	 * Immutable snapshot of the repositories with an index from algorithm
+	 * identifier to the first repository that contains the algorithm.
+	 * Repositories may add or remove algorithms after they were indexed (e.g.
+	 * by deploying a process), so the indexed repository is asked to confirm
+	 * and all repositories are searched if it doesn't.
+	 */
+	static class RepositoryIndex {
+		
+		private final List<IAlgorithmRepository> repositories;
+		private final Map<String, IAlgorithmRepository> algorithms;
+		
+		RepositoryIndex(List<IAlgorithmRepository> repositories) {
+			this.repositories = Collections.unmodifiableList(new ArrayList<IAlgorithmRepository>(repositories));
+			Map<String, IAlgorithmRepository> algorithms = new HashMap<String, IAlgorithmRepository>();
+			for (IAlgorithmRepository repository : this.repositories) {
+				try {
+					for (String algorithmName : repository.getAlgorithmNames()) {
+						if (!algorithms.containsKey(algorithmName)) {
+							algorithms.put(algorithmName, repository);
+						}
+					}
+				} catch (RuntimeException e) {
+					LOGGER.warn("Could not index the algorithms of repository " + repository.getClass().getName(), e);
+				}
+			}
+			this.algorithms = algorithms;
+		}
+		
+		RepositoryIndex reindex() {
+			return new RepositoryIndex(repositories);
+		}
+		
+		IAlgorithmRepository getRepository(String algorithmName) {
+			if (algorithmName == null) {
+				return null;
+			}
+			IAlgorithmRepository repository = algorithms.get(algorithmName);
+			if (repository != null && repository.containsAlgorithm(algorithmName)) {
+				return repository;
+			}
+			for (IAlgorithmRepository candidate : repositories) {
+				if (candidate.containsAlgorithm(algorithmName)) {
+					return candidate;
+				}
+			}
+			return null;
+		}
+	}
+	
     static class UpdateThread extends Thread {
         
     	private final long interval;
@@ -333,11 +511,17 @@ public class RepositoryManager {
     	if (updateThread != null){
     		updateThread.interrupt();
     	}
+    	reloadExecutor.shutdownNow();
     }
 
 	public void shutdown() {
         LOGGER.debug("Shutting down all repositories..");
-		for (IAlgorithmRepository repo : repositories) {
+		WPSConfig.getInstance().removePropertyChangeListener(WPSConfig.WPSCONFIG_PROPERTY_EVENT_NAME, configListener);
+		if (updateThread != null) {
+			updateThread.interrupt();
+		}
+		reloadExecutor.shutdownNow();
+		for (IAlgorithmRepository repo : index.repositories) {
 			repo.shutdown();
 		}
 	}
@@ -28,11 +28,17 @@
  */
 package org.n52.wps.server;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -44,6 +50,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.n52.wps.server.database.DatabaseFactory;
 import org.n52.wps.server.database.IDatabase;
+import org.n52.wps.server.request.ExecuteStatusWriter;
 import org.n52.wps.commons.MIMEUtil;
 import org.n52.wps.commons.XMLUtil;
 import org.slf4j.Logger;
@@ -57,6 +64,14 @@ public class RetrieveResultServlet extends HttpServlet {
     public final static String SERVLET_PATH = "RetrieveResultServlet";
     // in future parameterize
     private final boolean indentXML = false;
+
+    private final static String SUFFIX_GZIP = ".gz";
+    private final static String RANGE_UNIT = "bytes=";
+    // request attributes of the Tomcat sendfile support
+    private final static String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private final static String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private final static String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private final static String SENDFILE_END = "org.apache.tomcat.sendfile.end";
     
     private final int uuid_length = 36;
 
@@ -88,8 +103,12 @@ public class RetrieveResultServlet extends HttpServlet {
 
         	if(!isIDValid(id)){
         		errorResponse("id parameter not valid", response);
+        		return;
         	}
         	
+            // a running job may hold back its latest progress update
+            ExecuteStatusWriter.getInstance().flush(id);
+
             IDatabase db = DatabaseFactory.getDatabase();
             String mimeType = db.getMimeTypeForStoreResponse(id);
             long contentLength = db.getContentLengthForStoreResponse(id);
@@ -136,6 +155,14 @@ public class RetrieveResultServlet extends HttpServlet {
                         copyResponseAsXML(inputStream, outputStream, useAttachment || indentXML, id);
                     } else {
 
+                        File responseFile = db.lookupResponseAsFile(id);
+                        if (responseFile != null && responseFile.isFile()) {
+                            // served straight from the file, see serveFile(...)
+                            IOUtils.closeQuietly(inputStream);
+                            serveFile(request, response, responseFile, contentLength, id);
+                            return;
+                        }
+
                         if (contentLength > -1) {
                             // Can't use response.setContentLength(...) as it accepts an int (max of 2^31 - 1) ?!
                             // response.setContentLength(contentLength);
@@ -192,6 +219,228 @@ public class RetrieveResultServlet extends HttpServlet {
         LOGGER.info("{} bytes written in response to id {}", contentWritten, id);
     }
 
+    /**
+     * Serves a stored file. Supports conditional requests (ETag,
+     * If-None-Match), single byte ranges (Range, If-Range), and sends
+     * gzipped files as they are with Content-Encoding: gzip to clients that
+     * accept it. The file content is transferred by the container if it
+     * supports sendfile, else through {@link FileChannel#transferTo}.
+     *
+     * @param contentLength the length of the uncompressed content, or -1
+     */
+    protected void serveFile(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            File file,
+            long contentLength,
+            String id) throws IOException {
+        boolean gzipped = file.getName().endsWith(SUFFIX_GZIP);
+        boolean encoded = gzipped && acceptsGzip(request.getHeader("Accept-Encoding"));
+        long lastModified = file.lastModified();
+        String eTag = generateETag(file, encoded);
+
+        response.setHeader("ETag", eTag);
+        response.setDateHeader("Last-Modified", lastModified);
+        if (gzipped) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        if (matchesETag(request.getHeader("If-None-Match"), eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (gzipped && !encoded) {
+            // the client can not decode the stored representation
+            if (contentLength > -1) {
+                response.setHeader("Content-Length", Long.toString(contentLength));
+            }
+            InputStream inputStream = new GZIPInputStream(new FileInputStream(file));
+            try {
+                copyResponseStream(inputStream, response.getOutputStream(), id, contentLength);
+            } finally {
+                IOUtils.closeQuietly(inputStream);
+            }
+            return;
+        }
+
+        if (encoded) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setHeader("Accept-Ranges", "bytes");
+        long length = file.length();
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        if (range != null && isRangeApplicable(request, eTag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds != null && bounds.length == 0) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds != null) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        response.setHeader("Content-Length", Long.toString(end - start + 1));
+        transferFile(request, response, file, start, end - start + 1, id);
+    }
+
+    protected void transferFile(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            File file,
+            long position,
+            long count,
+            String id) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START, Long.valueOf(position));
+            request.setAttribute(SENDFILE_END, Long.valueOf(position + count));
+            LOGGER.info("{} bytes handed to the container in response to id {}", count, id);
+            return;
+        }
+        long contentWritten = 0;
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            while (contentWritten < count) {
+                long transferred = channel.transferTo(position + contentWritten, count - contentWritten, target);
+                if (transferred <= 0) {
+                    throw new IOException("Stored file is shorter than expected");
+                }
+                contentWritten += transferred;
+            }
+        } catch (IOException e) {
+            throw new IOException(String.format("Error writing response to output stream for id %s, %d of %d bytes written",
+                    id, contentWritten, count), e);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+        LOGGER.info("{} bytes written in response to id {}", contentWritten, id);
+    }
+
+    /**
+     * Parses the value of a Range header.
+     *
+     * @return the first and last byte position of the range, an empty array
+     *         if the range can not be satisfied, or <code>null</code> if the
+     *         header is to be ignored (unknown unit, invalid syntax or
+     *         multiple ranges)
+     */
+    public long[] parseRange(String range, long length) {
+        if (range == null || !range.startsWith(RANGE_UNIT) || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring(RANGE_UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // suffix range: the last n bytes
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength <= 0 || length == 0) {
+                    return new long[0];
+                }
+                start = Math.max(0, length - suffixLength);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start >= length) {
+                    return new long[0];
+                }
+                end = Math.min(end, length - 1);
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean isRangeApplicable(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range requires a strong comparison
+            return ifRange.equals(eTag);
+        }
+        try {
+            // HTTP dates have a precision of seconds
+            return request.getDateHeader("If-Range") >= lastModified / 1000 * 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(parameter.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String generateETag(File file, boolean encoded) {
+        // stored results are never modified, so name, size and date identify them
+        StringBuilder eTag = new StringBuilder("\"")
+                .append(Integer.toHexString(file.getName().hashCode())).append('-')
+                .append(Long.toHexString(file.length())).append('-')
+                .append(Long.toHexString(file.lastModified()));
+        if (encoded) {
+            eTag.append("-gzip");
+        }
+        return eTag.append('"').toString();
+    }
+
     protected void copyResponseAsXML(
             InputStream inputStream,
             OutputStream outputStream,
@@ -34,7 +34,9 @@ import java.beans.PropertyChangeListener;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.net.URLDecoder;
@@ -56,6 +58,7 @@ import org.n52.wps.io.GeneratorFactory;
 import org.n52.wps.io.ParserFactory;
 import org.n52.wps.server.database.DatabaseFactory;
 import org.n52.wps.server.handler.RequestHandler;
+import org.n52.wps.server.response.ResponseCache.CachedResponse;
 import org.n52.wps.util.XMLBeansHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -242,9 +245,15 @@ public class WebProcessingService extends HttpServlet {
             RequestHandler handler = new RequestHandler((Map<String, String[]>) req.getParameterMap(), out);
             String mimeType = handler.getResponseMimeType();
             res.setContentType(mimeType);
-            handler.handle();
+            CachedResponse cachedResponse = handler.getCachedResponse();
+            if (cachedResponse != null) {
+                writeCachedResponse(cachedResponse, req, res, out);
+            }
+            else {
+                handler.handle();
 
-            res.setStatus(HttpServletResponse.SC_OK);
+                res.setStatus(HttpServletResponse.SC_OK);
+            }
         }
         catch (ExceptionReport e) {
             handleException(e, res);
@@ -264,6 +273,35 @@ public class WebProcessingService extends HttpServlet {
         }
     }
 
+    /**
+     * Writes a cached response, gzipped if the client accepts it. Clients
+     * that already have the response (see <code>If-None-Match</code>) get a
+     * 304 Not Modified without content.
+     */
+    private static void writeCachedResponse(CachedResponse cachedResponse,
+                                            HttpServletRequest req,
+                                            HttpServletResponse res,
+                                            OutputStream out) throws IOException {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.indexOf("gzip") >= 0;
+
+        // clients may store the response, but have to revalidate it
+        res.setHeader("Cache-Control", "no-cache");
+        res.setHeader("Vary", "Accept-Encoding");
+        res.setHeader("ETag", cachedResponse.getETag(gzip));
+        if (cachedResponse.matches(req.getHeader("If-None-Match"), gzip)) {
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if (gzip) {
+            res.setHeader("Content-Encoding", "gzip");
+        }
+        byte[] content = cachedResponse.getContent(gzip);
+        res.setContentLength(content.length);
+        res.setStatus(HttpServletResponse.SC_OK);
+        out.write(content);
+    }
+
     public final static int MAXIMUM_REQUEST_SIZE = 128 << 20;
     public final static String SPECIAL_XML_POST_VARIABLE = "request";
     private static final String XML_CONTENT_TYPE = "text/xml";
@@ -289,32 +327,32 @@ public class WebProcessingService extends HttpServlet {
             LOGGER.debug("Received POST: Content-Type = " + contentType + ", Character-Encoding = " + characterEncoding
                     + ", Content-Length = " + contentLength);
 
-            int requestSize = 0;
-
-            StringWriter writer = contentLength > 0 ? new StringWriter(contentLength) : new StringWriter();
-            reader = req.getReader();
-            char[] buffer = new char[8192];
-            int read;
-            while ( (read = reader.read(buffer)) != -1 && requestSize < MAXIMUM_REQUEST_SIZE) {
-                writer.write(buffer, 0, read);
-                requestSize += read;
-            }
+            InputStream requestStream;
+            if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                int requestSize = 0;
+
+                StringWriter writer = contentLength > 0 ? new StringWriter(contentLength) : new StringWriter();
+                reader = req.getReader();
+                char[] buffer = new char[8192];
+                int read;
+                while ( (read = reader.read(buffer)) != -1 && requestSize < MAXIMUM_REQUEST_SIZE) {
+                    writer.write(buffer, 0, read);
+                    requestSize += read;
+                }
 
-            LOGGER.debug("POST request contained  " + requestSize + " characters");
+                LOGGER.debug("POST request contained  " + requestSize + " characters");
 
-            // Protect against denial of service attacks.
-            if (requestSize >= MAXIMUM_REQUEST_SIZE && reader.read() > -1) {
-                LOGGER.warn("POST request rejected, request size of " + requestSize + " too large.");
-                ExceptionReport er = new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
-                        + " bytes", ExceptionReport.NO_APPLICABLE_CODE);
-                handleException(er, res);
-            }
+                // Protect against denial of service attacks.
+                if (requestSize >= MAXIMUM_REQUEST_SIZE && reader.read() > -1) {
+                    LOGGER.warn("POST request rejected, request size of " + requestSize + " too large.");
+                    ExceptionReport er = new ExceptionReport("Request body too large, limited to " + MAXIMUM_REQUEST_SIZE
+                            + " bytes", ExceptionReport.NO_APPLICABLE_CODE);
+                    handleException(er, res);
+                }
 
-            String documentString = writer.toString();
+                String documentString = writer.toString();
 
-            // Perform URL decoding, if necessary
-            // if ("application/x-www-form-urlencoded".equals(contentType)) {
-            if ( (contentType).startsWith("application/x-www-form-urlencoded")) {
+                // Perform URL decoding
                 if (documentString.startsWith(SPECIAL_XML_POST_VARIABLE + "=")) {
                     // This is a hack to permit xml to be easily submitted via a form POST.
                     // By convention, we are allowing users to post xml if they name it
@@ -325,10 +363,14 @@ public class WebProcessingService extends HttpServlet {
                 }
                 documentString = URLDecoder.decode(documentString, characterEncoding);
                 LOGGER.debug("Decoded of POST:\n" + documentString + "\n");
+                requestStream = new ByteArrayInputStream(documentString.getBytes("UTF-8"));
+            }
+            else {
+                // XML is streamed into the RequestHandler, so large inline data is never buffered as a whole
+                requestStream = new SizeLimitedInputStream(req.getInputStream(), MAXIMUM_REQUEST_SIZE);
             }
 
-            RequestHandler handler = new RequestHandler(new ByteArrayInputStream(documentString.getBytes("UTF-8")),
-                                                        res.getOutputStream());
+            RequestHandler handler = new RequestHandler(requestStream, res.getOutputStream());
             String mimeType = handler.getResponseMimeType();
             res.setContentType(mimeType);
 
@@ -362,6 +404,54 @@ public class WebProcessingService extends HttpServlet {
         super.service(req, res);
     }
 
+    /**
+     * Protects streamed POST requests against denial of service attacks.
+     */
+    private static class SizeLimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+
+        private long count = 0;
+
+        SizeLimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) {
+                count(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long read) throws IOException {
+            count += read;
+            if (count > limit) {
+                LOGGER.warn("POST request rejected, request size exceeds " + limit + " bytes.");
+                throw new IOException("Request body too large, limited to " + limit + " bytes");
+            }
+        }
+    }
+
     private static void handleException(ExceptionReport exception, HttpServletResponse res) {
         res.setContentType(XML_CONTENT_TYPE);
         try {
@@ -0,0 +1,112 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+
+/**
+ * Resolves and parses the inputs of an Execute request concurrently. This
+ * pool is separate from the {@link RequestExecutor}, so that requests waiting
+ * for their inputs do not block the execution of other requests (and vice
+ * versa).
+ * 
+ * If the queue of the pool is exhausted, the input is parsed on the thread of
+ * the request itself, so a busy pool slows a request down but never rejects
+ * it.
+ * 
+ * The pool is configured with the following server properties:
+ * <ul>
+ * <li><code>input.parse.threads</code>: the number of parser threads; a value
+ * smaller than 2 disables concurrent parsing (default: 0)</li>
+ * <li><code>input.parse.queue</code>: the number of inputs waiting for a
+ * parser thread (default: 100)</li>
+ * </ul>
+ */
+public class InputParseExecutor extends ThreadPoolExecutor {
+
+	private static final String KEY_REQUEST_ROOT = "org.n52.wps.server.request";
+	private static final String KEY_THREADS = "input.parse.threads";
+	private static final String KEY_QUEUE = "input.parse.queue";
+	private static final long DEFAULT_THREADS = 0;
+	private static final long DEFAULT_QUEUE = 100;
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private static InputParseExecutor instance;
+	private static boolean initialized;
+
+	/**
+	 * @return the shared executor, or <code>null</code> if concurrent input
+	 *         parsing is disabled
+	 */
+	public synchronized static InputParseExecutor getInstance() {
+		if (!initialized) {
+			PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer(), KEY_REQUEST_ROOT);
+			int threads = (int) propertyUtil.extractLong(KEY_THREADS, DEFAULT_THREADS);
+			int queue = (int) propertyUtil.extractLong(KEY_QUEUE, DEFAULT_QUEUE);
+			if (threads > 1) {
+				instance = new InputParseExecutor(threads, Math.max(queue, 1));
+			}
+			initialized = true;
+		}
+		return instance;
+	}
+
+	/**
+	 * Create an InputParseExecutor.
+	 * 
+	 * @param threads the maximum number of parser threads
+	 * @param queue the number of inputs waiting for a parser thread
+	 */
+	public InputParseExecutor(int threads, int queue) {
+		super(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queue), new ParserThreadFactory(),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		allowCoreThreadTimeOut(true);
+	}
+
+	private static class ParserThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "wps-input-parser-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -36,13 +36,16 @@ import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RejectedExecutionException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.namespace.QName;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.collections.map.CaseInsensitiveMap;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.WebProcessingService;
 import org.n52.wps.server.request.CapabilitiesRequest;
@@ -52,8 +55,9 @@ import org.n52.wps.server.request.Request;
 import org.n52.wps.server.request.RetrieveResultRequest;
 import org.n52.wps.server.response.ExecuteResponse;
 import org.n52.wps.server.response.Response;
+import org.n52.wps.server.response.ResponseCache;
+import org.n52.wps.server.response.ResponseCache.CachedResponse;
 import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 /**
@@ -70,6 +74,15 @@ public class RequestHandler {
 	
     public static final String VERSION_ATTRIBUTE_NAME = "version";
 
+	private static final String KEY_REQUEST_ROOT = "org.n52.wps.server.request";
+	private static final String KEY_INLINE_SPOOL_THRESHOLD = "inline.spool.threshold";
+	private static final long DEFAULT_INLINE_SPOOL_THRESHOLD = 1024 * 1024; // characters
+
+	/** Size from which inline ComplexData of POST requests is spooled to disk */
+	protected static final long INLINE_SPOOL_THRESHOLD = new PropertyUtil(
+			WPSConfig.getInstance().getPropertiesForServer(), KEY_REQUEST_ROOT)
+			.extractLong(KEY_INLINE_SPOOL_THRESHOLD, DEFAULT_INLINE_SPOOL_THRESHOLD);
+
 	/** Computation timeout in seconds */
 	protected static RequestExecutor pool = new RequestExecutor();
 
@@ -159,9 +172,9 @@ public class RequestHandler {
 	}
 
 	/**
-	 * Handles requests of type HTTP_POST (currently executeProcess). A Document
-	 * is used to represent the client input. This Document must first be parsed
-	 * from an InputStream.
+	 * Handles requests of type HTTP_POST (currently executeProcess). The
+	 * request is read with a {@link StreamingRequestReader}, which spools large
+	 * inline ComplexData to disk, and is then represented as a Document.
 	 * 
 	 * @param is
 	 *            The client input
@@ -171,62 +184,74 @@ public class RequestHandler {
 	 */
 	public RequestHandler(InputStream is, OutputStream os)
 			throws ExceptionReport {
+		this.os = os;
+		StreamingRequestReader reader = new StreamingRequestReader(INLINE_SPOOL_THRESHOLD);
+		boolean initialized = false;
+		try {
+			initPostRequest(reader, is);
+			initialized = true;
+		} finally {
+			if (!initialized) {
+				// the request will never be executed, so nobody else cleans up
+				reader.release();
+			}
+		}
+	}
+
+	private void initPostRequest(StreamingRequestReader reader, InputStream is)
+			throws ExceptionReport {
 		String nodeName, localName, nodeURI, version = null;
 		Document doc;
-		this.os = os;
 		
 		boolean isCapabilitiesNode = false;
 		
 		try {
 			System.setProperty("javax.xml.parsers.DocumentBuilderFactory", "org.apache.xerces.jaxp.DocumentBuilderFactoryImpl");
-		
-			DocumentBuilderFactory fac = DocumentBuilderFactory.newInstance();
-			fac.setNamespaceAware(true);
 
-			// parse the InputStream to create a Document
-			doc = fac.newDocumentBuilder().parse(is);
+			// read the InputStream, sniffing the root element on the fly
+			reader.read(is);
+			doc = reader.getDocument();
 			
-			// Get the first non-comment child.
-			Node child = doc.getFirstChild();
-			while(child.getNodeName().compareTo("#comment")==0) {
-				child = child.getNextSibling();
-			}
-			nodeName = child.getNodeName();
-			localName = child.getLocalName();
-			nodeURI = child.getNamespaceURI();
-			Node versionNode = child.getAttributes().getNamedItem("version");
+			QName rootName = reader.getRootElementName();
+			localName = rootName.getLocalPart();
+			nodeURI = rootName.getNamespaceURI();
+			nodeName = rootName.getPrefix().isEmpty() ? localName : rootName.getPrefix() + ":" + localName;
+			String versionValue = reader.getRootAttribute("version");
 			
 			/*
 			 * check for service parameter. this has to be present for all requests
 			 */
-			Node serviceNode = child.getAttributes().getNamedItem("service");
+			String serviceValue = reader.getRootAttribute("service");
 			
-			if(serviceNode == null){
+			if(serviceValue == null){
 				throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "service");
 			}else{
-				if(!serviceNode.getNodeValue().equalsIgnoreCase("WPS")){
+				if(!serviceValue.equalsIgnoreCase("WPS")){
 					throw new ExceptionReport("Parameter <service> not specified.", ExceptionReport.INVALID_PARAMETER_VALUE, "service");
 				}
 			}
 			
             isCapabilitiesNode = nodeName.toLowerCase().contains("capabilities");
-			if(versionNode == null && !isCapabilitiesNode) {
+			if(versionValue == null && !isCapabilitiesNode) {
 				throw new ExceptionReport("Parameter <version> not specified.", ExceptionReport.MISSING_PARAMETER_VALUE, "version");
 			}
 			//TODO: I think this can be removed, as capabilities requests do not have a version parameter (BenjaminPross)
 			if(!isCapabilitiesNode){
-//				version = child.getFirstChild().getTextContent();//.getNextSibling().getFirstChild().getNextSibling().getFirstChild().getNodeValue();
-				version = child.getAttributes().getNamedItem("version").getNodeValue();
+				version = versionValue;
 			}
 			/*
 			 * check language, if not supported, return ExceptionReport
 			 * Fix for https://bugzilla.52north.org/show_bug.cgi?id=905
 			 */
-			Node languageNode = child.getAttributes().getNamedItem("language");
-			if(languageNode != null){
-				String language = languageNode.getNodeValue();
+			String language = reader.getRootAttribute("language");
+			if(language != null){
 				Request.checkLanguageSupported(language);
 			}
+		} catch (XMLStreamException e) {
+			throw new ExceptionReport(
+					"There went something wrong with parsing the POST data: "
+							+ e.getMessage(),
+					ExceptionReport.NO_APPLICABLE_CODE, e);
 		} catch (SAXException e) {
 			throw new ExceptionReport(
 					"There went something wrong with parsing the POST data: "
@@ -347,6 +372,7 @@ public class RequestHandler {
 				}
 			} catch (RejectedExecutionException ree) {
                 LOGGER.warn("exception handling ExecuteRequest.", ree);
+                execReq.releaseSpooledInputs();
 				// server too busy?
 				throw new ExceptionReport(
 						"The requested process was rejected. Maybe the server is flooded with requests.",
@@ -360,6 +386,15 @@ public class RequestHandler {
 			}
 		} else {
 			// for GetCapabilities and DescribeProcess:
+			CachedResponse cachedResponse = getCachedResponse();
+			if (cachedResponse != null) {
+				try {
+					os.write(cachedResponse.getContent(false));
+				} catch (IOException e) {
+					throw new ExceptionReport("Could not write response.", ExceptionReport.NO_APPLICABLE_CODE, e);
+				}
+				return;
+			}
 			resp = req.call();
 			try {
 				InputStream is = resp.getAsStream();
@@ -372,6 +407,23 @@ public class RequestHandler {
 		}
 	}
 	
+	/**
+	 * Serves the request from the {@link ResponseCache}, if its response can
+	 * be cached.
+	 * 
+	 * @return the serialized response, or null if the request must be
+	 *         handled
+	 * @throws ExceptionReport
+	 *             if the request is not valid or could not be served
+	 */
+	public CachedResponse getCachedResponse() throws ExceptionReport {
+		if (req == null || req instanceof ExecuteRequest || req.getCacheKey() == null) {
+			return null;
+		}
+		req.validate();
+		return ResponseCache.getInstance().getResponse(req);
+	}
+	
 	protected void setResponseMimeType(ExecuteRequest req) {
 		if(req.isRawData()){
 			responseMimeType = req.getExecuteResponseBuilder().getMimeType();
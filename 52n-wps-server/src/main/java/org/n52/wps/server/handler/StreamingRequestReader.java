@@ -0,0 +1,477 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.n52.wps.commons.XMLUtil;
+import org.n52.wps.io.IOHandler;
+import org.n52.wps.server.WebProcessingService;
+import org.n52.wps.server.request.strategy.InlineDataSpool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads POST requests with StAX instead of parsing them into a DOM right
+ * away. The root element of the request is sniffed on the fly, and inline
+ * ComplexData payloads that exceed a size threshold are spooled to disk
+ * (base64 payloads are decoded on the way) and replaced by a wps:Reference
+ * to the spooled data. Only the remaining request skeleton is kept in memory,
+ * so the heap needed per request does not depend on the size of the inline
+ * payloads.
+ *
+ * @see InlineDataSpool
+ */
+public class StreamingRequestReader {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StreamingRequestReader.class);
+
+	private static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+
+	private static final QName DATA = new QName(WebProcessingService.WPS_NAMESPACE, "Data");
+	private static final QName COMPLEX_DATA = new QName(WebProcessingService.WPS_NAMESPACE, "ComplexData");
+	private static final QName HREF = new QName(XLINK_NAMESPACE, "href", "xlink");
+	private static final QName MIME_TYPE = new QName("mimeType");
+	private static final QName ENCODING = new QName("encoding");
+	private static final QName SCHEMA = new QName("schema");
+
+	private final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+
+	private final long spoolThreshold;
+
+	private final List<String> spooledHrefs = new ArrayList<String>();
+
+	private StartElement root;
+
+	private Document document;
+
+	/**
+	 * @param spoolThreshold
+	 *            the number of characters of inline ComplexData content that
+	 *            is kept in memory before the content is spooled to disk.
+	 */
+	public StreamingRequestReader(long spoolThreshold) {
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * Reads the complete request from the given stream.
+	 *
+	 * @param is
+	 *            the client input
+	 */
+	public void read(InputStream is) throws XMLStreamException, IOException,
+			SAXException, ParserConfigurationException {
+		ByteArrayOutputStream skeleton = new ByteArrayOutputStream();
+		XMLEventReader reader = XMLUtil.getInputFactory().createXMLEventReader(is);
+		XMLEventWriter writer = XMLUtil.getOutputFactory().createXMLEventWriter(skeleton, "UTF-8");
+		try {
+			copy(reader, writer);
+			writer.flush();
+		} finally {
+			reader.close();
+			writer.close();
+		}
+		if (root == null) {
+			throw new XMLStreamException("The request does not contain a root element");
+		}
+		DocumentBuilderFactory fac = DocumentBuilderFactory.newInstance();
+		fac.setNamespaceAware(true);
+		document = fac.newDocumentBuilder().parse(new ByteArrayInputStream(skeleton.toByteArray()));
+		LOGGER.debug("Read request {} ({} bytes in memory, {} inline payloads spooled)",
+				new Object[] {root.getName(), skeleton.size(), spooledHrefs.size()});
+	}
+
+	/**
+	 * @return the name of the root element, <code>null</code> before the request was read
+	 */
+	public QName getRootElementName() {
+		return root == null ? null : root.getName();
+	}
+
+	/**
+	 * @return the value of an unqualified attribute of the root element, or
+	 *         <code>null</code> if it is not present
+	 */
+	public String getRootAttribute(String localName) {
+		return root == null ? null : attributeValue(root, new QName(localName));
+	}
+
+	/**
+	 * @return the request as DOM, with large inline payloads replaced by references
+	 */
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * Deletes all data spooled while reading the request. Has to be called if
+	 * the request is not executed.
+	 */
+	public void release() {
+		for (String href : spooledHrefs) {
+			InlineDataSpool.getInstance().release(href);
+		}
+		spooledHrefs.clear();
+	}
+
+	private void copy(XMLEventReader reader, XMLEventWriter writer) throws XMLStreamException, IOException {
+		Deque<StartElement> scope = new ArrayDeque<StartElement>();
+		StartElement pendingData = null;
+		ComplexDataSpooler spooler = null;
+		boolean skipDataEnd = false;
+		try {
+			while (reader.hasNext()) {
+				XMLEvent event = reader.nextEvent();
+				if (spooler != null) {
+					if (spooler.add(event)) {
+						skipDataEnd = spooler.finish(writer);
+						spooler = null;
+						scope.pop();
+					}
+					continue;
+				}
+				switch (event.getEventType()) {
+				case XMLStreamConstants.START_DOCUMENT:
+					// the skeleton is always written as UTF-8
+					writer.add(eventFactory.createStartDocument("UTF-8", "1.0"));
+					break;
+				case XMLStreamConstants.DTD:
+					break;
+				case XMLStreamConstants.START_ELEMENT:
+					StartElement start = event.asStartElement();
+					if (root == null) {
+						root = start;
+					}
+					scope.push(start);
+					if (pendingData != null) {
+						if (COMPLEX_DATA.equals(start.getName())) {
+							spooler = new ComplexDataSpooler(pendingData, start, inScopeNamespaces(scope));
+							pendingData = null;
+							break;
+						}
+						writer.add(pendingData);
+						pendingData = null;
+					}
+					if (DATA.equals(start.getName())) {
+						// hold back until we know if it contains ComplexData
+						pendingData = start;
+					} else {
+						writer.add(start);
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					scope.pop();
+					if (pendingData != null) {
+						writer.add(pendingData);
+						pendingData = null;
+					}
+					if (skipDataEnd) {
+						// the wps:Data element was replaced by a wps:Reference
+						skipDataEnd = false;
+						break;
+					}
+					writer.add(event);
+					break;
+				default:
+					if (pendingData != null) {
+						if (event.isCharacters() && event.asCharacters().isWhiteSpace()) {
+							break;
+						}
+						writer.add(pendingData);
+						pendingData = null;
+					}
+					writer.add(event);
+				}
+			}
+		} finally {
+			if (spooler != null) {
+				spooler.discard();
+			}
+		}
+	}
+
+	private static Map<String, String> inScopeNamespaces(Deque<StartElement> scope) {
+		Map<String, String> namespaces = new LinkedHashMap<String, String>();
+		Iterator<StartElement> outermostFirst = scope.descendingIterator();
+		while (outermostFirst.hasNext()) {
+			Iterator<?> declared = outermostFirst.next().getNamespaces();
+			while (declared.hasNext()) {
+				Namespace namespace = (Namespace) declared.next();
+				namespaces.put(namespace.getPrefix(), namespace.getNamespaceURI());
+			}
+		}
+		return namespaces;
+	}
+
+	private static String attributeValue(StartElement element, QName name) {
+		Attribute attribute = element.getAttributeByName(name);
+		return attribute == null ? null : attribute.getValue();
+	}
+
+	private static long estimateSize(XMLEvent event) {
+		if (event.isCharacters()) {
+			return event.asCharacters().getData().length();
+		}
+		return 32;
+	}
+
+	/**
+	 * Collects the content of a single wps:ComplexData element. The content is
+	 * buffered in memory until the threshold is exceeded, from then on it is
+	 * written to a spool file.
+	 */
+	private class ComplexDataSpooler {
+
+		private final StartElement dataStart;
+		private final StartElement complexDataStart;
+		private final Map<String, String> namespaces;
+		private final boolean base64;
+
+		private final List<XMLEvent> buffer = new ArrayList<XMLEvent>();
+		private long bufferedSize = 0;
+		private int depth = 0;
+
+		private File file;
+		private OutputStream fileStream;
+		private XMLEventWriter xmlWriter;
+		private Writer textWriter;
+		private int spoolDepth = 0;
+		private boolean rootSpooled = false;
+
+		ComplexDataSpooler(StartElement dataStart, StartElement complexDataStart, Map<String, String> namespaces) {
+			this.dataStart = dataStart;
+			this.complexDataStart = complexDataStart;
+			this.namespaces = namespaces;
+			this.base64 = IOHandler.ENCODING_BASE64.equalsIgnoreCase(attributeValue(complexDataStart, ENCODING));
+		}
+
+		/**
+		 * @return <code>true</code> if the event closed the ComplexData element
+		 */
+		boolean add(XMLEvent event) throws XMLStreamException, IOException {
+			if (event.isEndElement() && depth == 0) {
+				return true;
+			}
+			if (event.isStartElement()) {
+				depth++;
+			} else if (event.isEndElement()) {
+				depth--;
+			}
+			if (file == null) {
+				buffer.add(event);
+				bufferedSize += estimateSize(event);
+				if (bufferedSize > spoolThreshold) {
+					spill();
+				}
+			} else {
+				spool(event);
+			}
+			return false;
+		}
+
+		/**
+		 * Writes the ComplexData (or the reference replacing it) to the skeleton.
+		 *
+		 * @return <code>true</code> if the enclosing wps:Data element was replaced
+		 */
+		boolean finish(XMLEventWriter writer) throws XMLStreamException, IOException {
+			if (file == null) {
+				writer.add(dataStart);
+				writer.add(complexDataStart);
+				for (XMLEvent event : buffer) {
+					writer.add(event);
+				}
+				writer.add(eventFactory.createEndElement(complexDataStart.getName(), null));
+				return false;
+			}
+			close();
+			String href = InlineDataSpool.getInstance().register(file, attributeValue(complexDataStart, MIME_TYPE));
+			spooledHrefs.add(href);
+			file = null;
+
+			List<Attribute> attributes = new ArrayList<Attribute>();
+			attributes.add(eventFactory.createAttribute(HREF, href));
+			for (QName name : new QName[] {MIME_TYPE, ENCODING, SCHEMA}) {
+				String value = attributeValue(complexDataStart, name);
+				if (value != null) {
+					attributes.add(eventFactory.createAttribute(name, value));
+				}
+			}
+			List<Namespace> xlink = Collections.singletonList(eventFactory.createNamespace(HREF.getPrefix(), XLINK_NAMESPACE));
+			QName reference = new QName(WebProcessingService.WPS_NAMESPACE, "Reference", complexDataStart.getName().getPrefix());
+			writer.add(eventFactory.createStartElement(reference, attributes.iterator(), xlink.iterator()));
+			writer.add(eventFactory.createEndElement(reference, null));
+			return true;
+		}
+
+		void discard() {
+			if (file != null) {
+				try {
+					close();
+				} catch (Exception e) {
+					LOGGER.debug("Could not close spool file " + file, e);
+				}
+				FileUtils.deleteQuietly(file);
+				file = null;
+			}
+		}
+
+		private void spill() throws XMLStreamException, IOException {
+			file = InlineDataSpool.getInstance().createSpoolFile();
+			fileStream = new BufferedOutputStream(new FileOutputStream(file));
+			for (XMLEvent event : buffer) {
+				spool(event);
+			}
+			buffer.clear();
+		}
+
+		private void spool(XMLEvent event) throws XMLStreamException, IOException {
+			if (xmlWriter == null && textWriter == null) {
+				// the first significant event decides whether the payload is XML or text
+				if (event.isStartElement() && !base64) {
+					xmlWriter = XMLUtil.getOutputFactory().createXMLEventWriter(fileStream, "UTF-8");
+					xmlWriter.add(eventFactory.createStartDocument("UTF-8", "1.0"));
+				} else if (event.isCharacters() && !event.asCharacters().isWhiteSpace()) {
+					if (base64) {
+						textWriter = new OutputStreamWriter(new Base64OutputStream(fileStream, false), "US-ASCII");
+					} else {
+						textWriter = new OutputStreamWriter(fileStream, "UTF-8");
+					}
+				} else if (event.isStartElement()) {
+					throw new XMLStreamException("Base64 encoded ComplexData must not contain XML elements", event.getLocation());
+				} else {
+					// leading whitespace or comments
+					return;
+				}
+			}
+			if (xmlWriter != null) {
+				if (event.isStartElement()) {
+					if (spoolDepth == 0) {
+						if (rootSpooled) {
+							throw new XMLStreamException("ComplexData must contain a single root element", event.getLocation());
+						}
+						rootSpooled = true;
+						event = withInScopeNamespaces(event.asStartElement());
+					}
+					spoolDepth++;
+				} else if (event.isEndElement()) {
+					spoolDepth--;
+				} else if (spoolDepth == 0) {
+					// whitespace or comments around the root element
+					return;
+				}
+				xmlWriter.add(event);
+			} else {
+				if (event.isStartElement()) {
+					throw new XMLStreamException("Mixed text and XML content in ComplexData is not supported", event.getLocation());
+				}
+				if (event.isCharacters()) {
+					textWriter.write(event.asCharacters().getData());
+				}
+			}
+		}
+
+		/**
+		 * The spooled payload becomes a document of its own, so it has to
+		 * declare the namespaces it inherited from the request.
+		 */
+		private StartElement withInScopeNamespaces(StartElement start) {
+			Map<String, String> inherited = new LinkedHashMap<String, String>(namespaces);
+			List<Namespace> declared = new ArrayList<Namespace>();
+			Iterator<?> own = start.getNamespaces();
+			while (own.hasNext()) {
+				Namespace namespace = (Namespace) own.next();
+				inherited.remove(namespace.getPrefix());
+				declared.add(namespace);
+			}
+			for (Map.Entry<String, String> namespace : inherited.entrySet()) {
+				if (namespace.getKey() == null || namespace.getKey().isEmpty()) {
+					declared.add(eventFactory.createNamespace(namespace.getValue()));
+				} else {
+					declared.add(eventFactory.createNamespace(namespace.getKey(), namespace.getValue()));
+				}
+			}
+			QName name = start.getName();
+			return eventFactory.createStartElement(name.getPrefix(), name.getNamespaceURI(), name.getLocalPart(),
+					start.getAttributes(), declared.iterator());
+		}
+
+		private void close() throws XMLStreamException, IOException {
+			try {
+				if (xmlWriter != null) {
+					xmlWriter.add(eventFactory.createEndDocument());
+					xmlWriter.close();
+				}
+				if (textWriter != null) {
+					// flushes the final base64 quantum as well
+					textWriter.close();
+				}
+				fileStream.flush();
+			} finally {
+				IOUtils.closeQuietly(fileStream);
+			}
+		}
+	}
+}
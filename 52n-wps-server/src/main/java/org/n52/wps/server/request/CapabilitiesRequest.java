@@ -32,6 +32,7 @@ import java.util.ArrayList;
 
 import org.apache.commons.collections.map.CaseInsensitiveMap;
 import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.WebProcessingService;
 import org.n52.wps.server.handler.RequestHandler;
 import org.n52.wps.server.response.CapabilitiesResponse;
 import org.n52.wps.server.response.Response;
@@ -150,6 +151,15 @@ public class CapabilitiesRequest extends Request {
         return new CapabilitiesResponse(this);
     }
 
+    /**
+     * The capabilities only differ by language.
+     */
+    @Override
+    public String getCacheKey() throws ExceptionReport {
+        String language = getMapValue("language", false);
+        return "GetCapabilities " + (language == null ? WebProcessingService.DEFAULT_LANGUAGE : language);
+    }
+
     /**
      * Not used in this class. Returns null;
      */
@@ -127,6 +127,17 @@ public class DescribeProcessRequest extends Request {
 		return document;
 	}
 	
+	/**
+	 * The process descriptions differ by language and the requested
+	 * identifiers, in the requested order.
+	 */
+	@Override
+	public String getCacheKey() throws ExceptionReport {
+		String language = getMapValue("language", false);
+		return "DescribeProcess " + (language == null ? WebProcessingService.DEFAULT_LANGUAGE : language) + " "
+				+ getMapValue("identifier", true);
+	}
+	
 	/**
 	 * Actually serves the Request.
 	 * @throws ExceptionReport
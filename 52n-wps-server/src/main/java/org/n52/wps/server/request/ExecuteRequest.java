@@ -77,6 +77,7 @@ import org.n52.wps.server.RepositoryManager;
 import org.n52.wps.server.database.DatabaseFactory;
 import org.n52.wps.server.observerpattern.IObserver;
 import org.n52.wps.server.observerpattern.ISubject;
+import org.n52.wps.server.request.strategy.InlineDataSpool;
 import org.n52.wps.server.response.ExecuteResponse;
 import org.n52.wps.server.response.ExecuteResponseBuilder;
 import org.n52.wps.server.response.Response;
@@ -95,6 +96,12 @@ public class ExecuteRequest extends Request implements IObserver {
 	private ExecuteDocument execDom;
 	private Map<String, IData> returnResults;
 	private ExecuteResponseBuilder execRespType;
+	private final ExecuteStatusWriter.StatusStore statusStore = new ExecuteStatusWriter.StatusStore() {
+		@Override
+		public void storeStatus(StatusType status) {
+			ExecuteRequest.this.storeStatus(status);
+		}
+	};
 	
 	
 
@@ -635,7 +642,7 @@ public class ExecuteRequest extends Request implements IObserver {
 	 */
 	public Response call() throws ExceptionReport {
         IAlgorithm algorithm = null;
-        Map<String, List<IData>> inputMap = null;
+        InputHandler parser = null;
 		try {
 			ExecutionContext context;
 			if (getExecute().isSetResponseForm()) {
@@ -659,7 +666,7 @@ public class ExecuteRequest extends Request implements IObserver {
 			if( getExecute().getDataInputs()!=null){
 				inputs = getExecute().getDataInputs().getInputArray();
 			}
-			InputHandler parser = new InputHandler.Builder(inputs, getAlgorithmIdentifier()).build();
+			parser = new InputHandler.Builder(inputs, getAlgorithmIdentifier()).build();
 			
 			// we got so far:
 			// get the algorithm, and run it with the clients input
@@ -681,8 +688,7 @@ public class ExecuteRequest extends Request implements IObserver {
 			if(algorithm instanceof AbstractTransactionalAlgorithm){
 				returnResults = ((AbstractTransactionalAlgorithm)algorithm).run(execDom);
 			} else {
-				inputMap = parser.getParsedInputData();
-				returnResults = algorithm.run(inputMap);
+				returnResults = algorithm.run(parser.getParsedInputData());
 			} 
 
             List<String> errorList = algorithm.getErrors();
@@ -721,22 +727,22 @@ public class ExecuteRequest extends Request implements IObserver {
             if (algorithm instanceof ISubject) {
                 ((ISubject)algorithm).removeObserver(this);
             }
-            if (inputMap != null) {
-                for(List<IData> l : inputMap.values()) {
-                    for (IData d : l) {
-                        if (d instanceof IComplexData) {
-                            ((IComplexData)d).dispose();
-                        }
-                    }
-                }
+            if (algorithm != null) {
+                RepositoryManager.getInstance().releaseAlgorithm(getAlgorithmIdentifier(), algorithm);
             }
             if (returnResults != null) {
                 for (IData d : returnResults.values()) {
-                    if (d instanceof IComplexData) {
+                    // a process may return one of its inputs
+                    if (d instanceof IComplexData && (parser == null || !parser.isCachedInputData(d))) {
                         ((IComplexData)d).dispose();
                     }
                 }
             }
+            if (parser != null) {
+                // inputs shared through the ReferenceCache are released, not disposed
+                parser.dispose();
+            }
+            releaseSpooledInputs();
 		}
 		
 		ExecuteResponse response = new ExecuteResponse(this);
@@ -744,6 +750,24 @@ public class ExecuteRequest extends Request implements IObserver {
 	}
     
 
+	/**
+	 * Deletes inline ComplexData that was spooled to disk while the request
+	 * was read.
+	 * 
+	 * @see InlineDataSpool
+	 */
+	public void releaseSpooledInputs() {
+		if (getExecute().getDataInputs() == null) {
+			return;
+		}
+		InlineDataSpool spool = InlineDataSpool.getInstance();
+		for (InputType input : getExecute().getDataInputs().getInputArray()) {
+			if (input.isSetReference() && spool.contains(input.getReference().getHref())) {
+				spool.release(input.getReference().getHref());
+			}
+		}
+	}
+
 	/**
 	 * Gets the identifier of the algorithm the client requested
 	 * 
@@ -820,25 +844,25 @@ public class ExecuteRequest extends Request implements IObserver {
 		}else if(state instanceof String){
 			status.addNewProcessStarted().setStringValue((String)state);
 		}
-		updateStatus(status);
+		ExecuteStatusWriter.getInstance().update(getUniqueId().toString(), statusStore, status);
 	}
     
 	public void updateStatusAccepted() {
 		StatusType status = StatusType.Factory.newInstance();
 		status.setProcessAccepted("Process Accepted");
-		updateStatus(status);
+		updateStatus(status, false);
 	}
 	
 	public void updateStatusStarted() {
         StatusType status = StatusType.Factory.newInstance();
         status.addNewProcessStarted().setPercentCompleted(0);
-        updateStatus(status);
+        updateStatus(status, false);
     }
 	
     public void updateStatusSuccess() {
         StatusType status = StatusType.Factory.newInstance();
         status.setProcessSucceeded("Process successful");
-        updateStatus(status);
+        updateStatus(status, true);
     }	
     
     public void updateStatusError(String errorMessage) {
@@ -849,10 +873,14 @@ public class ExecuteRequest extends Request implements IObserver {
 		ExceptionType excType = excRep.addNewException();
 		excType.addNewExceptionText().setStringValue(errorMessage);
 		excType.setExceptionCode(ExceptionReport.NO_APPLICABLE_CODE);
-		updateStatus(status);
+		updateStatus(status, true);
 	}
-	
-	private void updateStatus(StatusType status) {
+
+	private void updateStatus(StatusType status, boolean terminal) {
+		ExecuteStatusWriter.getInstance().write(getUniqueId().toString(), statusStore, status, terminal);
+	}
+
+	private void storeStatus(StatusType status) {
 		getExecuteResponseBuilder().setStatus(status);
         try {
             getExecuteResponseBuilder().update();
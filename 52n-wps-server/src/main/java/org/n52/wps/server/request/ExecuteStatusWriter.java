@@ -0,0 +1,222 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.opengis.wps.x100.StatusType;
+
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the status updates of running Execute requests. Storing a status
+ * means to re-serialize the complete ExecuteResponse, so progress updates are
+ * only kept in a lightweight per-job record, the last update wins. The
+ * document is only materialized when the status is read through
+ * {@link #flush(String)}, at most once per interval, and when the job
+ * finishes.
+ * 
+ * Status changes that clients rely on (accepted, started, succeeded, failed)
+ * are written immediately. Once the terminal status of a job is written, late
+ * updates of the job are dropped, so they can not replace it.
+ * 
+ * The interval is configured with the server property
+ * <code>status.update.interval</code> as ISO8601 period (default: PT2S); with
+ * a period of zero every read stores the latest update.
+ */
+public class ExecuteStatusWriter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExecuteStatusWriter.class);
+
+	private static final String KEY_REQUEST_ROOT = "org.n52.wps.server.request";
+	private static final String KEY_INTERVAL = "status.update.interval";
+	private static final long DEFAULT_INTERVAL = 2000;
+	private static final int MAX_FINISHED_JOBS = 10000;
+
+	private static ExecuteStatusWriter instance;
+
+	private final long interval;
+	private final ConcurrentMap<String, Job> jobs;
+	private final Set<String> finishedJobs;
+
+	public synchronized static ExecuteStatusWriter getInstance() {
+		if (instance == null) {
+			PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer(), KEY_REQUEST_ROOT);
+			instance = new ExecuteStatusWriter(propertyUtil.extractPeriodAsMillis(KEY_INTERVAL, DEFAULT_INTERVAL));
+		}
+		return instance;
+	}
+
+	/**
+	 * @param interval the minimum time between two progress updates of a job
+	 *            stored by readers in milliseconds
+	 */
+	public ExecuteStatusWriter(long interval) {
+		this.interval = Math.max(interval, 0);
+		this.jobs = new ConcurrentHashMap<String, Job>();
+		// the ids of recently finished jobs, late updates come shortly after the terminal status
+		this.finishedJobs = Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<String, Boolean>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > MAX_FINISHED_JOBS;
+			}
+		}));
+	}
+
+	/**
+	 * Records a progress update. It is not stored until the status is read or
+	 * replaced by a status written with
+	 * {@link #write(String, StatusStore, StatusType, boolean)}.
+	 */
+	public void update(String id, StatusStore store, StatusType status) {
+		Job job = getJob(id, store);
+		synchronized (job) {
+			if (isFinished(id, job)) {
+				return;
+			}
+			job.pending = status;
+		}
+	}
+
+	/**
+	 * Stores the status right away, replacing a pending progress update.
+	 * 
+	 * @param terminal whether the job is finished; the job record is released
+	 *            and later updates are dropped
+	 */
+	public void write(String id, StatusStore store, StatusType status, boolean terminal) {
+		Job job = getJob(id, store);
+		synchronized (job) {
+			if (isFinished(id, job)) {
+				return;
+			}
+			try {
+				job.pending = status;
+				write(job);
+			} finally {
+				if (terminal) {
+					job.finished = true;
+					finishedJobs.add(id);
+					jobs.remove(id, job);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores the pending progress update of a job, if there is any and the
+	 * last write of the job is older than the interval. Used by readers of the
+	 * stored status, so that polling clients see progress without every poll
+	 * re-serializing the response.
+	 */
+	public void flush(String id) {
+		Job job = jobs.get(id);
+		if (job != null) {
+			synchronized (job) {
+				if (job.pending != null && System.currentTimeMillis() - job.lastWrite >= interval) {
+					write(job);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return whether a progress update of the job is waiting to be stored
+	 */
+	public boolean isPending(String id) {
+		Job job = jobs.get(id);
+		if (job == null) {
+			return false;
+		}
+		synchronized (job) {
+			return job.pending != null;
+		}
+	}
+
+	// callers hold the lock of the job
+	private boolean isFinished(String id, Job job) {
+		if (!job.finished && !finishedJobs.contains(id)) {
+			return false;
+		}
+		// a record created after the terminal write is released again
+		jobs.remove(id, job);
+		LOGGER.debug("Dropping status update of finished request {}", id);
+		return true;
+	}
+
+	private Job getJob(String id, StatusStore store) {
+		Job job = jobs.get(id);
+		if (job == null) {
+			job = new Job(store);
+			Job existing = jobs.putIfAbsent(id, job);
+			if (existing != null) {
+				job = existing;
+			}
+		}
+		return job;
+	}
+
+	// callers hold the lock of the job
+	private void write(Job job) {
+		StatusType status = job.pending;
+		job.pending = null;
+		job.lastWrite = System.currentTimeMillis();
+		job.store.storeStatus(status);
+	}
+
+	/**
+	 * Materializes and stores the response document for a status.
+	 */
+	public interface StatusStore {
+
+		void storeStatus(StatusType status);
+	}
+
+	private static class Job {
+
+		private final StatusStore store;
+		private StatusType pending;
+		private long lastWrite;
+		private boolean finished;
+
+		Job(StatusStore store) {
+			this.store = store;
+		}
+	}
+}
@@ -34,10 +34,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactoryConfigurationError;
@@ -54,12 +61,16 @@ import net.opengis.wps.x100.InputType;
 import net.opengis.wps.x100.ProcessDescriptionType;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.n52.wps.commons.XMLUtil;
+import org.n52.wps.commons.context.ExecutionContext;
+import org.n52.wps.commons.context.ExecutionContextFactory;
 import org.n52.wps.io.BasicXMLTypeFactory;
 import org.n52.wps.io.IOHandler;
 import org.n52.wps.io.IParser;
 import org.n52.wps.io.ParserFactory;
+import org.n52.wps.io.data.IComplexData;
 import org.n52.wps.io.data.IData;
 import org.n52.wps.io.data.binding.bbox.BoundingBoxData;
 import org.n52.wps.io.data.binding.literal.AbstractLiteralDataBinding;
@@ -74,6 +85,8 @@ import org.n52.wps.server.RepositoryManager;
 import org.n52.wps.server.handler.DataInputInterceptors;
 import org.n52.wps.server.handler.DataInputInterceptors.DataInputInterceptorImplementations;
 import org.n52.wps.server.handler.DataInputInterceptors.InterceptorInstance;
+import org.n52.wps.server.handler.InputParseExecutor;
+import org.n52.wps.server.request.strategy.ReferenceCache;
 import org.n52.wps.server.request.strategy.ReferenceInputStream;
 import org.n52.wps.server.request.strategy.ReferenceStrategyRegister;
 import org.slf4j.Logger;
@@ -93,12 +106,16 @@ public class InputHandler {
     private static final BigInteger INT_MIN
             = BigInteger.valueOf(Integer.MIN_VALUE);
 	private Map<String, List<IData>> inputData = new HashMap<String, List<IData>>();
+	// inputs leased from the ReferenceCache, one entry per lease
+	private final List<IData> cachedInputData = Collections.synchronizedList(new ArrayList<IData>());
+	private boolean disposed = false;
 	private ProcessDescriptionType processDesc;
 	private String algorithmIdentifier = null; // Needed to take care of handling a conflict between different parsers.
 
         public static class Builder {
             protected InputType[] inputs;
             protected String algorithmIdentifier = null;
+            protected ExecutorService parseExecutor = null;
 
             public Builder(InputType[] inputs, String algorithmIdentifier) {
                 this.inputs = inputs;
@@ -115,6 +132,16 @@ public class InputHandler {
                 return this;
             }
 
+            /**
+             * Resolves and parses the inputs concurrently on the given
+             * executor. If not set, the {@link InputParseExecutor} is used
+             * if it is enabled in the server configuration.
+             */
+            public Builder parseExecutor(ExecutorService val) {
+                parseExecutor = val;
+                return this;
+            }
+
             public InputHandler build() throws ExceptionReport {
                 return new InputHandler(this);
             }
@@ -140,35 +167,191 @@ public class InputHandler {
 
 		Map<String, InterceptorInstance> inputInterceptors = resolveInputInterceptors(algorithmIdentifier);
 
-		for (InputType input : builder.inputs) {
-			String inputId = input.getIdentifier().getStringValue().trim();
-			if (inputInterceptors.containsKey(inputId)) {
-				InterceptorInstance interceptor = inputInterceptors.get(inputId);
-				List<IData> result = interceptor.applyInterception(input);
+		ExecutorService parseExecutor = builder.parseExecutor;
+		if (parseExecutor == null) {
+			parseExecutor = InputParseExecutor.getInstance();
+		}
+		try {
+			if (parseExecutor != null && builder.inputs.length > 1) {
+				parseConcurrently(builder.inputs, inputInterceptors, parseExecutor);
+				return;
+			}
 
-				if (result != null && !result.isEmpty()) {
-					this.inputData.put(inputId, result);
+			for (InputType input : builder.inputs) {
+				String inputId = input.getIdentifier().getStringValue().trim();
+				List<IData> intercepted = intercept(input, inputId, inputInterceptors);
+				if (intercepted != null) {
+					this.inputData.put(inputId, intercepted);
 					continue;
 				}
+				checkInputValue(input, inputId);
+				addInputData(inputId, handleInput(input, inputId));
 			}
+		} catch (ExceptionReport | RuntimeException e) {
+			// nobody else can release the inputs parsed so far
+			dispose();
+			throw e;
+		}
+	}
 
-			if(input.getData() != null) {
-				if(input.getData().getComplexData() != null) {
-					handleComplexData(input, inputId);
+	/**
+	 * Resolves and parses all inputs on the given executor. Interceptors are
+	 * still applied on the calling thread, and the parsed inputs are added in
+	 * the order of the request, so that inputs with maxOccurs &gt; 1 keep their
+	 * order. The first failing input cancels all others.
+	 */
+	private void parseConcurrently(InputType[] inputs, Map<String, InterceptorInstance> inputInterceptors,
+			ExecutorService parseExecutor) throws ExceptionReport {
+		CompletionService<IData> completionService = new ExecutorCompletionService<IData>(parseExecutor);
+		List<Future<IData>> futures = new ArrayList<Future<IData>>(inputs.length);
+		// one entry per input, either the intercepted data or null if the input is parsed by a future
+		List<List<IData>> interceptedData = new ArrayList<List<IData>>(inputs.length);
+		int submitted = 0;
+		boolean completed = false;
+		try {
+			for (InputType input : inputs) {
+				String inputId = input.getIdentifier().getStringValue().trim();
+				List<IData> intercepted = intercept(input, inputId, inputInterceptors);
+				interceptedData.add(intercepted);
+				if (intercepted != null) {
+					futures.add(null);
+					continue;
 				}
-				else if(input.getData().getLiteralData() != null) {
-					handleLiteralData(input);
+				checkInputValue(input, inputId);
+				futures.add(completionService.submit(new InputParseTask(input, inputId)));
+				submitted++;
+			}
+
+			for (int i = 0; i < submitted; i++) {
+				Future<IData> done = completionService.take();
+				try {
+					done.get();
+				} catch (ExecutionException e) {
+					throw unwrapParseException(e);
 				}
-				else if(input.getData().getBoundingBoxData() != null) {
-					handleBBoxValue(input);
+			}
+
+			for (int i = 0; i < inputs.length; i++) {
+				String inputId = inputs[i].getIdentifier().getStringValue().trim();
+				if (interceptedData.get(i) != null) {
+					this.inputData.put(inputId, interceptedData.get(i));
+				} else {
+					addInputData(inputId, futures.get(i).get());
 				}
 			}
-			else if(input.getReference() != null) {
-				handleComplexValueReference(input);
+			completed = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExceptionReport("Interrupted while parsing the inputs", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} catch (ExecutionException e) {
+			// not reached, all futures completed successfully above
+			throw unwrapParseException(e);
+		} finally {
+			if (!completed) {
+				for (Future<IData> future : futures) {
+					if (future != null) {
+						future.cancel(true);
+					}
+				}
 			}
-			else {
-				throw new ExceptionReport("Error while accessing the inputValue: " + inputId,
-						ExceptionReport.INVALID_PARAMETER_VALUE);
+		}
+	}
+
+	private ExceptionReport unwrapParseException(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof ExceptionReport) {
+			return (ExceptionReport) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new ExceptionReport("Error while parsing the inputs", ExceptionReport.NO_APPLICABLE_CODE, cause);
+	}
+
+	private List<IData> intercept(InputType input, String inputId, Map<String, InterceptorInstance> inputInterceptors) {
+		if (inputInterceptors.containsKey(inputId)) {
+			InterceptorInstance interceptor = inputInterceptors.get(inputId);
+			List<IData> result = interceptor.applyInterception(input);
+
+			if (result != null && !result.isEmpty()) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private void checkInputValue(InputType input, String inputId) throws ExceptionReport {
+		if(input.getData() == null && input.getReference() == null) {
+			throw new ExceptionReport("Error while accessing the inputValue: " + inputId,
+					ExceptionReport.INVALID_PARAMETER_VALUE);
+		}
+	}
+
+	private IData handleInput(InputType input, String inputId) throws ExceptionReport {
+		if(input.getData() != null) {
+			if(input.getData().getComplexData() != null) {
+				return handleComplexData(input, inputId);
+			}
+			else if(input.getData().getLiteralData() != null) {
+				return handleLiteralData(input);
+			}
+			else if(input.getData().getBoundingBoxData() != null) {
+				return handleBBoxValue(input);
+			}
+			return null;
+		}
+		return handleComplexValueReference(input);
+	}
+
+	/**
+	 * Enables maxOccurs of parameters with the same name.
+	 */
+	private void addInputData(String inputId, IData data) {
+		if (data == null) {
+			return;
+		}
+		List<IData> list = inputData.get(inputId);
+		if (list == null) {
+			list = new ArrayList<IData>();
+			inputData.put(inputId, list);
+		}
+		list.add(data);
+	}
+
+	/**
+	 * Parses a single input on a thread of the parse executor, within the
+	 * execution context of the request.
+	 */
+	private class InputParseTask implements Callable<IData> {
+
+		private final InputType input;
+		private final String inputId;
+		private final ExecutionContext context;
+
+		InputParseTask(InputType input, String inputId) {
+			this.input = input;
+			this.inputId = inputId;
+			this.context = ExecutionContextFactory.getContext(false);
+		}
+
+		@Override
+		public IData call() throws ExceptionReport {
+			ExecutionContext previous = ExecutionContextFactory.getContext(false);
+			if (previous == context) {
+				// running on the request thread (pool saturated)
+				return handleInput(input, inputId);
+			}
+			if (context != null) {
+				ExecutionContextFactory.registerContext(context);
+			}
+			try {
+				return handleInput(input, inputId);
+			} finally {
+				if (previous != null) {
+					ExecutionContextFactory.registerContext(previous);
+				} else {
+					ExecutionContextFactory.unregisterContext();
+				}
 			}
 		}
 	}
@@ -287,9 +470,10 @@ public class InputHandler {
 	 * which can be parsed into a FeatureCollection.
 	 * @param input The client input
          * @param inputId
+         * @return the parsed input
          * @throws ExceptionReport If error occured while parsing XML
 	 */
-	 protected void handleComplexData(InputType input, String inputId) throws ExceptionReport{
+	 protected IData handleComplexData(InputType input, String inputId) throws ExceptionReport{
 		String complexValue;
 		InputDescriptionType inputReferenceDesc;
 		ComplexDataType data;
@@ -527,15 +711,7 @@ public class InputHandler {
                     throw new ExceptionReport("Error. No applicable parser found for " + formatSchema + "," + dataMimeType + "," + formatEncoding, ExceptionReport.NO_APPLICABLE_CODE);
 		}
 
-		IData collection = parseComplexValue(formatEncoding, complexValue, dataMimeType, formatSchema, parser);
-
-		//enable maxoccurs of parameters with the same name.
-                List<IData> list = new ArrayList<IData>();
-		if(inputData.containsKey(inputId)) {
-                    list = inputData.get(inputId);
-		}
-                list.add(collection);
-                inputData.put(inputId, list);
+		return parseComplexValue(formatEncoding, complexValue, dataMimeType, formatSchema, parser);
 	}
 
          protected ComplexDataDescriptionType findComplexDataDescriptionType(InputDescriptionType inputReferenceDesc, String dataMimeType, String dataSchema, String dataEncoding, String potentialFormatSchema, String potentialFormatEncoding) {
@@ -628,9 +804,10 @@ public class InputHandler {
 	/**
 	 * Handles the literalData
 	 * @param input The client's input
+	 * @return the parsed input
 	 * @throws ExceptionReport If the type of the parameter is invalid.
 	 */
-	private void handleLiteralData(InputType input) throws ExceptionReport {
+	private IData handleLiteralData(InputType input) throws ExceptionReport {
 		String inputID = input.getIdentifier().getStringValue();
 		String parameter = input.getData().getLiteralData().getStringValue();
 		String xmlDataType = input.getData().getLiteralData().getDataType();
@@ -702,17 +879,7 @@ public class InputHandler {
 			}
 		}
 
-		//enable maxxoccurs of parameters with the same name.
-		if(inputData.containsKey(inputID)) {
-			List<IData> list = inputData.get(inputID);
-			list.add(parameterObj);
-		}
-		else {
-			List<IData> list = new ArrayList<IData>();
-			list.add(parameterObj);
-			inputData.put(inputID, list);
-		}
-
+		return parameterObj;
 	}
 
 	private boolean checkRange(IData parameterObj, RangeType allowedRange){
@@ -778,9 +945,10 @@ public class InputHandler {
 	/**
 	 * Handles the ComplexValueReference
 	 * @param input The client input
+	 * @return the parsed input
 	 * @throws ExceptionReport If the input (as url) is invalid, or there is an error while parsing the XML.
 	 */
-	private void handleComplexValueReference(InputType input) throws ExceptionReport{
+	private IData handleComplexValueReference(InputType input) throws ExceptionReport{
 		String inputID = input.getIdentifier().getStringValue();
 
 		ReferenceStrategyRegister register = ReferenceStrategyRegister.getInstance();
@@ -918,10 +1086,10 @@ public class InputHandler {
 		}else{
 			// mimeType not in request, fetch mimetype from reference response
             mimeType = stream.getMimeType();
-            if(mimeType.contains("GML2")){
+            if(mimeType != null && mimeType.contains("GML2")){
                 mimeType = "text/xml; subtype=gml/2.0.0";
             }
-            if(mimeType.contains("GML3")){
+            if(mimeType != null && mimeType.contains("GML3")){
                 mimeType = "text/xml; subtype=gml/3.0.0";
             }
             ComplexDataDescriptionType format = null;
@@ -1208,40 +1376,33 @@ public class InputHandler {
 
 
 
-			IData parsedInputData = parser.parse(stream, mimeType, schema);
-
-			//enable maxxoccurs of parameters with the same name.
-			if(inputData.containsKey(inputID)) {
-				List<IData> list = inputData.get(inputID);
-				list.add(parsedInputData);
-				inputData.put(inputID, list);
-			}
-			else {
-				List<IData> list = new ArrayList<IData>();
-				list.add(parsedInputData);
-				inputData.put(inputID, list);
+			ReferenceCache cache = ReferenceCache.getInstance();
+			String variant = parser.getClass().getName() + "," + schema + "," + mimeType + "," + encoding;
+			try {
+				IData parsedInputData = cache.getParsed(stream.getContentKey(), variant);
+				if (parsedInputData == null) {
+					parsedInputData = parser.parse(stream, mimeType, schema);
+					if (cache.putParsed(stream.getContentKey(), variant, parsedInputData, stream.getContentLength())) {
+						addCachedInputData(parsedInputData);
+					}
+				} else {
+					addCachedInputData(parsedInputData);
+				}
+				return parsedInputData;
+			} finally {
+				// returns the connection to the pool of the ReferenceHttpClient
+				IOUtils.closeQuietly(stream);
 			}
-
-
 	}
 
 	/**
 	 * Handles BBoxValue
 	 * @param input The client input
+	 * @return the parsed input
 	 */
-    private void handleBBoxValue(InputType input)
+    private IData handleBBoxValue(InputType input)
             throws ExceptionReport {
-
-        IData envelope = parseBoundingBox(input.getData().getBoundingBoxData());
-
-        List<IData> resultList = inputData.get(input.getIdentifier()
-                .getStringValue());
-        if (resultList == null) {
-            inputData.put(input.getIdentifier().getStringValue(), resultList
-                    = new ArrayList<IData>(1));
-        }
-        resultList.add(envelope);
-
+        return parseBoundingBox(input.getData().getBoundingBoxData());
     }
 
     private IData parseBoundingBox(BoundingBoxType bbt)
@@ -1308,6 +1469,54 @@ public class InputHandler {
 		return inputData;
 	}
 
+	/**
+	 * @return <code>true</code> if the input is shared with other executions
+	 *         through the {@link ReferenceCache} and must not be disposed
+	 */
+	public boolean isCachedInputData(IData data) {
+		synchronized (cachedInputData) {
+			for (IData cached : cachedInputData) {
+				if (cached == data) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void addCachedInputData(IData data) {
+		synchronized (cachedInputData) {
+			if (!disposed) {
+				cachedInputData.add(data);
+				return;
+			}
+		}
+		// parsed by a cancelled task after a failure
+		ReferenceCache.getInstance().releaseParsed(data);
+	}
+
+	/**
+	 * Disposes the parsed complex inputs, except for inputs leased from the
+	 * {@link ReferenceCache}, which are released instead.
+	 */
+	public void dispose() {
+		for (List<IData> list : inputData.values()) {
+			for (IData data : list) {
+				if (data instanceof IComplexData && !isCachedInputData(data)) {
+					((IComplexData) data).dispose();
+				}
+			}
+		}
+		ReferenceCache cache = ReferenceCache.getInstance();
+		synchronized (cachedInputData) {
+			disposed = true;
+			for (IData cached : cachedInputData) {
+				cache.releaseParsed(cached);
+			}
+			cachedInputData.clear();
+		}
+	}
+
 
 //	private InputStream retrievingZippedContent(URLConnection conn) throws IOException{
 //		String contentType = conn.getContentEncoding();
@@ -260,6 +260,18 @@ abstract public class Request implements Callable <Response> {
 	
 	abstract public Object getAttachedResult();
 	
+	/**
+	 * Returns the key of the response of this Request in the ResponseCache.
+	 * Requests whose response only depends on the key, the algorithms and the
+	 * capabilities skeleton can be served from the cache.
+	 * @return the cache key, or null if the response must not be cached
+	 * @throws ExceptionReport
+	 * @see org.n52.wps.server.response.ResponseCache
+	 */
+	public String getCacheKey() throws ExceptionReport {
+		return null;
+	}
+	
 	/**
 	 * After creation a Request is handled. This is done by calling this method.
 	 * This handling could contain a lot of computations. These computations should
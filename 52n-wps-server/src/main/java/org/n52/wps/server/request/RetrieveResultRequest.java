@@ -80,6 +80,7 @@ public class RetrieveResultRequest extends Request {
 		}catch(NumberFormatException e){
 			throw new ExceptionReport("The value of parameter <request_id> is not an integer identifier", ExceptionReport.INVALID_PARAMETER_VALUE);
 		}
+		ExecuteStatusWriter.getInstance().flush(req_id);
 		IDatabase db = DatabaseFactory.getDatabase();
 		this.storedResponse = db.lookupResponse(req_id);
 		return (this.storedResponse != null);
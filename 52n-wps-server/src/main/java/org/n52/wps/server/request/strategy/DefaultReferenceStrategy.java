@@ -28,6 +28,7 @@
  */
 package org.n52.wps.server.request.strategy;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.net.MalformedURLException;
@@ -37,18 +38,19 @@ import net.opengis.wps.x100.InputType;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DecompressingHttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.request.strategy.ReferenceCache.CachedReference;
 
 /**
  * 
@@ -63,10 +65,6 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 	
 	Logger logger = LoggerFactory.getLogger(DefaultReferenceStrategy.class);
 	
-	//TODO: get proxy from config
-	//static final HttpHost proxy = new HttpHost("127.0.0.1", 8080, "http");
-	static final HttpHost proxy = null;
-	
 	@Override
 	public boolean isApplicable(InputType input) {
 		// TODO Auto-generated method stub
@@ -80,6 +78,9 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 		
 		String href = input.getReference().getHref();
 		String mimeType = input.getReference().getMimeType();
+		String schema = input.getReference().getSchema();
+		String encoding = input.getReference().getEncoding();
+		boolean cacheEnabled = ReferenceCache.getInstance().isEnabled();
 		
 		try {
 			// Handling POST with referenced document
@@ -89,23 +90,31 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 				
 				// but Body reference into a String
 				StringWriter writer = new StringWriter();
-				IOUtils.copy(httpGet(bodyHref, null), writer);
+				ReferenceInputStream bodyStream = httpGet(bodyHref, null, null);
+				try {
+					IOUtils.copy(bodyStream, writer);
+				} finally {
+					IOUtils.closeQuietly(bodyStream);
+				}
 				String body = writer.toString();
 				
 				// trigger POST request
-				return httpPost(href, body, mimeType);
+				String cacheKey = cacheEnabled ? ReferenceCache.createKey(href, body, mimeType, schema, encoding) : null;
+				return httpPost(href, body, mimeType, cacheKey);
 				
 			}
 			
 			// Handle POST with inline message
 			else if (input.getReference().isSetBody()) {
 				String body = input.getReference().getBody().toString();
-				return httpPost(href, body, mimeType);
+				String cacheKey = cacheEnabled ? ReferenceCache.createKey(href, body, mimeType, schema, encoding) : null;
+				return httpPost(href, body, mimeType, cacheKey);
 			}
 			
 			// Handle get request
 			else {
-				return httpGet(href, mimeType);
+				String cacheKey = cacheEnabled ? ReferenceCache.createKey(href, null, mimeType, schema, encoding) : null;
+				return httpGet(href, mimeType, cacheKey);
 			}
 			
 			
@@ -129,31 +138,24 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 	/**
 	 * Make a GET request using mimeType and href
 	 * 
-	 * TODO: add support for autoretry, proxy
+	 * @see ReferenceHttpClient
 	 */
-	private ReferenceInputStream httpGet(final String dataURLString, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
+	private ReferenceInputStream httpGet(final String dataURLString, final String mimeType, final String cacheKey) throws IOException {
 		HttpGet httpget = new HttpGet(dataURLString);
 		
 		if (mimeType != null){
 			httpget.addHeader(new BasicHeader("Content-type", mimeType));
 		}
 		        
-		return processResponse(httpclient.execute(httpget));
+		return execute(httpget, cacheKey);
 	}
 	
 	/**
 	 * Make a POST request using mimeType and href
 	 * 
-	 * TODO: add support for autoretry, proxy
+	 * @see ReferenceHttpClient
 	 */
-	private ReferenceInputStream httpPost(final String dataURLString, final String body, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
+	private ReferenceInputStream httpPost(final String dataURLString, final String body, final String mimeType, final String cacheKey) throws IOException {
 		HttpPost httppost = new HttpPost(dataURLString);
 		
 		if (mimeType != null){
@@ -164,7 +166,46 @@ public class DefaultReferenceStrategy implements IReferenceStrategy{
 		HttpEntity postEntity = new StringEntity(body);
 		httppost.setEntity(postEntity);
 		
-		return processResponse(httpclient.execute(httppost));
+		return execute(httppost, cacheKey);
+	}
+	
+	/**
+	 * Executes the request, or answers it from the {@link ReferenceCache} if a
+	 * cache key is given.
+	 */
+	private ReferenceInputStream execute(HttpRequestBase request, String cacheKey) throws IOException {
+		HttpClient httpClient = ReferenceHttpClient.getInstance().getHttpClient();
+		if (cacheKey == null) {
+			return processResponse(httpClient.execute(request));
+		}
+		
+		ReferenceCache cache = ReferenceCache.getInstance();
+		CachedReference cached = cache.get(cacheKey);
+		if (cached != null) {
+			try {
+				if (cached.isFresh()) {
+					return cache.hit(cached);
+				}
+				if (cached.getETag() != null) {
+					request.setHeader("If-None-Match", cached.getETag());
+				}
+				if (cached.getLastModified() != null) {
+					request.setHeader("If-Modified-Since", cached.getLastModified());
+				}
+				HttpResponse response = httpClient.execute(request);
+				if (response.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_MODIFIED) {
+					return cache.store(cacheKey, response);
+				}
+				EntityUtils.consume(response.getEntity());
+				return cache.revalidated(cached, response);
+			} catch (FileNotFoundException e) {
+				// the entry has been evicted in the meantime
+				logger.debug("Cached reference evicted while reading it, fetching it again");
+				request.removeHeaders("If-None-Match");
+				request.removeHeaders("If-Modified-Since");
+			}
+		}
+		return cache.store(cacheKey, httpClient.execute(request));
 	}
 
     private ReferenceInputStream processResponse(HttpResponse response) throws IOException {
@@ -0,0 +1,132 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of inline ComplexData payloads that have been spooled to disk
+ * while reading a POST request. Each spooled payload is addressed by an
+ * unguessable URN that replaces the inline data in the request document, so
+ * that it can be fetched again through the {@link ReferenceStrategyRegister}.
+ *
+ * @see SpooledDataReferenceStrategy
+ */
+public class InlineDataSpool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InlineDataSpool.class);
+
+    public static final String URN_PREFIX = "urn:n52:wps:spooled-data:";
+
+    private static InlineDataSpool instance;
+
+    private final ConcurrentMap<String, SpooledData> spooledData;
+
+    public synchronized static InlineDataSpool getInstance() {
+        if (instance == null) {
+            instance = new InlineDataSpool();
+        }
+        return instance;
+    }
+
+    private InlineDataSpool() {
+        spooledData = new ConcurrentHashMap<String, SpooledData>();
+    }
+
+    /**
+     * Creates a new, empty spool file. The file has to be handed to
+     * {@link #register(File, String)} once it is written completely,
+     * or deleted by the caller otherwise.
+     */
+    public File createSpoolFile() throws IOException {
+        return File.createTempFile("wps-inline-", ".tmp");
+    }
+
+    /**
+     * Registers a completely written spool file.
+     *
+     * @param file the spooled payload (already decoded if it was base64)
+     * @param mimeType the mime type the client declared for the payload, may be <code>null</code>
+     * @return the href under which the payload can be resolved
+     */
+    public String register(File file, String mimeType) {
+        String href = URN_PREFIX + UUID.randomUUID().toString();
+        spooledData.put(href, new SpooledData(file, mimeType));
+        LOGGER.debug("Spooled inline data ({} bytes) as {}", file.length(), href);
+        return href;
+    }
+
+    public boolean contains(String href) {
+        return href != null && spooledData.containsKey(href);
+    }
+
+    public ReferenceInputStream open(String href) throws IOException {
+        SpooledData data = spooledData.get(href);
+        if (data == null) {
+            throw new IOException("No spooled data available for " + href);
+        }
+        // the payload was decoded while spooling, so no encoding applies anymore
+        return new ReferenceInputStream(
+                new BufferedInputStream(new FileInputStream(data.file)),
+                data.mimeType,
+                null,
+                null,
+                data.file.length(),
+                data.file);
+    }
+
+    public void release(String href) {
+        SpooledData data = spooledData.remove(href);
+        if (data != null) {
+            FileUtils.deleteQuietly(data.file);
+            LOGGER.debug("Released spooled inline data {}", href);
+        }
+    }
+
+    private static class SpooledData {
+
+        private final File file;
+        private final String mimeType;
+
+        SpooledData(File file, String mimeType) {
+            this.file = file;
+            this.mimeType = mimeType;
+        }
+    }
+}
@@ -28,17 +28,16 @@
  */
 package org.n52.wps.server.request.strategy;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DecompressingHttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicHeader;
 import org.n52.wps.server.request.InputHandler;
 
@@ -59,7 +58,10 @@ import org.n52.wps.server.request.InputHandler;
 public class LazyHttpInputStream extends InputStream {
 
 	private InputStream is;
+	private HttpRequestBase request;
 	private boolean initDone = false;
+	private boolean closed = false;
+	private boolean endOfStream = false;
 	
 	// connection parameters
 	final boolean useHttpGet;
@@ -101,15 +103,37 @@ public class LazyHttpInputStream extends InputStream {
 	 * @throws IOException
 	 */
 	private final void init() throws IOException{
+		if (closed){
+			throw new IOException("Stream closed");
+		}
 		if (useHttpGet){
-			is = httpGet(dataURLString, mimeType);
+			request = httpGet(dataURLString, mimeType);
 		} else {
-			is = httpPost(dataURLString, body, mimeType);
+			request = httpPost(dataURLString, body, mimeType);
+		}
+		
+		HttpResponse response = ReferenceHttpClient.getInstance().getHttpClient().execute(request);
+		HttpEntity entity = response.getEntity();
+		try {
+			is = entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+		} catch (IOException | RuntimeException e) {
+			request.abort();
+			throw e;
 		}
 		
 		initDone = true;
 	}
 
+	/**
+	 * Aborts the request, so that the connection of a failed or abandoned
+	 * response is released instead of being leased forever.
+	 */
+	private void abort() {
+		if (request != null){
+			request.abort();
+		}
+	}
+
 
 	@Override
 	public int read() throws IOException {
@@ -117,7 +141,34 @@ public class LazyHttpInputStream extends InputStream {
 			init();
 		}
 
-		return is.read();
+		try {
+			int b = is.read();
+			if (b == -1){
+				endOfStream = true;
+			}
+			return b;
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (!initDone){
+			init();
+		}
+
+		try {
+			int n = is.read(b, off, len);
+			if (n == -1){
+				endOfStream = true;
+			}
+			return n;
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
 	}
 
 	@Override
@@ -125,15 +176,38 @@ public class LazyHttpInputStream extends InputStream {
 		if (!initDone){
 			init();
 		}
-		return is.available();
+		try {
+			return is.available();
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
 	}
 
+	/**
+	 * Returns the connection to the pool if the response has been read
+	 * completely, otherwise aborts the request rather than reading the rest of
+	 * the response. Closing a stream that has never been read doesn't connect.
+	 */
 	@Override
 	public void close() throws IOException {
+		if (closed){
+			return;
+		}
+		closed = true;
 		if (!initDone){
-			init();
+			return;
+		}
+		if (endOfStream){
+			try {
+				is.close();
+			} catch (IOException e) {
+				abort();
+				throw e;
+			}
+		} else {
+			abort();
 		}
-		is.close();
 	}
 
 	@Override
@@ -153,7 +227,12 @@ public class LazyHttpInputStream extends InputStream {
 		if (!initDone){
 			init();
 		}
-		is.reset();
+		try {
+			is.reset();
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
 	}
 
 	@Override
@@ -165,35 +244,26 @@ public class LazyHttpInputStream extends InputStream {
 	}
 	
 	/**
-	 * Make a GET request using mimeType and href
+	 * Create a GET request using mimeType and href
 	 * 
-	 * TODO: add support for autoretry, proxy
+	 * @see ReferenceHttpClient
 	 */
-	private static InputStream httpGet(final String dataURLString, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
+	private static HttpRequestBase httpGet(final String dataURLString, final String mimeType) {
 		HttpGet httpget = new HttpGet(dataURLString);
 		
 		if (mimeType != null){
 			httpget.addHeader(new BasicHeader("Content-type", mimeType));
 		}
 		
-		HttpResponse response = httpclient.execute(httpget);
-		HttpEntity entity = response.getEntity();
-		return entity.getContent();
+		return httpget;
 	}
 	
 	/**
-	 * Make a POST request using mimeType and href
+	 * Create a POST request using mimeType and href
 	 * 
-	 * TODO: add support for autoretry, proxy
+	 * @see ReferenceHttpClient
 	 */
-	private static InputStream httpPost(final String dataURLString, final String body, final String mimeType) throws IOException {
-		HttpClient backend = new DefaultHttpClient();
-		
-		DecompressingHttpClient httpclient = new DecompressingHttpClient(backend);
-		
+	private static HttpRequestBase httpPost(final String dataURLString, final String body, final String mimeType) throws IOException {
 		HttpPost httppost = new HttpPost(dataURLString);
 		
 		if (mimeType != null){
@@ -204,9 +274,7 @@ public class LazyHttpInputStream extends InputStream {
 		HttpEntity postEntity = new StringEntity(body);
 		httppost.setEntity(postEntity);
 		
-		HttpResponse response = httpclient.execute(httppost);
-		HttpEntity resultEntity = response.getEntity();
-		return resultEntity.getContent();
+		return httppost;
 	}
 
 }
@@ -0,0 +1,506 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.io.data.IComplexData;
+import org.n52.wps.io.data.IData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the content of referenced inputs, so that processes executed
+ * repeatedly against the same references do not download (and optionally do
+ * not parse) the same data again.
+ * 
+ * Entries are addressed by a hash of href, request body, mimeType, schema and
+ * encoding of the reference. The HTTP caching headers of the response decide
+ * if and how long an entry may be used: <code>Cache-Control: max-age</code>
+ * and <code>Expires</code> define the freshness, <code>ETag</code> and
+ * <code>Last-Modified</code> are used to revalidate stale entries.
+ * <code>no-store</code> and <code>private</code> responses are never cached.
+ * 
+ * The cache is configured with the following server properties:
+ * <ul>
+ * <li><code>reference.cache.maxBytes</code>: size of the on-disk store of
+ * downloaded content, 0 disables the cache (default: 0)</li>
+ * <li><code>reference.cache.parsed.maxBytes</code>: size (measured as the
+ * size of the downloaded content) of the in-memory cache of parsed inputs, 0
+ * disables it (default: 0). Parsed inputs are shared between executions, so
+ * this must only be enabled if the processes do not modify their inputs.
+ * Executions lease them instead of disposing them, a parsed input is disposed
+ * once it has been evicted and all leases have been released.</li>
+ * </ul>
+ */
+public class ReferenceCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceCache.class);
+
+    private static final String KEY_REQUEST_ROOT = "org.n52.wps.server.request";
+    private static final String KEY_MAX_BYTES = "reference.cache.maxBytes";
+    private static final String KEY_PARSED_MAX_BYTES = "reference.cache.parsed.maxBytes";
+    private static final long DEFAULT_MAX_BYTES = 0;
+    private static final long DEFAULT_PARSED_MAX_BYTES = 0;
+
+    private static ReferenceCache instance;
+
+    private final long maxBytes;
+    private final long parsedMaxBytes;
+    private final File directory;
+
+    private final Map<String, CachedReference> entries = new LinkedHashMap<String, CachedReference>(16, 0.75f, true);
+    private final Map<String, ParsedEntry> parsedEntries = new LinkedHashMap<String, ParsedEntry>(16, 0.75f, true);
+    private final Map<IData, ParsedEntry> leasedEntries = new IdentityHashMap<IData, ParsedEntry>();
+    private long bytes;
+    private long parsedBytes;
+    private long versions;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong parsedHits = new AtomicLong();
+    private final AtomicLong parsedMisses = new AtomicLong();
+    private final AtomicLong parsedEvictions = new AtomicLong();
+
+    public synchronized static ReferenceCache getInstance() {
+        if (instance == null) {
+            PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer(), KEY_REQUEST_ROOT);
+            instance = new ReferenceCache(
+                    propertyUtil.extractLong(KEY_MAX_BYTES, DEFAULT_MAX_BYTES),
+                    propertyUtil.extractLong(KEY_PARSED_MAX_BYTES, DEFAULT_PARSED_MAX_BYTES));
+        }
+        return instance;
+    }
+
+    ReferenceCache(long maxBytes, long parsedMaxBytes) {
+        this.maxBytes = maxBytes;
+        this.parsedMaxBytes = maxBytes > 0 ? parsedMaxBytes : 0;
+        File cacheDirectory = null;
+        if (maxBytes > 0) {
+            try {
+                cacheDirectory = File.createTempFile("wps-reference-cache", "");
+                FileUtils.deleteQuietly(cacheDirectory);
+                FileUtils.forceMkdir(cacheDirectory);
+            } catch (IOException e) {
+                LOGGER.error("Could not create reference cache directory, caching of references is disabled", e);
+                cacheDirectory = null;
+            }
+        }
+        this.directory = cacheDirectory;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public boolean isParsedCacheEnabled() {
+        return isEnabled() && parsedMaxBytes > 0;
+    }
+
+    public static String createKey(String href, String body, String mimeType, String schema, String encoding) {
+        StringBuilder key = new StringBuilder();
+        for (String part : new String[]{href, body, mimeType, schema, encoding}) {
+            // the separator cannot be part of any of the values
+            key.append(part == null ? "" : part).append('\u0000');
+        }
+        return DigestUtils.sha256Hex(key.toString());
+    }
+
+    public synchronized CachedReference get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Opens a fresh entry.
+     */
+    public ReferenceInputStream hit(CachedReference cached) throws IOException {
+        hits.incrementAndGet();
+        return cached.open();
+    }
+
+    /**
+     * Renews a stale entry after the server answered a conditional request
+     * with <code>304 Not Modified</code>.
+     */
+    public ReferenceInputStream revalidated(CachedReference cached, HttpResponse response) throws IOException {
+        revalidations.incrementAndGet();
+        long now = System.currentTimeMillis();
+        Long expires = getExpires(response, now);
+        if (expires != null) {
+            synchronized (this) {
+                cached.expires = expires;
+            }
+        }
+        return cached.open();
+    }
+
+    /**
+     * Consumes a downloaded response and stores it in the cache if the
+     * response allows it.
+     * 
+     * @return the content of the response
+     */
+    public ReferenceInputStream store(String key, HttpResponse response) throws IOException {
+        misses.incrementAndGet();
+        HttpEntity entity = response.getEntity();
+        Header header = entity.getContentType();
+        String mimeType = header == null ? null : header.getValue();
+        header = entity.getContentEncoding();
+        String encoding = header == null ? null : header.getValue();
+
+        long now = System.currentTimeMillis();
+        Long expires = getExpires(response, now);
+        String eTag = getHeaderValue(response, "ETag");
+        String lastModified = getHeaderValue(response, "Last-Modified");
+        boolean cacheable = response.getStatusLine().getStatusCode() == HttpStatus.SC_OK
+                && expires != null
+                && (expires > now || eTag != null || lastModified != null);
+        if (!cacheable) {
+            return new ReferenceInputStream(entity.getContent(), mimeType, encoding);
+        }
+
+        File file = File.createTempFile("reference-", ".bin", directory);
+        InputStream content = entity.getContent();
+        try {
+            FileUtils.copyInputStreamToFile(content, file);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(file);
+            throw e;
+        } finally {
+            IOUtils.closeQuietly(content);
+        }
+
+        CachedReference cached = new CachedReference(key, file, mimeType, encoding, eTag, lastModified, expires);
+        if (file.length() > maxBytes) {
+            LOGGER.debug("Reference content of {} bytes exceeds the cache size", file.length());
+            return cached.openOnce();
+        }
+        synchronized (this) {
+            cached.version = ++versions;
+            CachedReference replaced = entries.put(key, cached);
+            if (replaced != null) {
+                bytes -= replaced.length;
+                FileUtils.deleteQuietly(replaced.file);
+            }
+            bytes += cached.length;
+            Iterator<CachedReference> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                CachedReference evicted = eldest.next();
+                if (evicted == cached) {
+                    continue;
+                }
+                eldest.remove();
+                bytes -= evicted.length;
+                FileUtils.deleteQuietly(evicted.file);
+                evictions.incrementAndGet();
+            }
+        }
+        return cached.open();
+    }
+
+    /**
+     * Leases a parsed input. Every successful lookup has to be matched by a
+     * call of {@link #releaseParsed(IData)} once the execution is done with
+     * the input, instead of disposing it.
+     * 
+     * @param contentKey the content key of the stream the input was read from
+     * @param variant distinguishes parsed representations of the same
+     *        content, e.g. parser and binding class
+     * @return the parsed input, or <code>null</code>
+     */
+    public IData getParsed(String contentKey, String variant) {
+        if (!isParsedCacheEnabled() || contentKey == null) {
+            return null;
+        }
+        synchronized (this) {
+            ParsedEntry entry = parsedEntries.get(contentKey + '\u0000' + variant);
+            if (entry != null) {
+                parsedHits.incrementAndGet();
+                lease(entry);
+                return entry.data;
+            }
+        }
+        parsedMisses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a parsed input. If it is cached, the caller holds a lease on it
+     * like after {@link #getParsed(String, String)}.
+     * 
+     * @return <code>true</code> if the input has been cached and has to be
+     *         released, <code>false</code> if it is still owned by the caller
+     */
+    public boolean putParsed(String contentKey, String variant, IData data, long weight) {
+        if (!isParsedCacheEnabled() || contentKey == null || data == null || weight > parsedMaxBytes) {
+            return false;
+        }
+        List<IData> disposable = new ArrayList<IData>();
+        synchronized (this) {
+            ParsedEntry entry = new ParsedEntry(data, weight);
+            lease(entry);
+            ParsedEntry replaced = parsedEntries.put(contentKey + '\u0000' + variant, entry);
+            if (replaced != null) {
+                parsedBytes -= replaced.weight;
+                evict(replaced, disposable);
+            }
+            parsedBytes += weight;
+            Iterator<ParsedEntry> eldest = parsedEntries.values().iterator();
+            while (parsedBytes > parsedMaxBytes && eldest.hasNext()) {
+                ParsedEntry evicted = eldest.next();
+                eldest.remove();
+                parsedBytes -= evicted.weight;
+                parsedEvictions.incrementAndGet();
+                evict(evicted, disposable);
+            }
+        }
+        dispose(disposable);
+        return true;
+    }
+
+    /**
+     * Releases a lease on a parsed input. The input is disposed once it has
+     * been evicted and is no longer used by any execution.
+     * 
+     * @return <code>false</code> if the input is not leased from the cache
+     */
+    public boolean releaseParsed(IData data) {
+        List<IData> disposable = new ArrayList<IData>();
+        synchronized (this) {
+            ParsedEntry entry = leasedEntries.get(data);
+            if (entry == null) {
+                return false;
+            }
+            if (--entry.leases == 0) {
+                leasedEntries.remove(data);
+                if (entry.evicted) {
+                    disposable.add(data);
+                }
+            }
+        }
+        dispose(disposable);
+        return true;
+    }
+
+    private void lease(ParsedEntry entry) {
+        if (entry.leases++ == 0) {
+            leasedEntries.put(entry.data, entry);
+        }
+    }
+
+    private static void evict(ParsedEntry entry, List<IData> disposable) {
+        entry.evicted = true;
+        if (entry.leases == 0) {
+            disposable.add(entry.data);
+        }
+    }
+
+    private static void dispose(List<IData> disposable) {
+        for (IData data : disposable) {
+            if (data instanceof IComplexData) {
+                ((IComplexData) data).dispose();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getParsedHits() {
+        return parsedHits.get();
+    }
+
+    public long getParsedMisses() {
+        return parsedMisses.get();
+    }
+
+    public long getParsedEvictions() {
+        return parsedEvictions.get();
+    }
+
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    public synchronized long getParsedSize() {
+        return parsedBytes;
+    }
+
+    /**
+     * @return the expiry date of the response, or <code>null</code> if it must
+     *         not be cached
+     */
+    static Long getExpires(HttpResponse response, long now) {
+        Header cacheControl = response.getFirstHeader("Cache-Control");
+        if (cacheControl != null) {
+            Long maxAge = null;
+            for (HeaderElement element : cacheControl.getElements()) {
+                String name = element.getName().toLowerCase();
+                if ("no-store".equals(name) || "private".equals(name)) {
+                    return null;
+                }
+                if ("no-cache".equals(name)) {
+                    return now;
+                }
+                if ("max-age".equals(name) && element.getValue() != null) {
+                    try {
+                        maxAge = Long.parseLong(element.getValue().trim());
+                    } catch (NumberFormatException e) {
+                        LOGGER.debug("Ignoring invalid max-age {}", element.getValue());
+                    }
+                }
+            }
+            if (maxAge != null) {
+                return now + maxAge * 1000;
+            }
+        }
+        String expires = getHeaderValue(response, "Expires");
+        if (expires != null) {
+            try {
+                Date date = DateUtils.parseDate(expires);
+                return date.getTime();
+            } catch (DateParseException e) {
+                // an invalid date means already expired
+                return now;
+            }
+        }
+        return now;
+    }
+
+    private static String getHeaderValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * Downloaded content of a reference.
+     */
+    public static class CachedReference {
+
+        private final String key;
+        private final File file;
+        private final long length;
+        private final String mimeType;
+        private final String encoding;
+        private final String eTag;
+        private final String lastModified;
+        private volatile long expires;
+        private long version;
+
+        CachedReference(String key, File file, String mimeType, String encoding, String eTag, String lastModified, long expires) {
+            this.key = key;
+            this.file = file;
+            this.length = file.length();
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+        }
+
+        public boolean isFresh() {
+            return System.currentTimeMillis() < expires;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        ReferenceInputStream open() throws IOException {
+            return new ReferenceInputStream(new BufferedInputStream(new FileInputStream(file)),
+                    mimeType, encoding, key + ':' + version, length, file);
+        }
+
+        ReferenceInputStream openOnce() throws IOException {
+            return new ReferenceInputStream(new BufferedInputStream(new FileInputStream(file) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    FileUtils.deleteQuietly(file);
+                }
+            }), mimeType, encoding, null, length, file);
+        }
+    }
+
+    private static class ParsedEntry {
+
+        private final IData data;
+        private final long weight;
+        private int leases;
+        private boolean evicted;
+
+        ParsedEntry(IData data, long weight) {
+            this.data = data;
+            this.weight = weight;
+        }
+    }
+}
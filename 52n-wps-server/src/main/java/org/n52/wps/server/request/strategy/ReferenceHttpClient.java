@@ -0,0 +1,186 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared, connection-pooled HTTP client used to fetch referenced inputs.
+ * Connections (and TLS sessions) are kept alive and reused across requests,
+ * failed requests are retried with an exponential backoff.
+ * 
+ * The client is configured with the following server properties:
+ * <ul>
+ * <li><code>reference.http.maxTotal</code>: maximum number of pooled connections (default: 50)</li>
+ * <li><code>reference.http.maxPerRoute</code>: maximum number of pooled connections per host (default: 10)</li>
+ * <li><code>reference.http.connectTimeout</code>: ISO8601 period (default: PT30S)</li>
+ * <li><code>reference.http.readTimeout</code>: ISO8601 period (default: PT5M)</li>
+ * <li><code>reference.http.poolTimeout</code>: ISO8601 period to wait for a pooled connection (default: PT1M)</li>
+ * <li><code>reference.http.retries</code>: number of retries of a failed request (default: 3)</li>
+ * <li><code>reference.http.retryBackoff</code>: ISO8601 period before the first retry, doubled for every further retry (default: PT0.5S)</li>
+ * <li><code>reference.http.proxyHost</code> and <code>reference.http.proxyPort</code>: optional HTTP proxy</li>
+ * </ul>
+ */
+public class ReferenceHttpClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReferenceHttpClient.class);
+
+    private static final String KEY_REQUEST_ROOT = "org.n52.wps.server.request";
+    private static final String KEY_MAX_TOTAL = "reference.http.maxTotal";
+    private static final String KEY_MAX_PER_ROUTE = "reference.http.maxPerRoute";
+    private static final String KEY_CONNECT_TIMEOUT = "reference.http.connectTimeout";
+    private static final String KEY_READ_TIMEOUT = "reference.http.readTimeout";
+    private static final String KEY_POOL_TIMEOUT = "reference.http.poolTimeout";
+    private static final String KEY_RETRIES = "reference.http.retries";
+    private static final String KEY_RETRY_BACKOFF = "reference.http.retryBackoff";
+    private static final String KEY_PROXY_HOST = "reference.http.proxyHost";
+    private static final String KEY_PROXY_PORT = "reference.http.proxyPort";
+
+    private static final long DEFAULT_MAX_TOTAL = 50;
+    private static final long DEFAULT_MAX_PER_ROUTE = 10;
+    private static final long DEFAULT_CONNECT_TIMEOUT = 30 * 1000;
+    private static final long DEFAULT_READ_TIMEOUT = 5 * 60 * 1000;
+    private static final long DEFAULT_POOL_TIMEOUT = 60 * 1000;
+    private static final long DEFAULT_RETRIES = 3;
+    private static final long DEFAULT_RETRY_BACKOFF = 500;
+    private static final long DEFAULT_PROXY_PORT = 8080;
+
+    private static final long IDLE_TIMEOUT_SECONDS = 60;
+
+    private static ReferenceHttpClient instance;
+
+    private final PoolingClientConnectionManager connectionManager;
+
+    private final HttpClient httpClient;
+
+    public synchronized static ReferenceHttpClient getInstance() {
+        if (instance == null) {
+            instance = new ReferenceHttpClient(new PropertyUtil(
+                    WPSConfig.getInstance().getPropertiesForServer(), KEY_REQUEST_ROOT));
+        }
+        return instance;
+    }
+
+    private ReferenceHttpClient(PropertyUtil propertyUtil) {
+        connectionManager = new PoolingClientConnectionManager();
+        connectionManager.setMaxTotal((int) propertyUtil.extractLong(KEY_MAX_TOTAL, DEFAULT_MAX_TOTAL));
+        connectionManager.setDefaultMaxPerRoute((int) propertyUtil.extractLong(KEY_MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE));
+
+        DefaultHttpClient backend = new DefaultHttpClient(connectionManager);
+        HttpParams params = backend.getParams();
+        HttpConnectionParams.setConnectionTimeout(params,
+                (int) propertyUtil.extractPeriodAsMillis(KEY_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT));
+        HttpConnectionParams.setSoTimeout(params,
+                (int) propertyUtil.extractPeriodAsMillis(KEY_READ_TIMEOUT, DEFAULT_READ_TIMEOUT));
+        HttpClientParams.setConnectionManagerTimeout(params,
+                propertyUtil.extractPeriodAsMillis(KEY_POOL_TIMEOUT, DEFAULT_POOL_TIMEOUT));
+
+        String proxyHost = propertyUtil.extractString(KEY_PROXY_HOST, null);
+        if (proxyHost != null && !proxyHost.trim().isEmpty()) {
+            int proxyPort = (int) propertyUtil.extractLong(KEY_PROXY_PORT, DEFAULT_PROXY_PORT);
+            params.setParameter(ConnRoutePNames.DEFAULT_PROXY, new HttpHost(proxyHost.trim(), proxyPort, "http"));
+        }
+
+        backend.setHttpRequestRetryHandler(new BackoffRetryHandler(
+                (int) propertyUtil.extractLong(KEY_RETRIES, DEFAULT_RETRIES),
+                propertyUtil.extractPeriodAsMillis(KEY_RETRY_BACKOFF, DEFAULT_RETRY_BACKOFF)));
+
+        httpClient = new DecompressingHttpClient(backend);
+    }
+
+    /**
+     * @return the shared client. The content of every response has to be
+     *         consumed or closed to return the connection to the pool.
+     */
+    public HttpClient getHttpClient() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return httpClient;
+    }
+
+    /**
+     * @return the number of leased, pending and available connections of the
+     *         pool
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    public void shutdown() {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Retries like the {@link DefaultHttpRequestRetryHandler}, but waits
+     * before every retry, doubling the wait time each time.
+     */
+    private static class BackoffRetryHandler extends DefaultHttpRequestRetryHandler {
+
+        private final long backoffMillis;
+
+        BackoffRetryHandler(int retryCount, long backoffMillis) {
+            super(retryCount, false);
+            this.backoffMillis = backoffMillis;
+        }
+
+        @Override
+        public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+            if (!super.retryRequest(exception, executionCount, context)) {
+                return false;
+            }
+            long wait = backoffMillis << Math.min(executionCount - 1, 10);
+            LOGGER.info("Retrying request ({}) in {}ms after: {}", new Object[]{executionCount, wait, exception.getMessage()});
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -28,22 +28,47 @@
  */
 package org.n52.wps.server.request.strategy;
 
+import java.io.File;
 import java.io.FilterInputStream;
 import java.io.InputStream;
 
+import org.n52.wps.io.IFileBackedStream;
+
 /**
  *
  * @author tkunicki
  */
-public class ReferenceInputStream extends FilterInputStream {
+public class ReferenceInputStream extends FilterInputStream implements IFileBackedStream {
     
     private final String mimeType;
     private final String encoding;
+    private final String contentKey;
+    private final long contentLength;
+    private final File file;
     
     public ReferenceInputStream(InputStream inputStream, String mimeType, String encoding) {
+        this(inputStream, mimeType, encoding, null, -1);
+    }
+    
+    public ReferenceInputStream(InputStream inputStream, String mimeType, String encoding, String contentKey, long contentLength) {
+        this(inputStream, mimeType, encoding, contentKey, contentLength, null);
+    }
+    
+    /**
+     * @param contentKey identifies the content of the stream, the same key
+     *        always refers to the same bytes
+     * @param contentLength the number of bytes of the content
+     * @param file the file the stream reads, if the content is stored in a
+     *        file that is not changed anymore
+     * @see ReferenceCache
+     */
+    public ReferenceInputStream(InputStream inputStream, String mimeType, String encoding, String contentKey, long contentLength, File file) {
         super(inputStream);
         this.mimeType = mimeType;
         this.encoding = encoding;
+        this.contentKey = contentKey;
+        this.contentLength = contentLength;
+        this.file = file;
     }
     
     public String getMimeType() {
@@ -53,4 +78,21 @@ public class ReferenceInputStream extends FilterInputStream {
     public String getEncoding() {
         return encoding;
     }
+    
+    /**
+     * @return the key of the content, or <code>null</code> if the content is
+     *         not cached
+     */
+    public String getContentKey() {
+        return contentKey;
+    }
+    
+    public long getContentLength() {
+        return contentLength;
+    }
+    
+    @Override
+    public File getFile() {
+        return file;
+    }
 }
@@ -51,6 +51,7 @@ public class ReferenceStrategyRegister {
 	
 	private ReferenceStrategyRegister(){
 		registeredStrategies = new ArrayList<IReferenceStrategy>();
+		registeredStrategies.add(new SpooledDataReferenceStrategy());
 		registeredStrategies.add(new WCS111XMLEmbeddedBase64OutputReferenceStrategy());
 	}
 	
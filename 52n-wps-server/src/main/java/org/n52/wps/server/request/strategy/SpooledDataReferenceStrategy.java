@@ -0,0 +1,60 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import java.io.IOException;
+
+import net.opengis.wps.x100.InputType;
+
+import org.n52.wps.server.ExceptionReport;
+
+/**
+ * Resolves references to inline ComplexData that was spooled to disk while
+ * the POST request was read.
+ *
+ * @see InlineDataSpool
+ */
+public class SpooledDataReferenceStrategy implements IReferenceStrategy {
+
+	@Override
+	public boolean isApplicable(InputType input) {
+		return InlineDataSpool.getInstance().contains(input.getReference().getHref());
+	}
+
+	@Override
+	public ReferenceInputStream fetchData(InputType input) throws ExceptionReport {
+		try {
+			return InlineDataSpool.getInstance().open(input.getReference().getHref());
+		} catch (IOException e) {
+			String inputID = input.getIdentifier().getStringValue();
+			throw new ExceptionReport("Error occured while reading spooled inline data: inputID: " + inputID,
+					ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
+}
@@ -77,6 +77,7 @@ public class ExecuteResponseBuilder {
 	private ExecuteRequest request;
 	private ExecuteResponseDocument doc;
 	private RawData rawDataHandler = null;
+	private InlineDataSplicer inlineDataSplicer = new InlineDataSplicer();
 	private ProcessDescriptionType description;
 	private static Logger LOGGER = LoggerFactory.getLogger(ExecuteResponseBuilder.class);
 	private Calendar creationTime;
@@ -327,7 +328,7 @@ public class ExecuteResponseBuilder {
 				handler.updateResponseAsReference(doc, (request.getUniqueId()).toString(),mimeType);
 			}
 			else {
-				handler.updateResponseForInlineComplexData(doc);
+				handler.updateResponseForInlineComplexData(doc, inlineDataSplicer);
 			}
 		}
 
@@ -364,7 +365,7 @@ public class ExecuteResponseBuilder {
 			doc.getExecuteResponse().setStatusLocation(statusLocation);
 		}
 		try {
-			return doc.newInputStream(XMLBeansHelper.getXmlOptions());
+			return inlineDataSplicer.splice(doc.newInputStream(XMLBeansHelper.getXmlOptions()));
 		}
 		catch(Exception e) {
 			throw new RuntimeException(e);
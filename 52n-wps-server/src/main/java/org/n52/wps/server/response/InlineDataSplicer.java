@@ -0,0 +1,373 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ReaderInputStream;
+import org.n52.wps.server.ExceptionReport;
+
+/**
+ * Splices inline complex data into a serialized ExecuteResponse. Instead of
+ * the generated data, the response document only holds a placeholder for
+ * each inline output. When the document is read, every placeholder is
+ * replaced by the spooled data of the output, which is streamed chunk by
+ * chunk, so neither large outputs nor the complete response are ever held in
+ * memory. A response may be read several times and by other threads, e.g.
+ * to store it and to send it to the client.
+ * 
+ * Generated XML is inserted without its XML declaration and document type
+ * declaration; any other data is escaped as text.
+ */
+public class InlineDataSplicer {
+
+	private static final String PLACEHOLDER_PREFIX = "urn:n52:wps:inline-output:";
+	private static final int PLACEHOLDER_LENGTH = PLACEHOLDER_PREFIX.length() + 36;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+	private static final int PROLOG_LIMIT = 8192;
+	private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._:-]+)[\"']");
+
+	private final Map<String, OutputDataItem> outputs = new ConcurrentHashMap<String, OutputDataItem>();
+
+	/**
+	 * Registers an inline output.
+	 * 
+	 * @return the placeholder to put into the ComplexData element of the
+	 *         output
+	 */
+	public String register(OutputDataItem output) {
+		String placeholder = PLACEHOLDER_PREFIX + UUID.randomUUID().toString();
+		outputs.put(placeholder, output);
+		return placeholder;
+	}
+
+	/**
+	 * @param document the serialized response document (UTF-8); it is read
+	 *            completely and closed
+	 * @return the document with all placeholders replaced by the generated
+	 *         data
+	 */
+	public InputStream splice(InputStream document) throws IOException {
+		if (outputs.isEmpty()) {
+			return document;
+		}
+		byte[] bytes;
+		try {
+			bytes = IOUtils.toByteArray(document);
+		} finally {
+			document.close();
+		}
+		byte[] prefix = PLACEHOLDER_PREFIX.getBytes(UTF8);
+		List<Object> parts = new ArrayList<Object>();
+		int start = 0;
+		int index = indexOf(bytes, prefix, 0);
+		while (index >= 0 && index + PLACEHOLDER_LENGTH <= bytes.length) {
+			String placeholder = new String(bytes, index, PLACEHOLDER_LENGTH, UTF8);
+			OutputDataItem output = outputs.get(placeholder);
+			if (output == null) {
+				// some other text that happens to look like a placeholder
+				index = indexOf(bytes, prefix, index + 1);
+				continue;
+			}
+			parts.add(new ByteArrayInputStream(bytes, start, index - start));
+			parts.add(output);
+			start = index + PLACEHOLDER_LENGTH;
+			index = indexOf(bytes, prefix, start);
+		}
+		parts.add(new ByteArrayInputStream(bytes, start, bytes.length - start));
+		return new SplicedInputStream(parts.iterator());
+	}
+
+	/**
+	 * Prepares a generated XML document to be inserted as element content:
+	 * removes a byte order mark, the XML declaration and the document type
+	 * declaration, and converts the document to UTF-8 if it declares a
+	 * different encoding.
+	 */
+	static InputStream toXmlFragment(InputStream xml) throws IOException {
+		BufferedInputStream in = new BufferedInputStream(xml, PROLOG_LIMIT);
+		in.mark(PROLOG_LIMIT);
+		byte[] head = new byte[PROLOG_LIMIT];
+		int length = 0;
+		int n;
+		while (length < head.length && (n = in.read(head, length, head.length - length)) >= 0) {
+			length += n;
+		}
+		in.reset();
+
+		String prolog = new String(head, 0, length, LATIN1);
+		String encoding = null;
+		int offset = prolog.startsWith("\u00EF\u00BB\u00BF") ? 3 : 0;
+		while (true) {
+			int next = skipWhitespace(prolog, offset);
+			int end;
+			if (prolog.startsWith("<?xml", next) && next + 5 < prolog.length()
+					&& Character.isWhitespace(prolog.charAt(next + 5))) {
+				end = prolog.indexOf("?>", next);
+				if (end < 0) {
+					break;
+				}
+				Matcher matcher = ENCODING_PATTERN.matcher(prolog.substring(next, end));
+				if (matcher.find()) {
+					encoding = matcher.group(1);
+				}
+				offset = end + 2;
+			} else if (prolog.startsWith("<!DOCTYPE", next)) {
+				end = endOfDoctype(prolog, next);
+				if (end < 0) {
+					break;
+				}
+				offset = end + 1;
+			} else {
+				offset = next;
+				break;
+			}
+		}
+		IOUtils.skipFully(in, offset);
+
+		if (encoding != null && !isUTF8Compatible(encoding)) {
+			return new ReaderInputStream(new InputStreamReader(in, encoding), UTF8);
+		}
+		return in;
+	}
+
+	/**
+	 * Escapes generated data to be inserted as text content.
+	 */
+	static InputStream toText(InputStream data) {
+		return new TextEscapingInputStream(data);
+	}
+
+	private static boolean isUTF8Compatible(String encoding) {
+		return encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8")
+				|| encoding.equalsIgnoreCase("US-ASCII") || encoding.equalsIgnoreCase("ASCII");
+	}
+
+	private static int skipWhitespace(String s, int offset) {
+		while (offset < s.length() && Character.isWhitespace(s.charAt(offset))) {
+			offset++;
+		}
+		return offset;
+	}
+
+	private static int endOfDoctype(String s, int offset) {
+		boolean internalSubset = false;
+		for (int i = offset; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '[') {
+				internalSubset = true;
+			} else if (c == ']') {
+				internalSubset = false;
+			} else if (c == '>' && !internalSubset) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] bytes, byte[] pattern, int from) {
+		outer: for (int i = from; i <= bytes.length - pattern.length; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if (bytes[i + j] != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads the parts of a spliced document one after the other. The data of
+	 * an output is opened when the reader reaches it.
+	 */
+	private static class SplicedInputStream extends InputStream {
+
+		private final Iterator<Object> parts;
+		private InputStream current;
+
+		SplicedInputStream(Iterator<Object> parts) {
+			this.parts = parts;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = read(b, 0, 1);
+			return n < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (true) {
+				if (current == null) {
+					if (!parts.hasNext()) {
+						return -1;
+					}
+					current = open(parts.next());
+				}
+				int n = current.read(b, off, len);
+				if (n > 0) {
+					return n;
+				}
+				if (n < 0) {
+					current.close();
+					current = null;
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (current != null) {
+				current.close();
+				current = null;
+			}
+		}
+
+		private InputStream open(Object part) throws IOException {
+			if (part instanceof InputStream) {
+				return (InputStream) part;
+			}
+			try {
+				return ((OutputDataItem) part).openInlineData();
+			} catch (ExceptionReport e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Escapes the XML markup characters of the underlying stream. Multi-byte
+	 * UTF-8 sequences never contain these characters, so they pass unchanged.
+	 */
+	private static class TextEscapingInputStream extends FilterInputStream {
+
+		private static final byte[] AMP = "&amp;".getBytes(LATIN1);
+		private static final byte[] LT = "&lt;".getBytes(LATIN1);
+		private static final byte[] GT = "&gt;".getBytes(LATIN1);
+
+		private final byte[] buffer = new byte[8192];
+		private byte[] pending;
+		private int pendingOffset;
+		private int pendingLength;
+
+		TextEscapingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = read(b, 0, 1);
+			return n < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (pendingLength == 0) {
+				int n;
+				do {
+					n = in.read(buffer, 0, buffer.length);
+				} while (n == 0);
+				if (n < 0) {
+					return -1;
+				}
+				escape(n);
+			}
+			int count = Math.min(len, pendingLength);
+			System.arraycopy(pending, pendingOffset, b, off, count);
+			pendingOffset += count;
+			pendingLength -= count;
+			return count;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return pendingLength;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		private void escape(int n) {
+			int escaped = n;
+			for (int i = 0; i < n; i++) {
+				byte c = buffer[i];
+				if (c == '&') {
+					escaped += AMP.length - 1;
+				} else if (c == '<' || c == '>') {
+					escaped += LT.length - 1;
+				}
+			}
+			if (escaped == n) {
+				pending = buffer;
+			} else {
+				pending = new byte[escaped];
+				int j = 0;
+				for (int i = 0; i < n; i++) {
+					byte c = buffer[i];
+					byte[] entity = c == '&' ? AMP : c == '<' ? LT : c == '>' ? GT : null;
+					if (entity == null) {
+						pending[j++] = c;
+					} else {
+						System.arraycopy(entity, 0, pending, j, entity.length);
+						j += entity.length;
+					}
+				}
+			}
+			pendingOffset = 0;
+			pendingLength = escaped;
+		}
+	}
+}
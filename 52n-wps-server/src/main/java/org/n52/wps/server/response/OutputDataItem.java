@@ -28,14 +28,13 @@
  */
 package org.n52.wps.server.response;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
 import net.opengis.ows.x11.BoundingBoxType;
 import net.opengis.ows.x11.CodeType;
 import net.opengis.ows.x11.LanguageStringType;
@@ -47,13 +46,10 @@ import net.opengis.wps.x100.OutputReferenceType;
 import net.opengis.wps.x100.ProcessDescriptionType;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.xmlbeans.XmlException;
-import org.apache.xmlbeans.XmlObject;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.xmlbeans.XmlCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
 import org.n52.wps.io.BasicXMLTypeFactory;
 import org.n52.wps.io.IOHandler;
@@ -74,7 +70,9 @@ public class OutputDataItem extends ResponseData {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(OutputDataItem.class);
 	private static final String COMPLEX_DATA_TYPE = "ComplexDataResponse";
+	private static final int INLINE_DATA_THRESHOLD = 1024 * 1024;
 	private LanguageStringType title;
+	private DeferredFileOutputStream inlineData;
 
 	/**
 	 *
@@ -95,84 +93,129 @@ public class OutputDataItem extends ResponseData {
 	}
 
 	/**
+	 * Adds the output as inline complex data. The data is generated once and
+	 * spooled (to a temporary file if it is large), so generator failures are
+	 * reported before any part of the response is written. The ComplexData
+	 * element only holds a placeholder that is replaced with the spooled data
+	 * when the response is streamed.
 	 *
 	 * @param res
+	 * @param splicer
 	 * @throws ExceptionReport
 	 */
-	public void updateResponseForInlineComplexData(ExecuteResponseDocument res) throws ExceptionReport {
+	public void updateResponseForInlineComplexData(ExecuteResponseDocument res, InlineDataSplicer splicer) throws ExceptionReport {
 		OutputDataType output = prepareOutput(res);
 		prepareGenerator();
-		ComplexDataType complexData = null;
 
+		// in case encoding is NULL -or- empty -or- UTF-8
+		// send plain text (XML or not) in response node
+		//
+		// in case encoding is base64
+		// send base64encoded (binary) data in node
+		if (!isDefaultEncoding() && !isBase64Encoding()) {
+			throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
+		}
 
+		spoolInlineData();
 
+		ComplexDataType complexData = output.addNewData().addNewComplexData();
+		XmlCursor cursor = complexData.newCursor();
 		try {
-			// CHECKING IF STORE IS TRUE AND THEN PROCESSING.... SOMEHOW!
-			// CREATING A COMPLEXVALUE
+			cursor.setTextValue(splicer.register(this));
+		} finally {
+			cursor.dispose();
+		}
 
-			// in case encoding is NULL -or- empty -or- UTF-8
-			// send plain text (XML or not) in response node
-			//
-			// in case encoding is base64
-			// send base64encoded (binary) data in node
-			//
-			// in case encoding is
-			//
-			InputStream stream = null;
-			if (encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING)){
-				stream = generator.generateStream(super.obj, mimeType, schema);
-			}
+		if (schema != null) {
+			// setting the schema attribute for the output.
+			complexData.setSchema(schema);
+		}
+		if (encoding != null) {
+			complexData.setEncoding(encoding);
+		}
+		if (mimeType != null) {
+			complexData.setMimeType(mimeType);
+		}
+	}
 
-			// in case encoding is base64 create a new text node
-			// and parse the generator's result into it
-			else if (encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64)){
-				stream = generator.generateBase64Stream(super.obj, mimeType, schema);
-			}
-			else {
-				throw new ExceptionReport("Unable to generate encoding " + encoding, ExceptionReport.NO_APPLICABLE_CODE);
+	/**
+	 * Opens the spooled data of an inline complex output, ready to be
+	 * inserted into the ComplexData element. Every call reads the spooled
+	 * data again, the generator is not called.
+	 *
+	 * @throws ExceptionReport
+	 */
+	public InputStream openInlineData() throws ExceptionReport {
+		if (inlineData == null) {
+			throw new ExceptionReport("Inline Complex Data was not generated for output " + id, ExceptionReport.NO_APPLICABLE_CODE);
+		}
+		if (inlineData.isInMemory()) {
+			return new ByteArrayInputStream(inlineData.getData());
+		}
+		try {
+			return new BufferedInputStream(new FileInputStream(inlineData.getFile()));
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage(), e);
+			throw new ExceptionReport("Could not read Inline Complex Data of the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
+		}
+	}
+
+	private void spoolInlineData() throws ExceptionReport {
+		InputStream stream = generateInlineData();
+		DeferredFileOutputStream spool = new DeferredFileOutputStream(INLINE_DATA_THRESHOLD, "wps-output-", ".tmp", null);
+		try {
+			IOUtils.copyLarge(stream, spool);
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage(), e);
+			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
+		} finally {
+			IOUtils.closeQuietly(stream);
+			IOUtils.closeQuietly(spool);
+		}
+		inlineData = spool;
+	}
+
+	/**
+	 * Generates the data of an inline complex output: XML is stripped of its
+	 * prolog, anything else is escaped as text.
+	 */
+	private InputStream generateInlineData() throws ExceptionReport {
+		try {
+			if (isBase64Encoding()) {
+				// the base64 alphabet needs no escaping
+				return generator.generateBase64Stream(super.obj, mimeType, schema);
 			}
-			complexData = output.addNewData().addNewComplexData();
-			if(mimeType.contains("xml") || mimeType.contains("XML")){
-				complexData.set(XmlObject.Factory.parse(stream));
-				stream.close();
-			}else{
-				DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-				Document document = builder.newDocument();
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				IOUtils.copy(stream, baos);
-				stream.close();
-				String text = baos.toString();
-				baos.close();
-				Node dataNode = document.createTextNode(text);
-				complexData.set(XmlObject.Factory.parse(dataNode));
+			InputStream stream = generator.generateStream(super.obj, mimeType, schema);
+			if (mimeType.contains("xml") || mimeType.contains("XML")) {
+				return InlineDataSplicer.toXmlFragment(stream);
 			}
-
+			return InlineDataSplicer.toText(stream);
 		} catch(RuntimeException e) {
 			LOGGER.error(e.getMessage(), e);
 			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
 		} catch (IOException e) {
 			LOGGER.error(e.getMessage(), e);
 			throw new ExceptionReport("Could not create Inline Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (XmlException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Complex Data from the process result. Check encoding (base64 for inline binary data or UTF-8 for XML based data)", ExceptionReport.NO_APPLICABLE_CODE, e);
-		} catch (ParserConfigurationException e) {
-			LOGGER.error(e.getMessage(), e);
-			throw new ExceptionReport("Could not create Inline Base64 Complex Data from the process result", ExceptionReport.NO_APPLICABLE_CODE, e);
 		}
+	}
 
-		if (complexData != null) {
-			if (schema != null) {
-				// setting the schema attribute for the output.
-				complexData.setSchema(schema);
-			}
-			if (encoding != null) {
-				complexData.setEncoding(encoding);
-			}
-			if (mimeType != null) {
-				complexData.setMimeType(mimeType);
-			}
+	/**
+	 * Deletes the temporary file of spooled inline data.
+	 */
+	@Override
+	protected void finalize() throws Throwable {
+		if (inlineData != null && !inlineData.isInMemory()) {
+			inlineData.getFile().delete();
 		}
+		super.finalize();
+	}
+
+	private boolean isDefaultEncoding() {
+		return encoding == null || encoding.equals("") || encoding.equalsIgnoreCase(IOHandler.DEFAULT_ENCODING);
+	}
+
+	private boolean isBase64Encoding() {
+		return encoding != null && encoding.equalsIgnoreCase(IOHandler.ENCODING_BASE64);
 	}
 
 	public void updateResponseForLiteralData(ExecuteResponseDocument res, String dataTypeReference){
@@ -0,0 +1,253 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.n52.wps.commons.PropertyUtil;
+import org.n52.wps.commons.WPSConfig;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.RepositoryManager;
+import org.n52.wps.server.request.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the serialized responses of requests that only depend on the
+ * algorithms and the capabilities skeleton, i.e. GetCapabilities and
+ * DescribeProcess. Responses are stored as plain and gzipped bytes along with
+ * an ETag, so that they can be served (or confirmed with 304 Not Modified)
+ * without building any document.
+ * 
+ * Entries are addressed by a key provided by the request (see
+ * {@link Request#getCacheKey()}). They belong to a generation of the
+ * repositories (see {@link RepositoryManager#getGeneration()}) and are
+ * outdated once it changes or the cache is invalidated, e.g. because the
+ * capabilities skeleton was reloaded.
+ * 
+ * The cache is configured with the following server property:
+ * <ul>
+ * <li><code>response.cache.maxEntries</code>: maximum number of cached
+ * responses, 0 disables the cache (default: 100)</li>
+ * </ul>
+ */
+public class ResponseCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final String KEY_RESPONSE_ROOT = "org.n52.wps.server.response";
+    private static final String KEY_MAX_ENTRIES = "response.cache.maxEntries";
+    private static final long DEFAULT_MAX_ENTRIES = 100;
+
+    private static ResponseCache instance;
+
+    private final long maxEntries;
+
+    private final Map<String, CachedResponse> entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+    private long version;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public synchronized static ResponseCache getInstance() {
+        if (instance == null) {
+            PropertyUtil propertyUtil = new PropertyUtil(WPSConfig.getInstance().getPropertiesForServer(), KEY_RESPONSE_ROOT);
+            instance = new ResponseCache(propertyUtil.extractLong(KEY_MAX_ENTRIES, DEFAULT_MAX_ENTRIES));
+        }
+        return instance;
+    }
+
+    ResponseCache(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the cached response of a request, or serves the request and
+     * caches its response. Only successfully served requests are cached.
+     * 
+     * @param request
+     *        a validated request with a cache key
+     * @return the response
+     * @throws ExceptionReport
+     *         if the request could not be served
+     */
+    public CachedResponse getResponse(Request request) throws ExceptionReport {
+        String key = request.getCacheKey();
+        long generation = RepositoryManager.getInstance().getGeneration();
+        long currentVersion;
+        synchronized (this) {
+            CachedResponse entry = entries.get(key);
+            if (entry != null && entry.generation == generation && entry.version == version) {
+                hits.incrementAndGet();
+                return entry;
+            }
+            currentVersion = version;
+        }
+        misses.incrementAndGet();
+        LOGGER.debug("Response cache miss for {} ({} hits, {} misses)", new Object[] { key, hits.get(), misses.get() });
+
+        // serve outside of the lock, concurrent misses of the same key only
+        // cost a second response
+        CachedResponse entry;
+        InputStream stream = request.call().getAsStream();
+        try {
+            entry = new CachedResponse(IOUtils.toByteArray(stream), generation, currentVersion);
+        } catch (IOException e) {
+            throw new ExceptionReport("Could not read from response stream.", ExceptionReport.NO_APPLICABLE_CODE, e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+        if (maxEntries > 0) {
+            synchronized (this) {
+                if (currentVersion == version) {
+                    entries.put(key, entry);
+                    evict(generation);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Outdates all cached responses, responses served while invalidating are
+     * not cached.
+     */
+    public synchronized void invalidate() {
+        version++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void evict(long generation) {
+        Iterator<CachedResponse> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CachedResponse entry = iterator.next();
+            if (entries.size() > maxEntries || entry.generation != generation) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * A serialized response. The content must not be modified.
+     */
+    public static class CachedResponse {
+
+        private static final String GZIP_SUFFIX = "-gzip";
+
+        private final byte[] content;
+
+        private final byte[] gzippedContent;
+
+        private final String eTag;
+
+        private final long generation;
+
+        private final long version;
+
+        CachedResponse(byte[] content, long generation, long version) throws IOException {
+            this.content = content;
+            this.gzippedContent = gzip(content);
+            this.eTag = DigestUtils.md5Hex(content);
+            this.generation = generation;
+            this.version = version;
+        }
+
+        public byte[] getContent(boolean gzipped) {
+            return gzipped ? gzippedContent : content;
+        }
+
+        public InputStream getAsStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        /**
+         * Returns the entity tag of the plain or gzipped content, quoted as
+         * in an <code>ETag</code> header.
+         */
+        public String getETag(boolean gzipped) {
+            return "\"" + eTag + (gzipped ? GZIP_SUFFIX : "") + "\"";
+        }
+
+        /**
+         * Checks if the client already has the content, i.e. if the value of
+         * an <code>If-None-Match</code> header contains its entity tag.
+         * 
+         * @param ifNoneMatch
+         *        the header value, may be <code>null</code>
+         * @param gzipped
+         *        whether the gzipped content is requested
+         */
+        public boolean matches(String ifNoneMatch, boolean gzipped) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            String expected = getETag(gzipped);
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(expected)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static byte[] gzip(byte[] content) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4 + 64);
+            GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+            gzip.write(content);
+            gzip.close();
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import net.opengis.wps.x100.ProcessDescriptionType;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.n52.wps.server.RepositoryManager.RepositoryIndex;
+
+public class RepositoryIndexTest {
+
+	@Test
+	public void shouldReturnFirstRepositoryContainingAlgorithm() {
+		TestRepository first = new TestRepository("a", "b");
+		TestRepository second = new TestRepository("b", "c");
+		RepositoryIndex index = new RepositoryIndex(Arrays.<IAlgorithmRepository>asList(first, second));
+
+		Assert.assertSame(first, index.getRepository("a"));
+		Assert.assertSame(first, index.getRepository("b"));
+		Assert.assertSame(second, index.getRepository("c"));
+		Assert.assertNull(index.getRepository("d"));
+		Assert.assertNull(index.getRepository(null));
+	}
+
+	@Test
+	public void shouldFindAlgorithmsChangedAfterIndexing() {
+		TestRepository first = new TestRepository("a", "b");
+		TestRepository second = new TestRepository("b");
+		RepositoryIndex index = new RepositoryIndex(Arrays.<IAlgorithmRepository>asList(first, second));
+
+		second.names.add("d");
+		first.names.remove("b");
+
+		Assert.assertSame(second, index.getRepository("d"));
+		Assert.assertSame(second, index.getRepository("b"));
+	}
+
+	@Test
+	public void shouldPreferEarlierRepositoryAfterReindexing() {
+		TestRepository first = new TestRepository("a");
+		TestRepository second = new TestRepository("d");
+		RepositoryIndex index = new RepositoryIndex(Arrays.<IAlgorithmRepository>asList(first, second));
+
+		first.names.add("d");
+
+		Assert.assertSame(first, index.reindex().getRepository("d"));
+	}
+
+	private static class TestRepository implements IAlgorithmRepository {
+
+		private final Set<String> names;
+
+		TestRepository(String... names) {
+			this.names = new LinkedHashSet<String>(Arrays.asList(names));
+		}
+
+		@Override
+		public Collection<String> getAlgorithmNames() {
+			return names;
+		}
+
+		@Override
+		public IAlgorithm getAlgorithm(String processID) {
+			return null;
+		}
+
+		@Override
+		public ProcessDescriptionType getProcessDescription(String processID) {
+			return null;
+		}
+
+		@Override
+		public boolean containsAlgorithm(String processID) {
+			return names.contains(processID);
+		}
+
+		@Override
+		public void shutdown() {
+		}
+	}
+}
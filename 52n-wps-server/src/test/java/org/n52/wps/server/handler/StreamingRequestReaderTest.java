@@ -0,0 +1,155 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.handler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.WebProcessingService;
+import org.n52.wps.server.request.strategy.InlineDataSpool;
+import org.n52.wps.server.request.strategy.ReferenceInputStream;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class StreamingRequestReaderTest {
+
+    private static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+
+    private byte[] payload;
+
+    @Before
+    public void setUp() {
+        payload = new byte[4096];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+    }
+
+    @Test
+    public void testRootElementIsSniffed() throws Exception {
+        StreamingRequestReader reader = read(100, "");
+
+        assertEquals("Execute", reader.getRootElementName().getLocalPart());
+        assertEquals(WebProcessingService.WPS_NAMESPACE, reader.getRootElementName().getNamespaceURI());
+        assertEquals("WPS", reader.getRootAttribute("service"));
+        assertEquals("1.0.0", reader.getRootAttribute("version"));
+        assertNull(reader.getRootAttribute("language"));
+    }
+
+    @Test
+    public void testSmallComplexDataStaysInline() throws Exception {
+        StreamingRequestReader reader = read(1024, "<wps:Input><ows:Identifier>small</ows:Identifier><wps:Data>"
+                + "<wps:ComplexData mimeType=\"text/xml\"><gml:Point/></wps:ComplexData></wps:Data></wps:Input>");
+
+        Document doc = reader.getDocument();
+        assertEquals(1, doc.getElementsByTagNameNS(WebProcessingService.WPS_NAMESPACE, "ComplexData").getLength());
+        assertEquals(0, doc.getElementsByTagNameNS(WebProcessingService.WPS_NAMESPACE, "Reference").getLength());
+    }
+
+    @Test
+    public void testLargeBase64ComplexDataIsSpooledDecoded() throws Exception {
+        StreamingRequestReader reader = read(1024, "<wps:Input><ows:Identifier>large</ows:Identifier><wps:Data>"
+                + "<wps:ComplexData mimeType=\"image/tiff\" encoding=\"base64\">"
+                + Base64.encodeBase64String(payload)
+                + "</wps:ComplexData></wps:Data></wps:Input>");
+
+        Element reference = getSingleReference(reader.getDocument());
+        assertEquals("image/tiff", reference.getAttribute("mimeType"));
+        assertEquals("base64", reference.getAttribute("encoding"));
+
+        String href = reference.getAttributeNS(XLINK_NAMESPACE, "href");
+        ReferenceInputStream stream = InlineDataSpool.getInstance().open(href);
+        try {
+            assertEquals("image/tiff", stream.getMimeType());
+            assertArrayEquals(payload, IOUtils.toByteArray(stream));
+        } finally {
+            stream.close();
+        }
+
+        reader.release();
+        assertFalse(InlineDataSpool.getInstance().contains(href));
+    }
+
+    @Test
+    public void testLargeXMLComplexDataKeepsNamespaces() throws Exception {
+        StringBuilder members = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            members.append("<gml:featureMember><gml:Point/></gml:featureMember>");
+        }
+        StreamingRequestReader reader = read(1024, "<wps:Input><ows:Identifier>large</ows:Identifier><wps:Data>"
+                + "<wps:ComplexData mimeType=\"text/xml\"><gml:FeatureCollection>"
+                + members
+                + "</gml:FeatureCollection></wps:ComplexData></wps:Data></wps:Input>");
+
+        String href = getSingleReference(reader.getDocument()).getAttributeNS(XLINK_NAMESPACE, "href");
+        InputStream stream = InlineDataSpool.getInstance().open(href);
+        String spooled;
+        try {
+            spooled = IOUtils.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+        assertTrue(spooled.contains("<gml:FeatureCollection xmlns"));
+        assertTrue(spooled.contains("xmlns:gml=\"http://www.opengis.net/gml\""));
+
+        reader.release();
+    }
+
+    private Element getSingleReference(Document doc) {
+        NodeList references = doc.getElementsByTagNameNS(WebProcessingService.WPS_NAMESPACE, "Reference");
+        assertEquals(1, references.getLength());
+        assertEquals(0, doc.getElementsByTagNameNS(WebProcessingService.WPS_NAMESPACE, "Data").getLength());
+        return (Element) references.item(0);
+    }
+
+    private StreamingRequestReader read(long threshold, String inputs) throws Exception {
+        String request = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<wps:Execute service=\"WPS\" version=\"1.0.0\""
+                + " xmlns:wps=\"http://www.opengis.net/wps/1.0.0\""
+                + " xmlns:ows=\"http://www.opengis.net/ows/1.1\""
+                + " xmlns:gml=\"http://www.opengis.net/gml\">"
+                + "<ows:Identifier>org.n52.wps.server.algorithm.test.DummyTestClass</ows:Identifier>"
+                + "<wps:DataInputs>" + inputs + "</wps:DataInputs>"
+                + "</wps:Execute>";
+        StreamingRequestReader reader = new StreamingRequestReader(threshold);
+        reader.read(new ByteArrayInputStream(request.getBytes("UTF-8")));
+        return reader;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.opengis.wps.x100.StatusType;
+
+import org.junit.Test;
+
+public class ExecuteStatusWriterTest {
+
+    @Test
+    public void testProgressUpdatesAreCoalesced() throws Exception {
+        ExecuteStatusWriter writer = new ExecuteStatusWriter(60000);
+        RecordingStore store = new RecordingStore();
+
+        writer.update("job", store, StatusType.Factory.newInstance());
+        writer.update("job", store, StatusType.Factory.newInstance());
+        StatusType third = StatusType.Factory.newInstance();
+        writer.update("job", store, third);
+
+        assertEquals(0, store.written.size());
+        assertTrue(writer.isPending("job"));
+
+        writer.flush("job");
+        assertEquals(1, store.written.size());
+        assertSame(third, store.written.get(0));
+        assertFalse(writer.isPending("job"));
+    }
+
+    @Test
+    public void testProgressUpdatesAreOnlyWrittenWhenRead() throws Exception {
+        ExecuteStatusWriter writer = new ExecuteStatusWriter(50);
+        RecordingStore store = new RecordingStore();
+
+        writer.update("job", store, StatusType.Factory.newInstance());
+        StatusType last = StatusType.Factory.newInstance();
+        writer.update("job", store, last);
+
+        Thread.sleep(200);
+        assertEquals(0, store.written.size());
+        assertTrue(writer.isPending("job"));
+
+        writer.flush("job");
+        assertEquals(1, store.written.size());
+        assertSame(last, store.written.get(0));
+    }
+
+    @Test
+    public void testReadsAreRateLimited() throws Exception {
+        ExecuteStatusWriter writer = new ExecuteStatusWriter(60000);
+        RecordingStore store = new RecordingStore();
+
+        StatusType started = StatusType.Factory.newInstance();
+        writer.write("job", store, started, false);
+        StatusType progress = StatusType.Factory.newInstance();
+        writer.update("job", store, progress);
+
+        // the status has just been written
+        writer.flush("job");
+        assertEquals(1, store.written.size());
+        assertSame(started, store.written.get(0));
+        assertTrue(writer.isPending("job"));
+    }
+
+    @Test
+    public void testTerminalStatusReplacesPendingUpdate() throws Exception {
+        ExecuteStatusWriter writer = new ExecuteStatusWriter(60000);
+        RecordingStore store = new RecordingStore();
+
+        writer.update("job", store, StatusType.Factory.newInstance());
+        writer.update("job", store, StatusType.Factory.newInstance());
+        StatusType succeeded = StatusType.Factory.newInstance();
+        writer.write("job", store, succeeded, true);
+
+        assertEquals(1, store.written.size());
+        assertSame(succeeded, store.written.get(0));
+        assertFalse(writer.isPending("job"));
+
+        writer.flush("job");
+        assertEquals(1, store.written.size());
+    }
+
+    @Test
+    public void testUpdateAfterTerminalStatusIsDropped() throws Exception {
+        ExecuteStatusWriter writer = new ExecuteStatusWriter(0);
+        RecordingStore store = new RecordingStore();
+
+        writer.update("job", store, StatusType.Factory.newInstance());
+        StatusType succeeded = StatusType.Factory.newInstance();
+        writer.write("job", store, succeeded, true);
+
+        writer.update("job", store, StatusType.Factory.newInstance());
+        writer.write("job", store, StatusType.Factory.newInstance(), false);
+        writer.flush("job");
+
+        assertEquals(1, store.written.size());
+        assertSame(succeeded, store.written.get(0));
+        assertFalse(writer.isPending("job"));
+    }
+
+    @Test
+    public void testZeroIntervalWritesEveryRead() throws Exception {
+        ExecuteStatusWriter writer = new ExecuteStatusWriter(0);
+        RecordingStore store = new RecordingStore();
+
+        for (int i = 0; i < 5; i++) {
+            writer.update("job", store, StatusType.Factory.newInstance());
+            writer.flush("job");
+        }
+        assertEquals(5, store.written.size());
+    }
+
+    private static class RecordingStore implements ExecuteStatusWriter.StatusStore {
+
+        private final List<StatusType> written = new ArrayList<StatusType>();
+
+        @Override
+        public synchronized void storeStatus(StatusType status) {
+            written.add(status);
+        }
+    }
+}
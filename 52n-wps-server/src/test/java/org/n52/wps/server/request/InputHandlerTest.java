@@ -30,7 +30,10 @@ package org.n52.wps.server.request;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import net.opengis.wps.x100.ComplexDataDescriptionType;
 import net.opengis.wps.x100.ExecuteDocument;
 import net.opengis.wps.x100.InputDescriptionType;
@@ -43,6 +46,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
+import org.n52.wps.io.data.IData;
 import org.n52.wps.server.ExceptionReport;
 import org.n52.wps.server.handler.DataInputInterceptors.InterceptorInstance;
 
@@ -157,4 +161,29 @@ public class InputHandlerTest {
         assertThat(result, containsString("46.75 13.05"));
 
     }
+
+    @Test
+    public void testInputHandlerParsesConcurrently() throws ExceptionReport, XmlException, IOException {
+        System.out.println("Testing testInputHandlerParsesConcurrently...");
+
+        Map<String, List<IData>> sequential = new InputHandler.Builder(simpleBufferAlgorithmInputArray, "org.n52.wps.server.algorithm.SimpleBufferAlgorithm").build().getParsedInputData();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Map<String, List<IData>> concurrent = new InputHandler.Builder(simpleBufferAlgorithmInputArray, "org.n52.wps.server.algorithm.SimpleBufferAlgorithm")
+                    .parseExecutor(executor)
+                    .build()
+                    .getParsedInputData();
+
+            assertThat(concurrent.keySet(), is(equalTo(sequential.keySet())));
+            for (String inputId : sequential.keySet()) {
+                assertThat(concurrent.get(inputId).size(), equalTo(sequential.get(inputId).size()));
+                for (int i = 0; i < sequential.get(inputId).size(); i++) {
+                    assertThat(concurrent.get(inputId).get(i).getClass().getName(), is(equalTo(sequential.get(inputId).get(i).getClass().getName())));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
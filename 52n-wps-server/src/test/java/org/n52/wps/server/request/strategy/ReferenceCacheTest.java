@@ -0,0 +1,185 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.request.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+import org.n52.wps.io.data.binding.complex.GeotiffBinding;
+import org.n52.wps.server.request.strategy.ReferenceCache.CachedReference;
+
+public class ReferenceCacheTest {
+
+    @Test
+    public void testKeyCoversAllParts() {
+        String key = ReferenceCache.createKey("http://localhost/wfs", null, "text/xml", null, null);
+        assertEquals(key, ReferenceCache.createKey("http://localhost/wfs", null, "text/xml", null, null));
+        assertFalse(key.equals(ReferenceCache.createKey("http://localhost/wfs", "<GetFeature/>", "text/xml", null, null)));
+        assertFalse(key.equals(ReferenceCache.createKey("http://localhost/wfs", null, "application/json", null, null)));
+    }
+
+    @Test
+    public void testExpires() {
+        long now = System.currentTimeMillis();
+        assertEquals(Long.valueOf(now + 60000), ReferenceCache.getExpires(response(200, "Cache-Control", "public, max-age=60"), now));
+        assertEquals(Long.valueOf(now), ReferenceCache.getExpires(response(200, "Cache-Control", "no-cache"), now));
+        assertNull(ReferenceCache.getExpires(response(200, "Cache-Control", "no-store"), now));
+        assertNull(ReferenceCache.getExpires(response(200, "Cache-Control", "private, max-age=60"), now));
+        assertEquals(Long.valueOf(now), ReferenceCache.getExpires(response(200, "Expires", "0"), now));
+        assertEquals(Long.valueOf(now), ReferenceCache.getExpires(response(200, null, null), now));
+    }
+
+    @Test
+    public void testFreshResponseIsCached() throws IOException {
+        ReferenceCache cache = new ReferenceCache(1024, 0);
+        String key = ReferenceCache.createKey("http://localhost/fresh", null, null, null, null);
+
+        assertEquals("content", read(cache.store(key, response(HttpStatus.SC_OK, "Cache-Control", "max-age=60"))));
+        CachedReference cached = cache.get(key);
+        assertNotNull(cached);
+        assertTrue(cached.isFresh());
+
+        ReferenceInputStream stream = cache.hit(cached);
+        assertNotNull(stream.getContentKey());
+        assertEquals(7, stream.getContentLength());
+        assertEquals("content", read(stream));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testUncacheableResponsesAreNotStored() throws IOException {
+        ReferenceCache cache = new ReferenceCache(1024, 0);
+        String key = ReferenceCache.createKey("http://localhost/uncacheable", null, null, null, null);
+
+        assertEquals("content", read(cache.store(key, response(HttpStatus.SC_OK, null, null))));
+        assertNull(cache.get(key));
+        assertEquals("content", read(cache.store(key, response(HttpStatus.SC_NOT_FOUND, "ETag", "\"1\""))));
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        ReferenceCache cache = new ReferenceCache(10, 0);
+        String first = ReferenceCache.createKey("http://localhost/first", null, null, null, null);
+        String second = ReferenceCache.createKey("http://localhost/second", null, null, null, null);
+
+        read(cache.store(first, response(HttpStatus.SC_OK, "ETag", "\"1\"")));
+        read(cache.store(second, response(HttpStatus.SC_OK, "ETag", "\"2\"")));
+
+        assertNull(cache.get(first));
+        assertNotNull(cache.get(second));
+        assertEquals("\"2\"", cache.get(second).getETag());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(7, cache.getSize());
+    }
+
+    @Test
+    public void testCachedGeotiffSurvivesExecutions() throws IOException {
+        ReferenceCache cache = new ReferenceCache(1024, 1024);
+        File geotiff = File.createTempFile("reference-cache-test", ".tif");
+        try {
+            // the first execution parses the reference, the second one runs concurrently with it
+            assertNull(cache.getParsed("content", "geotiff"));
+            GeotiffBinding parsed = new GeotiffBinding(geotiff);
+            assertTrue(cache.putParsed("content", "geotiff", parsed, 100));
+            assertSame(parsed, cache.getParsed("content", "geotiff"));
+
+            assertTrue(cache.releaseParsed(parsed));
+            assertTrue(geotiff.exists());
+            assertTrue(cache.releaseParsed(parsed));
+            assertTrue(geotiff.exists());
+
+            // a later execution still gets the file
+            assertSame(parsed, cache.getParsed("content", "geotiff"));
+            assertTrue(geotiff.exists());
+
+            // evicted while in use, disposed once the execution is done
+            assertTrue(cache.putParsed("other", "geotiff", new GeotiffBinding(new File(geotiff.getPath() + ".other")), 1000));
+            assertEquals(1, cache.getParsedEvictions());
+            assertNull(cache.getParsed("content", "geotiff"));
+            assertTrue(geotiff.exists());
+            assertTrue(cache.releaseParsed(parsed));
+            assertFalse(geotiff.exists());
+            assertFalse(cache.releaseParsed(parsed));
+        } finally {
+            FileUtils.deleteQuietly(geotiff);
+        }
+    }
+
+    @Test
+    public void testUncachedParsedInputIsOwnedByCaller() throws IOException {
+        ReferenceCache cache = new ReferenceCache(1024, 10);
+        File geotiff = File.createTempFile("reference-cache-test", ".tif");
+        try {
+            GeotiffBinding parsed = new GeotiffBinding(geotiff);
+            assertFalse(cache.putParsed("content", "geotiff", parsed, 100));
+            assertFalse(cache.releaseParsed(parsed));
+            assertTrue(geotiff.exists());
+        } finally {
+            FileUtils.deleteQuietly(geotiff);
+        }
+    }
+
+    private static String read(ReferenceInputStream stream) throws IOException {
+        try {
+            return IOUtils.toString(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static HttpResponse response(int status, String header, String value) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+        if (header != null) {
+            response.addHeader(header, value);
+        }
+        try {
+            response.setEntity(new StringEntity("content"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return response;
+    }
+}
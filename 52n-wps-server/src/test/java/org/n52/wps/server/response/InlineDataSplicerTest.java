@@ -0,0 +1,117 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import net.opengis.ows.x11.LanguageStringType;
+import net.opengis.wps.x100.OutputDescriptionType;
+import net.opengis.wps.x100.ProcessDescriptionType;
+import net.opengis.wps.x100.ProcessDescriptionsDocument;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.io.data.binding.literal.LiteralStringBinding;
+
+public class InlineDataSplicerTest {
+
+	private ProcessDescriptionType description;
+
+	@Before
+	public void setUp() {
+		description = ProcessDescriptionsDocument.Factory.newInstance()
+				.addNewProcessDescriptions().addNewProcessDescription();
+		description.addNewIdentifier().setStringValue("process");
+		OutputDescriptionType output = description.addNewProcessOutputs().addNewOutput();
+		output.addNewIdentifier().setStringValue("output");
+		output.addNewLiteralOutput();
+	}
+
+	@Test
+	public void testPlaceholdersAreReplaced() throws Exception {
+		InlineDataSplicer splicer = new InlineDataSplicer();
+		String first = splicer.register(createOutput("<a/>"));
+		String second = splicer.register(createOutput("b"));
+
+		String document = "<r><d>" + first + "</d><d>" + second + "</d></r>";
+		assertEquals("<r><d><a/></d><d>b</d></r>", toString(splicer.splice(toStream(document))));
+	}
+
+	@Test
+	public void testDocumentWithoutOutputsIsUnchanged() throws Exception {
+		InlineDataSplicer splicer = new InlineDataSplicer();
+		assertEquals("<r/>", toString(splicer.splice(toStream("<r/>"))));
+	}
+
+	@Test
+	public void testXmlPrologIsRemoved() throws Exception {
+		String xml = "\uFEFF<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<!DOCTYPE a [<!ENTITY e \"x\">]>\n<a>ä</a>";
+		assertEquals("<a>ä</a>", toString(InlineDataSplicer.toXmlFragment(toStream(xml))));
+	}
+
+	@Test
+	public void testXmlIsConvertedToUTF8() throws Exception {
+		String xml = "<?xml version='1.0' encoding='ISO-8859-1'?><a>ä</a>";
+		InputStream latin1 = new ByteArrayInputStream(xml.getBytes("ISO-8859-1"));
+		assertEquals("<a>ä</a>", toString(InlineDataSplicer.toXmlFragment(latin1)));
+	}
+
+	@Test
+	public void testTextIsEscaped() throws Exception {
+		assertEquals("a &lt;b&gt; &amp; ä", toString(InlineDataSplicer.toText(toStream("a <b> & ä"))));
+	}
+
+	private OutputDataItem createOutput(final String data) throws Exception {
+		return new OutputDataItem(new LiteralStringBinding(data), "output", null, null, null,
+				LanguageStringType.Factory.newInstance(), "process", description) {
+			@Override
+			public InputStream openInlineData() {
+				return toStream(data);
+			}
+		};
+	}
+
+	private static InputStream toStream(String s) {
+		return new ByteArrayInputStream(s.getBytes(Charset.forName("UTF-8")));
+	}
+
+	private static String toString(InputStream in) throws Exception {
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.response;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.collections.map.CaseInsensitiveMap;
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.n52.test.mock.MockUtil;
+import org.n52.wps.server.ExceptionReport;
+import org.n52.wps.server.RepositoryManager;
+import org.n52.wps.server.request.Request;
+import org.n52.wps.server.response.ResponseCache.CachedResponse;
+
+public class ResponseCacheTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        MockUtil.getMockConfig();
+    }
+
+    @Test
+    public void shouldServeRequestOnceUntilOutdated() throws Exception {
+        ResponseCache cache = new ResponseCache(10);
+        TestRequest request = new TestRequest("a", "<a/>");
+
+        CachedResponse response = cache.getResponse(request);
+        assertSame(response, cache.getResponse(request));
+        assertEquals(1, request.calls);
+        assertEquals("<a/>", IOUtils.toString(response.getAsStream(), "UTF-8"));
+
+        cache.invalidate();
+        assertNotSame(response, cache.getResponse(request));
+        assertEquals(2, request.calls);
+
+        RepositoryManager.getInstance().algorithmsChanged();
+        cache.getResponse(request);
+        assertEquals(3, request.calls);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedResponses() throws Exception {
+        ResponseCache cache = new ResponseCache(2);
+        TestRequest a = new TestRequest("a", "<a/>");
+        TestRequest b = new TestRequest("b", "<b/>");
+        TestRequest c = new TestRequest("c", "<c/>");
+        cache.getResponse(a);
+        cache.getResponse(b);
+        cache.getResponse(a);
+        cache.getResponse(c);
+        assertEquals(2, cache.size());
+
+        cache.getResponse(a);
+        cache.getResponse(b);
+        assertEquals(1, a.calls);
+        assertEquals(2, b.calls);
+    }
+
+    @Test
+    public void shouldMatchEntityTags() throws Exception {
+        CachedResponse response = new ResponseCache(0).getResponse(new TestRequest("a", "<a/>"));
+        String eTag = response.getETag(false);
+        String gzipETag = response.getETag(true);
+        assertFalse(eTag.equals(gzipETag));
+
+        assertTrue(response.matches(eTag, false));
+        assertTrue(response.matches("\"x\", W/" + eTag, false));
+        assertTrue(response.matches("*", true));
+        assertFalse(response.matches(eTag, true));
+        assertFalse(response.matches(null, false));
+
+        InputStream gzipped = new GZIPInputStream(new ByteArrayInputStream(response.getContent(true)));
+        assertArrayEquals(response.getContent(false), IOUtils.toByteArray(gzipped));
+    }
+
+    private static class TestRequest extends Request {
+
+        private final String key;
+
+        private final String content;
+
+        private int calls;
+
+        TestRequest(String key, String content) throws ExceptionReport {
+            super(new CaseInsensitiveMap());
+            this.key = key;
+            this.content = content;
+        }
+
+        @Override
+        public String getCacheKey() {
+            return key;
+        }
+
+        @Override
+        public Object getAttachedResult() {
+            return null;
+        }
+
+        @Override
+        public Response call() throws ExceptionReport {
+            calls++;
+            return new Response(this) {
+                @Override
+                public InputStream getAsStream() {
+                    try {
+                        return IOUtils.toInputStream(content, "UTF-8");
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public boolean validate() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * ﻿Copyright (C) 2007 - 2016 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *       • Apache License, version 2.0
+ *       • Apache Software License, version 1.0
+ *       • GNU Lesser General Public License, version 3
+ *       • Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *       • Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.wps.server.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.wps.server.RetrieveResultServlet;
+
+public class RangeTest {
+
+	RetrieveResultServlet resultServlet;
+	
+	@Before
+	public void setup(){
+		resultServlet = new RetrieveResultServlet();
+	}
+	
+	@Test
+	public void testClosedRange(){
+		assertArrayEquals(new long[] {2, 4}, resultServlet.parseRange("bytes=2-4", 10));
+		assertArrayEquals(new long[] {2, 9}, resultServlet.parseRange("bytes=2-40", 10));
+	}
+	
+	@Test
+	public void testOpenRange(){
+		assertArrayEquals(new long[] {5, 9}, resultServlet.parseRange("bytes=5-", 10));
+	}
+	
+	@Test
+	public void testSuffixRange(){
+		assertArrayEquals(new long[] {7, 9}, resultServlet.parseRange("bytes=-3", 10));
+		assertArrayEquals(new long[] {0, 9}, resultServlet.parseRange("bytes=-30", 10));
+	}
+	
+	@Test
+	public void testUnsatisfiableRange(){
+		assertEquals(0, resultServlet.parseRange("bytes=10-", 10).length);
+		assertEquals(0, resultServlet.parseRange("bytes=-0", 10).length);
+	}
+	
+	@Test
+	public void testIgnoredRange(){
+		assertNull(resultServlet.parseRange("items=0-1", 10));
+		assertNull(resultServlet.parseRange("bytes=0-1,4-5", 10));
+		assertNull(resultServlet.parseRange("bytes=4-1", 10));
+		assertNull(resultServlet.parseRange("bytes=a-b", 10));
+	}
+	
+}